@@ -0,0 +1,208 @@
+package org.nodel;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity ring buffer of items with consecutive sequence numbers (oldest overwritten first).
+ *
+ * Appends are made by one writer at a time (callers serialise their own writers) and take no lock. Readers never lock
+ * and can wait for new items without involving the writer, beyond a notify when someone is actually waiting.
+ */
+public class SeqRingBuffer<T> {
+
+    /**
+     * (an item and its sequence number, so readers can tell whether a slot was overwritten)
+     */
+    private static class Slot<T> {
+
+        public final long seq;
+
+        public final T item;
+
+        public Slot(long seq, T item) {
+            this.seq = seq;
+            this.item = item;
+        }
+
+    } // (class)
+
+    /**
+     * The slots.
+     */
+    private final AtomicReferenceArray<Slot<T>> _slots;
+
+    /**
+     * (same as slots length)
+     */
+    private final int _capacity;
+
+    /**
+     * The first sequence number ever used.
+     */
+    private final long _firstSeq;
+
+    /**
+     * The sequence number of the next item (published after the item is).
+     */
+    private volatile long _nextSeq;
+
+    /**
+     * Readers wait on this (never the writer's own lock).
+     */
+    private final Object _signal = new Object();
+
+    /**
+     * The number of waiting readers (the writer only signals if there are any).
+     */
+    private final AtomicInteger _waiters = new AtomicInteger();
+
+    /**
+     * (constructor)
+     */
+    public SeqRingBuffer(int capacity, long firstSeq) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive.");
+
+        _slots = new AtomicReferenceArray<Slot<T>>(capacity);
+        _capacity = capacity;
+        _firstSeq = firstSeq;
+        _nextSeq = firstSeq;
+    }
+
+    /**
+     * The sequence number the next item will have.
+     */
+    public long nextSeq() {
+        return _nextSeq;
+    }
+
+    /**
+     * The sequence number of the oldest item held.
+     */
+    public long oldestSeq() {
+        return Math.max(_firstSeq, _nextSeq - _capacity);
+    }
+
+    /**
+     * Appends an item, which takes sequence number 'nextSeq()'.
+     * (one writer at a time)
+     */
+    public long append(T item) {
+        long seq = _nextSeq;
+
+        _slots.set(index(seq), new Slot<T>(seq, item));
+
+        // (publishes the item)
+        _nextSeq = seq + 1;
+
+        if (_waiters.get() > 0) {
+            synchronized (_signal) {
+                _signal.notifyAll();
+            }
+        }
+
+        return seq;
+    }
+
+    /**
+     * Returns an item by sequence number, or null if it has been overwritten or doesn't exist yet.
+     */
+    public T get(long seq) {
+        if (seq < _firstSeq || seq >= _nextSeq)
+            return null;
+
+        Slot<T> slot = _slots.get(index(seq));
+
+        return (slot != null && slot.seq == seq) ? slot.item : null;
+    }
+
+    /**
+     * Returns the newest items from sequence number 'from' (inclusive), up to 'max' of them, oldest first.
+     */
+    public List<T> since(long from, int max) {
+        long next = _nextSeq;
+        long start = Math.max(Math.max(from, oldestSeq()), next - Math.max(0, max));
+
+        List<T> result = new ArrayList<T>((int) Math.max(0, next - start));
+
+        for (long seq = start; seq < next; seq++) {
+            T item = get(seq);
+
+            // (skips any overwritten in the meantime)
+            if (item != null)
+                result.add(item);
+        }
+
+        return result;
+    }
+
+    /**
+     * Same as 'since' except newest first.
+     */
+    public List<T> sinceNewestFirst(long from, int max) {
+        long next = _nextSeq;
+        long end = Math.max(from, oldestSeq());
+
+        List<T> result = new ArrayList<T>((int) Math.max(0, Math.min(max, next - end)));
+
+        for (long seq = next - 1; seq >= end && result.size() < max; seq--) {
+            T item = get(seq);
+
+            // (anything older has been overwritten too)
+            if (item == null)
+                break;
+
+            result.add(item);
+        }
+
+        return result;
+    }
+
+    /**
+     * Waits until there is an item with a sequence number of at least 'from' (or the timeout elapses).
+     *
+     * @return true if there is one.
+     */
+    public boolean await(long from, int timeout) {
+        if (_nextSeq > from)
+            return true;
+
+        _waiters.incrementAndGet();
+        try {
+            long deadline = System.nanoTime() + timeout * 1000000L;
+
+            synchronized (_signal) {
+                for (;;) {
+                    if (_nextSeq > from)
+                        return true;
+
+                    long remaining = (deadline - System.nanoTime()) / 1000000;
+                    if (remaining <= 0)
+                        return false;
+
+                    Threads.waitOnSync(_signal, remaining);
+                }
+            }
+
+        } finally {
+            _waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * (convenience)
+     */
+    private int index(long seq) {
+        return (int) ((seq - _firstSeq) % _capacity);
+    }
+
+} // (class)
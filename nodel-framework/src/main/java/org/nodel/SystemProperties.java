@@ -0,0 +1,50 @@
+package org.nodel;
+
+/* 
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
+ */
+
+/**
+ * Reads numeric tuning values from system properties, falling back to a default if missing or malformed.
+ */
+public class SystemProperties {
+
+    /**
+     * (static only)
+     */
+    private SystemProperties() {
+    }
+
+    /**
+     * Returns an int system property or 'def' if it's missing or not a number.
+     */
+    public static int intProperty(String name, int def) {
+        String value = System.getProperty(name);
+        if (value == null)
+            return def;
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException exc) {
+            return def;
+        }
+    }
+
+    /**
+     * Returns a long system property or 'def' if it's missing or not a number.
+     */
+    public static long longProperty(String name, long def) {
+        String value = System.getProperty(name);
+        if (value == null)
+            return def;
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException exc) {
+            return def;
+        }
+    }
+
+} // (class)
@@ -9,6 +9,8 @@ package org.nodel;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.nodel.threading.NodelThreadFactory;
+
 /**
  * Holds thread-related general purpose or utility methods.
  */
@@ -232,9 +234,8 @@ public class Threads {
 
         @Override
         public void handle(Runnable runnable) {
-            Thread thread = new Thread(runnable);
+            Thread thread = NodelThreadFactory.shared().newThread(runnable);
             thread.setName(String.format("nodeloneoff_%d", s_threadNumber.getAndIncrement()));
-            thread.setDaemon(true);
             thread.start();
         }
         
@@ -46,6 +46,16 @@ public abstract class ChannelClient {
     }
 
     protected static Timers s_timerThread = new Timers("Nodel channel-clients");
+    
+    /**
+     * Optional system property for the wire encoding to request from servers ('compact' or 'telnet')
+     */
+    public final static String ENCODING_SYSTEMPROP = "org.nodel.core.channelEncoding";
+    
+    /**
+     * The wire encoding requested from servers (compact by default)
+     */
+    private static ChannelMessage.Encoding s_preferredEncoding = "telnet".equalsIgnoreCase(System.getProperty(ENCODING_SYSTEMPROP)) ? ChannelMessage.Encoding.Telnet : ChannelMessage.Encoding.Compact;
 
     /**
      * (logging related)
@@ -75,6 +85,12 @@ public abstract class ChannelClient {
     @Value(name = "address")
     protected NodeAddress _address;
     
+    /**
+     * The wire encoding to use when sending; only changes once the server has acknowledged a request.
+     */
+    @Value(name = "encoding")
+    protected volatile ChannelMessage.Encoding _encoding = ChannelMessage.Encoding.Telnet;
+    
     /**
      * Is used to check wiring every 45s or so.
      */
@@ -428,6 +444,20 @@ public abstract class ChannelClient {
         Handler.handle(_wiringFaultHandler, node, missingActions, missingEvents);
     } // (method)
     
+    /**
+     * Requests the preferred wire encoding; servers that don't support negotiation ignore the request and the
+     * channel continues using 'Telnet' encoding.
+     */
+    protected void requestEncoding() {
+        if (s_preferredEncoding == ChannelMessage.Encoding.Telnet)
+            return;
+        
+        ChannelMessage message = new ChannelMessage();
+        message.encoding = s_preferredEncoding;
+        
+        sendMessage(message);
+    } // (method)
+    
     /**
      * Synchronises the event handler table with the channel server.
      * (assumes locked)
@@ -563,6 +593,12 @@ public abstract class ChannelClient {
     protected void handleMessage(final ChannelMessage message) {
             _logger.info("Client: message arrived: " + message);
             
+            // acknowledgement of an 'encoding' request
+            if (message.encoding != null && message.node == null) {
+                _encoding = message.encoding;
+                return;
+            }
+            
             // received an 'event'
             if (message.node != null && message.event != null) {
                 // determine connection point source
@@ -88,6 +88,31 @@ public class ChannelMessage {
     @Value(name = "reveal", order = 12)
     public String[] reveal;
     
+    /**
+     * The wire encodings.
+     */
+    public enum Encoding {
+        
+        /**
+         * Indented, multi-line (the default, friendly for TELNET sessions)
+         */
+        Telnet,
+        
+        /**
+         * Single-line, no indentation, one message per line.
+         */
+        Compact
+        
+    }
+    
+    /**
+     * FROM CLIENT: Requests a wire encoding for the rest of the session.
+     * FROM SERVER: Acknowledges the wire encoding now in use.
+     * (peers that don't use this always get 'Telnet')
+     */
+    @Value(name = "encoding", order = 13)
+    public Encoding encoding;
+    
     /**
      * (used by 'toString()')
      */
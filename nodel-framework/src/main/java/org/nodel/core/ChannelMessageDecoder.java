@@ -0,0 +1,517 @@
+package org.nodel.core;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nodel.Formatting;
+import org.nodel.json.JSONObject;
+import org.nodel.reflection.EnumInfo;
+import org.nodel.reflection.Reflection;
+import org.nodel.reflection.Serialisation;
+
+/**
+ * Decodes channel messages straight from a character stream in a single pass, filling in the ChannelMessage fields
+ * directly and building 'arg' as the same plain Java types Serialisation would produce (LinkedHashMaps, ArrayLists,
+ * Strings, Integers, Longs, Doubles, Booleans and nulls) without going via an intermediate JSONObject tree.
+ *
+ * Accepts the same loose JSON as the 'json.org' parser (single quotes, unquoted strings, '=' and ';' separators)
+ * and the same stream form as JSONStreamReader:
+ *   [WHITESPACE]'{'[STREAM]'}'
+ */
+public class ChannelMessageDecoder {
+
+    /**
+     * The base reader.
+     */
+    private Reader _reader;
+
+    /**
+     * Characters read ahead from the reader.
+     */
+    private char[] _buffer = new char[8192];
+
+    /**
+     * (see '_buffer')
+     */
+    private int _position, _limit;
+
+    /**
+     * A single character pushed back (or -1)
+     */
+    private int _pushedBack = -1;
+
+    /**
+     * Characters consumed by the current message (for size limits)
+     */
+    private int _count;
+
+    /**
+     * For building up strings.
+     * (reused)
+     */
+    private StringBuilder _sb = new StringBuilder(64);
+
+    /**
+     * Constructs a new decoder over a character stream; no further buffering is necessary.
+     */
+    public ChannelMessageDecoder(Reader reader) {
+        if (reader == null)
+            throw new IllegalArgumentException("Reader cannot be null.");
+
+        _reader = reader;
+    } // (constructor)
+
+    /**
+     * Convenience method to decode a single, complete message.
+     */
+    public static ChannelMessage decode(String json) throws IOException {
+        ChannelMessage message = new ChannelMessageDecoder(new StringReader(json)).readMessage();
+        if (message == null)
+            throw new IOException("No message present.");
+
+        return message;
+    } // (method)
+
+    /**
+     * Blocks until a complete message can be read or returns null if the end of stream occurs before any message
+     * starts.
+     * (not thread safe)
+     */
+    public ChannelMessage readMessage() throws IOException {
+        _count = 0;
+
+        int c;
+
+        // skip leading white-space (e.g. 'keep-alives')
+        for (;;) {
+            c = read();
+            if (c < 0)
+                return null;
+
+            if (!Character.isWhitespace(c))
+                break;
+        }
+
+        if (c != '{')
+            // otherwise unexpected character means corrupt stream
+            throw new IOException("Unexpected character before opening brace, '{'.");
+
+        // reset here so white-space between messages doesn't count
+        _count = 1;
+
+        ChannelMessage message = new ChannelMessage();
+
+        c = nextClean();
+        if (c == '}')
+            return message;
+
+        for (;;) {
+            String key = readKey(c);
+
+            readSeparator();
+
+            readField(message, key);
+
+            c = nextClean();
+
+            if (c == ',' || c == ';') {
+                c = nextClean();
+
+                // (tolerate trailing separators)
+                if (c == '}')
+                    return message;
+
+            } else if (c == '}') {
+                return message;
+
+            } else {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+        } // (for)
+    } // (method)
+
+    /**
+     * Closes down the underlying stream.
+     */
+    public void close() throws IOException {
+        _reader.close();
+    }
+
+    /**
+     * Reads a value directly into the relevant message field.
+     */
+    private void readField(ChannelMessage message, String key) throws IOException {
+        // (field names are matched case-insensitively, like Serialisation)
+        if (key.equalsIgnoreCase("node")) {
+            message.node = asString(readValue());
+
+        } else if (key.equalsIgnoreCase("event")) {
+            message.event = asString(readValue());
+
+        } else if (key.equalsIgnoreCase("action")) {
+            message.action = asString(readValue());
+
+        } else if (key.equalsIgnoreCase("arg")) {
+            message.arg = readValue();
+
+        } else if (key.equalsIgnoreCase("events")) {
+            message.events = asStringArray(readValue());
+
+        } else if (key.equalsIgnoreCase("actions")) {
+            message.actions = asStringArray(readValue());
+
+        } else if (key.equalsIgnoreCase("error")) {
+            message.error = asString(readValue());
+
+        } else if (key.equalsIgnoreCase("reveal")) {
+            message.reveal = asStringArray(readValue());
+
+        } else if (key.equalsIgnoreCase("announcement")) {
+            message.announcement = (ChannelMessage.Announcement) asEnum(ChannelMessage.Announcement.class, readValue());
+
+        } else if (key.equalsIgnoreCase("encoding")) {
+            message.encoding = (ChannelMessage.Encoding) asEnum(ChannelMessage.Encoding.class, readValue());
+
+        } else {
+            // not a field of interest, consume and drop
+            readValue();
+        }
+    } // (method)
+
+    /**
+     * Reads any JSON value.
+     */
+    private Object readValue() throws IOException {
+        int c = nextClean();
+
+        switch (c) {
+            case '"':
+            case '\'':
+                return readString((char) c);
+
+            case '{':
+                return readObject();
+
+            case '[':
+            case '(':
+                return readArray();
+
+            default:
+                return readUnquoted(c);
+        }
+    } // (method)
+
+    /**
+     * Reads an object (opening brace already consumed)
+     */
+    private Map<String, Object> readObject() throws IOException {
+        // a well new 'Map' class, LinkedHashMap which preservers order
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+
+        int c = nextClean();
+        if (c == '}')
+            return map;
+
+        for (;;) {
+            String key = readKey(c);
+
+            readSeparator();
+
+            map.put(key, readValue());
+
+            c = nextClean();
+
+            if (c == ',' || c == ';') {
+                c = nextClean();
+
+                if (c == '}')
+                    return map;
+
+            } else if (c == '}') {
+                return map;
+
+            } else {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+        } // (for)
+    } // (method)
+
+    /**
+     * Reads an array (opening bracket already consumed)
+     */
+    private List<Object> readArray() throws IOException {
+        List<Object> list = new ArrayList<Object>();
+
+        int c = nextClean();
+        if (c == ']' || c == ')')
+            return list;
+
+        pushBack(c);
+
+        for (;;) {
+            c = nextClean();
+
+            if (c == ',') {
+                // (missing element, like 'json.org')
+                list.add(null);
+                continue;
+            }
+
+            pushBack(c);
+            list.add(readValue());
+
+            c = nextClean();
+
+            if (c == ',' || c == ';') {
+                c = nextClean();
+
+                if (c == ']' || c == ')')
+                    return list;
+
+                pushBack(c);
+
+            } else if (c == ']' || c == ')') {
+                return list;
+
+            } else {
+                throw syntaxError("Expected a ',' or ']'");
+            }
+        } // (for)
+    } // (method)
+
+    /**
+     * Reads a key given its first character.
+     */
+    private String readKey(int c) throws IOException {
+        if (c == '"' || c == '\'')
+            return readString((char) c);
+
+        if (c < 0 || c == '}' || c == ':' || c == ',')
+            throw syntaxError("A JSON object text must begin with '{' followed by a key");
+
+        Object key = readUnquoted(c);
+        return key == null ? "null" : key.toString();
+    } // (method)
+
+    /**
+     * Reads ':', '=' or '=>'.
+     */
+    private void readSeparator() throws IOException {
+        int c = nextClean();
+
+        if (c == '=') {
+            int next = read();
+            if (next != '>')
+                pushBack(next);
+
+        } else if (c != ':') {
+            throw syntaxError("Expected a ':' after a key");
+        }
+    } // (method)
+
+    /**
+     * Reads a quoted string (opening quote already consumed)
+     */
+    private String readString(char quote) throws IOException {
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+
+        for (;;) {
+            int c = read();
+
+            if (c < 0 || c == '\n' || c == '\r')
+                throw syntaxError("Unterminated string");
+
+            if (c == quote)
+                return sb.toString();
+
+            if (c != '\\') {
+                sb.append((char) c);
+                continue;
+            }
+
+            c = read();
+            switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+
+                case 't':
+                    sb.append('\t');
+                    break;
+
+                case 'n':
+                    sb.append('\n');
+                    break;
+
+                case 'f':
+                    sb.append('\f');
+                    break;
+
+                case 'r':
+                    sb.append('\r');
+                    break;
+
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0)
+                            throw syntaxError("Illegal escape.");
+
+                        value = (value << 4) | digit;
+                    }
+                    sb.append((char) value);
+                    break;
+
+                case '"':
+                case '\'':
+                case '\\':
+                case '/':
+                    sb.append((char) c);
+                    break;
+
+                default:
+                    throw syntaxError("Illegal escape.");
+            }
+        } // (for)
+    } // (method)
+
+    /**
+     * Reads an unquoted value (numbers, booleans, null or loose strings) using the 'json.org' rules.
+     */
+    private Object readUnquoted(int c) throws IOException {
+        StringBuilder sb = _sb;
+        sb.setLength(0);
+
+        while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+            sb.append((char) c);
+            c = read();
+        }
+        pushBack(c);
+
+        // (trim trailing white-space)
+        int len = sb.length();
+        while (len > 0 && sb.charAt(len - 1) <= ' ')
+            len--;
+
+        if (len == 0)
+            throw syntaxError("Missing value");
+
+        sb.setLength(len);
+
+        Object value = JSONObject.stringToValue(sb.toString());
+
+        return value == JSONObject.NULL ? null : value;
+    } // (method)
+
+    /**
+     * Reads the next non white-space character.
+     */
+    private int nextClean() throws IOException {
+        for (;;) {
+            int c = read();
+
+            if (c < 0 || c > ' ')
+                return c;
+        }
+    } // (method)
+
+    /**
+     * Reads the next character, checking the size limit.
+     */
+    private int read() throws IOException {
+        int c;
+
+        if (_pushedBack >= 0) {
+            c = _pushedBack;
+            _pushedBack = -1;
+            return c;
+        }
+
+        if (_position == _limit) {
+            int count = _reader.read(_buffer, 0, _buffer.length);
+            if (count <= 0)
+                return -1;
+
+            _position = 0;
+            _limit = count;
+        }
+
+        if (++_count > JSONStreamReader.getSizeLimit())
+            throw new IOException("Message is longer than currently allowed - " + Formatting.formatByteLength(JSONStreamReader.getSizeLimit()));
+
+        return _buffer[_position++];
+    } // (method)
+
+    /**
+     * (single character only)
+     */
+    private void pushBack(int c) {
+        if (c >= 0)
+            _pushedBack = c;
+    }
+
+    /**
+     * (convenience)
+     */
+    private IOException syntaxError(String message) {
+        return new IOException("JSON not formatted correctly - " + message + " at character " + _count + ".");
+    }
+
+    /**
+     * (values of other types are converted like Serialisation does)
+     */
+    private static String asString(Object value) {
+        if (value == null || value instanceof String)
+            return (String) value;
+
+        if (value instanceof Map || value instanceof List)
+            throw new IllegalArgumentException("Could not coerce into a string.");
+
+        return value.toString();
+    }
+
+    /**
+     * (unknown constants are treated as null so newer peers don't break older ones)
+     */
+    private static Object asEnum(Class<?> enumClass, Object value) {
+        if (value == null)
+            return null;
+
+        EnumInfo info = Reflection.getEnumConstantInfo(enumClass, value.toString());
+
+        return info == null ? null : info.constant;
+    }
+
+    /**
+     * (typically a list of strings, anything else is left to Serialisation)
+     */
+    private static String[] asStringArray(Object value) {
+        if (value == null)
+            return null;
+
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            String[] result = new String[list.size()];
+            for (int i = 0; i < result.length; i++)
+                result[i] = asString(list.get(i));
+
+            return result;
+        }
+
+        return (String[]) Serialisation.coerce(String[].class, value);
+    }
+
+} // (class)
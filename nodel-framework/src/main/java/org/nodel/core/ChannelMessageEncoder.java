@@ -0,0 +1,92 @@
+package org.nodel.core;
+
+/* 
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.nodel.core.ChannelMessage.Encoding;
+import org.nodel.io.StringBuilderWriter;
+import org.nodel.reflection.Serialisation;
+import org.nodel.reflection.SerialisationException;
+
+/**
+ * Encodes channel messages for the wire using one of the negotiated encodings.
+ */
+final class ChannelMessageEncoder {
+    
+    /**
+     * (static only)
+     */
+    private ChannelMessageEncoder() {
+    }
+    
+    /**
+     * Appends the encoded message (including the trailing line ending) to the buffer.
+     */
+    static void append(final StringBuilder sb, ChannelMessage message, Encoding encoding) {
+        try {
+            if (encoding == Encoding.Compact) {
+                // already single-line (any line breaks within strings are escaped)
+                Serialisation.serialise(message, 0, false, new StringBuilderWriter(sb));
+
+            } else {
+                Serialisation.serialise(message, 4, false, new StringBuilderWriter(sb) {
+
+                    @Override
+                    public void write(int c) {
+                        if (c == '\n')
+                            // 'TELNET' friendly formatting
+                            sb.append("\r\n");
+                        else
+                            sb.append((char) c);
+                    }
+
+                    @Override
+                    public void write(char[] cbuf, int off, int len) {
+                        for (int a = off; a < off + len; a++)
+                            write(cbuf[a]);
+                    }
+
+                    @Override
+                    public void write(String str) {
+                        write(str, 0, str.length());
+                    }
+
+                    @Override
+                    public void write(String str, int off, int len) {
+                        for (int a = off; a < off + len; a++)
+                            write(str.charAt(a));
+                    }
+
+                    @Override
+                    public Writer append(CharSequence csq) {
+                        write(csq.toString());
+                        return this;
+                    }
+
+                });
+            }
+
+        } catch (IOException exc) {
+            // (never happens with in-memory writers)
+            throw new SerialisationException(exc);
+        }
+
+        sb.append("\r\n");
+    } // (method)
+    
+    /**
+     * (convenience, see 'append')
+     */
+    static String encode(ChannelMessage message, Encoding encoding) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, message, encoding);
+        return sb.toString();
+    } // (method)
+
+} // (class)
@@ -0,0 +1,311 @@
+package org.nodel.core;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nodel.SystemProperties;
+import org.nodel.diagnostics.AtomicIntegerMeasurementProvider;
+import org.nodel.diagnostics.AtomicLongMeasurementProvider;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.threading.Atomic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small, fixed set of selector-based event loops that multiplex all non-blocking Nodel channel connections.
+ *
+ * Enabled using the optional system property 'org.nodel.core.transport = nio', otherwise the original
+ * thread-per-connection transport is used.
+ */
+public class ChannelReactor {
+
+    /**
+     * The system property used to select the transport ('blocking' or 'nio')
+     */
+    public final static String TRANSPORT_SYSTEMPROP = "org.nodel.core.transport";
+
+    /**
+     * The system property used to override the number of event loops.
+     */
+    public final static String LOOPS_SYSTEMPROP = "org.nodel.core.transport.loops";
+
+    /**
+     * The maximum number of event loops by default.
+     */
+    private final static int DEFAULT_MAX_LOOPS = 4;
+
+    /**
+     * (logging)
+     */
+    private static Logger s_logger = LoggerFactory.getLogger(ChannelReactor.class);
+
+    /**
+     * Receives readiness call-backs on an event loop.
+     * (implementations must not block)
+     */
+    public interface Selectable {
+
+        /**
+         * When the channel has been registered with its event loop.
+         */
+        public void onRegistered(SelectionKey key);
+
+        /**
+         * When the channel is ready for one or more of its interest operations.
+         */
+        public void onSelected(SelectionKey key);
+
+        /**
+         * When the channel could not be registered or the event loop failed it.
+         */
+        public void onFailure(Exception exc);
+
+    } // (interface)
+
+    /**
+     * Whether the NIO transport is in use.
+     */
+    public static boolean isEnabled() {
+        return "nio".equalsIgnoreCase(System.getProperty(TRANSPORT_SYSTEMPROP));
+    }
+
+    /**
+     * The event loops.
+     */
+    private EventLoop[] _loops;
+
+    /**
+     * For distributing registrations.
+     */
+    private AtomicInteger _next = new AtomicInteger();
+
+    /**
+     * Connections currently registered (diagnostics)
+     */
+    private AtomicInteger _registered = new AtomicInteger();
+
+    /**
+     * Number of selection operations (diagnostics)
+     */
+    private AtomicLong _selections = new AtomicLong();
+
+    /**
+     * (use 'shared()')
+     */
+    private ChannelReactor(int loops) {
+        _loops = new EventLoop[loops];
+
+        for (int i = 0; i < loops; i++)
+            _loops[i] = new EventLoop(i);
+
+        Diagnostics.shared().registerCounter("Nodel channel reactor.Connections", new AtomicIntegerMeasurementProvider(_registered), false);
+        Diagnostics.shared().registerCounter("Nodel channel reactor.Selections", new AtomicLongMeasurementProvider(_selections), true);
+
+        s_logger.info("Started {} channel event loop(s)", loops);
+    }
+
+    /**
+     * Registers a channel (which will be made non-blocking) with one of the event loops.
+     * (non-blocking, registration completes asynchronously)
+     */
+    public void register(final SelectableChannel channel, final int ops, final Selectable handler) {
+        final EventLoop loop = _loops[Atomic.atomicIncrementAndWrap(_next, _loops.length)];
+
+        loop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    channel.configureBlocking(false);
+                    SelectionKey key = channel.register(loop._selector, ops, handler);
+
+                    _registered.incrementAndGet();
+
+                    handler.onRegistered(key);
+
+                } catch (Exception exc) {
+                    handler.onFailure(exc);
+                }
+            }
+
+        });
+    }
+
+    /**
+     * Changes the interest set of a key from any thread.
+     */
+    public static void setInterest(final SelectionKey key, final int ops) {
+        EventLoop loop = s_selectorLoops.get(key.selector());
+
+        if (s_currentLoop.get() == loop) {
+            if (key.isValid())
+                key.interestOps(ops);
+        } else {
+            loop.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (key.isValid())
+                        key.interestOps(ops);
+                }
+
+            });
+        }
+    }
+
+    /**
+     * Whether the current thread is an event loop (which must never block).
+     */
+    public static boolean isEventLoopThread() {
+        return s_currentLoop.get() != null;
+    }
+
+    /**
+     * Cancels a key and closes its channel (exception free)
+     */
+    public void close(SelectionKey key, SelectableChannel channel) {
+        if (key != null && key.isValid()) {
+            key.cancel();
+            _registered.decrementAndGet();
+        }
+
+        try {
+            channel.close();
+        } catch (Exception exc) {
+            // (ignore)
+        }
+    }
+
+    /**
+     * The event loop the current thread is running, if any.
+     */
+    private static ThreadLocal<EventLoop> s_currentLoop = new ThreadLocal<EventLoop>();
+
+    /**
+     * Event loops by selector.
+     */
+    private static Map<Selector, EventLoop> s_selectorLoops = new ConcurrentHashMap<Selector, EventLoop>();
+
+    /**
+     * A selector and its thread.
+     */
+    private class EventLoop implements Runnable {
+
+        private Selector _selector;
+
+        private Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        private Thread _thread;
+
+        public EventLoop(int index) {
+            try {
+                _selector = Selector.open();
+            } catch (IOException exc) {
+                throw new RuntimeException("Could not open a selector", exc);
+            }
+
+            s_selectorLoops.put(_selector, this);
+
+            // always a platform thread
+            _thread = new Thread(this, "nodel_channel_loop_" + index);
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        public void execute(Runnable task) {
+            _tasks.add(task);
+            _selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            s_currentLoop.set(this);
+
+            for (;;) {
+                try {
+                    _selector.select();
+
+                    // run any hand-offs (registrations, interest changes)
+                    for (;;) {
+                        Runnable task = _tasks.poll();
+                        if (task == null)
+                            break;
+
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        _selections.incrementAndGet();
+
+                        Selectable handler = (Selectable) key.attachment();
+
+                        if (!key.isValid())
+                            continue;
+
+                        try {
+                            handler.onSelected(key);
+
+                        } catch (Exception exc) {
+                            handler.onFailure(exc);
+                        }
+                    }
+
+                } catch (ClosedChannelException exc) {
+                    // (natural)
+
+                } catch (Exception exc) {
+                    s_logger.warn("An unhandled exception occurred within a channel event loop.", exc);
+                }
+            }
+        }
+
+    } // (class)
+
+    /**
+     * (singleton, thread-safe, lazy init)
+     */
+    private static class Instance {
+
+        private static final ChannelReactor SHARED = new ChannelReactor(loopCount());
+
+    } // (class)
+
+    /**
+     * One loop per CPU, capped, overridable by system property.
+     */
+    private static int loopCount() {
+        int loops = SystemProperties.intProperty(LOOPS_SYSTEMPROP, 0);
+        if (loops > 0)
+            return loops;
+
+        return Math.min(DEFAULT_MAX_LOOPS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the shared instance.
+     */
+    public static ChannelReactor shared() {
+        return Instance.SHARED;
+    }
+
+} // (class)
@@ -52,6 +52,11 @@ public abstract class ChannelServer {
      * Can only be enabled once. (not thread safe)
      */
     protected boolean _enabled = false;
+    
+    /**
+     * The wire encoding in use, 'Telnet' unless the client requests otherwise.
+     */
+    protected volatile ChannelMessage.Encoding _encoding = ChannelMessage.Encoding.Telnet;
 
     /**
      * Delegate to call when a crippling failure occurs.
@@ -66,12 +71,12 @@ public abstract class ChannelServer {
     /**
      * Holds the events filter list.
      */
-    private Map<SimpleName, List<String>> _eventFiltersByNode = new HashMap<SimpleName, List<String>>();
+    private Map<SimpleName, InterestFilters> _eventFiltersByNode = new HashMap<SimpleName, InterestFilters>();
 
     /**
      * Holds the action filter list.
      */
-    private Map<SimpleName, List<String>> _actionFiltersByNode = new HashMap<SimpleName, List<String>>();
+    private Map<SimpleName, InterestFilters> _actionFiltersByNode = new HashMap<SimpleName, InterestFilters>();
 
     public ChannelServer(NodelServers nodelServer) {
         _nodelServer = nodelServer;
@@ -98,31 +103,22 @@ public abstract class ChannelServer {
     protected abstract void sendMessage(ChannelMessage message);
 
     /**
-     * Sends an event message down the channel, applying any 'interest'
-     * filtering. (exception free, non-blocking)
+     * Whether any of the event filters for the node match.
+     * (used by NodelServers which caches the result)
      */
-    protected void sendEventMessage(String nodeName, String originalEvent, Object arg) {
-        SimpleName node = new SimpleName(nodeName);
-        String reducedEvent = Nodel.reduceToLower(originalEvent);
-
+    protected boolean isInterestedInEvent(SimpleName node, String reducedEvent) {
         synchronized (_signal) {
-            List<String> eventFilters = _eventFiltersByNode.get(node);
-            if (eventFilters == null)
-                return;
+            InterestFilters eventFilters = _eventFiltersByNode.get(node);
             
-            // find the first matching event filter and use it
-            boolean found = false;
-            for (String eventFilter : eventFilters) {
-                if (Nodel.filterMatch(reducedEvent, eventFilter)) {
-                    found = true;
-                    break;
-                }
-            } // (for)
-
-            if (!found)
-                return;
+            return eventFilters != null && eventFilters.matches(reducedEvent);
         }
+    } // (method)
 
+    /**
+     * Sends an event message down the channel, 'interest' filtering having already 
+     * been applied (see 'isInterestedInEvent'). (exception free, non-blocking)
+     */
+    protected void sendEventMessage(String nodeName, String originalEvent, Object arg) {
         ChannelMessage message = new ChannelMessage();
         message.node = nodeName;
         message.event = originalEvent;
@@ -177,6 +173,17 @@ public abstract class ChannelServer {
      */
     protected void handleMessage(final ChannelMessage message) {
         _logger.info("Server: message arrived: " + message);
+        
+        // 'encoding' request
+        if (message.encoding != null && message.node == null) {
+            _encoding = message.encoding;
+            
+            // acknowledge (already using the new encoding)
+            ChannelMessage response = new ChannelMessage();
+            response.encoding = message.encoding;
+            sendMessage(response);
+            return;
+        }
 
         // 'interests' request
         if (message.node != null && (message.events != null || message.actions != null)) {
@@ -185,11 +192,13 @@ public abstract class ChannelServer {
             // register interest in the node
             _nodelServer.registerInterest(this, message.node);
 
+            boolean eventsChanged = false;
+
             synchronized (_signal) {
                 // go through events
                 if (message.events != null) {
                     for (String event : message.events)
-                        doAddEventFilter(node, event);
+                        eventsChanged |= doAddEventFilter(node, event);
                 }
 
                 // go through actions
@@ -199,6 +208,10 @@ public abstract class ChannelServer {
                 }
             }
 
+            // (outside of own lock)
+            if (eventsChanged)
+                _nodelServer.invalidateInterest(node);
+
             // determine all interests that have been matched
             SimpleName[] allEvents = _nodelServer.getRegisteredEvents(node);
             SimpleName[] allActions = _nodelServer.getRegisteredActions(node);
@@ -211,15 +224,15 @@ public abstract class ChannelServer {
             synchronized (_signal) {
                 matchedEvents = new ArrayList<SimpleName>();
                 for (SimpleName event : allEvents) {
-                    List<String> eventFilters = _eventFiltersByNode.get(node);
-                    if (eventFilters != null && containsMatchingFilter(node, event.getReducedForMatchingName(), eventFilters))
+                    InterestFilters eventFilters = _eventFiltersByNode.get(node);
+                    if (eventFilters != null && eventFilters.matches(event.getReducedForMatchingName()))
                         matchedEvents.add(event);
                 }
 
                 matchedActions = new ArrayList<SimpleName>();
                 for (SimpleName action : allActions) {
-                    List<String> actionFilters = _actionFiltersByNode.get(node);
-                    if (actionFilters != null && containsMatchingFilter(node, action.getReducedForMatchingName(), actionFilters))
+                    InterestFilters actionFilters = _actionFiltersByNode.get(node);
+                    if (actionFilters != null && actionFilters.matches(action.getReducedForMatchingName()))
                         matchedActions.add(action);
                 }
             }
@@ -260,47 +273,30 @@ public abstract class ChannelServer {
 
     /**
      * (assumes locked)
+     * 
+     * @return true if the filter was new.
      */
-    private void doAddEventFilter(SimpleName node, String eventFilter) {
-        String reducedEvent = Nodel.reduceFilter(eventFilter);
-
-        List<String> eventsList = _eventFiltersByNode.get(node);
-        if (eventsList == null) {
-            eventsList = new ArrayList<String>();
-            _eventFiltersByNode.put(node, eventsList);
+    private boolean doAddEventFilter(SimpleName node, String eventFilter) {
+        InterestFilters filters = _eventFiltersByNode.get(node);
+        if (filters == null) {
+            filters = new InterestFilters();
+            _eventFiltersByNode.put(node, filters);
         }
 
-        if (!eventsList.contains(reducedEvent))
-            eventsList.add(reducedEvent);
+        return filters.add(eventFilter);
     } // (method)
 
     /**
      * (assumes locked)
      */
     private void doAddActionFilter(SimpleName node, String actionFilter) {
-        String reducedAction = Nodel.reduceFilter(actionFilter);
-
-        List<String> actionsList = _actionFiltersByNode.get(node);
-        if (actionsList == null) {
-            actionsList = new ArrayList<String>();
-            _actionFiltersByNode.put(node, actionsList);
+        InterestFilters filters = _actionFiltersByNode.get(node);
+        if (filters == null) {
+            filters = new InterestFilters();
+            _actionFiltersByNode.put(node, filters);
         }
 
-        if (!actionsList.contains(reducedAction))
-            actionsList.add(reducedAction);
-    } // (method)
-
-    /**
-     * (args prechecked)
-     */
-    private boolean containsMatchingFilter(SimpleName node, String value, List<String> filters) {
-        // find the first matching event filter
-        for (String eventFilter : filters) {
-            if (Nodel.filterMatch(value, eventFilter))
-                return true;
-        } // (for)
-
-        return false;
+        filters.add(actionFilter);
     } // (method)
 
     /**
@@ -7,18 +7,25 @@ package org.nodel.core;
  */
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.nodel.Handler;
 import org.nodel.Threads;
+import org.nodel.threading.NodelThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Manages the server-side part of a TCP-based nodel channel.
  * 
+ * When the NIO transport is enabled (see ChannelReactor), accepting is done by the reactor and handed-off 
+ * sockets have an associated (non-blocking capable) channel.
  */
 public class ChannelServerSocket {
     
@@ -110,6 +117,12 @@ public class ChannelServerSocket {
      * (thread unsafe)
      */
     private ServerSocket _serverSocket;
+    
+    /**
+     * The server socket channel (NIO transport only) 
+     * (thread unsafe)
+     */
+    private ServerSocketChannel _serverSocketChannel;
 
     /**
      * The thread object. 
@@ -127,7 +140,7 @@ public class ChannelServerSocket {
         _requestedPort = port;
 
         // initialise the thread
-        _thread = new Thread(new Runnable() {
+        _thread = NodelThreadFactory.shared().newThread(new Runnable() {
         	
             @Override
             public void run() {
@@ -136,7 +149,6 @@ public class ChannelServerSocket {
             
         });
         _thread.setName(String.format("%s_%03d", this.getClass().getName(), _instance));
-        _thread.setDaemon(true);
     } // (constructor)
 
     /**
@@ -164,6 +176,14 @@ public class ChannelServerSocket {
 
     	// fire the call-back
     	Handler.handle(_startedHandler, _port);
+    	
+        if (_serverSocketChannel != null) {
+            // the reactor takes over, no need for this thread
+            registerAcceptor();
+            
+            _logger.info("Thread run to completion (reactor accepting).");
+            return;
+        }
         
         // enter the main loop
         while (_enabled) {
@@ -191,7 +211,14 @@ public class ChannelServerSocket {
 		while (_enabled) {
 			try {
 				// initialise the socket
-				_serverSocket = new ServerSocket(_requestedPort);
+				if (ChannelReactor.isEnabled()) {
+				    _serverSocketChannel = ServerSocketChannel.open();
+				    _serverSocketChannel.bind(new InetSocketAddress(_requestedPort));
+				    _serverSocket = _serverSocketChannel.socket();
+				    
+				} else {
+				    _serverSocket = new ServerSocket(_requestedPort);
+				}
 
 				_port = _serverSocket.getLocalPort();
 
@@ -220,6 +247,48 @@ public class ChannelServerSocket {
         }
     } // (method)
 
+    /**
+     * Registers the server socket channel with the reactor for accepting.
+     */
+    private void registerAcceptor() {
+        ChannelReactor.shared().register(_serverSocketChannel, SelectionKey.OP_ACCEPT, new ChannelReactor.Selectable() {
+
+            @Override
+            public void onRegistered(SelectionKey key) {
+            }
+
+            @Override
+            public void onSelected(SelectionKey key) {
+                for (;;) {
+                    SocketChannel socketChannel;
+
+                    try {
+                        socketChannel = _serverSocketChannel.accept();
+                    } catch (IOException exc) {
+                        if (_enabled)
+                            _logger.warn("Unexpected exception occurred while accepting.", exc);
+                        return;
+                    }
+
+                    if (socketChannel == null)
+                        return;
+
+                    synchronized (_signal) {
+                        if (_channelServerHandler != null)
+                            _channelServerHandler.handle(socketChannel.socket());
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Exception exc) {
+                if (_enabled)
+                    _logger.warn("Server socket channel failed.", exc);
+            }
+
+        });
+    } // (method)
+
     /**
      * Permanently shuts down this channel freeing up all resources.
      * (may briefly block)
@@ -0,0 +1,122 @@
+package org.nodel.core;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds a channel's event or action filters for a single node, reduced and split into their wildcard
+ * "cards" once when added so matching (same rules as 'Nodel.filterMatch') doesn't allocate.
+ *
+ * (not thread-safe)
+ */
+class InterestFilters {
+
+    /**
+     * All the reduced filters (for duplicate checking)
+     */
+    private Set<String> _filters = new HashSet<String>();
+
+    /**
+     * Filters without wildcards, for straight hash lookups.
+     */
+    private Set<String> _literals = new HashSet<String>();
+
+    /**
+     * All filters as their cards, e.g. 'tv*power' is {"tv", "power"}.
+     */
+    private List<String[]> _cards = new ArrayList<String[]>();
+
+    /**
+     * Set when a filter matches anything, e.g. '*'
+     */
+    private boolean _matchesAll = false;
+
+    /**
+     * Adds a filter.
+     *
+     * @return false if the filter was already present.
+     */
+    public boolean add(String filter) {
+        String reduced = Nodel.reduceFilter(filter);
+
+        if (!_filters.add(reduced))
+            return false;
+
+        if (reduced.indexOf('*') < 0)
+            _literals.add(reduced);
+
+        String[] cards = split(reduced);
+        if (cards.length == 0)
+            _matchesAll = true;
+
+        _cards.add(cards);
+
+        return true;
+    } // (method)
+
+    /**
+     * Tests against a reduced (for matching) name.
+     */
+    public boolean matches(String reducedName) {
+        if (_matchesAll || _literals.contains(reducedName))
+            return true;
+
+        // (literals are 'contains' matches too so are tested here as well)
+        for (String[] cards : _cards) {
+            if (matches(reducedName, cards))
+                return true;
+        } // (for)
+
+        return false;
+    } // (method)
+
+    /**
+     * The cards must appear in order.
+     */
+    private static boolean matches(String text, String[] cards) {
+        int from = 0;
+
+        for (String card : cards) {
+            int i = text.indexOf(card, from);
+
+            // card not detected in the text.
+            if (i == -1)
+                return false;
+
+            // move ahead, towards the right of the text.
+            from = i + card.length();
+        } // (for)
+
+        return true;
+    } // (method)
+
+    /**
+     * Splits a reduced filter by its wildcards, dropping empty cards.
+     */
+    private static String[] split(String filter) {
+        List<String> cards = new ArrayList<String>();
+
+        int start = 0;
+        int len = filter.length();
+
+        for (int a = 0; a <= len; a++) {
+            if (a == len || filter.charAt(a) == '*') {
+                if (a > start)
+                    cards.add(filter.substring(start, a));
+
+                start = a + 1;
+            }
+        } // (for)
+
+        return cards.toArray(new String[cards.size()]);
+    } // (method)
+
+} // (class)
@@ -0,0 +1,237 @@
+package org.nodel.core;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+import org.nodel.DateTimes;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.LongSharableMeasurementProvider;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.threading.TimerTask;
+
+/**
+ * Manages a channel client using the non-blocking ChannelReactor instead of a dedicated reader thread.
+ */
+public class NIOChannelClient extends ChannelClient {
+
+    /**
+     * (diagnostics)
+     */
+    private static SharableMeasurementProvider s_dataInCounter = new LongSharableMeasurementProvider();
+
+    /**
+     * (diagnostics)
+     */
+    private static SharableMeasurementProvider s_dataOutCounter = new LongSharableMeasurementProvider();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Diagnostics.shared().registerCounter("Nodel NIO client channels.Receive rate", s_dataInCounter, true);
+        Diagnostics.shared().registerCounter("Nodel NIO client channels.Send rate", s_dataOutCounter, true);
+
+        // note: 'op' counts are selectively excluded for brevity
+    }
+
+    /**
+     * Started or not.
+     */
+    private boolean _started = false;
+
+    /**
+     * (locked around 'signal')
+     */
+    private volatile NIOChannelConnection _connection;
+
+    /**
+     * For periodical keep-alives to prevent graceful stale socket detection.
+     * (locked around 'signal')
+     */
+    private TimerTask _keepAliveTask;
+
+    /**
+     * Creates a new channel client which is responsible for connection.
+     * (does not block)
+     */
+    public NIOChannelClient(NodeAddress address) {
+        super(address);
+    } // (constructor)
+
+    /**
+     * Starts the channel client. Should only be called after all event handlers are attached.
+     */
+    @Override
+    protected void start() {
+        synchronized (this._signal) {
+            if (_started)
+                throw new IllegalStateException("Already started.");
+
+            _started = true;
+        }
+
+        // the connect itself is short-lived so is done on the pool
+        s_threadPool.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                connect();
+            }
+
+        });
+    } // (method)
+
+    /**
+     * (thread-pool entry-point)
+     */
+    private void connect() {
+        SocketChannel socketChannel = null;
+        try {
+            long start = System.nanoTime();
+            socketChannel = SocketChannel.open(new InetSocketAddress(this._address.getHost(), this._address.getPort()));
+
+            _logger.info("Connected to {} (took {})", this._address, DateTimes.formatPeriod(start));
+
+            processChannel(socketChannel);
+
+        } catch (Exception exc) {
+            if (socketChannel != null) {
+                try {
+                    socketChannel.close();
+                } catch (Exception ignore) {
+                    // (ignore)
+                }
+            }
+
+            onFault(exc);
+        }
+    } // (method)
+
+    /**
+     * Wires up the connection with the reactor.
+     */
+    private void processChannel(SocketChannel socketChannel) {
+        NIOChannelConnection connection = new NIOChannelConnection(SharableMeasurementProvider.Null.INSTANCE, s_dataInCounter, SharableMeasurementProvider.Null.INSTANCE, s_dataOutCounter) {
+
+            @Override
+            protected void handleMessage(ChannelMessage message) {
+                NIOChannelClient.this.handleMessage(message);
+            }
+
+            @Override
+            protected void handleFailure(Exception exc) {
+                onFault(exc);
+            }
+
+        };
+
+        synchronized (this._signal) {
+            if (!_enabled) {
+                connection.close();
+                return;
+            }
+
+            _connection = connection;
+
+            // schedule a keep-alive every 3 minutes
+            _keepAliveTask = s_timerThread.schedule(new TimerTask() {
+
+                @Override
+                public void run() {
+                    NIOChannelConnection connection = _connection;
+                    if (connection != null)
+                        connection.sendKeepAlive();
+                }
+
+            }, 180000, 180000);
+
+            // messages can be queued before registration completes
+            connection.register(socketChannel);
+
+            // ask for the preferred wire encoding ahead of anything else
+            requestEncoding();
+            
+            // good time to update the event interests table.
+            syncActionAndEventHandlerTable();
+        }
+
+        // fire connected event
+        onConnected();
+    } // (method)
+
+    /**
+     * Connect failure or reactor failure.
+     */
+    private void onFault(Exception exc) {
+        synchronized (this._signal) {
+            _logger.trace("channel exception");
+
+            if (_enabled) {
+                _enabled = false;
+
+                safeCleanup();
+            }
+        }
+
+        // the fault event is only handled here once
+        onConnectionFault(exc);
+    } // (method)
+
+    /**
+     * Instantaneous check whether the channel is connected or not.
+     */
+    @Override
+    public boolean isConnected() {
+        synchronized (this._signal) {
+            return _connection != null;
+        }
+    } // (method)
+
+    /**
+     * Asynchronously sends the message down the channel.
+     * (non-blocking)
+     */
+    @Override
+    public void sendMessage(ChannelMessage message) {
+        NIOChannelConnection connection = _connection;
+        if (connection == null) {
+            _logger.info("A message was dropped because the channel connect was not complete yet; safely ignoring. message='{}'", message);
+            return;
+        }
+
+        connection.send(message, _encoding);
+    } // (method)
+
+    /**
+     * Cleans up.
+     * (assumed locked, exception free)
+     */
+    private void safeCleanup() {
+        if (_keepAliveTask != null)
+            _keepAliveTask.cancel();
+
+        if (_connection != null)
+            _connection.close();
+
+        _connection = null;
+    } // (method)
+
+    /**
+     * Permanently closes this channel.
+     */
+    @Override
+    public void close() {
+        synchronized (this._signal) {
+            _enabled = false;
+
+            safeCleanup();
+        }
+    }
+
+} // (class)
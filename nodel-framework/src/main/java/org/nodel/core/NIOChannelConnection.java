@@ -0,0 +1,504 @@
+package org.nodel.core;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nodel.Formatting;
+import org.nodel.Threads;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.io.UTF8Charset;
+import org.nodel.threading.RejectionPolicy;
+import org.nodel.threading.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One non-blocking Nodel channel connection serviced by the ChannelReactor. Frames JSON messages straight out of
+ * the receive buffer (the same loose framing as JSONStreamReader) and writes queued messages using gathering writes.
+ * 
+ * Messages are handled in order on a thread-pool, never the event loop. The outbound queue has the same high-water
+ * mark and overflow policy as TCPChannelClient.
+ */
+abstract class NIOChannelConnection implements ChannelReactor.Selectable {
+
+    /**
+     * The receive buffer size.
+     */
+    private final static int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The most buffers to gather in one write.
+     */
+    private final static int MAX_GATHER = 64;
+
+    /**
+     * 'TELNET' friendly line ending.
+     */
+    private final static byte[] CRLF = new byte[] { '\r', '\n' };
+
+    /**
+     * (logging)
+     */
+    private final static Logger s_logger = LoggerFactory.getLogger(NIOChannelConnection.class);
+
+    /**
+     * Handles the received messages (in order per connection).
+     */
+    private final static ThreadPool s_dispatchThreadPool = new ThreadPool("Nodel channel dispatch", 128);
+
+    /**
+     * The channel.
+     */
+    protected SocketChannel _channel;
+
+    /**
+     * The selection key (set once registered)
+     */
+    protected volatile SelectionKey _key;
+
+    /**
+     * (only touched by the event loop)
+     */
+    private ByteBuffer _readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    /**
+     * Holds the message currently being framed.
+     * (only touched by the event loop)
+     */
+    private byte[] _message = new byte[256];
+
+    /**
+     * (see '_message')
+     */
+    private int _messageLength;
+
+    /**
+     * Framing state.
+     * (only touched by the event loop)
+     */
+    private boolean _gotOpening, _inQuotes, _escaping;
+
+    /**
+     * Framing state, the nest level.
+     */
+    private int _level;
+
+    /**
+     * Messages waiting to be written (any thread)
+     */
+    private Queue<ByteBuffer> _outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * The number of messages in the outbound queue.
+     */
+    private AtomicInteger _outboundDepth = new AtomicInteger();
+
+    /**
+     * For senders waiting for the queue to drop below the high-water mark ('Block' policy only).
+     */
+    private Object _outboundSignal = new Object();
+
+    /**
+     * The number of messages dropped because of the high-water mark (logged once).
+     */
+    private AtomicLong _dropped = new AtomicLong();
+
+    /**
+     * Messages waiting to be handled.
+     */
+    private Queue<ChannelMessage> _inbound = new ConcurrentLinkedQueue<ChannelMessage>();
+
+    /**
+     * Whether a dispatcher is handling (or has been scheduled to handle) the inbound queue.
+     */
+    private AtomicBoolean _dispatching = new AtomicBoolean();
+
+    /**
+     * (handles the inbound queue)
+     */
+    private Runnable _dispatcher = new Runnable() {
+
+        @Override
+        public void run() {
+            dispatchInbound();
+        }
+
+    };
+
+    /**
+     * Buffers partially written (only touched by the event loop)
+     */
+    private ArrayDeque<ByteBuffer> _writing = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Whether write interest has been requested.
+     */
+    private AtomicBoolean _writeScheduled = new AtomicBoolean();
+
+    /**
+     * Whether this connection has been closed or failed.
+     */
+    private AtomicBoolean _closed = new AtomicBoolean();
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _dataInOps, _dataIn, _dataOutOps, _dataOut;
+
+    protected NIOChannelConnection(SharableMeasurementProvider dataInOps, SharableMeasurementProvider dataIn,
+                                   SharableMeasurementProvider dataOutOps, SharableMeasurementProvider dataOut) {
+        _dataInOps = dataInOps;
+        _dataIn = dataIn;
+        _dataOutOps = dataOutOps;
+        _dataOut = dataOut;
+    }
+
+    /**
+     * A complete message has arrived.
+     * (on a thread-pool, one message at a time, in order)
+     */
+    protected abstract void handleMessage(ChannelMessage message);
+
+    /**
+     * The connection has failed or was closed by the peer; called once only.
+     */
+    protected abstract void handleFailure(Exception exc);
+
+    /**
+     * Registers with the reactor for reading.
+     */
+    protected void register(SocketChannel channel) {
+        _channel = channel;
+
+        ChannelReactor.shared().register(channel, SelectionKey.OP_READ, this);
+    }
+
+    @Override
+    public void onRegistered(SelectionKey key) {
+        _key = key;
+
+        // anything queued before registration completed
+        if (!_outbound.isEmpty() && _writeScheduled.compareAndSet(false, true))
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    @Override
+    public void onSelected(SelectionKey key) {
+        try {
+            if (key.isReadable())
+                read();
+
+            if (key.isValid() && key.isWritable())
+                flush();
+
+        } catch (Exception exc) {
+            onFailure(exc);
+        }
+    }
+
+    @Override
+    public void onFailure(Exception exc) {
+        if (!_closed.compareAndSet(false, true))
+            return;
+
+        ChannelReactor.shared().close(_key, _channel);
+
+        releaseSenders();
+
+        handleFailure(exc);
+    }
+
+    /**
+     * Permanently closes this connection without raising a failure.
+     */
+    public void close() {
+        if (!_closed.compareAndSet(false, true))
+            return;
+
+        ChannelReactor.shared().close(_key, _channel);
+
+        releaseSenders();
+    }
+
+    /**
+     * Reads everything available.
+     */
+    private void read() throws IOException {
+        for (;;) {
+            _readBuffer.clear();
+
+            int count = _channel.read(_readBuffer);
+
+            if (count < 0)
+                throw new EOFException("Unexpectedly reached the end of the stream.");
+
+            if (count == 0)
+                return;
+
+            _dataInOps.incr();
+            _dataIn.add(count);
+
+            _readBuffer.flip();
+            frame(_readBuffer);
+        }
+    }
+
+    /**
+     * Scans for complete messages. Structural characters are all ASCII so scanning the raw UTF-8 is safe.
+     */
+    private void frame(ByteBuffer buffer) throws IOException {
+        byte[] array = buffer.array();
+        int limit = buffer.limit();
+
+        for (int i = buffer.position(); i < limit; i++) {
+            byte b = array[i];
+
+            if (!_gotOpening) {
+                // yet to get '{'
+                if (b == '{') {
+                    _gotOpening = true;
+                    _level = 1;
+                    append(b);
+
+                } else if (!Character.isWhitespace((char) b)) {
+                    // otherwise unexpected character means corrupt stream
+                    throw new IOException("Unexpected character before opening brace, '{'.");
+                }
+
+                continue;
+            }
+
+            append(b);
+
+            if (_escaping) {
+                _escaping = false;
+
+            } else if (b == '\\') {
+                _escaping = true;
+
+            } else if (b == '"') {
+                _inQuotes = !_inQuotes;
+
+            } else if (_inQuotes) {
+                // (ignore braces within quotes)
+
+            } else if (b == '{') {
+                _level++;
+
+            } else if (b == '}') {
+                _level--;
+
+                if (_level == 0)
+                    completeMessage();
+            }
+        }
+    }
+
+    /**
+     * (checks for size limits)
+     */
+    private void append(byte b) throws IOException {
+        if (_messageLength == _message.length) {
+            int sizeLimit = JSONStreamReader.getSizeLimit();
+            if (_messageLength > sizeLimit)
+                throw new IOException("Message is longer than currently allowed - " + Formatting.formatByteLength(sizeLimit));
+
+            byte[] grown = new byte[_message.length * 2];
+            System.arraycopy(_message, 0, grown, 0, _messageLength);
+            _message = grown;
+        }
+
+        _message[_messageLength++] = b;
+    }
+
+    /**
+     * Decodes and delivers the framed message and resets the framing state.
+     */
+    private void completeMessage() throws IOException {
+        String json = new String(_message, 0, _messageLength, UTF8Charset.instance());
+
+        _messageLength = 0;
+        _gotOpening = false;
+        _inQuotes = false;
+        _escaping = false;
+
+        // keep an unusually large buffer from hanging around
+        if (_message.length > READ_BUFFER_SIZE * 4)
+            _message = new byte[256];
+
+        ChannelMessage message = ChannelMessageDecoder.decode(json);
+
+        // (handlers may take locks so never on the event loop)
+        _inbound.add(message);
+
+        if (_dispatching.compareAndSet(false, true))
+            s_dispatchThreadPool.execute(_dispatcher);
+    }
+
+    /**
+     * Handles everything received, in order.
+     * (only one dispatcher at a time)
+     */
+    private void dispatchInbound() {
+        for (;;) {
+            ChannelMessage message;
+            while ((message = _inbound.poll()) != null) {
+                if (_closed.get()) {
+                    _inbound.clear();
+                    break;
+                }
+
+                try {
+                    handleMessage(message);
+
+                } catch (Exception exc) {
+                    onFailure(exc);
+                }
+            }
+
+            _dispatching.set(false);
+
+            // (something may have slipped in since)
+            if (_inbound.isEmpty() || !_dispatching.compareAndSet(false, true))
+                return;
+        } // (for)
+    }
+
+    /**
+     * Encodes a message using the given wire encoding.
+     */
+    static ByteBuffer encode(ChannelMessage message, ChannelMessage.Encoding encoding) {
+        return ByteBuffer.wrap(ChannelMessageEncoder.encode(message, encoding).getBytes(UTF8Charset.instance()));
+    }
+
+    /**
+     * Queues a message for writing.
+     * (any thread, non-blocking)
+     */
+    public void send(ChannelMessage message, ChannelMessage.Encoding encoding) {
+        send(encode(message, encoding));
+    }
+
+    /**
+     * Queues a keep-alive (blank line) for writing.
+     */
+    public void sendKeepAlive() {
+        send(ByteBuffer.wrap(CRLF));
+    }
+
+    /**
+     * Queues raw data for writing.
+     * (any thread, non-blocking)
+     */
+    protected void send(ByteBuffer buffer) {
+        if (_closed.get())
+            return;
+
+        if (_outboundDepth.get() >= TCPChannelClient.s_highWaterMark) {
+            if (TCPChannelClient.s_overflowPolicy == RejectionPolicy.DropOldest || ChannelReactor.isEventLoopThread()) {
+                if (_outbound.poll() != null) {
+                    _outboundDepth.decrementAndGet();
+
+                    if (_dropped.getAndIncrement() == 0)
+                        s_logger.info("Outbound queue reached its high-water mark of {}; oldest messages are being dropped.", TCPChannelClient.s_highWaterMark);
+                }
+
+            } else {
+                // apply back-pressure (never on the event loop, which is what drains the queue)
+                synchronized (_outboundSignal) {
+                    while (_outboundDepth.get() >= TCPChannelClient.s_highWaterMark && !_closed.get())
+                        Threads.waitOnSync(_outboundSignal, 1000);
+                }
+            }
+        }
+
+        _outbound.add(buffer);
+        _outboundDepth.incrementAndGet();
+
+        SelectionKey key = _key;
+        if (key != null && _writeScheduled.compareAndSet(false, true))
+            ChannelReactor.setInterest(key, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Writes as much as possible using gathering writes.
+     * (event loop)
+     */
+    private void flush() throws IOException {
+        for (;;) {
+            // top up the gather list
+            while (_writing.size() < MAX_GATHER) {
+                ByteBuffer buffer = _outbound.poll();
+                if (buffer == null)
+                    break;
+
+                _outboundDepth.decrementAndGet();
+                _writing.add(buffer);
+            }
+
+            releaseSenders();
+
+            if (_writing.isEmpty())
+                break;
+
+            ByteBuffer[] buffers = _writing.toArray(new ByteBuffer[_writing.size()]);
+            long written = _channel.write(buffers);
+
+            if (written > 0) {
+                _dataOutOps.incr();
+                _dataOut.add(written);
+            }
+
+            // discard fully written buffers
+            while (!_writing.isEmpty() && !_writing.peekFirst().hasRemaining())
+                _writing.removeFirst();
+
+            if (!_writing.isEmpty())
+                // socket buffer is full, wait for next writable
+                return;
+        }
+
+        // all written so drop write interest...
+        _key.interestOps(SelectionKey.OP_READ);
+        _writeScheduled.set(false);
+
+        // ...unless something slipped in
+        if (!_outbound.isEmpty() && _writeScheduled.compareAndSet(false, true))
+            _key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Releases any senders blocked by the high-water mark.
+     */
+    private void releaseSenders() {
+        if (TCPChannelClient.s_overflowPolicy == RejectionPolicy.DropOldest)
+            return;
+
+        synchronized (_outboundSignal) {
+            _outboundSignal.notifyAll();
+        }
+    }
+
+    /**
+     * Whether this connection has been closed or failed.
+     */
+    public boolean isClosed() {
+        return _closed.get();
+    }
+
+} // (class)
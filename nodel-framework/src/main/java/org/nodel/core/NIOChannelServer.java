@@ -0,0 +1,150 @@
+package org.nodel.core;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.nio.channels.SocketChannel;
+
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.LongSharableMeasurementProvider;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+
+/**
+ * Manages one incoming TCP connection using the non-blocking ChannelReactor instead of dedicated threads.
+ */
+public class NIOChannelServer extends ChannelServer {
+
+    /**
+     * (diagnostics)
+     */
+    private static SharableMeasurementProvider s_dataInCounter = new LongSharableMeasurementProvider();
+
+    /**
+     * (diagnostics)
+     */
+    private static SharableMeasurementProvider s_dataInOpsCounter = new LongSharableMeasurementProvider();
+
+    /**
+     * (diagnostics)
+     */
+    private static SharableMeasurementProvider s_dataOutCounter = new LongSharableMeasurementProvider();
+
+    /**
+     * (diagnostics)
+     */
+    private static SharableMeasurementProvider s_dataOutOpsCounter = new LongSharableMeasurementProvider();
+
+    /**
+     * (diagnostics)
+     */
+    static {
+        Diagnostics.shared().registerCounter("Nodel NIO server channels.Receives", s_dataInOpsCounter, true);
+        Diagnostics.shared().registerCounter("Nodel NIO server channels.Sends", s_dataOutOpsCounter, true);
+    }
+
+    /**
+     * The underlying channel.
+     */
+    private SocketChannel _socketChannel;
+
+    /**
+     * The connection.
+     */
+    private NIOChannelConnection _connection;
+
+    /**
+     * The Nodel channel end-point.
+     */
+    public NIOChannelServer(NodelServers nodelServer, SocketChannel socketChannel) {
+        super(nodelServer);
+
+        if (socketChannel == null)
+            throw new IllegalArgumentException("Socket channel cannot be null.");
+
+        _socketChannel = socketChannel;
+
+        _connection = new NIOChannelConnection(s_dataInOpsCounter, s_dataInCounter, s_dataOutOpsCounter, s_dataOutCounter) {
+
+            @Override
+            protected void handleMessage(ChannelMessage message) {
+                NIOChannelServer.this.handleMessage(message);
+            }
+
+            @Override
+            protected void handleFailure(Exception exc) {
+                onConnectionFailure(exc);
+            }
+
+        };
+    } // (constructor)
+
+    /**
+     * Starts processing.
+     * (non-blocking)
+     */
+    @Override
+    public void start() {
+        synchronized (this._signal) {
+            if (this._enabled)
+                throw new IllegalStateException("Already started.");
+
+            if (_connection.isClosed())
+                throw new IllegalStateException("Already shutdown.");
+
+            this._enabled = true;
+
+            _connection.register(_socketChannel);
+
+            this._logger.info("Started.");
+        }
+    } // (method)
+
+    /**
+     * (reactor call-back)
+     */
+    private void onConnectionFailure(Exception exc) {
+        synchronized (this._signal) {
+            if (!this._enabled)
+                return;
+
+            this._enabled = false;
+
+            this._logger.info("Unexpected exception occurred; this may be natural. Pulling down channel server.", exc);
+        }
+
+        super.handleFailure(exc);
+    } // (method)
+
+    /**
+     * Permanently shuts down this channel freeing up all resources.
+     * (exception free)
+     */
+    public void shutdown() {
+        synchronized (this._signal) {
+            if (!this._enabled)
+                return;
+
+            this._enabled = false;
+        }
+
+        _connection.close();
+    } // (method)
+
+    /**
+     * Sends a message down the channel.
+     * (exception free, non-blocking)
+     */
+    @Override
+    public void sendMessage(ChannelMessage message) {
+        synchronized (this._signal) {
+            if (!this._enabled)
+                return;
+        }
+
+        _connection.send(message, _encoding);
+    } // (method)
+
+} // (class)
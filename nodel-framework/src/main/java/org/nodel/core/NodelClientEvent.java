@@ -14,26 +14,17 @@ import org.joda.time.DateTime;
 import org.nodel.Handler;
 import org.nodel.Handler.H1;
 import org.nodel.LockFreeList;
-import org.nodel.Random;
 import org.nodel.SimpleName;
 import org.nodel.host.Binding;
 import org.nodel.reflection.Objects;
 import org.nodel.reflection.Serialisation;
 import org.nodel.reflection.Value;
 import org.nodel.threading.CallbackQueue;
-import org.nodel.threading.ThreadPool;
-import org.nodel.threading.TimerTask;
-import org.nodel.threading.Timers;
 
 public class NodelClientEvent {
     
     private final static SimpleName UNBOUND = new SimpleName("unbound");
     
-    /**
-     * (background timers)
-     */
-    private static Timers s_timers = new Timers("_NodelClientEvent");
-    
     /**
      * The name (or alias) of this client event.
      */
@@ -110,21 +101,11 @@ public class NodelClientEvent {
      */
     private Handler.H1<ArgInstance> _persister;
     
-    /**
-     * The repeating timer to persist the data.
-     */
-    private TimerTask _persisterTimer;
-
     /**
      * The last persisted event.
      */
     private ArgInstance _persistedArg;
     
-    /**
-     * How often to persist the args. (default 2 hours)
-     */
-    private long PERSIST_PERIOD = 2 * 3600 * 1000;
-
     /**
      * In an unbound state.
      */
@@ -176,17 +157,6 @@ public class NodelClientEvent {
         if (instance != ArgInstance.NULL) {
             _argInstance.set(instance);
         }
-        
-        // add an ongoing timer to persist (on background thread-pool)
-        // (not critical, so default is every 2 hours. Persist will occur on close anyway.)
-        _persisterTimer = s_timers.schedule(ThreadPool.background(), new TimerTask() {
-
-            @Override
-            public void run() {
-                persistNow();
-            }
-
-        }, PERSIST_PERIOD + Random.shared().nextInt(60000), PERSIST_PERIOD + Random.shared().nextInt(60000));
     }
     
     /**
@@ -302,6 +272,9 @@ public class NodelClientEvent {
                 
                 _argInstance.set(argInstance);
                 
+                // persisted as it changes (written behind)
+                Handler.tryHandle(_persister, argInstance);
+                
                 handler.handleEvent(node, event, arg);
             }
 
@@ -320,7 +293,7 @@ public class NodelClientEvent {
     }
     
     /**
-     * Handles a persist request via background timer or if overridden by the user.
+     * Handles a persist request on close or if overridden by the user.
      */
     public void persistNow() {
         // persist the data if the values are different.
@@ -337,6 +310,7 @@ public class NodelClientEvent {
             return;
         
         // otherwise, persist the argument state
+        _persistedArg = argInstance;
         Handler.tryHandle(_persister, argInstance);        
     }    
     
@@ -421,9 +395,6 @@ public class NodelClientEvent {
         
         _bindingStateHandlers.clear();
         
-        if (_persisterTimer != null)
-            _persisterTimer.cancel();
-        
         persistNow();
         
         NodelClients.instance().release(this);
@@ -589,6 +589,8 @@ public class NodelClients {
                     // no existing channel exists, so create one
                     if (address.equals(NodeAddress.IN_PROCESS))
                         channel = LoopbackChannelClient.instance();
+                    else if (ChannelReactor.isEnabled())
+                        channel = new NIOChannelClient(address);
                     else
                         channel = new TCPChannelClient(address);
 
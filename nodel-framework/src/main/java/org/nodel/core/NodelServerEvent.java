@@ -16,7 +16,6 @@ import org.joda.time.DateTime;
 import org.nodel.Handler;
 import org.nodel.Handler.H1;
 import org.nodel.LockFreeList;
-import org.nodel.Random;
 import org.nodel.SimpleName;
 import org.nodel.Strings;
 import org.nodel.host.Binding;
@@ -25,17 +24,9 @@ import org.nodel.reflection.Param;
 import org.nodel.reflection.Service;
 import org.nodel.reflection.Value;
 import org.nodel.threading.CallbackQueue;
-import org.nodel.threading.ThreadPool;
-import org.nodel.threading.TimerTask;
-import org.nodel.threading.Timers;
 
 public class NodelServerEvent implements Closeable {
     
-    /**
-     * (background timers)
-     */
-    private static Timers s_timers = new Timers("_NodelServerEvent");
-    
     protected SimpleName _node;
     
     protected SimpleName _event;
@@ -81,21 +72,10 @@ public class NodelServerEvent implements Closeable {
      */
     private Handler.H1<ArgInstance> _persister;
     
-    /**
-     * The repeating timer to persist the data.
-     */
-    private TimerTask _persisterTimer;
-
     /**
      * The last persisted event.
      */
     private ArgInstance _persistedArg;
-
-    /**
-     * How often to persist the args.
-     * (default 2 hours)
-     */
-    private long PERSIST_PERIOD = 2 * 3600 * 1000;
         
     @Service(name = "schema", title = "Schema", genericClassA = String.class, genericClassB = Object.class, desc = "Prepares a filtered schema for this action.")
     public Map<String, Object> getFullSchema() {
@@ -198,17 +178,6 @@ public class NodelServerEvent implements Closeable {
 
             // ...but *don't* fire the event itself
         }
-        
-        // add an ongoing timer to persist (on background thread-pool)
-        // (not critical, so default is every 2 hours. Persist will occur on close anyway.)
-        _persisterTimer = s_timers.schedule(ThreadPool.background(), new TimerTask() {
-
-            @Override
-            public void run() {
-                persistNow();
-            }
-
-        }, PERSIST_PERIOD + Random.shared().nextInt(60000), PERSIST_PERIOD + Random.shared().nextInt(60000));
     }
     
     @Value(name = "name", title = "Name", desc = "The name.", order = 1)
@@ -310,6 +279,9 @@ public class NodelServerEvent implements Closeable {
         
         _argInstance.set(argInstance);
         
+        // persisted as it changes (written behind)
+        Handler.tryHandle(_persister, argInstance);
+        
         if (_monitor != null)
             _monitor.handle(now, arg);
 
@@ -371,7 +343,7 @@ public class NodelServerEvent implements Closeable {
     }
     
     /**
-     * Handles a persist request via background timer or if overridden by the user.
+     * Handles a persist request on close or if overridden by the user.
      */
     public void persistNow() {
         // persist the data if the values are different.
@@ -388,6 +360,7 @@ public class NodelServerEvent implements Closeable {
             return;
         
         // otherwise, persist the argument state
+        _persistedArg = argInstance;
         Handler.tryHandle(_persister, argInstance);        
     }
 
@@ -400,9 +373,6 @@ public class NodelServerEvent implements Closeable {
 
         _closed = true;
 
-        if (_persisterTimer != null)
-            _persisterTimer.cancel();
-        
         _emitHandlers.clear();
         
         persistNow();
@@ -109,6 +109,18 @@ public class NodelServers {
      */
     private Map<SimpleName, List<ChannelServer>> _interestedChannels = new HashMap<SimpleName, List<ChannelServer>>();
     
+    /**
+     * The channels whose filters match a given node-event, built up as events are emitted and
+     * cleared whenever interest changes.
+     * (not thread-safe)
+     */
+    private Map<NodelPoint, ChannelServer[]> _matchedChannels = new HashMap<NodelPoint, ChannelServer[]>();
+    
+    /**
+     * (convenience)
+     */
+    private final static ChannelServer[] NO_CHANNELS = new ChannelServer[0];
+    
     /**
      * Events handler(s) for when a crippling failure occurs.
      */
@@ -412,6 +424,8 @@ public class NodelServers {
             boolean removedBinding = _nodeEventBindings.remove(eventBinding._eventPoint) != null;
             assert removedBinding : "Binding should have been present.";
             
+            _matchedChannels.remove(eventBinding._eventPoint);
+            
             tryCleanup(eventBinding._node);
         }
     } // (method)    
@@ -440,10 +454,21 @@ public class NodelServers {
                 
             channels.add(channel);
             
+            _matchedChannels.clear();
+            
             return;
         }
     } // (method)
     
+    /**
+     * Used by channels when their event filters for a node change.
+     */
+    protected void invalidateInterest(SimpleName node) {
+        synchronized (_signal) {
+            _matchedChannels.clear();
+        }
+    } // (method)
+    
     /**
      * Returns all the events that have been registered or null
      * if no matching node is found.
@@ -484,6 +509,8 @@ public class NodelServers {
                 _interestedChannels.remove(key);
             }
             
+            _matchedChannels.clear();
+            
             int removed = toRemove.size();
             this.logger.info("Cleaned up " + removed + " channel server reference" + (removed == 1 ? "" : "s") + ".");
         }
@@ -493,33 +520,61 @@ public class NodelServers {
      * Called when an event has occurred. Must have previously been registered. 
      */    
     public void emitEvent(NodelServerEvent eventBinding, Object arg) {
-        emitEvent(eventBinding._node.getReducedName(), eventBinding._event.getReducedName(), arg);
+        emitEvent(eventBinding._eventPoint, eventBinding._node.getReducedName(), eventBinding._event.getReducedName(), arg);
     }
     
     /**
      * (Used by Channel Server) 
      */
     protected void emitEvent(String nodeName, String eventName, Object arg) {
+        emitEvent(NodelPoint.create(nodeName, eventName), nodeName, eventName, arg);
+    }
+    
+    /**
+     * (args prechecked)
+     */
+    private void emitEvent(NodelPoint eventPoint, String nodeName, String eventName, Object arg) {
         synchronized (_signal) {
-            SimpleName node = new SimpleName(nodeName);
+            SimpleName node = eventPoint.getNode();
             
             if (!_nodeEvents.containsKey(node))
                 throw new NodelException("A node must be registered before firing any events.");
             
-            // look up all channels that are interested in the given node
-            List<ChannelServer> channels = _interestedChannels.get(node);
-            if (channels == null || channels.size() == 0) {
-                // no one's interested so don't have to do anything 
-                return;
+            ChannelServer[] channels = _matchedChannels.get(eventPoint);
+            if (channels == null) {
+                channels = matchChannels(node, eventPoint.getPoint().getReducedForMatchingName());
+                _matchedChannels.put(eventPoint, channels);
             }
             
             // send the event out through all the interested channels
-            for(ChannelServer channel : channels) {
+            // (within the lock so concurrent emits reach every channel in the same order; sending is non-blocking)
+            for (ChannelServer channel : channels) {
                 channel.sendEventMessage(nodeName, eventName, arg);
             } // (for)
         }
     } // (method)
     
+    /**
+     * Finds the channels whose event filters match.
+     * (assumes locked)
+     */
+    private ChannelServer[] matchChannels(SimpleName node, String reducedEvent) {
+        // look up all channels that are interested in the given node
+        List<ChannelServer> channels = _interestedChannels.get(node);
+        if (channels == null || channels.size() == 0) {
+            // no one's interested so don't have to do anything 
+            return NO_CHANNELS;
+        }
+        
+        List<ChannelServer> matched = new ArrayList<ChannelServer>(channels.size());
+        for (ChannelServer channel : channels) {
+            if (channel.isInterestedInEvent(node, reducedEvent))
+                matched.add(channel);
+        } // (for)
+        
+        return matched.size() == 0 ? NO_CHANNELS : matched.toArray(new ChannelServer[matched.size()]);
+    } // (method)
+    
     /**
      * Started or not.
      */
@@ -543,7 +598,12 @@ public class NodelServers {
      * When a new connection occurs.
      */
     private void handleNewConnection(Socket socket) {
-        final ChannelServer tcpChannelServer = new TCPChannelServer(this, socket);
+        // sockets accepted by the reactor have a channel
+        final ChannelServer tcpChannelServer;
+        if (socket.getChannel() != null)
+            tcpChannelServer = new NIOChannelServer(this, socket.getChannel());
+        else
+            tcpChannelServer = new TCPChannelServer(this, socket);
 
         // attach the failure handler
         tcpChannelServer.attachFailureHandler(new Handler.H1<Throwable>() {
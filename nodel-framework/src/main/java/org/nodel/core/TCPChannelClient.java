@@ -6,23 +6,32 @@ package org.nodel.core;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
-import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.SocketFactory;
 
 import org.nodel.DateTimes;
+import org.nodel.SystemProperties;
+import org.nodel.Threads;
 import org.nodel.diagnostics.CountableInputStream;
 import org.nodel.diagnostics.CountableOutputStream;
 import org.nodel.diagnostics.Diagnostics;
 import org.nodel.diagnostics.LongSharableMeasurementProvider;
+import org.nodel.diagnostics.MeasurementProvider;
 import org.nodel.diagnostics.SharableMeasurementProvider;
-import org.nodel.reflection.Serialisation;
+import org.nodel.threading.NodelThreadFactory;
+import org.nodel.threading.RejectionPolicy;
+import org.nodel.threading.ThreadPool;
 import org.nodel.threading.TimerTask;
 
 /**
@@ -40,15 +49,82 @@ public class TCPChannelClient extends ChannelClient {
      */    
     private static SharableMeasurementProvider s_dataOutCounter = new LongSharableMeasurementProvider();
     
+    /**
+     * (diagnostics)
+     */
+    private static SharableMeasurementProvider s_queueDepthCounter = new LongSharableMeasurementProvider();
+    
+    /**
+     * (diagnostics, messages written and socket writes)
+     */
+    private static AtomicLong s_messagesWritten = new AtomicLong(), s_socketWrites = new AtomicLong();
+    
     /**
      * (diagnostics)
      */
     static {
         Diagnostics.shared().registerCounter("Nodel TCP client channels.Receive rate", s_dataInCounter, true);
         Diagnostics.shared().registerCounter("Nodel TCP client channels.Send rate", s_dataOutCounter, true);
+        Diagnostics.shared().registerCounter("Nodel TCP client channels.Queue depth", s_queueDepthCounter, false);
+        
+        // messages per socket write (as a percentage) over each diagnostics period
+        Diagnostics.shared().registerCounter("Nodel TCP client channels.Coalescing ratio (%)", new MeasurementProvider() {
+            
+            private long _lastMessages, _lastWrites;
+
+            @Override
+            public long getMeasurement() {
+                long messages = s_messagesWritten.get();
+                long writes = s_socketWrites.get();
+                
+                long messagesDiff = messages - _lastMessages;
+                long writesDiff = writes - _lastWrites;
+                
+                _lastMessages = messages;
+                _lastWrites = writes;
+                
+                return writesDiff == 0 ? 0 : messagesDiff * 100 / writesDiff;
+            }
+            
+        }, false);
         
         // note: 'op' counts are selectively excluded for brevity
     }
+    
+    /**
+     * Optional system property for the outbound queue high-water mark (messages per channel)
+     */
+    public final static String HIGHWATERMARK_SYSTEMPROP = "org.nodel.core.channelClient.highWaterMark";
+    
+    /**
+     * Optional system property for what to do when the high-water mark is reached ('DropOldest', the default, or 'Block')
+     */
+    public final static String OVERFLOWPOLICY_SYSTEMPROP = "org.nodel.core.channelClient.overflowPolicy";
+    
+    /**
+     * (see related)
+     */
+    private final static int DEFAULT_HIGHWATERMARK = 10000;
+    
+    /**
+     * Only coalesce up to this many characters per socket write.
+     */
+    private final static int MAX_COALESCE = 64 * 1024;
+    
+    /**
+     * (see related system property, also applies to NIO connections)
+     */
+    final static int s_highWaterMark = SystemProperties.intProperty(HIGHWATERMARK_SYSTEMPROP, DEFAULT_HIGHWATERMARK);
+    
+    /**
+     * (see related system property, also applies to NIO connections; 'CallerRuns' is treated as 'Block' to preserve ordering)
+     */
+    final static RejectionPolicy s_overflowPolicy = RejectionPolicy.fromString(System.getProperty(OVERFLOWPOLICY_SYSTEMPROP), RejectionPolicy.DropOldest);
+    
+    /**
+     * Drains the outbound queues. Never used by senders, so a blocked sender can't hold up the writer it's waiting on.
+     */
+    private static ThreadPool s_writerThreadPool = new ThreadPool("Nodel channel-client writers", 128);
 
     /**
      * Started or not. 
@@ -76,12 +152,43 @@ public class TCPChannelClient extends ChannelClient {
     /**
      * (locked around 'signal')
      */
-    private JSONStreamReader _reader;
+    private ChannelMessageDecoder _reader;
     
     /**
      * (locked around 'signal')
      */
     private Writer _writer;
+    
+    /**
+     * The outbound message queue, drained by at most one writer at a time to preserve order.
+     */
+    private Queue<ChannelMessage> _outbound = new ConcurrentLinkedQueue<ChannelMessage>();
+    
+    /**
+     * The number of messages in the outbound queue.
+     */
+    private AtomicInteger _outboundDepth = new AtomicInteger();
+    
+    /**
+     * Whether a writer is draining (or has been scheduled to drain) the outbound queue.
+     */
+    private AtomicBoolean _draining = new AtomicBoolean();
+    
+    /**
+     * For senders waiting for the queue to drop below the high-water mark.
+     */
+    private Object _outboundSignal = new Object();
+    
+    /**
+     * Messages dropped due to the high-water mark.
+     */
+    private AtomicLong _dropped = new AtomicLong();
+    
+    /**
+     * Reused by the writer for coalescing.
+     * (only used by the current writer)
+     */
+    private StringBuilder _outboundBuffer = new StringBuilder(1024);
 
     /**
      * Creates a new channel client which is responsible for connection and reconnection.
@@ -91,14 +198,13 @@ public class TCPChannelClient extends ChannelClient {
         super(address);
         
         // initialise a long running thread to read from the socket
-        _thread = new Thread(new Runnable() {
+        _thread = NodelThreadFactory.shared().newThread(new Runnable() {
             @Override
             public void run() {
                 TCPChannelClient.this.run();
             }
         });
         _thread.setName(String.format("ChannelClient%03d", this._instance));
-        _thread.setDaemon(true);
     } // (constructor)
 
     /**
@@ -161,7 +267,7 @@ public class TCPChannelClient extends ChannelClient {
 
                 @Override
                 public void run() {
-                    doSendMessage(KEEP_ALIVE);
+                    sendMessage(KEEP_ALIVE);
                 }
 
             }, 180000, 180000);
@@ -171,13 +277,16 @@ public class TCPChannelClient extends ChannelClient {
             CountableInputStream input = new CountableInputStream(_socket.getInputStream(), SharableMeasurementProvider.Null.INSTANCE, s_dataInCounter);
             CountableOutputStream output = new CountableOutputStream(_socket.getOutputStream(), SharableMeasurementProvider.Null.INSTANCE, s_dataOutCounter);
 
-            // need to buffer in the input since arriving via socket.
-            _reader = new JSONStreamReader(new BufferedReader(new InputStreamReader(input)));
+            // (the decoder does its own buffering)
+            _reader = new ChannelMessageDecoder(new InputStreamReader(input));
 
             // no need to buffer the output since higher layers work
             // at 'message' level, not byte.
             _writer = new OutputStreamWriter(output);
             
+            // ask for the preferred wire encoding ahead of anything else
+            requestEncoding();
+            
             // good time to update the event interests table.
             syncActionAndEventHandlerTable();            
         }
@@ -185,20 +294,12 @@ public class TCPChannelClient extends ChannelClient {
         // fire connected event
         onConnected();
 
-        // on single thread so can create a reusable character buffer that will grow if necessarily
-        StringBuilder sb = new StringBuilder(256);
-
         for (;;) {
-            // always reset the buffer
-            sb.setLength(0);
-
-            // receive the JSON stream
-            if (!_reader.readJSONMessage(sb))
+            // decode the next message delivered to this channel client
+            ChannelMessage message = _reader.readMessage();
+            if (message == null)
                 throw new EOFException("Stream ended abruptly.");
             
-            // retrieve the message delivered to this channel server
-            ChannelMessage message = (ChannelMessage) Serialisation.coerceFromJSON(ChannelMessage.class, sb);
-            
             handleMessage(message);
         } // (while)
         
@@ -217,61 +318,117 @@ public class TCPChannelClient extends ChannelClient {
     
 
     /**
-     * Asynchronously sends the message down the channel.
+     * Asynchronously sends the message down the channel. Messages are written in order, coalesced
+     * where possible. If the outbound queue is above the high-water mark, the oldest messages are 
+     * dropped or, only if the 'Block' overflow policy is chosen, the sender blocks.
+     * 
+     * Control messages sent while holding 'signal' (encoding requests, interest updates) are always 
+     * queued; the writer needs 'signal' to fail the channel so blocking here could deadlock.
      */
     @Override
     public void sendMessage(final ChannelMessage message) {
-        s_threadPool.execute(new Runnable() {
-
-            @Override
-            public void run() {
-                doSendMessage(message);
+        if (_outboundDepth.get() >= s_highWaterMark && !Thread.holdsLock(_signal)) {
+            if (s_overflowPolicy == RejectionPolicy.DropOldest) {
+                if (_outbound.poll() != null) {
+                    _outboundDepth.decrementAndGet();
+                    s_queueDepthCounter.decr();
+                    
+                    if (_dropped.getAndIncrement() == 0)
+                        _logger.info("Outbound queue reached its high-water mark of {}; oldest messages are being dropped.", s_highWaterMark);
+                }
+                
+            } else {
+                // apply back-pressure
+                synchronized (_outboundSignal) {
+                    while (_outboundDepth.get() >= s_highWaterMark && _enabled)
+                        Threads.waitOnSync(_outboundSignal, 1000);
+                }
             }
+        }
+        
+        _outbound.add(message);
+        _outboundDepth.incrementAndGet();
+        s_queueDepthCounter.incr();
+        
+        // schedule a writer if one isn't already active
+        if (_draining.compareAndSet(false, true)) {
+            s_writerThreadPool.execute(new Runnable() {
 
-        });
+                @Override
+                public void run() {
+                    drainOutbound();
+                }
+
+            });
+        }
+    } // (method)
+    
+    /**
+     * Drains the outbound queue, coalescing messages into single writes.
+     * (only one writer at a time)
+     */
+    private void drainOutbound() {
+        for (;;) {
+            StringBuilder sb = _outboundBuffer;
+            sb.setLength(0);
+            
+            int count = 0;
+            
+            while (sb.length() < MAX_COALESCE) {
+                ChannelMessage message = _outbound.poll();
+                if (message == null)
+                    break;
+                
+                _outboundDepth.decrementAndGet();
+                s_queueDepthCounter.decr();
+                
+                if (message == KEEP_ALIVE)
+                    sb.append("\r\n");
+                else
+                    ChannelMessageEncoder.append(sb, message, _encoding);
+
+                count++;
+            }
+            
+            if (count > 0) {
+                doWrite(sb, count);
+                
+                // release any blocked senders
+                synchronized (_outboundSignal) {
+                    _outboundSignal.notifyAll();
+                }
+            }
+            
+            // keep going while there's more, otherwise release the writer role
+            if (!_outbound.isEmpty())
+                continue;
+            
+            _draining.set(false);
+            
+            // (something may have slipped in since)
+            if (_outbound.isEmpty() || !_draining.compareAndSet(false, true))
+                return;
+        } // (for)
     } // (method)
     
     /**
-     * Performs the IO to send the message.
+     * Performs the IO for one or more coalesced messages.
      */
-    private void doSendMessage(ChannelMessage message) {
+    private void doWrite(StringBuilder sb, int count) {
         Writer writer = _writer;
         if (writer == null) {
-            _logger.info("A message was dropped because the channel connect was not complete yet; safely ignoring. message='{}'" + message);
+            _logger.info("{} message(s) dropped because the channel connect was not complete yet; safely ignoring.", count);
             return;
         }
 
         try {
-            if (message == KEEP_ALIVE) {
-                // writer will never be null
-                writer.write("\r\n");
-                writer.flush();
-                return;
-            }
-            
-            // otherwise, a normal message
-            String jsonMessage = Serialisation.serialise(message, 4);
-
-            int len = jsonMessage.length();
-
-            StringBuilder sb = new StringBuilder();
-            for (int a = 0; a < len; a++) {
-                char c = jsonMessage.charAt(a);
-
-                if (c == '\n') {
-                    // 'TELNET' friendly formatting
-                    sb.append("\r\n");
-                } else {
-                    sb.append(c);
-                }
-            } // (for)
-
-            sb.append("\r\n");
-
             // writer will never be null
-            writer.write(sb.toString());
+            writer.append(sb);
             writer.flush();
             
+            s_messagesWritten.addAndGet(count);
+            s_socketWrites.incrementAndGet();
+            
         } catch (Exception exc) {
             synchronized (this._signal) {
                 _logger.trace("sendMessage exception");
@@ -306,6 +463,16 @@ public class TCPChannelClient extends ChannelClient {
         }
 
         _socket = null;
+        
+        // discard anything still queued and release any blocked senders
+        while (_outbound.poll() != null) {
+            _outboundDepth.decrementAndGet();
+            s_queueDepthCounter.decr();
+        }
+        
+        synchronized (_outboundSignal) {
+            _outboundSignal.notifyAll();
+        }
     } // (method)
 
     /**
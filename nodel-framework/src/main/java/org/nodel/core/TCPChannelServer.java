@@ -6,7 +6,6 @@ package org.nodel.core;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
-import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -19,7 +18,7 @@ import org.nodel.diagnostics.CountableOutputStream;
 import org.nodel.diagnostics.Diagnostics;
 import org.nodel.diagnostics.LongSharableMeasurementProvider;
 import org.nodel.diagnostics.SharableMeasurementProvider;
-import org.nodel.reflection.Serialisation;
+import org.nodel.threading.NodelThreadFactory;
 
 /**
  * Manages one incoming TCP socket.
@@ -34,7 +33,7 @@ public class TCPChannelServer extends ChannelServer {
     /**
      * For reading from the socket.
      */
-    private JSONStreamReader _reader;
+    private ChannelMessageDecoder _reader;
     
     /**
      * For writing to the socket.
@@ -93,7 +92,7 @@ public class TCPChannelServer extends ChannelServer {
         _socket = socket;
         
         // initialise the thread
-        _thread = new Thread(new Runnable() {
+        _thread = NodelThreadFactory.shared().newThread(new Runnable() {
 
             @Override
             public void run() {
@@ -102,7 +101,6 @@ public class TCPChannelServer extends ChannelServer {
 
         });
         _thread.setName(String.format("channel_server_%d", this._instance));
-        _thread.setDaemon(true);
     } // (constructor)
 
     /**
@@ -121,7 +119,7 @@ public class TCPChannelServer extends ChannelServer {
                 throw new IllegalStateException("Already shutdown.");
             
             // kick of the message queue handler
-            Thread outgoingMessageQueueThread = new Thread(new Runnable() {
+            Thread outgoingMessageQueueThread = NodelThreadFactory.shared().newThread(new Runnable() {
                 
                 @Override
                 public void run() {
@@ -130,15 +128,14 @@ public class TCPChannelServer extends ChannelServer {
                 
             });
             outgoingMessageQueueThread.setName(String.format("tcp_channel_server_queue_%d", this._instance));
-            outgoingMessageQueueThread.setDaemon(true);
             outgoingMessageQueueThread.start();
 
             try {
                 CountableInputStream input = new CountableInputStream(_socket.getInputStream(), s_dataInOpsCounter, s_dataInCounter);
                 CountableOutputStream output = new CountableOutputStream(_socket.getOutputStream(), s_dataOutOpsCounter, s_dataOutCounter);
                 
-                // need to buffer in the input since arriving via socket.
-                _reader = new JSONStreamReader(new BufferedReader(new InputStreamReader(input)));
+                // (the decoder does its own buffering)
+                _reader = new ChannelMessageDecoder(new InputStreamReader(input));
 
                 // no need to buffer the output since higher layers work
                 // at 'message' level, not byte.
@@ -229,21 +226,13 @@ public class TCPChannelServer extends ChannelServer {
             this._signal.notify();
         }
         
-        // on single thread so can create a reusable character buffer that will grow if necessarily
-        StringBuilder sb = new StringBuilder(256);        
-        
         // enter the main loop
         try {
             while (this._enabled) {
-                // always reset the buffer
-                sb.setLength(0);
-
-                // receive the JSON stream
-                if (!_reader.readJSONMessage(sb))
+                // decode the next message delivered to this channel server
+                ChannelMessage message = _reader.readMessage();
+                if (message == null)
                     throw new EOFException("Unexpectedly reached the end of the stream.");
-
-                // retrieve the message delivered to this channel server
-                ChannelMessage message = (ChannelMessage) Serialisation.coerceFromJSON(ChannelMessage.class, sb);
                 
                 super.handleMessage(message);
             } // (while)
@@ -319,26 +308,10 @@ public class TCPChannelServer extends ChannelServer {
      * (exception free)
      */
     private void doSendMessage(ChannelMessage message) {
-        String jsonMessage = Serialisation.serialise(message, 4);
-
-        int len = jsonMessage.length();
-
-        StringBuilder sb = new StringBuilder();
-        for (int a = 0; a < len; a++) {
-            char c = jsonMessage.charAt(a);
-
-            if (c == '\n') {
-                // 'TELNET' friendly formatting
-                sb.append("\r\n");
-            } else {
-                sb.append(c);
-            }
-        } // (for)
-
-        sb.append("\r\n");
+        String encoded = ChannelMessageEncoder.encode(message, _encoding);
 
         try {
-            _writer.write(sb.toString());
+            _writer.write(encoded);
             _writer.flush();
 
         } catch (Exception exc) {
@@ -94,6 +94,14 @@ public class CountableInputStream extends InputStream {
         return count;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException {
+        return base.available();
+    }
+    
     /**
      * {@inheritDoc}
      */    
@@ -0,0 +1,36 @@
+package org.nodel.diagnostics;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the highest value recorded since the last measurement, i.e. the peak over each diagnostics period.
+ * (taking a measurement resets the peak so should only be read by the diagnostics framework)
+ */
+public class PeakMeasurementProvider implements MeasurementProvider {
+
+    private AtomicLong _peak = new AtomicLong();
+
+    /**
+     * Records a value, retaining it if it's the highest so far this period.
+     */
+    public void record(long value) {
+        for (;;) {
+            long current = _peak.get();
+
+            if (value <= current || _peak.compareAndSet(current, value))
+                return;
+        }
+    }
+
+    @Override
+    public long getMeasurement() {
+        return _peak.getAndSet(0);
+    }
+
+} // (class)
@@ -29,6 +29,7 @@ import org.nodel.Threads;
 import org.nodel.core.Nodel;
 import org.nodel.discovery.NodelAutoDNS.ServiceItem;
 import org.nodel.io.Stream;
+import org.nodel.threading.NodelThreadFactory;
 import org.nodel.threading.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -128,7 +129,7 @@ public class NodelAdvertiser {
         _httpAddress = "http://" + _intf.getHostAddress() + ":" + Nodel.getHTTPPort() + Nodel.getHTTPSuffix();
 
         // create the receiver thread and start it
-        _thread = new Thread(new Runnable() {
+        _thread = NodelThreadFactory.shared().newThread(new Runnable() {
 
             @Override
             public void run() {
@@ -136,7 +137,6 @@ public class NodelAdvertiser {
             }
 
         }, friendlyName + "_probe_resp_receiver");
-        _thread.setDaemon(true);
     }
 
     /**
@@ -24,6 +24,7 @@ import org.nodel.Handler;
 import org.nodel.Threads;
 import org.nodel.core.Nodel;
 import org.nodel.io.Stream;
+import org.nodel.threading.NodelThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -110,7 +111,7 @@ public class NodelDiscoverer {
         _intf = intf;
 
         // create the receiver thread and start it
-        _thread = new Thread(new Runnable() {
+        _thread = NodelThreadFactory.shared().newThread(new Runnable() {
 
             @Override
             public void run() {
@@ -118,7 +119,6 @@ public class NodelDiscoverer {
             }
 
         }, friendlyName + "_probe_resp_receiver");
-        _thread.setDaemon(true);
     }
     
     /**
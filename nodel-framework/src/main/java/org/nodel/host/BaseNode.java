@@ -3,10 +3,11 @@ package org.nodel.host;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -17,6 +18,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.joda.time.DateTime;
 import org.nodel.Handler;
 import org.nodel.Handlers;
+import org.nodel.SeqRingBuffer;
 import org.nodel.SimpleName;
 import org.nodel.Threads;
 import org.nodel.core.ActionRequestHandler;
@@ -133,6 +135,12 @@ public abstract class BaseNode implements Closeable {
      */
     protected File _metaRoot;
     
+    /**
+     * Persists event arguments (in '_metaRoot').
+     * (lazily created, see 'eventJournal')
+     */
+    private EventJournal _eventJournal;
+    
     /**
      * The current bindings.
      */
@@ -149,29 +157,33 @@ public abstract class BaseNode implements Closeable {
     protected LineReader _outReader;
     
     /**
-     * For sequence counting, starting at current time
-     * to get a unique, progressing sequence number every 
-     * time (regardless of restart).
-     * (locked around 'logs')
+     * How many log and console entries are kept.
      */
-    private long _logsSeqCounter = System.currentTimeMillis();
+    private final static int MAX_LOG_ENTRIES = 1000;
     
     /**
-     * Holds a full history.
-     * (self-locked)
+     * Serialises log writers (and streamer registration); readers never take it.
      */
-    private LinkedList<LogEntry> _logs = new LinkedList<LogEntry>();
+    private Object _logsLock = new Object();
     
     /**
-     * For sequence counting.
-     * (locked around 'console')
+     * Holds a recent history, sequence numbers starting at current time
+     * to get a unique, progressing sequence number every 
+     * time (regardless of restart).
+     * (appended to within '_logsLock')
      */
-    private long _consoleSeqCounter = System.currentTimeMillis();    
+    private SeqRingBuffer<LogEntry> _logs = new SeqRingBuffer<LogEntry>(MAX_LOG_ENTRIES, System.currentTimeMillis());
     
     /**
-     * Holds the console logs
+     * Serialises console writers (and streamer registration); readers never take it.
      */
-    private LinkedList<ConsoleLogEntry> _console = new LinkedList<ConsoleLogEntry>();
+    private Object _consoleLock = new Object();
+    
+    /**
+     * Holds the console logs.
+     * (appended to within '_consoleLock')
+     */
+    private SeqRingBuffer<ConsoleLogEntry> _console = new SeqRingBuffer<ConsoleLogEntry>(MAX_LOG_ENTRIES, System.currentTimeMillis());
     
     /**
      * The time this node instance was started.
@@ -294,49 +306,40 @@ public abstract class BaseNode implements Closeable {
             int max,
             @Param(name = "timeout", title = "Timeout", desc = "How long to wait for new items in ms (default 0)")
             int timeout) {
-        LinkedList<LogEntry> batch = new LinkedList<LogEntry>();
-
-        synchronized (_logs) {
-            if (_logsSeqCounter < from)
-                from = 0;
+        // (lock-free, newest first)
+        if (_logs.nextSeq() < from)
+            from = 0;
 
-            Iterator<LogEntry> inReverse = _logs.descendingIterator();
-            while (inReverse.hasNext()) {
-                LogEntry entry = inReverse.next();
-                if (entry.seq >= from)
-                    batch.add(entry);
-
-                if (batch.size() >= max)
-                    break;
-            } // (while)
-
-            if (batch.size() == 0 && timeout > 0) {
-                Threads.waitOnSync(_logs, timeout);
-
-                // will only recurse once more
-                return getLogs(from, max, 0);
-            }
+        List<LogEntry> batch = _logs.sinceNewestFirst(from, max);
 
-            return batch;
+        if (batch.size() == 0 && timeout > 0 && _logs.await(from, timeout)) {
+            // will only recurse once more
+            return getLogs(from, max, 0);
         }
+
+        return batch;
     } // (method)
     
     /**
      * Adds to the event logs, dropping if necessary.
      */
     protected void addLog(DateTime now, LogEntry.Source source, LogEntry.Type type, SimpleName alias, Object arg) {
-        synchronized (_logs) {
+        synchronized (_logsLock) {
             // stamp with current seq number
-            LogEntry entry = new LogEntry(_logsSeqCounter++, now, source, type, alias, arg);
+            LogEntry entry = new LogEntry(_logs.nextSeq(), now, source, type, alias, arg);
 
-            _logs.add(entry);
+            // (oldest are overwritten, any waiting readers are signalled)
+            _logs.append(entry);
             
             _logStreamerHandlers.updateAllUnsynchronized(entry);
-
-            if (_logs.size() > 1000)
-                _logs.removeFirst();
-
-            _logs.notifyAll();
+            
+            if (!_activityStreams.isEmpty()) {
+                // (serialised once for all streams)
+                String data = EventStream.formatData(entry);
+                
+                for (NodeEventStream stream : _activityStreams)
+                    stream.sendActivity("activity", entry.seq, data);
+            }
         }
     }
     
@@ -350,49 +353,40 @@ public abstract class BaseNode implements Closeable {
                                                 int max,
                                                 @Param(name = "timeout", title = "Timeout", desc = "How long to wait for new items in ms (default 0)") 
                                                 int timeout) {
-        LinkedList<ConsoleLogEntry> batch = new LinkedList<ConsoleLogEntry>();
+        // (lock-free, newest first)
+        if (_console.nextSeq() < from)
+            from = 0;
         
-        synchronized (_console) {
-            if (_consoleSeqCounter < from)
-                from = 0;            
-            
-            Iterator<ConsoleLogEntry> inReverse = _console.descendingIterator();
-            while (inReverse.hasNext()) {
-                ConsoleLogEntry entry = inReverse.next();
-                if (entry.seq >= from)
-                    batch.add(entry);
-                else
-                    break;
-
-                if (batch.size() >= max)
-                    break;
-            } // (while)
-            
-            if (batch.size() == 0 && timeout > 0) {
-                Threads.waitOnSync(_console, timeout);
-
-                // will only recurse once more
-                return getConsoleLogs(from, max, 0);
-            }            
-
-            return batch;
+        List<ConsoleLogEntry> batch = _console.sinceNewestFirst(from, max);
+        
+        if (batch.size() == 0 && timeout > 0 && _console.await(from, timeout)) {
+            // will only recurse once more
+            return getConsoleLogs(from, max, 0);
         }
+
+        return batch;
     } // (method)
     
     /**
      * Adds to the console logs, dropping if necessary.
      */
     protected void addConsoleLog(DateTime timestamp, ConsoleLogEntry.Console console, String line) {
-        synchronized(_console) {
+        synchronized(_consoleLock) {
             // stamp with current sequence number
-            ConsoleLogEntry entry = new ConsoleLogEntry(_consoleSeqCounter++, timestamp, console, line); 
+            ConsoleLogEntry entry = new ConsoleLogEntry(_console.nextSeq(), timestamp, console, line); 
             
-            _console.add(entry);
+            // (oldest are overwritten, any waiting readers are signalled)
+            _console.append(entry);
             
-            if (_console.size() > 1000)
-                _console.removeFirst();
+            _consoleStreamerHandlers.updateAllUnsynchronized(entry);
             
-            _console.notifyAll();
+            if (!_consoleStreams.isEmpty()) {
+                // (serialised once for all streams)
+                String data = EventStream.formatData(entry);
+                
+                for (NodeEventStream stream : _consoleStreams)
+                    stream.sendConsole(entry.seq, data);
+            }
         }
     } // (method)
     
@@ -426,9 +420,72 @@ public abstract class BaseNode implements Closeable {
     
     /**
      * Holds log streamers.
+     * (locked around '_logsLock')
      */
     private Handlers.H1<LogEntry> _logStreamerHandlers = new Handlers.H1<>();
     
+    /**
+     * Holds console streamers.
+     * (locked around '_consoleLock')
+     */
+    private Handlers.H1<ConsoleLogEntry> _consoleStreamerHandlers = new Handlers.H1<>();
+    
+    /**
+     * Open event streams (closed with the node).
+     * (self-locked)
+     */
+    private List<EventStream> _eventStreams = new ArrayList<EventStream>();
+    
+    /**
+     * Event streams receiving activity.
+     * (locked around '_logsLock')
+     */
+    private List<NodeEventStream> _activityStreams = new ArrayList<NodeEventStream>();
+    
+    /**
+     * Event streams receiving the console.
+     * (locked around '_consoleLock')
+     */
+    private List<NodeEventStream> _consoleStreams = new ArrayList<NodeEventStream>();
+    
+    /**
+     * An event stream carrying both the activity and console. Its event IDs are '(activity seq).(console seq)', the
+     * last of each sent, so a reconnecting browser resumes both.
+     */
+    private static class NodeEventStream {
+        
+        public final EventStream stream;
+        
+        /**
+         * (locked around 'this')
+         */
+        private long _activitySeq;
+        
+        /**
+         * (locked around 'this')
+         */
+        private long _consoleSeq;
+        
+        public NodeEventStream(EventStream stream, long activityFrom, long consoleFrom) {
+            this.stream = stream;
+            _activitySeq = Math.max(activityFrom, 0) - 1;
+            _consoleSeq = Math.max(consoleFrom, 0) - 1;
+        }
+        
+        public synchronized void sendActivity(String event, long seq, String data) {
+            _activitySeq = Math.max(_activitySeq, seq);
+            
+            stream.sendData(event, _activitySeq + "." + _consoleSeq, data);
+        }
+        
+        public synchronized void sendConsole(long seq, String data) {
+            _consoleSeq = Math.max(_consoleSeq, seq);
+            
+            stream.sendData("console", _activitySeq + "." + _consoleSeq, data);
+        }
+        
+    } // (class)
+    
     /**
      * Streams the general event/action log.
      */
@@ -437,53 +494,52 @@ public abstract class BaseNode implements Closeable {
                                        long from) {
         LinkedList<LogEntry> batch = new LinkedList<LogEntry>();
 
-        synchronized (_logs) {
-            if (Nodel.getSeq() < from)
-                from = 0;
-            
-            // go through server events
-            for (Entry<SimpleName, NodelServerEvent> entry : _localEvents.entrySet()) {
-                NodelServerEvent localEvent = entry.getValue();
-
-                long seq = localEvent.getSeqNum();
-                if (seq >= from)
-                    batch.add(new LogEntry(seq, localEvent.getTimestamp(), Source.local, Type.event, entry.getKey(), localEvent.getArg()));
-            }
-
-            // go through server actions
-            for (Entry<SimpleName, NodelServerAction> entry : _localActions.entrySet()) {
-                NodelServerAction localAction = entry.getValue();
+        // (callers that must not miss anything hold '_logsLock')
+        if (Nodel.getSeq() < from)
+            from = 0;
+        
+        // go through server events
+        for (Entry<SimpleName, NodelServerEvent> entry : _localEvents.entrySet()) {
+            NodelServerEvent localEvent = entry.getValue();
 
-                long seq = localAction.getSeqNum();
-                if (seq >= from)
-                    batch.add(new LogEntry(seq, localAction.getTimestamp(), Source.local, Type.action, entry.getKey(), localAction.getArg()));
-            }
-            
-            // go through remote events
-            for (NodelClientEvent remoteEvent : _remoteEvents.values()) {
-                long seq = remoteEvent.getSeqNum();
-                if (seq >= from)
-                    batch.add(new LogEntry(seq, remoteEvent.getTimestamp(), Source.remote, Type.event, remoteEvent.getName(), remoteEvent.getArg()));
+            long seq = localEvent.getSeqNum();
+            if (seq >= from)
+                batch.add(new LogEntry(seq, localEvent.getTimestamp(), Source.local, Type.event, entry.getKey(), localEvent.getArg()));
+        }
 
-                seq = remoteEvent.getStatusSeqNum();
-                if (seq >= from)
-                    batch.add(new LogEntry(seq, remoteEvent.getStatusTimestamp(), Source.remote, Type.eventBinding, remoteEvent.getName(), remoteEvent.getBindingState()));
+        // go through server actions
+        for (Entry<SimpleName, NodelServerAction> entry : _localActions.entrySet()) {
+            NodelServerAction localAction = entry.getValue();
 
-            }
-            
-            // go through remote actions
-            for (NodelClientAction remoteAction : _remoteActions.values()) {
-                long seq = remoteAction.getArgSeqNum();
-                if (seq >= from)
-                    batch.add(new LogEntry(seq, remoteAction.getArgTimestamp(), Source.remote, Type.event, remoteAction.getName(), remoteAction.getArg()));
+            long seq = localAction.getSeqNum();
+            if (seq >= from)
+                batch.add(new LogEntry(seq, localAction.getTimestamp(), Source.local, Type.action, entry.getKey(), localAction.getArg()));
+        }
+        
+        // go through remote events
+        for (NodelClientEvent remoteEvent : _remoteEvents.values()) {
+            long seq = remoteEvent.getSeqNum();
+            if (seq >= from)
+                batch.add(new LogEntry(seq, remoteEvent.getTimestamp(), Source.remote, Type.event, remoteEvent.getName(), remoteEvent.getArg()));
 
-                seq = remoteAction.getBindingStateSeqNum();
-                if (seq >= from)
-                    batch.add(new LogEntry(seq, remoteAction.getBindingStateTimestamp(), Source.remote, Type.actionBinding, remoteAction.getName(), remoteAction.getBindingState()));
-            }            
+            seq = remoteEvent.getStatusSeqNum();
+            if (seq >= from)
+                batch.add(new LogEntry(seq, remoteEvent.getStatusTimestamp(), Source.remote, Type.eventBinding, remoteEvent.getName(), remoteEvent.getBindingState()));
 
-            return batch;
         }
+        
+        // go through remote actions
+        for (NodelClientAction remoteAction : _remoteActions.values()) {
+            long seq = remoteAction.getArgSeqNum();
+            if (seq >= from)
+                batch.add(new LogEntry(seq, remoteAction.getArgTimestamp(), Source.remote, Type.event, remoteAction.getName(), remoteAction.getArg()));
+
+            seq = remoteAction.getBindingStateSeqNum();
+            if (seq >= from)
+                batch.add(new LogEntry(seq, remoteAction.getBindingStateTimestamp(), Source.remote, Type.actionBinding, remoteAction.getName(), remoteAction.getBindingState()));
+        }            
+
+        return batch;
     }
     
     
@@ -491,7 +547,7 @@ public abstract class BaseNode implements Closeable {
      * Add an activity stream handler.
      */
     public List<LogEntry> registerActivityHandler(Handler.H1<LogEntry> handler, long from) {
-        synchronized(_logs) {
+        synchronized(_logsLock) {
             _logStreamerHandlers.addHandler(handler);
             
             List<LogEntry> current = getActivity(from);
@@ -504,10 +560,85 @@ public abstract class BaseNode implements Closeable {
      * Unregisters an activity stream handler.
      */
     public void unregisterActivityHandler(Handler.H1<LogEntry> handler) {
-        synchronized(_logs) {
+        synchronized(_logsLock) {
             _logStreamerHandlers.removeHandler(handler);
         }        
     }
+    
+    /**
+     * Streams the activity and console as Server-Sent Events on one connection; the current activity (since
+     * 'activityFrom') as 'activityHistory' events and up to 'max' recent console lines (since 'consoleFrom') then
+     * 'activity' and 'console' events as they happen.
+     */
+    public EventStream streamEvents(long activityFrom, long consoleFrom, int max) {
+        final EventStream stream = new EventStream();
+        final NodeEventStream nodeStream = new NodeEventStream(stream, activityFrom, consoleFrom);
+        
+        stream.setClosedHandler(new Handler.H0() {
+            
+            @Override
+            public void handle() {
+                synchronized (_logsLock) {
+                    _activityStreams.remove(nodeStream);
+                }
+                synchronized (_consoleLock) {
+                    _consoleStreams.remove(nodeStream);
+                }
+                untrackEventStream(stream);
+            }
+            
+        });
+        
+        trackEventStream(stream);
+        
+        // (history is queued before anything live can be)
+        synchronized (_logsLock) {
+            _activityStreams.add(nodeStream);
+            
+            for (LogEntry entry : sortedBySeq(getActivity(activityFrom)))
+                nodeStream.sendActivity("activityHistory", entry.seq, EventStream.formatData(entry));
+        }
+        
+        synchronized (_consoleLock) {
+            _consoleStreams.add(nodeStream);
+            
+            // (comes back newest first)
+            List<ConsoleLogEntry> history = getConsoleLogs(consoleFrom, max, 0);
+            for (int i = history.size() - 1; i >= 0; i--)
+                nodeStream.sendConsole(history.get(i).seq, EventStream.formatData(history.get(i)));
+        }
+        
+        return stream;
+    }
+    
+    /**
+     * (convenience)
+     */
+    private static List<LogEntry> sortedBySeq(List<LogEntry> entries) {
+        List<LogEntry> sorted = new ArrayList<LogEntry>(entries);
+        Collections.sort(sorted, new Comparator<LogEntry>() {
+
+            @Override
+            public int compare(LogEntry e1, LogEntry e2) {
+                return Long.compare(e1.seq, e2.seq);
+            }
+
+        });
+        
+        return sorted;
+    }
+    
+    private void trackEventStream(EventStream stream) {
+        synchronized (_eventStreams) {
+            _eventStreams.add(stream);
+        }
+    }
+    
+    private void untrackEventStream(EventStream stream) {
+        synchronized (_eventStreams) {
+            _eventStreams.remove(stream);
+        }
+    }
             
     protected Map<SimpleName, NodelServerAction> _localActions = new LinkedHashMap<SimpleName, NodelServerAction>();
     
@@ -554,24 +685,15 @@ public abstract class BaseNode implements Closeable {
      */
     protected NodelServerEvent addLocalEvent(final NodelServerEvent event) {
         // seed the event with some data if it exists
-        String key = event.getNodelPoint().getPoint().getReducedForMatchingName();
-        File seedFile = new File(_metaRoot, key + ".event.json");
+        final String key = event.getNodelPoint().getPoint().getReducedForMatchingName() + ".event";
         
-        ArgInstance seed = null;
-        
-        if (seedFile.exists()) {
-            try {
-                seed = (ArgInstance) Serialisation.deserialise(ArgInstance.class, Stream.readFully(seedFile));
-            } catch (Exception e) {
-                // ignore
-            }
-        }
+        ArgInstance seed = eventJournal().get(key);
         
         event.seedAndPersist(seed, new Handler.H1<ArgInstance>() {
 
             @Override
             public void handle(ArgInstance instance) {
-                persistEventArg(event, instance);
+                eventJournal().put(key, instance);
             }
 
         });
@@ -609,33 +731,17 @@ public abstract class BaseNode implements Closeable {
     }
   
     /**
-     * Persists an event's timestamp and argument.
+     * Returns the event journal, opening it if necessary.
      */
-    private void persistEventArg(NodelServerEvent event, ArgInstance instance) {
-        try {
-            File seedFile = new File(_metaRoot, event.getNodelPoint().getPoint().getReducedForMatchingName() + ".event.json");
-
-            Stream.writeFully(seedFile, Serialisation.serialise(instance));
-
-        } catch (Exception exc) {
-            // ignore
+    private EventJournal eventJournal() {
+        synchronized (_localEvents) {
+            if (_eventJournal == null)
+                _eventJournal = new EventJournal(_metaRoot);
+            
+            return _eventJournal;
         }
     }
     
-    /**
-     * Persists an event's timestamp and argument.
-     */
-    private void persistEventArg(NodelClientEvent remoteevent, ArgInstance instance) {
-        try {
-            File seedFile = new File(_metaRoot, remoteevent.getNodelPoint().getPoint().getReducedForMatchingName() + ".remoteevent.json");
-
-            Stream.writeFully(seedFile, Serialisation.serialise(instance));
-
-        } catch (Exception exc) {
-            // ignore
-        }
-    }    
-    
     /**
      * Injects the remote binding values into the Remote Bindings
      */
@@ -943,24 +1049,15 @@ public abstract class BaseNode implements Closeable {
      */
     protected void addRemoteEvent(final NodelClientEvent remoteEvent) {
         // seed the event with some data if it exists
-        String key = remoteEvent.getNodelPoint().getPoint().getReducedForMatchingName();
-        File seedFile = new File(_metaRoot, key + ".remoteevent.json");
+        final String key = remoteEvent.getNodelPoint().getPoint().getReducedForMatchingName() + ".remoteevent";
 
-        ArgInstance seed = null;
-
-        if (seedFile.exists()) {
-            try {
-                seed = (ArgInstance) Serialisation.deserialise(ArgInstance.class, Stream.readFully(seedFile));
-            } catch (Exception e) {
-                // ignore
-            }
-        }
+        ArgInstance seed = eventJournal().get(key);
 
         remoteEvent.seedAndPersist(seed, new Handler.H1<ArgInstance>() {
 
             @Override
             public void handle(ArgInstance instance) {
-                persistEventArg(remoteEvent, instance);
+                eventJournal().put(key, instance);
             }
 
         });
@@ -1026,6 +1123,20 @@ public abstract class BaseNode implements Closeable {
         
         Stream.safeCloseCloseables(_localActions.values());
         Stream.safeCloseCloseables(_localEvents.values());
+        
+        // (after the events, which persist on close)
+        synchronized (_localEvents) {
+            if (_eventJournal != null)
+                _eventJournal.close();
+        }
+        
+        EventStream[] eventStreams;
+        synchronized (_eventStreams) {
+            eventStreams = _eventStreams.toArray(new EventStream[_eventStreams.size()]);
+        }
+        
+        for (EventStream eventStream : eventStreams)
+            eventStream.close();
 
         synchronized (s_repo) {
             s_repo.remove(_name);
@@ -0,0 +1,420 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.nodel.SystemProperties;
+import org.nodel.core.ArgInstance;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.io.Stream;
+import org.nodel.io.UTF8Charset;
+import org.nodel.json.JSONObject;
+import org.nodel.reflection.Serialisation;
+import org.nodel.threading.ThreadPool;
+import org.nodel.threading.TimerTask;
+import org.nodel.threading.Timers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists a node's event arguments using an append-only journal instead of a file per event.
+ *
+ * Changes are held in memory and written behind in batches (one append and sync per batch, for all changes since the
+ * last, only the latest value of each event). The journal is compacted into a snapshot once it holds enough records
+ * and on close. On start up the snapshot is loaded and the journal replayed.
+ *
+ * All journals are flushed by one shared timer.
+ */
+class EventJournal {
+
+    /**
+     * (logging related)
+     */
+    private final static Logger s_logger = LoggerFactory.getLogger(EventJournal.class);
+
+    /**
+     * Optional system property for how often changes are written (millis), e.g. 'org.nodel.host.eventJournalPeriod = 5000'
+     */
+    public final static String PERIOD_SYSTEMPROP = "org.nodel.host.eventJournalPeriod";
+
+    /**
+     * (see related system property)
+     */
+    private final static int PERIOD = SystemProperties.intProperty(PERIOD_SYSTEMPROP, 5000);
+
+    /**
+     * The journal is compacted once it holds at least this many records (and more than twice the number of events).
+     */
+    private final static int MIN_COMPACT_RECORDS = 256;
+
+    /**
+     * (file names within the node's metadata folder)
+     */
+    private final static String JOURNAL_FILE = "events.journal";
+
+    private final static String SNAPSHOT_FILE = "events.snapshot.json";
+
+    /**
+     * All open journals.
+     * (self-locked)
+     */
+    private final static List<EventJournal> s_journals = new ArrayList<EventJournal>();
+
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterWrites = Diagnostics.shared().registerSharableCounter("Event journal.Records written", true);
+
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterCompactions = Diagnostics.shared().registerSharableCounter("Event journal.Compactions", true);
+
+    static {
+        new Timers("Event journal").schedule(ThreadPool.background(), new TimerTask() {
+
+            @Override
+            public void run() {
+                flushAll();
+            }
+
+        }, PERIOD, PERIOD);
+    }
+
+    /**
+     * The folder holding the journal and snapshot.
+     */
+    private File _folder;
+
+    /**
+     * (locks '_values' and '_pending')
+     */
+    private Object _lock = new Object();
+
+    /**
+     * The latest value of every event.
+     * (locked around '_lock')
+     */
+    private Map<String, ArgInstance> _values = new HashMap<String, ArgInstance>();
+
+    /**
+     * Changes yet to be written.
+     * (locked around '_lock')
+     */
+    private Map<String, ArgInstance> _pending = new LinkedHashMap<String, ArgInstance>();
+
+    /**
+     * Serialises writes, compaction and closing.
+     */
+    private Object _writeLock = new Object();
+
+    /**
+     * The open journal (appending).
+     * (locked around '_writeLock')
+     */
+    private FileOutputStream _journalOut;
+
+    /**
+     * The number of records in the journal.
+     * (locked around '_writeLock')
+     */
+    private int _journalRecords;
+
+    /**
+     * (locked around '_writeLock')
+     */
+    private boolean _closed;
+
+    /**
+     * Set if the journal didn't end cleanly (it's compacted straight away so appends never follow a torn record)
+     */
+    private boolean _torn;
+
+    /**
+     * Opens the journal, loading the snapshot and replaying the journal.
+     */
+    public EventJournal(File folder) {
+        _folder = folder;
+
+        load();
+
+        if (_torn) {
+            synchronized (_writeLock) {
+                compact();
+            }
+        }
+
+        synchronized (s_journals) {
+            s_journals.add(this);
+        }
+    }
+
+    /**
+     * Returns the last persisted value or null if there is none. Values persisted the original way (a file per event,
+     * named after the key) are migrated.
+     */
+    public ArgInstance get(String key) {
+        synchronized (_lock) {
+            ArgInstance value = _values.get(key);
+            if (value != null)
+                return value;
+        }
+
+        File legacyFile = new File(_folder, key + ".json");
+        if (!legacyFile.exists())
+            return null;
+
+        try {
+            ArgInstance value = (ArgInstance) Serialisation.deserialise(ArgInstance.class, Stream.readFully(legacyFile));
+
+            // migrate it (the file is removed once compacted)
+            if (value != null)
+                put(key, value);
+
+            return value;
+
+        } catch (Exception exc) {
+            // ignore
+            return null;
+        }
+    }
+
+    /**
+     * Records a new value (written behind).
+     */
+    public void put(String key, ArgInstance value) {
+        synchronized (_lock) {
+            // (never go backwards)
+            ArgInstance current = _values.get(key);
+            if (current != null && current.seqNum > value.seqNum)
+                return;
+
+            _values.put(key, value);
+            _pending.put(key, value);
+        }
+    }
+
+    /**
+     * Writes all pending changes to the journal (one append and sync), compacting if necessary.
+     */
+    public void flush() {
+        synchronized (_writeLock) {
+            if (_closed)
+                return;
+
+            Map<String, ArgInstance> batch;
+            int valueCount;
+            synchronized (_lock) {
+                if (_pending.isEmpty())
+                    return;
+
+                batch = _pending;
+                _pending = new LinkedHashMap<String, ArgInstance>();
+                valueCount = _values.size();
+            }
+
+            try {
+                StringBuilder sb = new StringBuilder();
+                for (Entry<String, ArgInstance> entry : batch.entrySet())
+                    sb.append("{\"key\":").append(JSONObject.quote(entry.getKey()))
+                      .append(",\"value\":").append(Serialisation.serialise(entry.getValue()))
+                      .append("}\n");
+
+                if (_journalOut == null)
+                    _journalOut = new FileOutputStream(new File(_folder, JOURNAL_FILE), true);
+
+                _journalOut.write(sb.toString().getBytes(UTF8Charset.instance()));
+                _journalOut.getChannel().force(false);
+
+                _journalRecords += batch.size();
+                s_counterWrites.add(batch.size());
+
+            } catch (Exception exc) {
+                s_logger.warn("Could not write to event journal; will retry. folder:" + _folder, exc);
+
+                // put the batch back (unless newer values have arrived since)
+                synchronized (_lock) {
+                    for (Entry<String, ArgInstance> entry : batch.entrySet()) {
+                        if (!_pending.containsKey(entry.getKey()))
+                            _pending.put(entry.getKey(), entry.getValue());
+                    }
+                }
+
+                return;
+            }
+
+            if (_journalRecords >= MIN_COMPACT_RECORDS && _journalRecords > 2 * valueCount)
+                compact();
+        }
+    }
+
+    /**
+     * Flushes, compacts and releases the journal.
+     */
+    public void close() {
+        synchronized (s_journals) {
+            s_journals.remove(this);
+        }
+
+        synchronized (_writeLock) {
+            flush();
+
+            if (_journalRecords > 0)
+                compact();
+
+            Stream.safeClose(_journalOut);
+            _journalOut = null;
+
+            _closed = true;
+        }
+    }
+
+    /**
+     * Writes all values to a new snapshot (atomically replacing the old one) then empties the journal.
+     * (locked around '_writeLock')
+     */
+    private void compact() {
+        Map<String, ArgInstance> values;
+        synchronized (_lock) {
+            values = new HashMap<String, ArgInstance>(_values);
+        }
+
+        File snapshotFile = new File(_folder, SNAPSHOT_FILE);
+        File tmpFile = new File(_folder, SNAPSHOT_FILE + ".tmp");
+
+        try {
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                Serialisation.serialise(values, 0, false, out);
+                out.getChannel().force(false);
+
+            } finally {
+                Stream.safeClose(out);
+            }
+
+            Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // everything in the journal is now in the snapshot
+            Stream.safeClose(_journalOut);
+            _journalOut = new FileOutputStream(new File(_folder, JOURNAL_FILE), false);
+            _journalRecords = 0;
+
+            s_counterCompactions.incr();
+
+            // any legacy files are no longer needed
+            for (String key : values.keySet())
+                new File(_folder, key + ".json").delete();
+
+        } catch (Exception exc) {
+            s_logger.warn("Could not compact event journal. folder:" + _folder, exc);
+        }
+    }
+
+    /**
+     * Loads the snapshot then replays the journal (last value wins, a torn final record is ignored).
+     */
+    private void load() {
+        File snapshotFile = new File(_folder, SNAPSHOT_FILE);
+        if (snapshotFile.exists()) {
+            try {
+                JSONObject snapshot = new JSONObject(Stream.readFully(snapshotFile));
+
+                for (String key : snapshot.keySet())
+                    _values.put(key, (ArgInstance) Serialisation.coerce(ArgInstance.class, snapshot.get(key)));
+
+            } catch (Exception exc) {
+                s_logger.warn("Event snapshot could not be loaded; values will be missing. file:" + snapshotFile, exc);
+            }
+        }
+
+        File journalFile = new File(_folder, JOURNAL_FILE);
+        if (!journalFile.exists())
+            return;
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), UTF8Charset.instance()));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JSONObject record = new JSONObject(line);
+                    _values.put(record.getString("key"), (ArgInstance) Serialisation.coerce(ArgInstance.class, record.get("value")));
+                    _journalRecords++;
+
+                } catch (Exception exc) {
+                    // (most likely an incomplete last write)
+                    s_logger.debug("Ignoring invalid journal record.", exc);
+                    _torn = true;
+                }
+            } // (while)
+
+            if (!_torn && !endsWithNewLine(journalFile))
+                _torn = true;
+
+        } catch (IOException exc) {
+            s_logger.warn("Event journal could not be replayed. file:" + journalFile, exc);
+
+        } finally {
+            Stream.safeClose(reader);
+        }
+    }
+
+    /**
+     * (convenience)
+     */
+    private static boolean endsWithNewLine(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length == 0)
+                return true;
+
+            raf.seek(length - 1);
+            return raf.read() == '\n';
+
+        } finally {
+            Stream.safeClose(raf);
+        }
+    }
+
+    /**
+     * (timer)
+     */
+    private static void flushAll() {
+        EventJournal[] journals;
+        synchronized (s_journals) {
+            journals = s_journals.toArray(new EventJournal[s_journals.size()]);
+        }
+
+        for (EventJournal journal : journals) {
+            try {
+                journal.flush();
+
+            } catch (Exception exc) {
+                s_logger.warn("Unexpected exception flushing event journal.", exc);
+            }
+        }
+    }
+
+} // (class)
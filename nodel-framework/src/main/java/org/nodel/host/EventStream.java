@@ -0,0 +1,396 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.nodel.Handler;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.io.Stream;
+import org.nodel.io.UTF8Charset;
+import org.nodel.reflection.Serialisation;
+import org.nodel.threading.ThreadPool;
+import org.nodel.threading.TimerTask;
+import org.nodel.threading.Timers;
+
+/**
+ * A Server-Sent Events (SSE) response i.e. a long-lived 'text/event-stream' that items are pushed down as they occur.
+ *
+ * Return one from 'NanoHTTPD.serve'; the connection is handed over once the headers are sent. Items can be sent
+ * straight away (they're queued until then). 'send' never blocks; writing happens on a shared thread-pool and a client
+ * that falls too far behind or stops reading is dropped (the browser reconnects with 'Last-Event-ID').
+ */
+public class EventStream extends NanoHTTPD.Response {
+
+    /**
+     * The MIME type.
+     */
+    public final static String MIME_EVENT_STREAM = "text/event-stream";
+
+    /**
+     * How often a comment is sent to keep proxies from timing out and detect dead clients (millis).
+     */
+    private final static int HEARTBEAT_PERIOD = 15000;
+
+    /**
+     * How long the browser waits before reconnecting (millis).
+     */
+    private final static int RETRY_DELAY = 3000;
+
+    /**
+     * Clients with more than this many items queued are dropped.
+     */
+    private final static int MAX_QUEUED = 2000;
+
+    /**
+     * Clients that haven't taken a write in this long are dropped at the next heartbeat, which closes the socket and
+     * frees the writing thread (sockets have no write timeout of their own) (millis).
+     */
+    private final static int WRITE_TIMEOUT = HEARTBEAT_PERIOD;
+
+    /**
+     * Writes to the streams.
+     */
+    private final static ThreadPool s_threadPool = new ThreadPool("Event streams", 16);
+
+    /**
+     * All connected streams (for heartbeats).
+     * (self-locked)
+     */
+    private final static Set<EventStream> s_streams = new HashSet<EventStream>();
+
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterStreams = Diagnostics.shared().registerSharableCounter("Nano HTTP.Event streams", false);
+
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterItems = Diagnostics.shared().registerSharableCounter("Nano HTTP.Events sent", true);
+
+    static {
+        new Timers("Event streams").schedule(ThreadPool.background(), new TimerTask() {
+
+            @Override
+            public void run() {
+                heartbeatAll();
+            }
+
+        }, HEARTBEAT_PERIOD, HEARTBEAT_PERIOD);
+    }
+
+    /**
+     * (locks the fields below)
+     */
+    private Object _lock = new Object();
+
+    /**
+     * Formatted items waiting to be written.
+     * (locked around '_lock')
+     */
+    private LinkedList<String> _queue = new LinkedList<String>();
+
+    /**
+     * The connection, once handed over.
+     * (locked around '_lock')
+     */
+    private Socket _socket;
+
+    /**
+     * (locked around '_lock')
+     */
+    private OutputStream _out;
+
+    /**
+     * Whether a writer is active.
+     * (locked around '_lock')
+     */
+    private boolean _writing;
+
+    /**
+     * When the write in progress started (nanos, 0 if none).
+     * (locked around '_lock')
+     */
+    private long _writeStarted;
+
+    /**
+     * (locked around '_lock')
+     */
+    private boolean _closed;
+
+    /**
+     * Called once when the stream closes (for any reason).
+     */
+    private Handler.H0 _closedHandler;
+
+    /**
+     * (writes the queue)
+     */
+    private Runnable _writer = new Runnable() {
+
+        @Override
+        public void run() {
+            writeQueue();
+        }
+
+    };
+
+    /**
+     * (constructor)
+     */
+    public EventStream() {
+        this.status = NanoHTTPD.HTTP_OK;
+        this.mimeType = MIME_EVENT_STREAM;
+
+        addHeader("Cache-Control", "no-cache");
+
+        _queue.add("retry: " + RETRY_DELAY + "\n\n");
+    }
+
+    /**
+     * Sets the handler called once when the stream closes, typically to unregister whatever is feeding it.
+     */
+    public void setClosedHandler(Handler.H0 handler) {
+        _closedHandler = handler;
+    }
+
+    /**
+     * Sends an item, serialised as JSON.
+     *
+     * @param event The event type (null for the default, 'message').
+     * @param id The ID the browser sends back as 'Last-Event-ID' when reconnecting.
+     */
+    public void send(String event, long id, Object item) {
+        sendData(event, String.valueOf(id), formatData(item));
+    }
+
+    /**
+     * Sends data already formatted using 'formatData' (for items sent to many streams).
+     */
+    public void sendData(String event, String id, String data) {
+        StringBuilder sb = new StringBuilder();
+
+        if (event != null)
+            sb.append("event: ").append(event).append('\n');
+
+        sb.append("id: ").append(id).append('\n');
+        sb.append(data);
+        sb.append('\n');
+
+        queue(sb.toString());
+    }
+
+    /**
+     * Serialises an item as the 'data' field(s) of an event, so it can be serialised once and sent to many streams.
+     */
+    public static String formatData(Object item) {
+        StringBuilder sb = new StringBuilder();
+
+        // (every line of the data needs its own field)
+        for (String line : Serialisation.serialise(item).split("\n"))
+            sb.append("data: ").append(line).append('\n');
+
+        return sb.toString();
+    }
+
+    /**
+     * Whether the stream has closed.
+     */
+    public boolean isClosed() {
+        synchronized (_lock) {
+            return _closed;
+        }
+    }
+
+    /**
+     * Closes the stream (and connection).
+     */
+    public void close() {
+        Socket socket;
+        synchronized (_lock) {
+            if (_closed)
+                return;
+
+            _closed = true;
+            _queue.clear();
+
+            socket = _socket;
+        }
+
+        synchronized (s_streams) {
+            s_streams.remove(this);
+            s_counterStreams.set(s_streams.size());
+        }
+
+        Stream.safeClose(socket);
+
+        // (never called in line, 'close' may be called from within whatever is feeding the stream)
+        final Handler.H0 closedHandler = _closedHandler;
+        if (closedHandler != null) {
+            s_threadPool.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    Handler.tryHandle(closedHandler);
+                }
+
+            });
+        }
+    }
+
+    /**
+     * The connection is handed over once the headers have been sent.
+     * (called by 'NanoHTTPD')
+     */
+    void attach(Socket socket, OutputStream out) {
+        // (added first so a concurrent 'close' always removes it)
+        synchronized (s_streams) {
+            s_streams.add(this);
+            s_counterStreams.set(s_streams.size());
+        }
+
+        boolean attached;
+        boolean write;
+
+        synchronized (_lock) {
+            attached = !_closed;
+            if (attached) {
+                _socket = socket;
+                _out = out;
+            }
+
+            write = attached && !_queue.isEmpty();
+            _writing = write;
+        }
+
+        if (!attached) {
+            // (closed before it started)
+            synchronized (s_streams) {
+                s_streams.remove(this);
+                s_counterStreams.set(s_streams.size());
+            }
+
+            Stream.safeClose(socket);
+            return;
+        }
+
+        if (write)
+            s_threadPool.execute(_writer);
+    }
+
+    /**
+     * (never blocks)
+     */
+    private void queue(String formatted) {
+        boolean write = false;
+        boolean overflowed = false;
+
+        synchronized (_lock) {
+            if (_closed)
+                return;
+
+            // (history queued before the connection is handed over doesn't count)
+            if (_out != null && _queue.size() >= MAX_QUEUED) {
+                overflowed = true;
+
+            } else {
+                _queue.add(formatted);
+
+                if (_out != null && !_writing) {
+                    _writing = true;
+                    write = true;
+                }
+            }
+        }
+
+        if (overflowed)
+            close();
+
+        else if (write)
+            s_threadPool.execute(_writer);
+    }
+
+    /**
+     * Writes everything queued, in batches.
+     * (thread-pool)
+     */
+    private void writeQueue() {
+        for (;;) {
+            List<String> batch;
+            OutputStream out;
+
+            synchronized (_lock) {
+                if (_closed || _queue.isEmpty()) {
+                    _writing = false;
+                    _writeStarted = 0;
+                    return;
+                }
+
+                batch = new ArrayList<String>(_queue);
+                _queue.clear();
+
+                out = _out;
+                _writeStarted = System.nanoTime();
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (String formatted : batch)
+                sb.append(formatted);
+
+            try {
+                out.write(sb.toString().getBytes(UTF8Charset.instance()));
+                out.flush();
+
+                s_counterItems.add(batch.size());
+
+            } catch (IOException exc) {
+                // (client has gone)
+                close();
+                return;
+            }
+        } // (for)
+    }
+
+    /**
+     * (timer)
+     */
+    private static void heartbeatAll() {
+        EventStream[] streams;
+        synchronized (s_streams) {
+            streams = s_streams.toArray(new EventStream[s_streams.size()]);
+        }
+
+        for (EventStream stream : streams)
+            stream.heartbeat();
+    }
+
+    /**
+     * Drops the client if it has stalled, otherwise sends a comment.
+     * (timer)
+     */
+    private void heartbeat() {
+        boolean stalled;
+        synchronized (_lock) {
+            stalled = _writeStarted != 0 && (System.nanoTime() - _writeStarted) / 1000000 > WRITE_TIMEOUT;
+        }
+
+        if (stalled)
+            close();
+        else
+            queue(":\n\n");
+    }
+
+} // (class)
@@ -0,0 +1,201 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A response body made up of regions of a file and literal bytes (e.g. multipart range boundaries).
+ *
+ * 'NanoHTTPD' sends it using 'FileChannel.transferTo' i.e. without copying file content through user space. It can
+ * still be read like any other stream.
+ */
+class FileBody extends InputStream {
+
+    /**
+     * (literal bytes or a file region)
+     */
+    private static class Segment {
+
+        public byte[] bytes;
+
+        public long position;
+
+        public long length;
+
+    } // (class)
+
+    /**
+     * The file being served.
+     */
+    private FileChannel _channel;
+
+    /**
+     * All the segments, in order.
+     */
+    private List<Segment> _segments = new ArrayList<Segment>();
+
+    /**
+     * The total length.
+     */
+    private long _length;
+
+    /**
+     * The number of bytes read or transferred so far.
+     */
+    private long _consumed;
+
+    /**
+     * (reading state: the current segment and offset within it)
+     */
+    private int _current;
+
+    private long _offset;
+
+    /**
+     * Opens the file.
+     */
+    public FileBody(File file) throws IOException {
+        _channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Appends a region of the file.
+     */
+    public void addRegion(long position, long length) {
+        Segment segment = new Segment();
+        segment.position = position;
+        segment.length = length;
+
+        _segments.add(segment);
+        _length += length;
+    }
+
+    /**
+     * Appends literal bytes.
+     */
+    public void addBytes(byte[] bytes) {
+        Segment segment = new Segment();
+        segment.bytes = bytes;
+        segment.length = bytes.length;
+
+        _segments.add(segment);
+        _length += bytes.length;
+    }
+
+    /**
+     * The total length of the body.
+     */
+    public long length() {
+        return _length;
+    }
+
+    /**
+     * The number of bytes yet to be read or transferred.
+     */
+    public long remaining() {
+        return _length - _consumed;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, remaining());
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int read = read(one, 0, 1);
+
+        return read <= 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        for (; _current < _segments.size(); _current++, _offset = 0) {
+            Segment segment = _segments.get(_current);
+
+            long segmentRemaining = segment.length - _offset;
+            if (segmentRemaining <= 0)
+                continue;
+
+            int count = (int) Math.min(len, segmentRemaining);
+
+            if (segment.bytes != null) {
+                System.arraycopy(segment.bytes, (int) _offset, buffer, off, count);
+
+            } else {
+                count = _channel.read(ByteBuffer.wrap(buffer, off, count), segment.position + _offset);
+
+                // (the file has shrunk)
+                if (count <= 0)
+                    return -1;
+            }
+
+            _offset += count;
+            _consumed += count;
+
+            return count;
+        } // (for)
+
+        return -1;
+    }
+
+    /**
+     * Writes the rest of the body to a (blocking) channel, file regions directly from the file system.
+     *
+     * @return the number of bytes written.
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        long total = 0;
+
+        for (; _current < _segments.size(); _current++, _offset = 0) {
+            Segment segment = _segments.get(_current);
+
+            if (segment.bytes != null) {
+                ByteBuffer buffer = ByteBuffer.wrap(segment.bytes, (int) _offset, (int) (segment.length - _offset));
+                while (buffer.hasRemaining())
+                    total += target.write(buffer);
+
+                _offset = segment.length;
+
+            } else {
+                while (_offset < segment.length) {
+                    long count = _channel.transferTo(segment.position + _offset, segment.length - _offset, target);
+
+                    // (nothing left means the file has shrunk; the length has already been promised)
+                    if (count <= 0)
+                        throw new IOException("File ended before its region was sent.");
+
+                    _offset += count;
+                    total += count;
+                } // (while)
+            }
+        } // (for)
+
+        _consumed += total;
+
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+} // (class)
@@ -0,0 +1,189 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.zip.GZIPOutputStream;
+
+import org.nodel.SystemProperties;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+
+/**
+ * Holds gzip compressed copies of static files (see 'NanoHTTPD.serveFile') so they're only read and compressed once
+ * per version (path and ETag), least recently used first out once the size cap is reached.
+ */
+class GzipAssetCache {
+
+    /**
+     * Optional system property for the most compressed bytes held, e.g. 'org.nodel.host.httpGzipCacheBytes = 16777216'
+     * (0 to disable)
+     */
+    public final static String MAXBYTES_SYSTEMPROP = "org.nodel.host.httpGzipCacheBytes";
+
+    /**
+     * (see related system property)
+     */
+    private final static int MAX_BYTES = SystemProperties.intProperty(MAXBYTES_SYSTEMPROP, 16 * 1024 * 1024);
+
+    /**
+     * Larger files are never cached (served uncompressed).
+     */
+    private final static int MAX_FILE_SIZE = MAX_BYTES / 8;
+
+    /**
+     * The bytes accounted for a file that isn't worth compressing.
+     */
+    private final static int MARKER_COST = 64;
+
+    /**
+     * (an entry)
+     */
+    private static class CachedFile {
+
+        /**
+         * The compressed content or null if the file doesn't compress well.
+         */
+        public byte[] compressed;
+
+        /**
+         * (for accounting)
+         */
+        public int cost;
+
+    } // (class)
+
+    /**
+     * (instance, see 'shared')
+     */
+    private final static GzipAssetCache s_instance = new GzipAssetCache();
+
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterHits = Diagnostics.shared().registerSharableCounter("Nano HTTP.Gzip cache hits", true);
+
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterMisses = Diagnostics.shared().registerSharableCounter("Nano HTTP.Gzip cache misses", true);
+
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterBytes = Diagnostics.shared().registerSharableCounter("Nano HTTP.Gzip cache bytes", false);
+
+    /**
+     * (locks '_entries' and '_bytes')
+     */
+    private Object _lock = new Object();
+
+    /**
+     * Entries by path and ETag, least recently used first.
+     * (locked around '_lock')
+     */
+    private LinkedHashMap<String, CachedFile> _entries = new LinkedHashMap<String, CachedFile>(16, 0.75f, true);
+
+    /**
+     * The total cost of all entries.
+     * (locked around '_lock')
+     */
+    private long _bytes;
+
+    /**
+     * (private constructor)
+     */
+    private GzipAssetCache() {
+    }
+
+    /**
+     * Returns the shared cache.
+     */
+    public static GzipAssetCache shared() {
+        return s_instance;
+    }
+
+    /**
+     * Returns the compressed content of a file or null if it should be served as is (too small, too large or doesn't
+     * compress well).
+     */
+    public byte[] get(File file, String etag, int minSize) throws IOException {
+        long length = file.length();
+        if (length < minSize || length > MAX_FILE_SIZE)
+            return null;
+
+        String key = file.getAbsolutePath() + ':' + etag;
+
+        synchronized (_lock) {
+            CachedFile entry = _entries.get(key);
+            if (entry != null) {
+                s_counterHits.incr();
+                return entry.compressed;
+            }
+        }
+
+        s_counterMisses.incr();
+
+        // (compressed outside the lock; a concurrent miss on the same file only costs a repeat)
+        byte[] raw = Files.readAllBytes(file.toPath());
+        byte[] compressed = gzip(raw, 0, raw.length);
+
+        CachedFile entry = new CachedFile();
+
+        // (not worth it if less than 10% is saved)
+        if (compressed.length < raw.length - raw.length / 10)
+            entry.compressed = compressed;
+
+        entry.cost = key.length() + (entry.compressed != null ? entry.compressed.length : MARKER_COST);
+
+        synchronized (_lock) {
+            CachedFile previous = _entries.put(key, entry);
+            if (previous != null)
+                _bytes -= previous.cost;
+
+            _bytes += entry.cost;
+
+            // evict the least recently used
+            Iterator<Entry<String, CachedFile>> i = _entries.entrySet().iterator();
+            while (_bytes > MAX_BYTES && i.hasNext()) {
+                _bytes -= i.next().getValue().cost;
+                i.remove();
+            }
+
+            s_counterBytes.set(_bytes);
+        }
+
+        return entry.compressed;
+    }
+
+    /**
+     * Whether the cache is enabled.
+     */
+    public static boolean isEnabled() {
+        return MAX_BYTES > 0;
+    }
+
+    /**
+     * Gzip compresses a block of data.
+     */
+    public static byte[] gzip(byte[] data, int offset, int length) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, length / 4));
+
+        GZIPOutputStream gzos = new GZIPOutputStream(baos, 8192);
+        gzos.write(data, offset, length);
+        gzos.close();
+
+        return baos.toByteArray();
+    }
+
+} // (class)
@@ -0,0 +1,288 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.io.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds idle keep-alive HTTP connections on a single selector thread so no thread is tied up between requests (see
+ * 'NanoHTTPD'). A connection is handed back, in blocking mode, as soon as its next request starts arriving or is
+ * closed once it has been idle for too long.
+ */
+class KeepAliveReactor {
+
+    /**
+     * (logging related)
+     */
+    private final static Logger s_logger = LoggerFactory.getLogger(KeepAliveReactor.class);
+
+    /**
+     * How often idle connections are checked (millis)
+     */
+    private final static int CHECK_PERIOD = 1000;
+
+    /**
+     * Resumes a connection.
+     */
+    public interface Resumable {
+
+        /**
+         * Data has arrived. The channel is back in blocking mode.
+         * (called on the reactor thread, must not block)
+         */
+        public void resume();
+
+    } // (interface)
+
+    /**
+     * (a parked connection)
+     */
+    private static class Parked {
+
+        public SocketChannel channel;
+
+        public Resumable resumable;
+
+        /**
+         * (based on 'nanoTime')
+         */
+        public long parkedAt = System.nanoTime();
+
+    } // (class)
+
+    /**
+     * (instance, see 'shared')
+     */
+    private static KeepAliveReactor s_instance;
+
+    /**
+     * The selector
+     */
+    private Selector _selector;
+
+    /**
+     * Channels waiting to be registered by the reactor thread.
+     * (self-locked)
+     */
+    private Queue<Parked> _pending = new LinkedList<Parked>();
+
+    /**
+     * Connections ready to be resumed, once deregistered.
+     * (reactor thread only)
+     */
+    private List<Parked> _ready = new ArrayList<Parked>();
+
+    /**
+     * The number of parked connections.
+     */
+    private AtomicInteger _idle = new AtomicInteger();
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterIdle = Diagnostics.shared().registerSharableCounter("Nano HTTP.Idle connections", false);
+
+    /**
+     * (private constructor)
+     */
+    private KeepAliveReactor() throws IOException {
+        _selector = Selector.open();
+
+        // always a platform thread; it blocks in 'select' for its lifetime
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                threadMain();
+            }
+
+        }, "Nano HTTP keep-alive");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the shared reactor, starting it if necessary.
+     */
+    public static KeepAliveReactor shared() throws IOException {
+        synchronized (KeepAliveReactor.class) {
+            if (s_instance == null)
+                s_instance = new KeepAliveReactor();
+
+            return s_instance;
+        }
+    }
+
+    /**
+     * The number of idle connections.
+     */
+    public int size() {
+        return _idle.get();
+    }
+
+    /**
+     * Parks an idle connection, placing it in non-blocking mode.
+     */
+    public void park(SocketChannel channel, Resumable resumable) throws IOException {
+        channel.configureBlocking(false);
+
+        Parked parked = new Parked();
+        parked.channel = channel;
+        parked.resumable = resumable;
+
+        synchronized (_pending) {
+            _pending.add(parked);
+        }
+
+        _counterIdle.set(_idle.incrementAndGet());
+
+        // (registration must happen on the reactor thread otherwise it would wait for 'select' to return)
+        _selector.wakeup();
+    }
+
+    /**
+     * (reactor thread)
+     */
+    private void threadMain() {
+        long lastCheck = System.nanoTime();
+
+        for (;;) {
+            try {
+                _selector.select(CHECK_PERIOD);
+
+                registerPending();
+
+                collectReady();
+
+                // keys must be fully deregistered before their channels can go back into blocking mode
+                while (!_ready.isEmpty()) {
+                    _selector.selectNow();
+
+                    List<Parked> ready = _ready;
+                    _ready = new ArrayList<Parked>();
+
+                    // (anything else that became ready in the meantime)
+                    collectReady();
+
+                    for (Parked parked : ready)
+                        resume(parked);
+                } // (while)
+
+                long now = System.nanoTime();
+                if ((now - lastCheck) / 1000000 >= CHECK_PERIOD) {
+                    lastCheck = now;
+                    closeIdle(now);
+                }
+
+            } catch (ClosedSelectorException exc) {
+                // (never expected)
+                s_logger.warn("Selector closed; reactor thread is exiting.");
+                return;
+
+            } catch (Exception exc) {
+                s_logger.warn("Unexpected exception within reactor loop; will continue.", exc);
+            }
+        } // (for)
+    }
+
+    /**
+     * (reactor thread)
+     */
+    private void registerPending() {
+        for (;;) {
+            Parked parked;
+            synchronized (_pending) {
+                parked = _pending.poll();
+            }
+
+            if (parked == null)
+                return;
+
+            try {
+                parked.channel.register(_selector, SelectionKey.OP_READ, parked);
+
+            } catch (Exception exc) {
+                // (most likely closed in the meantime)
+                close(parked);
+            }
+        } // (for)
+    }
+
+    /**
+     * Cancels the keys of connections with data (or closed).
+     * (reactor thread)
+     */
+    private void collectReady() {
+        Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            key.cancel();
+            _ready.add((Parked) key.attachment());
+        } // (while)
+    }
+
+    /**
+     * (reactor thread)
+     */
+    private void resume(Parked parked) {
+        _counterIdle.set(_idle.decrementAndGet());
+
+        try {
+            parked.channel.configureBlocking(true);
+            parked.resumable.resume();
+
+        } catch (Exception exc) {
+            s_logger.debug("Connection could not be resumed.", exc);
+            Stream.safeClose(parked.channel);
+        }
+    }
+
+    /**
+     * Closes connections that have been idle for too long.
+     * (reactor thread)
+     */
+    private void closeIdle(long now) {
+        long timeout = NanoHTTPD.KEEPALIVE_TIMEOUT;
+
+        for (SelectionKey key : _selector.keys()) {
+            Parked parked = (Parked) key.attachment();
+
+            if (key.isValid() && (now - parked.parkedAt) / 1000000 >= timeout) {
+                key.cancel();
+                close(parked);
+            }
+        } // (for)
+    }
+
+    /**
+     * (reactor thread)
+     */
+    private void close(Parked parked) {
+        _counterIdle.set(_idle.decrementAndGet());
+
+        Stream.safeClose(parked.channel);
+    }
+
+} // (class)
@@ -6,10 +6,10 @@ package org.nodel.host;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -21,11 +21,16 @@ import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
 import java.net.URLEncoder;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Vector;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.StringTokenizer;
@@ -35,6 +40,7 @@ import java.io.FileOutputStream;
 
 import org.nodel.Base64;
 import org.nodel.DateTimes;
+import org.nodel.SystemProperties;
 import org.nodel.diagnostics.CountableInputStream;
 import org.nodel.diagnostics.CountableOutputStream;
 import org.nodel.diagnostics.Diagnostics;
@@ -119,6 +125,59 @@ public class NanoHTTPD {
     
     private static SharableMeasurementProvider s_dataSendRate = Diagnostics.shared().registerSharableCounter("Nano HTTP.Send rate", true);
     
+    private static SharableMeasurementProvider s_connectionRate = Diagnostics.shared().registerSharableCounter("Nano HTTP.Connection rate", true);
+    
+    private static SharableMeasurementProvider s_requestRate = Diagnostics.shared().registerSharableCounter("Nano HTTP.Request rate", true);
+    
+    /**
+     * Optional system property for how long an idle keep-alive connection is held open (millis, 0 to disable keep-alive), 
+     * e.g. 'org.nodel.host.httpKeepAliveTimeout = 15000'
+     */
+    public final static String KEEPALIVETIMEOUT_SYSTEMPROP = "org.nodel.host.httpKeepAliveTimeout";
+    
+    /**
+     * Optional system property for the most requests served over one connection, e.g. 'org.nodel.host.httpKeepAliveMax = 100'
+     */
+    public final static String KEEPALIVEMAX_SYSTEMPROP = "org.nodel.host.httpKeepAliveMax";
+    
+    /**
+     * (see related system property)
+     */
+    final static int KEEPALIVE_TIMEOUT = SystemProperties.intProperty(KEEPALIVETIMEOUT_SYSTEMPROP, 15000);
+    
+    /**
+     * (see related system property)
+     */
+    private final static int KEEPALIVE_MAX = SystemProperties.intProperty(KEEPALIVEMAX_SYSTEMPROP, 100);
+    
+    /**
+     * Beyond this many idle connections, connections are closed after each response instead.
+     */
+    private final static int MAX_IDLE_CONNECTIONS = 1024;
+    
+    /**
+     * Optional system property for the smallest text response (or static file) that's gzip compressed when the client
+     * accepts it (bytes, -1 to disable), e.g. 'org.nodel.host.httpGzipMinSize = 1024'
+     */
+    public final static String GZIPMINSIZE_SYSTEMPROP = "org.nodel.host.httpGzipMinSize";
+    
+    /**
+     * (see related system property)
+     */
+    private final static int GZIP_MIN_SIZE = SystemProperties.intProperty(GZIPMINSIZE_SYSTEMPROP, 1024);
+    
+    /**
+     * Larger dynamic responses are sent uncompressed (they're compressed in memory).
+     */
+    private final static int GZIP_MAX_SIZE = 8 * 1024 * 1024;
+    
+    /**
+     * Requests with more ranges are sent the whole file.
+     */
+    private final static int MAX_RANGES = 16;
+    
+    private static SharableMeasurementProvider s_gzipRate = Diagnostics.shared().registerSharableCounter("Nano HTTP.Gzip responses", true);
+    
     // ==================================================
     // API parts
     // ==================================================
@@ -376,7 +435,9 @@ public class NanoHTTPD {
         this.myTcpPort = port;
         this.myRootDir = wwwroot;
         try {
-            this.myServerSocket = new ServerSocket(myTcpPort);
+            // (channel based so idle keep-alive connections can be selected on)
+            this.myServerSocket = ServerSocketChannel.open().socket();
+            this.myServerSocket.bind(new InetSocketAddress(myTcpPort));
             
         } catch (BindException exc) {
             // wrap up within a sensible, descriptive exception 
@@ -487,37 +548,132 @@ public class NanoHTTPD {
      * Handles one session, i.e. parses the HTTP request and returns the
      * response.
      */
-    private class HTTPSession implements Runnable {
+    private class HTTPSession implements Runnable, KeepAliveReactor.Resumable {
 
         private Socket mySocket;
+        
+        /**
+         * The number of requests served on this connection.
+         */
+        private int myRequests;
+        
+        /**
+         * Whether the connection is kept open after the current response.
+         */
+        private boolean myKeepAlive;
+        
+        /**
+         * The protocol used in the response (matches the request).
+         */
+        private String myProtocol = "HTTP/1.0";
+        
+        /**
+         * Set once the connection has been handed over to an event stream.
+         */
+        private boolean myDetached;
+        
+        /**
+         * Bytes read past the end of the previous request, i.e. the start of a pipelined one (or null).
+         */
+        private byte[] myPending;
 
         public HTTPSession(Socket s) {
             this.mySocket = s;
             
+            // (responses are already written in as few segments as possible)
+            try {
+                s.setTcpNoDelay(true);
+            } catch (SocketException exc) {
+                // ignore
+            }
+            
+            s_connectionRate.incr();
+            
+            staticThreadPool().execute(this);
+        }
+        
+        @Override
+        public void resume() {
             staticThreadPool().execute(this);
         }
 
         public void run() {
+            boolean reuse = false;
+            
+            try {
+                reuse = serveOne();
+                
+            } finally {
+                if (myDetached) {
+                    // (the connection now belongs to an event stream)
+                    
+                } else if (reuse && myPending != null) {
+                    // the next request has already (at least partly) arrived
+                    resume();
+                    
+                } else if (reuse) {
+                    // wait for the next request without holding onto this thread
+                    try {
+                        KeepAliveReactor.shared().park(this.mySocket.getChannel(), this);
+                        
+                    } catch (Exception exc) {
+                        Stream.safeClose(this.mySocket);
+                    }
+                    
+                } else {
+                    Stream.safeClose(this.mySocket);
+                }
+            }
+        }
+
+        /**
+         * Serves one request.
+         * 
+         * @return true if the connection can be reused.
+         */
+        private boolean serveOne() {
             long startTime = System.nanoTime();
             
             String uri = null;
             
+            // (error responses always close the connection)
+            myKeepAlive = false;
+            
             try {
                 InputStream is = null;
                 InputStream stream = this.mySocket.getInputStream();
                 
                 is = (stream == null ? null : new CountableInputStream(stream, SharableMeasurementProvider.Null.INSTANCE, s_dataRecvRate));
                 if (stream == null)
-                    return;
+                    return false;
 
                 // Read the first 8192 bytes.
                 // The full header should fit in here.
                 // Apache's default header limit is 8KB.
                 int bufsize = 8192;
                 byte[] buf = new byte[bufsize];
-                int rlen = is.read(buf, 0, bufsize);
-                if (rlen <= 0)
-                    return;
+                int rlen;
+                
+                if (myPending != null) {
+                    // (pipelined, so start with what was read past the previous request)
+                    rlen = myPending.length;
+                    System.arraycopy(myPending, 0, buf, 0, rlen);
+                    myPending = null;
+                    
+                    if (indexOfHeaderEnd(buf, rlen) < 0) {
+                        int more = is.read(buf, rlen, bufsize - rlen);
+                        if (more > 0)
+                            rlen += more;
+                    }
+                    
+                } else {
+                    rlen = is.read(buf, 0, bufsize);
+                    if (rlen <= 0)
+                        return false;
+                }
+                
+                s_requestRate.incr();
+                myRequests++;
 
                 // Create a BufferedReader for parsing the header.
                 ByteArrayInputStream hbis = new ByteArrayInputStream(buf, 0, rlen);
@@ -531,12 +687,24 @@ public class NanoHTTPD {
                 decodeHeader(hin, pre, parms, header);
                 String method = pre.getProperty("method");
                 uri = pre.getProperty("uri");
+                
+                // HTTP/1.1 connections persist unless asked not to, HTTP/1.0 ones only if asked to
+                String connection = header.getProperty("connection");
+                boolean http11 = "HTTP/1.1".equals(pre.getProperty("protocol"));
+                myProtocol = http11 ? "HTTP/1.1" : "HTTP/1.0";
+                boolean keepAlive = http11 ? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+                
+                // (chunked bodies aren't understood so they can only end with the connection)
+                if (header.getProperty("transfer-encoding") != null)
+                    keepAlive = false;
 
                 long size = 0x7FFFFFFFFFFFFFFFl;
+                boolean knownLength = false;
                 String contentLength = header.getProperty("content-length");
                 if (contentLength != null) {
                     try {
                         size = Integer.parseInt(contentLength);
+                        knownLength = true;
                     } catch (NumberFormatException ex) {
                     }
                 }
@@ -558,24 +726,41 @@ public class NanoHTTPD {
                 // Write the part of body already read to ByteArrayOutputStream
                 // f
                 ByteArrayOutputStream f = new ByteArrayOutputStream();
-                if (splitbyte < rlen)
-                    f.write(buf, splitbyte, rlen - splitbyte);
-
-                // While Firefox sends on the first read all the data fitting
-                // our buffer, Chrome and Opera sends only the headers even if
-                // there is data for the body. So we do some magic here to find
-                // out whether we have already consumed part of body, if we
-                // have reached the end of the data to be sent or we should
-                // expect the first byte of the body at the next read.
-                if (splitbyte < rlen)
-                    size -= rlen - splitbyte + 1;
-                else if (!sbfound || size == 0x7FFFFFFFFFFFFFFFl)
-                    size = 0;
+                
+                // (NODEL) on a persistent connection, anything past the body is the next request so is kept for it;
+                // without a length a persistent request has no body
+                int bodyRead = splitbyte < rlen ? rlen - splitbyte : 0;
+                if (keepAlive || knownLength) {
+                    int bodyInBuf = knownLength ? (int) Math.min(bodyRead, size) : 0;
+                    
+                    f.write(buf, splitbyte, bodyInBuf);
+                    
+                    if (bodyRead > bodyInBuf)
+                        myPending = Arrays.copyOfRange(buf, splitbyte + bodyInBuf, rlen);
+                    
+                    size = knownLength ? size - bodyInBuf : 0;
+                    
+                } else {
+                    if (bodyRead > 0)
+                        f.write(buf, splitbyte, bodyRead);
+
+                    // While Firefox sends on the first read all the data fitting
+                    // our buffer, Chrome and Opera sends only the headers even if
+                    // there is data for the body. So we do some magic here to find
+                    // out whether we have already consumed part of body, if we
+                    // have reached the end of the data to be sent or we should
+                    // expect the first byte of the body at the next read.
+                    if (bodyRead > 0)
+                        size -= bodyRead;
+                    else if (!sbfound || size == 0x7FFFFFFFFFFFFFFFl)
+                        size = 0;
+                }
 
                 // Now read all the body and write it to f
                 buf = new byte[512];
                 while (rlen >= 0 && size > 0) {
-                    rlen = is.read(buf, 0, 512);
+                    // (never read past the body, the next request may follow)
+                    rlen = is.read(buf, 0, (int) Math.min(512, size));
                     size -= rlen;
                     if (rlen > 0)
                         f.write(buf, 0, rlen);
@@ -634,15 +819,29 @@ public class NanoHTTPD {
                 Response r = serve(uri, null, method, parms, new Request(uri, method, parms, header, files, fbuf, this.mySocket));
                 if (r == null)
                     sendError(HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: Serve() returned a null response.");
-                else
-                    sendResponse(r.status, r.mimeType, r.header, r.data);
                 
-                in.close();
-                is.close();
+                // event streams take over the connection
+                if (r instanceof EventStream) {
+                    myDetached = startEventStream((EventStream) r);
+                    return false;
+                }
+                
+                // keep the connection if the client wants to, the response allows it and limits aren't reached
+                myKeepAlive = keepAlive && size <= 0 && KEEPALIVE_TIMEOUT > 0 && myRequests < KEEPALIVE_MAX
+                        && this.mySocket.getChannel() != null && KeepAliveReactor.shared().size() < MAX_IDLE_CONNECTIONS 
+                        && !"close".equalsIgnoreCase(r.header.getProperty("Connection"));
                 
+                // (static files are compressed by 'serveFile')
+                compressIfAccepted(r, header);
+                
+                boolean sent = sendResponse(r.status, r.mimeType, r.header, r.data);
+                
+                in.close();
                 
                 logger.debug("Finished serving (took {}). URI='{}'", DateTimes.formatPeriod(startTime), uri);
                 
+                return sent && myKeepAlive;
+                
             } catch (IOException ioe) {
                 try {
                     logger.info(String.format("Serving failure (took %s). URI='%s'", DateTimes.formatPeriod(startTime), uri), ioe);
@@ -653,6 +852,20 @@ public class NanoHTTPD {
             } catch (InterruptedException ie) {
                 // Thrown by sendError, ignore and exit the thread.
             }
+            
+            return false;
+        }
+
+        /**
+         * (NODEL) Returns the index just past the blank line ending the headers, or -1 if it hasn't arrived.
+         */
+        private int indexOfHeaderEnd(byte[] buf, int len) {
+            for (int i = 0; i + 3 < len; i++) {
+                if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n')
+                    return i + 4;
+            }
+            
+            return -1;
         }
 
         /**
@@ -686,8 +899,9 @@ public class NanoHTTPD {
                     uri = decodePercent(uri);
                 
                 // (NODEL) safely skip next token which should be the AUTHORITY field
+                // (it's actually the protocol version, used for keep-alive)
                 if (st.hasMoreTokens())
-                    st.nextToken();
+                    pre.put("protocol", st.nextToken());
                 
                 // (NODEL there should be no more tokens otherwise it's a bad URI containing spaces)
                 if (st.hasMoreTokens())
@@ -924,17 +1138,61 @@ public class NanoHTTPD {
             throw new InterruptedException();
         }
 
+        /**
+         * Sends the headers of an event stream then hands the connection over to it.
+         * 
+         * @return true if it was handed over.
+         */
+        private boolean startEventStream(EventStream stream) {
+            try {
+                OutputStream out = new BufferedOutputStream(new CountableOutputStream(this.mySocket.getOutputStream(), SharableMeasurementProvider.Null.INSTANCE, s_dataSendRate), theBufferSize);
+                
+                StringBuilder sb = new StringBuilder();
+                sb.append(myProtocol).append(' ').append(stream.status).append(" \r\n");
+                sb.append("Content-Type: ").append(stream.mimeType).append("\r\n");
+                sb.append("Date: ").append(gmtFrmt.format(new Date())).append("\r\n");
+                
+                Enumeration<?> e = stream.header.keys();
+                while (e.hasMoreElements()) {
+                    String key = (String) e.nextElement();
+                    if (!key.equalsIgnoreCase("Connection") && !key.equalsIgnoreCase("Content-Length"))
+                        sb.append(key).append(": ").append(stream.header.getProperty(key)).append("\r\n");
+                }
+                
+                // (no length, the stream ends when the connection does)
+                sb.append("Connection: close\r\n\r\n");
+                
+                out.write(sb.toString().getBytes(UTF8Charset.instance()));
+                out.flush();
+                
+                stream.attach(this.mySocket, out);
+                
+                return true;
+                
+            } catch (IOException exc) {
+                stream.close();
+                
+                return false;
+            }
+        }
+
         /**
          * Sends given response to the socket.
+         * 
+         * @return true if it was fully sent.
          */
-        private void sendResponse(String status, String mime, Properties header, InputStream data) {
+        private boolean sendResponse(String status, String mime, Properties header, InputStream data) {
             try {
                 if (status == null)
                     throw new Error("sendResponse(): Status can't be null.");
 
-                OutputStream out = new CountableOutputStream(this.mySocket.getOutputStream(), SharableMeasurementProvider.Null.INSTANCE, s_dataSendRate);
-                PrintWriter pw = new PrintWriter(out);
-                pw.print("HTTP/1.0 " + status + " \r\n");
+                // (buffered so the headers and small responses leave in one segment, which matters with persistent connections)
+                OutputStream out = new BufferedOutputStream(new CountableOutputStream(this.mySocket.getOutputStream(), SharableMeasurementProvider.Null.INSTANCE, s_dataSendRate), theBufferSize);
+                
+                // (headers are collected separately so flushing the writer doesn't flush the socket)
+                ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+                PrintWriter pw = new PrintWriter(headerBytes);
+                pw.print(myProtocol + " " + status + " \r\n");
 
                 if (mime != null)
                     pw.print("Content-Type: " + mime + "\r\n");
@@ -942,25 +1200,54 @@ public class NanoHTTPD {
                 if (header == null || header.getProperty("Date") == null)
                     pw.print("Date: " + gmtFrmt.format(new Date()) + "\r\n");
 
+                boolean hasContentLength = false;
+                
                 if (header != null) {
                     Enumeration<?> e = header.keys();
                     while (e.hasMoreElements()) {
                         String key = (String) e.nextElement();
+                        
+                        // (dealt with below)
+                        if (key.equalsIgnoreCase("Connection"))
+                            continue;
+                        
+                        if (key.equalsIgnoreCase("Content-Length"))
+                            hasContentLength = true;
+                        
                         String value = header.getProperty(key);
                         pw.print(key + ": " + value + "\r\n");
                     }
                 }
+                
+                // persistent connections need the length to know where the response ends
+                // (the data's 'available' is what is sent, see below)
+                if (!hasContentLength)
+                    pw.print("Content-Length: " + (data instanceof FileBody ? ((FileBody) data).remaining() : data != null ? data.available() : 0) + "\r\n");
+                
+                if (myKeepAlive) {
+                    pw.print("Connection: keep-alive\r\n");
+                    pw.print("Keep-Alive: timeout=" + (KEEPALIVE_TIMEOUT / 1000) + ", max=" + (KEEPALIVE_MAX - myRequests) + "\r\n");
+                } else {
+                    pw.print("Connection: close\r\n");
+                }
 
                 pw.print("\r\n");
                 pw.flush();
+                out.write(headerBytes.toByteArray());
 
-                if (data != null) {
-                    int pending = data.available(); // This is to support
+                if (data instanceof FileBody && ((FileBody) data).remaining() >= theBufferSize && this.mySocket.getChannel() != null) {
+                    // file content goes straight from the file system to the socket
+                    // (smaller ones are copied below so they leave with the headers)
+                    out.flush();
+                    s_dataSendRate.add(((FileBody) data).transferTo(this.mySocket.getChannel()));
+                    
+                } else if (data != null) {
+                    long pending = (data instanceof FileBody ? ((FileBody) data).remaining() : data.available()); // This is to support
                     // partial sends, see
                     // serveFile()
                     byte[] buff = new byte[theBufferSize];
                     while (pending > 0) {
-                        int read = data.read(buff, 0, ((pending > theBufferSize) ? theBufferSize : pending));
+                        int read = data.read(buff, 0, (int) ((pending > theBufferSize) ? theBufferSize : pending));
                         if (read <= 0)
                             break;
                         out.write(buff, 0, read);
@@ -968,13 +1255,19 @@ public class NanoHTTPD {
                     }
                 }
                 out.flush();
-                out.close();
+                
+                // (the socket is closed or parked by the session)
+                return true;
+                
             } catch (IOException ioe) {
                 // Couldn't write? No can do.
                 try {
                     mySocket.close();
                 } catch (Throwable t) {
                 }
+                
+                return false;
+                
             } finally {
                 // make sure 'data' stream is always cleaned up regardless
                 Stream.safeClose(data);
@@ -982,6 +1275,145 @@ public class NanoHTTPD {
         }
     }
 
+    /**
+     * Parses a 'Range' header into inclusive [first, last] pairs, e.g. "bytes=0-499,1000-" or "bytes=-500" (the last
+     * 500 bytes).
+     * 
+     * @return null if it's invalid or there are too many (the whole file is sent), empty if none can be satisfied.
+     */
+    private static List<long[]> parseRanges(String range, long fileLen) {
+        if (!range.startsWith("bytes="))
+            return null;
+
+        String[] specs = range.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES)
+            return null;
+
+        List<long[]> result = new ArrayList<long[]>(specs.length);
+
+        for (String spec : specs) {
+            spec = spec.trim();
+
+            int minus = spec.indexOf('-');
+            if (minus < 0)
+                return null;
+
+            long first;
+            long last;
+
+            try {
+                if (minus == 0) {
+                    // (a suffix)
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0)
+                        continue;
+
+                    first = Math.max(0, fileLen - suffix);
+                    last = fileLen - 1;
+
+                } else {
+                    first = Long.parseLong(spec.substring(0, minus));
+
+                    String end = spec.substring(minus + 1);
+                    if (end.length() == 0) {
+                        last = fileLen - 1;
+
+                    } else {
+                        last = Long.parseLong(end);
+                        if (last < first)
+                            return null;
+
+                        last = Math.min(last, fileLen - 1);
+                    }
+                }
+
+            } catch (NumberFormatException exc) {
+                return null;
+            }
+
+            if (first >= fileLen)
+                continue;
+
+            result.add(new long[] { first, last });
+        } // (for)
+
+        return result;
+    }
+
+    /**
+     * Gzip compresses a text response (in memory) if the client accepts it and it's worthwhile. Responses with an
+     * explicit length or encoding (e.g. files, partial content) are left alone.
+     */
+    private static void compressIfAccepted(Response r, Properties requestHeader) throws IOException {
+        if (GZIP_MIN_SIZE < 0 || r.data == null || !isCompressible(r.mimeType)
+                || r.header.getProperty("Content-Length") != null || r.header.getProperty("Content-Encoding") != null)
+            return;
+
+        // (as 'sendResponse', 'available' is what is sent)
+        int length = r.data.available();
+        if (length < GZIP_MIN_SIZE || length > GZIP_MAX_SIZE)
+            return;
+
+        r.addHeader("Vary", "Accept-Encoding");
+
+        if (!acceptsGzip(requestHeader.getProperty("accept-encoding")))
+            return;
+
+        byte[] raw = Stream.readFullyIntoBuffer(r.data, length);
+        Stream.safeClose(r.data);
+
+        byte[] compressed = GzipAssetCache.gzip(raw, 0, raw.length);
+
+        r.data = new ByteArrayInputStream(compressed);
+        r.addHeader("Content-Encoding", "gzip");
+        s_gzipRate.incr();
+    }
+
+    /**
+     * Whether content of a MIME type is worth compressing (text, scripts, JSON, XML and fonts).
+     */
+    private static boolean isCompressible(String mime) {
+        if (mime == null)
+            return false;
+
+        String lower = mime.toLowerCase();
+
+        return lower.startsWith("text/") || lower.contains("javascript") || lower.contains("json") || lower.contains("xml")
+                || lower.startsWith("font/") || lower.contains("fontobject");
+    }
+
+    /**
+     * Whether an 'Accept-Encoding' request header allows gzip, e.g. "gzip, deflate, br" (but not "gzip;q=0")
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim();
+
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*"))
+                continue;
+
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        if (Double.parseDouble(param.substring(2)) <= 0)
+                            return false;
+                    } catch (NumberFormatException exc) {
+                        // ignore
+                    }
+                }
+            }
+
+            return true;
+        } // (for)
+
+        return false;
+    }
+
     /**
      * URL-encodes everything between "/"-characters. Encodes spaces as '%20'
      * instead of '+'.
@@ -1155,65 +1587,82 @@ public class NanoHTTPD {
                 // Calculate etag
                 String etag = Integer.toHexString((f.getAbsolutePath() + f.lastModified() + "" + f.length()).hashCode());
 
-                // Support (simple) skipping:
-                long startFrom = 0;
-                long endAt = -1;
-                String range = header.getProperty("range");
-                if (range != null) {
-                    if (!noFallback)
-                        return new Response(HTTP_INTERNALERROR, MIME_PLAINTEXT, "INTERNAL ERROR: 'range' not supported in this context.");
-                    
-                    if (range.startsWith("bytes=")) {
-                        range = range.substring("bytes=".length());
-                        int minus = range.indexOf('-');
-                        try {
-                            if (minus > 0) {
-                                startFrom = Long.parseLong(range.substring(0, minus));
-                                endAt = Long.parseLong(range.substring(minus + 1));
-                            }
-                        } catch (NumberFormatException nfe) {
-                        }
-                    }
-                }
-
-                // Change return code and add Content-Range header when skipping
-                // is requested
                 long fileLen = f.length();
-                if (range != null && startFrom >= 0) {
-                    if (startFrom >= fileLen) {
-                        res = new Response(HTTP_RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, "");
-                        res.addHeader("Content-Range", "bytes 0-0/" + fileLen);
-                        res.addHeader("ETag", etag);
-                    } else {
-                        if (endAt < 0)
-                            endAt = fileLen - 1;
-                        long newLen = endAt - startFrom + 1;
-                        if (newLen < 0)
-                            newLen = 0;
-
-                        final long dataLen = newLen;
-                        FileInputStream fis = new FileInputStream(f) {
-                            
-                            public int available() throws IOException {
-                                return (int) dataLen;
-                            }
-                            
-                        };
-                        fis.skip(startFrom);
 
-                        res = new Response(HTTP_PARTIALCONTENT, mime, fis);
-                        res.addHeader("Content-Length", "" + dataLen);
-                        res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + fileLen);
-                        res.addHeader("ETag", etag);
+                // ranges only apply to the raw file and only while 'If-Range' still matches
+                // (internal reads, i.e. 'noFallback', always get the whole file)
+                String range = (noFallback ? null : header.getProperty("range"));
+                String ifRange = header.getProperty("if-range");
+                if (range != null && ifRange != null && !ifRange.equals(etag))
+                    range = null;
+
+                List<long[]> ranges = (range != null ? parseRanges(range, fileLen) : null);
+
+                if (ranges != null && ranges.isEmpty()) {
+                    res = new Response(HTTP_RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT, "");
+                    res.addHeader("Content-Range", "bytes */" + fileLen);
+                    res.addHeader("ETag", etag);
+                    
+                } else if (ranges != null && ranges.size() == 1) {
+                    long[] only = ranges.get(0);
+                    
+                    FileBody body = new FileBody(f);
+                    body.addRegion(only[0], only[1] - only[0] + 1);
+
+                    res = new Response(HTTP_PARTIALCONTENT, mime, body);
+                    res.addHeader("Content-Length", "" + body.length());
+                    res.addHeader("Content-Range", "bytes " + only[0] + "-" + only[1] + "/" + fileLen);
+                    res.addHeader("ETag", etag);
+                    
+                } else if (ranges != null) {
+                    // multiple ranges go in a 'multipart/byteranges' body
+                    String boundary = "NODEL_" + Long.toHexString(System.nanoTime());
+                    
+                    FileBody body = new FileBody(f);
+                    for (long[] part : ranges) {
+                        body.addBytes(("\r\n--" + boundary + "\r\n" +
+                                "Content-Type: " + mime + "\r\n" + 
+                                "Content-Range: bytes " + part[0] + "-" + part[1] + "/" + fileLen + "\r\n\r\n").getBytes(UTF8Charset.instance()));
+                        body.addRegion(part[0], part[1] - part[0] + 1);
                     }
+                    body.addBytes(("\r\n--" + boundary + "--\r\n").getBytes(UTF8Charset.instance()));
+                    
+                    res = new Response(HTTP_PARTIALCONTENT, "multipart/byteranges; boundary=" + boundary, body);
+                    res.addHeader("Content-Length", "" + body.length());
+                    res.addHeader("ETag", etag);
+                    
                 } else {
-                    if (!noFallback && etag.equals(header.getProperty("if-none-match")))
+                    // use a cached, compressed copy if the client accepts it
+                    // (the raw content is always used internally i.e. 'noFallback')
+                    byte[] compressed = null;
+                    boolean compressible = !noFallback && GZIP_MIN_SIZE >= 0 && GzipAssetCache.isEnabled() && isCompressible(mime);
+                    if (compressible && acceptsGzip(header.getProperty("accept-encoding")))
+                        compressed = GzipAssetCache.shared().get(f, etag, GZIP_MIN_SIZE);
+                    
+                    // (the compressed variant has its own ETag)
+                    String ifNoneMatch = header.getProperty("if-none-match");
+                    
+                    if (!noFallback && ifNoneMatch != null && (ifNoneMatch.equals(etag) || ifNoneMatch.equals(etag + "-gz")))
                         res = new Response(HTTP_NOTMODIFIED, mime, "");
-                    else {
-                        res = new Response(HTTP_OK, mime, new FileInputStream(f));
+                    
+                    else if (compressed != null) {
+                        res = new Response(HTTP_OK, mime, new ByteArrayInputStream(compressed));
+                        res.addHeader("Content-Length", "" + compressed.length);
+                        res.addHeader("Content-Encoding", "gzip");
+                        res.addHeader("ETag", etag + "-gz");
+                        s_gzipRate.incr();
+                        
+                    } else {
+                        FileBody body = new FileBody(f);
+                        body.addRegion(0, fileLen);
+                        
+                        res = new Response(HTTP_OK, mime, body);
                         res.addHeader("Content-Length", "" + fileLen);
                         res.addHeader("ETag", etag);
                     }
+                    
+                    if (compressible)
+                        res.addHeader("Vary", "Accept-Encoding");
                 }
             }
         } catch (IOException ioe) {
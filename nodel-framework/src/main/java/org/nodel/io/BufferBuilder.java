@@ -118,23 +118,25 @@ public class BufferBuilder {
      * Returns a UTF8 encoded trimmed string or null if its empty
      */
     public String getTrimmedString() {
-        int end = _size;
-        if (end > 0) {
-            // trim
-            int offset = 0;
-            while (offset < end && _buffer[offset] <= ' ')
-                offset++;
-
-            while (offset < end && _buffer[end - 1] <= ' ')
-                end--;
-
-            // make sure there still something after the
-            if (offset < end) {
-                // String trimmed = new String(_buffer, offset, end - offset, UTF8Charset.instance());
-                String trimmed = bufferToString(_buffer, offset, end-offset);
-                return trimmed;
-            }
-        }
+        return getTrimmedString(_buffer, 0, _size);
+    }
+    
+    /**
+     * (as above, for any buffer segment)
+     */
+    public static String getTrimmedString(byte[] buffer, int offset, int len) {
+        int end = offset + len;
+        
+        // trim
+        while (offset < end && buffer[offset] <= ' ')
+            offset++;
+
+        while (offset < end && buffer[end - 1] <= ' ')
+            end--;
+
+        // make sure there still something after the
+        if (offset < end)
+            return bufferToString(buffer, offset, end - offset);
         
         return null;
     }
@@ -152,11 +154,11 @@ public class BufferBuilder {
     }
 
     private static String bufferToString(byte[] buffer, int offset, int len) {
-        StringBuilder sb = new StringBuilder();
+        char[] cBuffer = new char[len];
         for (int a = 0; a < len; a++)
-            sb.append((char) (buffer[offset + a] & 0xff));
+            cBuffer[a] = (char) (buffer[offset + a] & 0xff);
 
-        return sb.toString();
+        return new String(cBuffer);
     }
 
 }
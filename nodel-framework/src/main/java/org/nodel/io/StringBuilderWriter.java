@@ -0,0 +1,76 @@
+package org.nodel.io;
+
+/* 
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
+ */
+
+import java.io.Writer;
+
+/**
+ * A writer over a StringBuilder (think StringWriter without the locking)
+ * (not thread-safe)
+ */
+public class StringBuilderWriter extends Writer {
+    
+    /**
+     * The underlying builder.
+     */
+    private StringBuilder _sb;
+    
+    public StringBuilderWriter() {
+        this(new StringBuilder());
+    }
+    
+    public StringBuilderWriter(StringBuilder sb) {
+        _sb = sb;
+    }
+    
+    /**
+     * The underlying builder.
+     */
+    public StringBuilder getBuilder() {
+        return _sb;
+    }
+
+    @Override
+    public void write(int c) {
+        _sb.append((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        _sb.append(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str) {
+        _sb.append(str);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        _sb.append(str, off, off + len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        _sb.append(csq);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+    
+    @Override
+    public String toString() {
+        return _sb.toString();
+    }
+
+}
@@ -6,10 +6,13 @@ package org.nodel.logging;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.nodel.Handler;
+import org.nodel.Handlers;
+import org.nodel.SeqRingBuffer;
+
 /**
  * A class designed to be used as a singleton to publish logs at run-time.
  */
@@ -28,15 +31,26 @@ public class Logging {
     }
     
     /**
-     * Instance lock / signal.
+     * How many logs are kept.
+     */
+    private final static int MAX_LOGS = 3000;
+    
+    /**
+     * Serialises writers (and streamer registration); readers never take it.
      */
     private Object lock = new Object();
     
     /**
      * Holds the event logs.
-     * (locked around self)
+     * (appended to within 'lock', replaced when cleared)
      */
-    private LinkedList<LogEntry> logs = new LinkedList<LogEntry>();
+    private volatile SeqRingBuffer<LogEntry> logs = new SeqRingBuffer<LogEntry>(MAX_LOGS, 0);
+    
+    /**
+     * Holds log streamers.
+     * (locked around 'lock')
+     */
+    private Handlers.H1<LogEntry> streamerHandlers = new Handlers.H1<LogEntry>();
 
     /**
      * (constructor)
@@ -47,10 +61,13 @@ public class Logging {
     
     public void addLog(LogEntry entry) {
         synchronized(this.lock) {
-            this.logs.add(entry);
+            // (re-stamped so sequence numbers follow insertion order, entries can be created concurrently)
+            entry.seq = this.logs.nextSeq();
+            
+            // (oldest are overwritten)
+            this.logs.append(entry);
             
-            if (this.logs.size() > 3000)
-                this.logs.removeFirst();
+            this.streamerHandlers.updateAllUnsynchronized(entry);
         }
     } // (method)
     
@@ -58,21 +75,8 @@ public class Logging {
      * Retrieves logs.
      */
     public List<LogEntry> getLogs(long from, int max) {
-        LinkedList<LogEntry> batch = new LinkedList<LogEntry>();
-
-        synchronized (this.lock) {
-            Iterator<LogEntry> inReverse = this.logs.descendingIterator();
-            while (inReverse.hasNext()) {
-                LogEntry entry = inReverse.next();
-                if (entry.seq >= from)
-                    batch.add(entry);
-
-                if (entry.seq < from || batch.size() >= max)
-                    break;
-            } // (while)
-
-            return batch;
-        }
+        // (lock-free, newest first)
+        return this.logs.sinceNewestFirst(from, max);
     } // (method)
     
     /**
@@ -87,30 +91,56 @@ public class Logging {
      * (internal use)
      */
     private List<LogEntry> getLogsByLevel(long from, int max, Level filterLevel) {
-        LinkedList<LogEntry> batch = new LinkedList<LogEntry>();
+        List<LogEntry> batch = new ArrayList<LogEntry>();
         
-        synchronized (this.lock) {
-            Iterator<LogEntry> inReverse = this.logs.descendingIterator();
-            while (inReverse.hasNext()) {
-                LogEntry entry = inReverse.next();
-                // if (entry.seq >= from && entry.level.isAtLeastAsSpecificAs(filterLevel))
-                if (entry.seq >= from && entry.level.isMoreSpecificThan(filterLevel))
-                    batch.add(entry);
+        // (lock-free, newest first by sequence number)
+        SeqRingBuffer<LogEntry> logs = this.logs;
+        long end = Math.max(from, logs.oldestSeq());
+        
+        for (long seq = logs.nextSeq() - 1; seq >= end && batch.size() < max; seq--) {
+            LogEntry entry = logs.get(seq);
+            
+            // (anything older has been overwritten too)
+            if (entry == null)
+                break;
+            
+            // if (entry.level.isAtLeastAsSpecificAs(filterLevel))
+            if (entry.level.isMoreSpecificThan(filterLevel))
+                batch.add(entry);
+        } // (for)
 
-                if (entry.seq < from || batch.size() >= max)
-                    break;
-            } // (while)
+        return batch;
+    } // (method)   
 
-            return batch;
+    /**
+     * Adds a log streamer, first passing it up to 'max' recent logs (since 'from', oldest first) so nothing is missed.
+     * (handler must not block)
+     */
+    public void registerLogHandler(Handler.H1<LogEntry> handler, long from, int max) {
+        synchronized (this.lock) {
+            this.streamerHandlers.addHandler(handler);
+            
+            for (LogEntry entry : this.logs.since(from, max))
+                handler.handle(entry);
         }
-    } // (method)   
+    } // (method)
+    
+    /**
+     * Removes a log streamer.
+     */
+    public void unregisterLogHandler(Handler.H1<LogEntry> handler) {
+        synchronized (this.lock) {
+            this.streamerHandlers.removeHandler(handler);
+        }
+    } // (method)
 
     /**
      * Clears all logs.
      */
     public void clear() {
         synchronized(this.lock) {
-            this.logs.clear();
+            // (carries on the sequence numbers)
+            this.logs = new SeqRingBuffer<LogEntry>(MAX_LOGS, this.logs.nextSeq());
         }
     } // (method)    
 
@@ -0,0 +1,500 @@
+package org.nodel.net;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.nodel.SimpleName;
+import org.nodel.Strings;
+import org.nodel.SystemProperties;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.io.UTF8Charset;
+import org.nodel.io.UnexpectedIOException;
+
+/**
+ * An in-memory cache of GET responses shared by all HTTP clients, honouring 'Cache-Control', 'Expires', 'ETag' and
+ * 'Last-Modified' (stale entries with validators are revalidated using a conditional request).
+ *
+ * Concurrent identical requests are coalesced, i.e. only one goes upstream and the rest share its result (waiting no
+ * longer than their own read timeout). Being shared, 'private' responses are never stored.
+ *
+ * Opt-in, only enabled when 'org.nodel.http.cacheMaxEntries' is set.
+ */
+public class HTTPResponseCache {
+
+    /**
+     * System property for the maximum number of entries (enables the cache), e.g. 'org.nodel.http.cacheMaxEntries = 500'
+     */
+    public final static String MAXENTRIES_SYSTEMPROP = "org.nodel.http.cacheMaxEntries";
+
+    /**
+     * Optional system property for the maximum (approximate) size of all the content held, e.g. 'org.nodel.http.cacheMaxBytes = 16777216'
+     */
+    public final static String MAXBYTES_SYSTEMPROP = "org.nodel.http.cacheMaxBytes";
+
+    /**
+     * (default, 16 MB)
+     */
+    private final static long DEFAULT_MAXBYTES = 16 * 1024 * 1024;
+
+    /**
+     * For 'Expires' and 'Date' headers (RFC 1123)
+     */
+    private final static DateTimeFormatter HTTP_DATE = DateTimeFormat.forPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'").withLocale(Locale.US).withZone(DateTimeZone.UTC);
+
+    /**
+     * Makes the actual (upstream) request.
+     */
+    public interface Fetcher {
+
+        /**
+         * @param conditionalHeaders any validator headers to add to the request (or empty)
+         */
+        public HTTPSimpleResponse fetch(Map<String, String> conditionalHeaders);
+
+    } // (interface)
+
+    /**
+     * A cached response.
+     */
+    private static class CacheEntry {
+
+        public HTTPSimpleResponse response;
+
+        public String etag;
+
+        public String lastModified;
+
+        /**
+         * (based on 'currentTimeMillis')
+         */
+        public long expires;
+
+        /**
+         * (approximate)
+         */
+        public long size;
+
+    } // (class)
+
+    /**
+     * An upstream request in progress that others can wait on.
+     */
+    private static class Flight {
+
+        public boolean done;
+
+        public HTTPSimpleResponse response;
+
+        public RuntimeException exception;
+
+    } // (class)
+
+    /**
+     * (instance, see 'shared')
+     */
+    private static HTTPResponseCache s_instance;
+
+    /**
+     * (whether 's_instance' has been resolved)
+     */
+    private static boolean s_initialised;
+
+    /**
+     * The entries, least recently used first.
+     * (locked around '_lock')
+     */
+    private LinkedHashMap<String, CacheEntry> _entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    /**
+     * Requests in progress, by key.
+     * (locked around '_lock')
+     */
+    private Map<String, Flight> _flights = new HashMap<String, Flight>();
+
+    /**
+     * (see '_entries', '_flights')
+     */
+    private Object _lock = new Object();
+
+    /**
+     * (see related system property)
+     */
+    private int _maxEntries;
+
+    /**
+     * (see related system property)
+     */
+    private long _maxBytes;
+
+    /**
+     * Total size of the content held.
+     * (locked around '_lock')
+     */
+    private long _bytes;
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterHits = Diagnostics.shared().registerSharableCounter("HTTP client.Cache hits", true);
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterRevalidations = Diagnostics.shared().registerSharableCounter("HTTP client.Cache revalidations", true);
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterMisses = Diagnostics.shared().registerSharableCounter("HTTP client.Cache misses", true);
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterCoalesced = Diagnostics.shared().registerSharableCounter("HTTP client.Coalesced requests", true);
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterEntries = Diagnostics.shared().registerSharableCounter("HTTP client.Cache entries", false);
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterBytes = Diagnostics.shared().registerSharableCounter("HTTP client.Cache bytes", false);
+
+    public HTTPResponseCache(int maxEntries, long maxBytes) {
+        _maxEntries = maxEntries;
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the shared cache or null if it hasn't been enabled (see 'MAXENTRIES_SYSTEMPROP').
+     */
+    public static HTTPResponseCache shared() {
+        synchronized (HTTPResponseCache.class) {
+            if (!s_initialised) {
+                s_initialised = true;
+
+                long maxEntries = SystemProperties.longProperty(MAXENTRIES_SYSTEMPROP, 0);
+                if (maxEntries > 0)
+                    s_instance = new HTTPResponseCache((int) maxEntries, SystemProperties.longProperty(MAXBYTES_SYSTEMPROP, DEFAULT_MAXBYTES));
+            }
+
+            return s_instance;
+        }
+    }
+
+    /**
+     * Returns the key for a request or null if it can't be cached (only plain GETs without 'no-cache' / 'no-store'
+     * request directives can be).
+     */
+    public static String keyFor(String method, String fullURL, String username, String password, Map<String, String> headers, String body) {
+        if (!(Strings.isBlank(method) || "GET".equals(method)) || !Strings.isEmpty(body))
+            return null;
+
+        // the key includes everything that could affect the response
+        StringBuilder sb = new StringBuilder(fullURL);
+        sb.append('\n').append(username).append('\n').append(password != null ? digest(password) : "");
+
+        if (headers != null) {
+            TreeMap<String, String> sorted = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            sorted.putAll(headers);
+
+            String cacheControl = sorted.get("Cache-Control");
+            if (cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("no-store")))
+                return null;
+
+            for (Entry<String, String> entry : sorted.entrySet())
+                sb.append('\n').append(entry.getKey().toLowerCase()).append(':').append(entry.getValue());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * A SHA-256 digest, as hex, so credentials are distinguished exactly without being held in plain text.
+     */
+    private static String digest(String value) {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF8Charset.instance()));
+
+        } catch (NoSuchAlgorithmException exc) {
+            // (every Java platform is required to support SHA-256)
+            throw new IllegalStateException(exc);
+        }
+
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns a fresh cached response, otherwise makes the request (conditionally if a stale entry can be revalidated)
+     * or waits for an identical one already in progress.
+     * 
+     * @param timeout how long to wait for an identical request (millis)
+     */
+    public HTTPSimpleResponse get(String key, int timeout, Fetcher fetcher) {
+        Flight flight;
+        CacheEntry stale;
+        boolean leader = false;
+
+        synchronized (_lock) {
+            stale = _entries.get(key);
+
+            if (stale != null && System.currentTimeMillis() < stale.expires) {
+                _counterHits.incr();
+                return copy(stale.response);
+            }
+
+            flight = _flights.get(key);
+            if (flight == null) {
+                flight = new Flight();
+                _flights.put(key, flight);
+                leader = true;
+            }
+        }
+
+        if (!leader) {
+            _counterCoalesced.incr();
+
+            return await(flight, timeout);
+        }
+
+        try {
+            flight.response = fetch(key, stale, fetcher);
+
+        } catch (RuntimeException exc) {
+            flight.exception = exc;
+        }
+
+        synchronized (_lock) {
+            _flights.remove(key);
+
+            flight.done = true;
+            _lock.notifyAll();
+        }
+
+        if (flight.exception != null)
+            throw flight.exception;
+
+        return copy(flight.response);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        synchronized (_lock) {
+            _entries.clear();
+            _bytes = 0;
+
+            _counterEntries.set(0);
+            _counterBytes.set(0);
+        }
+    }
+
+    /**
+     * Makes the upstream request and updates the cache.
+     */
+    private HTTPSimpleResponse fetch(String key, CacheEntry stale, Fetcher fetcher) {
+        Map<String, String> conditionalHeaders = new HashMap<String, String>();
+
+        if (stale != null) {
+            if (stale.etag != null)
+                conditionalHeaders.put("If-None-Match", stale.etag);
+            if (stale.lastModified != null)
+                conditionalHeaders.put("If-Modified-Since", stale.lastModified);
+        }
+
+        HTTPSimpleResponse response = fetcher.fetch(conditionalHeaders);
+
+        if (response.statusCode == 304 && stale != null) {
+            // still valid, so refresh its lifetime
+            _counterRevalidations.incr();
+
+            synchronized (_lock) {
+                stale.expires = expiresAt(response);
+            }
+
+            return stale.response;
+        }
+
+        _counterMisses.incr();
+
+        if (response.statusCode == 200)
+            store(key, response);
+
+        return response;
+    }
+
+    /**
+     * Stores a response if it's allowed and useful to.
+     */
+    private void store(String key, HTTPSimpleResponse response) {
+        String cacheControl = cacheControl(response);
+        if (cacheControl.contains("no-store") || cacheControl.contains("private"))
+            return;
+
+        CacheEntry entry = new CacheEntry();
+        entry.response = response;
+        entry.etag = response.getFirstHeader("ETag");
+        entry.lastModified = response.getFirstHeader("Last-Modified");
+        entry.expires = expiresAt(response);
+        entry.size = 2 * (response.content != null ? response.content.length() : 0);
+
+        // not worth holding if it can neither be reused as is nor revalidated
+        if (entry.expires <= System.currentTimeMillis() && entry.etag == null && entry.lastModified == null)
+            return;
+
+        if (entry.size > _maxBytes)
+            return;
+
+        synchronized (_lock) {
+            CacheEntry previous = _entries.put(key, entry);
+            if (previous != null)
+                _bytes -= previous.size;
+
+            _bytes += entry.size;
+
+            // evict the least recently used
+            Iterator<CacheEntry> i = _entries.values().iterator();
+            while ((_entries.size() > _maxEntries || _bytes > _maxBytes) && i.hasNext()) {
+                CacheEntry eldest = i.next();
+                i.remove();
+                _bytes -= eldest.size;
+            }
+
+            _counterEntries.set(_entries.size());
+            _counterBytes.set(_bytes);
+        }
+    }
+
+    /**
+     * Waits for another request to complete, timing out the same way the request itself would.
+     */
+    private HTTPSimpleResponse await(Flight flight, int timeout) {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+
+        synchronized (_lock) {
+            while (!flight.done) {
+                long remaining = (deadline - System.nanoTime()) / 1000000;
+                if (remaining <= 0)
+                    throw new UnexpectedIOException(new SocketTimeoutException("Timed out waiting for an identical request to complete."));
+
+                try {
+                    _lock.wait(remaining);
+
+                } catch (InterruptedException exc) {
+                    throw new RuntimeException("Interrupted while waiting for an identical request to complete.", exc);
+                }
+            }
+        }
+
+        if (flight.exception != null)
+            throw flight.exception;
+
+        return copy(flight.response);
+    }
+
+    /**
+     * When a response should no longer be used without revalidating (based on 'currentTimeMillis').
+     */
+    private static long expiresAt(HTTPSimpleResponse response) {
+        long now = System.currentTimeMillis();
+
+        String cacheControl = cacheControl(response);
+        if (cacheControl.contains("no-cache") || cacheControl.contains("must-revalidate") && !cacheControl.contains("max-age"))
+            return now;
+
+        int index = cacheControl.indexOf("max-age=");
+        if (index >= 0) {
+            int start = index + "max-age=".length();
+            int end = start;
+            while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end)))
+                end++;
+
+            try {
+                return now + Long.parseLong(cacheControl.substring(start, end)) * 1000;
+
+            } catch (NumberFormatException exc) {
+                return now;
+            }
+        }
+
+        // fallback to 'Expires' (relative to the server's 'Date' to allow for clock differences)
+        String expires = response.getFirstHeader("Expires");
+        if (expires != null) {
+            try {
+                long expiresMillis = HTTP_DATE.parseMillis(expires);
+
+                String date = response.getFirstHeader("Date");
+                long dateMillis = date != null ? HTTP_DATE.parseMillis(date) : now;
+
+                return now + Math.max(0, expiresMillis - dateMillis);
+
+            } catch (Exception exc) {
+                // (invalid dates mean already expired)
+                return now;
+            }
+        }
+
+        // (no explicit lifetime so always revalidate)
+        return now;
+    }
+
+    /**
+     * (lower-case, never null)
+     */
+    private static String cacheControl(HTTPSimpleResponse response) {
+        List<String> values = response.get("Cache-Control");
+        if (values == null)
+            return "";
+
+        StringBuilder sb = new StringBuilder();
+        for (String value : values)
+            sb.append(value.toLowerCase()).append(',');
+
+        return sb.toString();
+    }
+
+    /**
+     * Responses are mutable so callers always get their own copy.
+     */
+    private static HTTPSimpleResponse copy(HTTPSimpleResponse response) {
+        HTTPSimpleResponse result = new HTTPSimpleResponse();
+        result.statusCode = response.statusCode;
+        result.reasonPhrase = response.reasonPhrase;
+        result.content = response.content;
+
+        for (Entry<SimpleName, List<String>> entry : response.entrySet()) {
+            for (String value : entry.getValue())
+                result.addHeader(entry.getKey(), value);
+        }
+
+        return result;
+    }
+
+} // (class)
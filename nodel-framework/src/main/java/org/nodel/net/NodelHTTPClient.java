@@ -16,12 +16,15 @@ import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.nodel.Handler.H1;
 import org.nodel.Strings;
+import org.nodel.SystemProperties;
 import org.nodel.diagnostics.AtomicIntegerMeasurementProvider;
 import org.nodel.diagnostics.AtomicLongMeasurementProvider;
 import org.nodel.diagnostics.Diagnostics;
 import org.nodel.diagnostics.MeasurementProvider;
 import org.nodel.json.JSONObject;
+import org.nodel.threading.ThreadPool;
 
 /**
  * An HTTP client with some sensible timeouts, support for NTLM and a multi-threaded connection manager. 
@@ -86,6 +89,41 @@ public abstract class NodelHTTPClient implements Closeable {
     
     protected final static int DEFAULT_READTIMEOUT = 15000;
     
+    /**
+     * Optional system property for the connection pool size (all routes), e.g. 'org.nodel.http.maxConnTotal = 200'
+     */
+    public final static String MAXCONNTOTAL_SYSTEMPROP = "org.nodel.http.maxConnTotal";
+    
+    /**
+     * Optional system property for the connection pool size per route (host and port), e.g. 'org.nodel.http.maxConnPerRoute = 20'
+     */
+    public final static String MAXCONNPERROUTE_SYSTEMPROP = "org.nodel.http.maxConnPerRoute";
+    
+    /**
+     * Optional system property for how long a pooled connection may be idle before it's closed (millis), e.g. 'org.nodel.http.idleTimeout = 30000'
+     */
+    public final static String IDLETIMEOUT_SYSTEMPROP = "org.nodel.http.idleTimeout";
+    
+    /**
+     * (see related system property)
+     */
+    protected final static int MAX_CONN_TOTAL = SystemProperties.intProperty(MAXCONNTOTAL_SYSTEMPROP, 200);
+    
+    /**
+     * (see related system property)
+     */
+    protected final static int MAX_CONN_PER_ROUTE = SystemProperties.intProperty(MAXCONNPERROUTE_SYSTEMPROP, 20);
+    
+    /**
+     * (see related system property)
+     */
+    protected final static int IDLE_TIMEOUT = SystemProperties.intProperty(IDLETIMEOUT_SYSTEMPROP, 30000);
+    
+    /**
+     * Runs asynchronous requests (shared by all clients, lazily created)
+     */
+    private static ThreadPool s_asyncThreadPool;
+    
     /**
      * (see setter)
      */
@@ -154,6 +192,43 @@ public abstract class NodelHTTPClient implements Closeable {
                               Integer connectTimeout, Integer readTimeout) {
         HTTPSimpleResponse response = makeRequest(urlStr, method, query, username, password, headers, contentType, post, connectTimeout, readTimeout);
 
+        return simpleContent(response);
+    }
+    
+    /**
+     * Same as 'makeRequest' except the request is made on a shared thread-pool and the response or exception is
+     * passed to the given callbacks (on that pool).
+     */
+    public void makeRequestAsync(final String urlStr, final String method, final Map<String, String> query,
+                                 final String username, final String password,
+                                 final Map<String, String> headers, final String contentType, final String post,
+                                 final Integer connectTimeout, final Integer readTimeout,
+                                 final H1<HTTPSimpleResponse> onResponse, final H1<Exception> onError) {
+        asyncThreadPool().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                HTTPSimpleResponse response;
+                try {
+                    response = makeRequest(urlStr, method, query, username, password, headers, contentType, post, connectTimeout, readTimeout);
+
+                } catch (Exception exc) {
+                    if (onError != null)
+                        onError.handle(exc);
+                    return;
+                }
+
+                if (onResponse != null)
+                    onResponse.handle(response);
+            }
+
+        });
+    }
+    
+    /**
+     * Returns the content of an 'OK' response otherwise raises an exception including the content. 
+     */
+    public static String simpleContent(HTTPSimpleResponse response) {
         if (response.statusCode == HttpURLConnection.HTTP_OK) {
             // 'OK' response, just return content
             return response.content;
@@ -166,6 +241,18 @@ public abstract class NodelHTTPClient implements Closeable {
         }        
     }
     
+    /**
+     * (lazily creates the pool)
+     */
+    private static ThreadPool asyncThreadPool() {
+        synchronized (NodelHTTPClient.class) {
+            if (s_asyncThreadPool == null)
+                s_asyncThreadPool = new ThreadPool("HTTP client", MAX_CONN_TOTAL);
+
+            return s_asyncThreadPool;
+        }
+    }
+    
     /**
      * Builds up query string if args given, e.g. ...?name=My%20Name&surname=My%20Surname
      */
@@ -0,0 +1,178 @@
+package org.nodel.reflection;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+/**
+ * An accessor for a field, method or constructor, created once per member and cached alongside the rest of the
+ * reflection info so access checks are suppressed once instead of on every call.
+ *
+ * Plain reflection is used deliberately; method handles held in (non-constant) fields measured no faster than
+ * 'Field.get' on Java 8 and 17 and only on par from Java 18, where reflection itself uses method handles
+ * (see 'AccessorBenchmark' in the tools source set).
+ *
+ * Exceptions follow the reflection conventions.
+ */
+public abstract class Accessor {
+
+    /**
+     * (convenience)
+     */
+    private final static Object[] NO_ARGS = new Object[0];
+
+    /**
+     * Gets a value (fields or argument-less methods).
+     */
+    public Object get(Object target) throws IllegalAccessException, InvocationTargetException {
+        return invoke(target, NO_ARGS);
+    }
+
+    /**
+     * Sets a value (fields or single argument methods).
+     */
+    public void set(Object target, Object value) throws IllegalAccessException, InvocationTargetException {
+        invoke(target, new Object[] { value });
+    }
+
+    /**
+     * Invokes the member (target is ignored for constructors and static members).
+     */
+    public abstract Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException;
+
+    /**
+     * Creates an accessor that reads a field or calls an argument-less method.
+     */
+    public static Accessor forGetter(Member member) {
+        if (member instanceof Field)
+            return forSetter((Field) member);
+
+        return forMethod((Method) member);
+    }
+
+    /**
+     * Creates an accessor that reads or writes a field.
+     */
+    public static Accessor forSetter(Field field) {
+        trySetAccessible(field);
+
+        return new FieldAccessor(field);
+    }
+
+    /**
+     * Creates an accessor that calls a method.
+     */
+    public static Accessor forMethod(Method method) {
+        trySetAccessible(method);
+
+        return new MethodAccessor(method);
+    }
+
+    /**
+     * Creates an accessor that calls a constructor.
+     */
+    public static Accessor forConstructor(Constructor<?> constructor) {
+        trySetAccessible(constructor);
+
+        return new ConstructorAccessor(constructor);
+    }
+
+    /**
+     * (exception free)
+     */
+    private static void trySetAccessible(AccessibleObject member) {
+        try {
+            member.setAccessible(true);
+        } catch (Exception exc) {
+            // (public members will still be accessible)
+        }
+    }
+
+    /**
+     * A field.
+     */
+    private static class FieldAccessor extends Accessor {
+
+        private final Field _field;
+
+        public FieldAccessor(Field field) {
+            _field = field;
+        }
+
+        @Override
+        public Object get(Object target) throws IllegalAccessException {
+            return _field.get(target);
+        }
+
+        @Override
+        public void set(Object target, Object value) throws IllegalAccessException {
+            _field.set(target, value);
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws IllegalAccessException {
+            int length = (args == null ? 0 : args.length);
+
+            if (length == 0)
+                return get(target);
+
+            if (length != 1)
+                throw new IllegalArgumentException("Wrong number of arguments; expected 0 or 1, got " + length);
+
+            set(target, args[0]);
+            return null;
+        }
+
+    } // (class)
+
+    /**
+     * A method.
+     */
+    private static class MethodAccessor extends Accessor {
+
+        private final Method _method;
+
+        public MethodAccessor(Method method) {
+            _method = method;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+            return _method.invoke(target, args);
+        }
+
+    } // (class)
+
+    /**
+     * A constructor.
+     */
+    private static class ConstructorAccessor extends Accessor {
+
+        private final Constructor<?> _constructor;
+
+        public ConstructorAccessor(Constructor<?> constructor) {
+            _constructor = constructor;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+            try {
+                return _constructor.newInstance(args);
+
+            } catch (InstantiationException exc) {
+                throw new IllegalArgumentException(exc);
+            }
+        }
+
+    } // (class)
+
+} // (class)
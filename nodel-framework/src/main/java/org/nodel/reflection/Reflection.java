@@ -12,6 +12,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -57,6 +58,13 @@ public class Reflection {
         private Map<String, ServiceInfo> serviceInfoByName;
         
         private Constructor<?> constructorByString;
+        
+        private Accessor constructorByStringAccessor;
+        
+        /**
+         * (public, no argument constructor, can be null)
+         */
+        private Accessor defaultConstructor;
 
         private Map<SimpleName, EnumInfo> enumConstantMapByName;
         
@@ -69,6 +77,10 @@ public class Reflection {
         private Member defaultValue;
         
         private Member defaultService;
+        
+        private Accessor defaultValueAccessor;
+        
+        private Accessor defaultServiceAccessor;
 
         /**
          * (can be null)
@@ -242,6 +254,24 @@ public class Reflection {
                 valueInfo.setter = setterInfo;
         }
         
+        // pre-compile the accessors
+        for (ValueInfo valueInfo : valueInfos) {
+            valueInfo.getter = Accessor.forGetter(valueInfo.member);
+            
+            if (valueInfo.member instanceof Field)
+                valueInfo.fieldSetter = Accessor.forSetter((Field) valueInfo.member);
+        } // (for)
+        
+        for (SetterInfo setterInfo : setterInfos)
+            setterInfo.accessor = Accessor.forMethod(setterInfo.method);
+        
+        for (ServiceInfo serviceInfo : serviceInfos) {
+            if (serviceInfo.member instanceof Field)
+                serviceInfo.accessor = Accessor.forGetter(serviceInfo.member);
+            else
+                serviceInfo.accessor = Accessor.forMethod((Method) serviceInfo.member);
+        } // (for)
+        
         // find a constructor by string...
         Constructor<?> constructorByString = null;
         
@@ -254,18 +284,35 @@ public class Reflection {
             }
         } // (for)
         
+        // ...and a public, no argument one
+        Accessor defaultConstructor = null;
+        
+        if (!klazz.isInterface() && !Modifier.isAbstract(klazz.getModifiers())) {
+            try {
+                defaultConstructor = Accessor.forConstructor(klazz.getConstructor());
+            } catch (Exception exc) {
+                // (none)
+            }
+        }
+        
         // find the member that is used to define a default value
         Member defaultValueMember = null;
         Member defaultServiceMember = null;
+        Accessor defaultValueAccessor = null;
+        Accessor defaultServiceAccessor = null;
         
         for (ValueInfo value : valueInfos) {
-            if (value.treatAsDefaultValue)
+            if (value.treatAsDefaultValue) {
                 defaultValueMember = value.member;
+                defaultValueAccessor = value.getter;
+            }
         } // (for)
         
         for (ServiceInfo service : serviceInfos) {
-            if (service.annotation.treatAsDefaultService())
+            if (service.annotation.treatAsDefaultService()) {
                 defaultServiceMember = service.member;
+                defaultServiceAccessor = service.accessor;
+            }
         } // (for)
         
         // get the enum map if they're enum class
@@ -369,8 +416,12 @@ public class Reflection {
         reflectionInfo.serviceInfos = serviceInfos.toArray(new ServiceInfo[serviceInfos.size()]);
         reflectionInfo.serviceInfoByName = serviceInfoMap;
         reflectionInfo.constructorByString = constructorByString;
+        reflectionInfo.constructorByStringAccessor = (constructorByString != null ? Accessor.forConstructor(constructorByString) : null);
+        reflectionInfo.defaultConstructor = defaultConstructor;
         reflectionInfo.defaultValue = defaultValueMember;
         reflectionInfo.defaultService = defaultServiceMember;
+        reflectionInfo.defaultValueAccessor = defaultValueAccessor;
+        reflectionInfo.defaultServiceAccessor = defaultServiceAccessor;
         reflectionInfo.enumInfos = enumInfos;
         reflectionInfo.enumConstantMapByName = enumConstantMapByName;
         reflectionInfo.enumConstantMap = enumConstantMap;
@@ -541,17 +592,15 @@ public class Reflection {
      * if a failure occurs.
      */
     public static Object createInstanceFromString(Class<?> klass, String value) {
-        Constructor<?> constructor = getConstructorByString(klass);
+        Accessor constructor = tryInitReflectionData(klass).constructorByStringAccessor;
         if (constructor == null)
             return null;
         
         try {
-            Object result = constructor.newInstance(value);
+            Object result = constructor.invoke(null, new Object[] { value });
             return result;
         } catch (IllegalArgumentException e) {
             return null;
-        } catch (InstantiationException e) {
-            return null;
         } catch (IllegalAccessException e) {
             return null;
         } catch (InvocationTargetException e) {
@@ -566,18 +615,34 @@ public class Reflection {
      */
     public static Object createDefaultInstance(Class<?> klass) {
         try {
-            Object result = klass.newInstance();
+            Object result = newInstance(klass);
             
             return result;
-        } catch (IllegalArgumentException e) {
-            return null;
-        } catch (InstantiationException e) {
-            return null;
-        } catch (IllegalAccessException e) {
+        } catch (Exception e) {
             return null;
         }
     } // (method)
     
+    /**
+     * Creates a new instance of a class using its public, no argument constructor, throwing
+     * the usual exceptions on failure.
+     */
+    public static Object newInstance(Class<?> klass) throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        Accessor constructor = tryInitReflectionData(klass).defaultConstructor;
+        
+        // (will fail with the relevant exception)
+        if (constructor == null) {
+            try {
+                return klass.getDeclaredConstructor().newInstance();
+                
+            } catch (NoSuchMethodException exc) {
+                throw new InstantiationException(klass.getName());
+            }
+        }
+        
+        return constructor.invoke(null, null);
+    } // (method)
+    
     /**
      * Deals with 'treatAsDefaultValue' annotations.
      */
@@ -588,39 +653,26 @@ public class Reflection {
         
         Class<?> klass = obj.getClass();
         
-        Member member = getTreatAsValueMember(klass);
+        ReflectionInfo reflectionInfo = tryInitReflectionData(klass);
+        
+        Member member = reflectionInfo.defaultValue;
         
         // nothing specified so return the object itself
         if (member == null)
             return obj;
         
-        if (member instanceof Field) {
-            try {
-                return getDefaultValue(((Field) member).get(obj));
-                
-            } catch (IllegalArgumentException e1) {
-                return obj;
-                
-            } catch (IllegalAccessException e1) {
-                return obj;
-            }
-        } else if (member instanceof Method) {
-            try {
-                return getDefaultValue(((Method) member).invoke(obj));
-                
-            } catch (IllegalArgumentException e) {
-                return obj;
-                
-            } catch (IllegalAccessException e) {
-                return obj;
-                
-            } catch (InvocationTargetException e) {
-                throw new RuntimeException(e.getTargetException());
-            }
-        } else {
-            // should never get here
-            assert obj != null : "Is neither a Field or Method."; 
+        try {
+            return getDefaultValue(reflectionInfo.defaultValueAccessor.get(obj));
+
+        } catch (IllegalArgumentException e) {
             return obj;
+
+        } catch (IllegalAccessException e) {
+            return obj;
+
+        } catch (InvocationTargetException e) {
+            // (fields will never throw)
+            throw new RuntimeException(e.getTargetException());
         }
     } // (method)
     
@@ -634,40 +686,27 @@ public class Reflection {
         
         Class<?> klass = obj.getClass();
         
-        Member member = getTreatAsServiceMember(klass);
+        ReflectionInfo reflectionInfo = tryInitReflectionData(klass);
+        
+        Member member = reflectionInfo.defaultService;
         
         // nothing specified so return the object itself
         if (member == null)
             return obj;
         
-        if (member instanceof Field) {
-            try {
-                return getDefaultService(((Field) member).get(obj));
-
-            } catch (IllegalArgumentException e1) {
-                return obj;
-
-            } catch (IllegalAccessException e1) {
-                return obj;
-            }
-        } else if (member instanceof Method) {
-            try {
-                // (recursive call to deal with nested)
-                return getDefaultService(((Method) member).invoke(obj));
-                
-            } catch (IllegalArgumentException e) {
-                return obj;
+        try {
+            // (recursive call to deal with nested)
+            return getDefaultService(reflectionInfo.defaultServiceAccessor.get(obj));
 
-            } catch (IllegalAccessException e) {
-                return obj;
+        } catch (IllegalArgumentException e) {
+            return obj;
 
-            } catch (InvocationTargetException e) {
-                throw new RuntimeException(e.getTargetException());
-            }
-        } else {
-            // should never get here
-            assert obj != null : "Is neither a Field or Method."; 
+        } catch (IllegalAccessException e) {
             return obj;
+
+        } catch (InvocationTargetException e) {
+            // (fields will never throw)
+            throw new RuntimeException(e.getTargetException());
         }
     } // (method)    
     
@@ -690,16 +729,15 @@ public class Reflection {
                 continue;
 
             try {
-                Field dstField = (Field) dstValueInfo.member;
-                Field srcField = (Field) srcValueInfo.member;
+                Object srcValue = srcValueInfo.getter.get(src);
 
-                Object srcValue = srcField.get(src);
-
-                dstField.set(dst, srcValue);
+                dstValueInfo.fieldSetter.set(dst, srcValue);
             } catch (IllegalArgumentException exc) {
                 refExc = exc;
             } catch (IllegalAccessException exc) {
                 refExc = exc;
+            } catch (InvocationTargetException exc) {
+                refExc = exc;
             }
 
             if (refExc != null)
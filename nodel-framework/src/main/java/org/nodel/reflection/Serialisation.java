@@ -6,6 +6,11 @@ package org.nodel.reflection;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -28,6 +33,8 @@ import org.joda.time.format.DateTimeFormatter;
 import org.nodel.Base64;
 import org.nodel.Strings;
 import org.nodel.UUIDs;
+import org.nodel.io.StringBuilderWriter;
+import org.nodel.io.UTF8Charset;
 import org.nodel.json.JSONArray;
 import org.nodel.json.JSONException;
 import org.nodel.json.JSONObject;
@@ -379,7 +386,7 @@ public class Serialisation {
         // create a new instance or ...
         if (dstObj == null) {
             try {
-                object = klass.newInstance();
+                object = Reflection.newInstance(klass);
             } catch (Exception exc) {
                 throw new SerialisationException("Could not create instance of requested type plain object, " + klass.getName(), exc);
             }
@@ -415,11 +422,9 @@ public class Serialisation {
                 Object objValue = coerce(valueClass, jsonValue, fieldInfo, null, null, treatEmptyStringsAsNull);
                 
                 try {
-                    // set field directly
-                    field.setAccessible(true);
-
+                    // set field directly (cached accessor)
                     if (objValue != null) {
-                        field.set(object, objValue);
+                        fieldInfo.fieldSetter.set(object, objValue);
                     }
                     
                 } catch (Exception e) {
@@ -438,7 +443,7 @@ public class Serialisation {
                 
                 try {
                     if (objValue != null)
-                        setterMethod.invoke(object, objValue);
+                        setterInfo.accessor.set(object, objValue);
                     
                 } catch (InvocationTargetException exc) {
                     Throwable actualException = exc.getTargetException();
@@ -685,23 +690,48 @@ public class Serialisation {
      * (optionally exclude passwords)
      */
     public static String serialise(Object object, int indent, boolean excludePasswords) {
+        StringBuilderWriter writer = new StringBuilderWriter();
+        
         try {
-            Object wrappedObject = wrap(object, excludePasswords);
-
-            if (wrappedObject instanceof JSONObject)
-                return ((JSONObject) wrappedObject).toString(indent);
-
-            else if (wrappedObject instanceof JSONArray)
-                return ((JSONArray) wrappedObject).toString(indent);
+            new SerialisationWriter(writer, indent, excludePasswords).writeRoot(object);
             
-            else 
-                return wrappedObject.toString();
+            return writer.toString();
 
         } catch (JSONException exc) {
             throw new SerialisationException(exc);
+            
+        } catch (IOException exc) {
+            // will never happen - we are writing to a string builder
+            throw new SerialisationException(exc);
         }
     } // (method)
     
+    /**
+     * Serialises an object straight to a writer, walking the object graph once without building an
+     * intermediate JSON tree (same rules as 'serialise').
+     * (does not flush or close the writer)
+     */
+    public static void serialise(Object object, int indent, boolean excludePasswords, Writer writer) throws IOException {
+        try {
+            new SerialisationWriter(writer, indent, excludePasswords).writeRoot(object);
+            
+        } catch (JSONException exc) {
+            throw new SerialisationException(exc);
+        }
+    } // (method)
+    
+    /**
+     * Serialises an object straight to a stream as UTF-8 (see related).
+     * (flushes but does not close the stream)
+     */
+    public static void serialise(Object object, int indent, boolean excludePasswords, OutputStream os) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, UTF8Charset.instance()));
+        
+        serialise(object, indent, excludePasswords, writer);
+        
+        writer.flush();
+    } // (method)
+    
     /**
      * Deserialises an object from JSON text.
      */
@@ -800,20 +830,8 @@ public class Serialisation {
                                 continue;
                         }
                         
-                        Object result = null;
-                        
-                        if (fieldInfo.member instanceof Field) {
-                            Field field = (Field) fieldInfo.member;
-                            field.setAccessible(true);
-
-                            // invoke the getter
-                            result = field.get(object);
-                        } else {
-                            // treat as method
-                            Method method = (Method) fieldInfo.member;
-                            
-                            result = method.invoke(object);
-                        }
+                        // invoke the (cached) getter, field or method
+                        Object result = fieldInfo.getter.get(object);
 
                         if (result != null) {
                             // jsonObject()
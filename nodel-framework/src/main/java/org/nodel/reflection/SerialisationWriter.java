@@ -0,0 +1,340 @@
+package org.nodel.reflection;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+import org.nodel.Base64;
+import org.nodel.Strings;
+import org.nodel.json.JSONArray;
+import org.nodel.json.JSONException;
+import org.nodel.json.JSONObject;
+import org.nodel.json.JSONString;
+
+/**
+ * Walks an object graph once, writing JSON straight to a writer using the same rules as 'Serialisation.wrap'
+ * followed by 'JSONObject.toString(indent)' i.e. without building the intermediate JSONObject / JSONArray tree.
+ *
+ * (not thread-safe, one per serialisation)
+ */
+class SerialisationWriter {
+
+    /**
+     * The target.
+     */
+    private Writer _writer;
+
+    /**
+     * Spaces per level (0 for compact)
+     */
+    private int _indentFactor;
+
+    /**
+     * (see 'Serialisation.wrap')
+     */
+    private boolean _excludePasswords;
+
+    public SerialisationWriter(Writer writer, int indentFactor, boolean excludePasswords) {
+        _writer = writer;
+        _indentFactor = indentFactor;
+        _excludePasswords = excludePasswords;
+    }
+
+    /**
+     * Writes a top-level object. Like 'Serialisation.serialise', plain values are written using
+     * their string form (unquoted).
+     */
+    public void writeRoot(Object object) throws IOException, JSONException {
+        if (isStructured(object))
+            writeValue(object, 0);
+        else
+            _writer.write(Serialisation.wrap(object, _excludePasswords).toString());
+    }
+
+    /**
+     * Whether the object would wrap into a JSONObject or JSONArray.
+     */
+    private static boolean isStructured(Object object) {
+        if (object == null)
+            return false;
+
+        if (object instanceof JSONObject || object instanceof JSONArray || object instanceof Collection || object instanceof Map)
+            return true;
+
+        if (object instanceof JSONString || object instanceof Number || object instanceof Character ||
+                object instanceof Boolean || object instanceof String || object instanceof byte[])
+            return false;
+
+        Class<?> klass = object.getClass();
+
+        if (klass.isArray())
+            return true;
+
+        if (klass.isEnum())
+            return false;
+
+        return Reflection.getValueInfos(klass).length > 0;
+    }
+
+    /**
+     * Writes any value.
+     */
+    private void writeValue(Object object, int indent) throws IOException, JSONException {
+        Writer w = _writer;
+
+        if (object == null || JSONObject.NULL.equals(object)) {
+            w.write("null");
+
+        } else if (object instanceof String) {
+            JSONObject.quote((String) object, w);
+
+        } else if (object instanceof Number) {
+            w.write(JSONObject.numberToString((Number) object));
+
+        } else if (object instanceof Boolean) {
+            w.write(object.toString());
+
+        } else if (object instanceof JSONObject) {
+            ((JSONObject) object).write(w, _indentFactor, indent);
+
+        } else if (object instanceof JSONArray) {
+            ((JSONArray) object).write(w, _indentFactor, indent);
+
+        } else if (object instanceof JSONString) {
+            Object o;
+            try {
+                o = ((JSONString) object).toJSONString();
+            } catch (Exception e) {
+                throw new JSONException(e);
+            }
+            w.write(o != null ? o.toString() : JSONObject.quote(object.toString()));
+
+        } else if (object instanceof Character) {
+            JSONObject.quote(object.toString(), w);
+
+        } else if (object instanceof byte[]) {
+            JSONObject.quote(Base64.encode((byte[]) object), w);
+
+        } else if (object instanceof Collection) {
+            State state = new State(indent, true);
+
+            for (Object item : (Collection<?>) object)
+                entry(state, null, item);
+
+            end(state);
+
+        } else if (object instanceof Map) {
+            State state = new State(indent, false);
+
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) object).entrySet()) {
+                Object value = e.getValue();
+
+                // (like 'JSONObject.put', nulls are dropped and non-finite numbers fail, as they do in arrays)
+                if (value != null) {
+                    JSONObject.testValidity(value);
+
+                    entry(state, e.getKey().toString(), value);
+                }
+            }
+
+            end(state);
+
+        } else if (object.getClass().isArray()) {
+            State state = new State(indent, true);
+
+            int length = Array.getLength(object);
+            for (int i = 0; i < length; i++)
+                entry(state, null, Array.get(object, i));
+
+            end(state);
+
+        } else {
+            writeOther(object, indent);
+        }
+    } // (method)
+
+    /**
+     * Enums, annotated classes or anything else.
+     */
+    private void writeOther(Object object, int indent) throws IOException, JSONException {
+        Class<?> klass = object.getClass();
+
+        if (klass.isEnum()) {
+            JSONObject.quote(Reflection.getEnumConstantInfo(klass, object).title, _writer);
+            return;
+        }
+
+        ValueInfo[] fieldInfos = Reflection.getValueInfos(klass);
+        if (fieldInfos.length == 0) {
+            // no fields, so just use the .toString() method
+            JSONObject.quote(object.toString(), _writer);
+            return;
+        }
+
+        State state = new State(indent, false);
+
+        for (ValueInfo fieldInfo : fieldInfos) {
+            String key = fieldInfo.name;
+            if (Strings.isNullOrEmpty(key))
+                key = fieldInfo.member.getName();
+
+            if (_excludePasswords) {
+                // if directed to, skip the format if it's 'password'
+                if ("password".equalsIgnoreCase(fieldInfo.format))
+                    continue;
+            }
+
+            Object result;
+            try {
+                // invoke the (cached) getter, field or method
+                result = fieldInfo.getter.get(object);
+
+            } catch (Exception ignore) {
+                // ignore any reflection related issues
+                continue;
+            }
+
+            // (a non-finite number fails only its own field, which is skipped)
+            if (result != null && isValidNumber(result))
+                entry(state, key, result);
+        } // (for)
+
+        end(state);
+    } // (method)
+
+    /**
+     * (non-finite numbers can't be written)
+     */
+    private static boolean isValidNumber(Object value) {
+        if (value instanceof Double)
+            return !((Double) value).isInfinite() && !((Double) value).isNaN();
+
+        if (value instanceof Float)
+            return !((Float) value).isInfinite() && !((Float) value).isNaN();
+
+        return true;
+    }
+
+    /**
+     * Tracks an object or array being written. The first entry is held back because single entry
+     * objects and arrays are written on one line.
+     */
+    private static class State {
+
+        final int indent;
+
+        final boolean array;
+
+        int count;
+
+        String firstKey;
+
+        Object firstValue;
+
+        State(int indent, boolean array) {
+            this.indent = indent;
+            this.array = array;
+        }
+
+    } // (class)
+
+    /**
+     * Adds an object entry or array item (key is null).
+     */
+    private void entry(State state, String key, Object value) throws IOException, JSONException {
+        if (state.count == 0) {
+            _writer.write(state.array ? '[' : '{');
+
+            state.firstKey = key;
+            state.firstValue = value;
+
+        } else {
+            int newIndent = state.indent + _indentFactor;
+
+            if (state.count == 1) {
+                writeEntry(false, state.firstKey, state.firstValue, newIndent);
+
+                state.firstKey = null;
+                state.firstValue = null;
+            }
+
+            writeEntry(true, key, value, newIndent);
+        }
+
+        state.count++;
+    }
+
+    /**
+     * Completes an object or array.
+     */
+    private void end(State state) throws IOException, JSONException {
+        Writer w = _writer;
+
+        if (state.count == 0) {
+            w.write(state.array ? "[]" : "{}");
+            return;
+        }
+
+        if (state.count == 1) {
+            // single entries on the same line
+            if (state.firstKey != null) {
+                JSONObject.quote(state.firstKey, w);
+                w.write(':');
+                if (_indentFactor > 0)
+                    w.write(' ');
+            }
+
+            writeValue(state.firstValue, state.indent);
+
+        } else {
+            if (_indentFactor > 0)
+                w.write('\n');
+
+            indent(state.indent);
+        }
+
+        w.write(state.array ? ']' : '}');
+    }
+
+    /**
+     * (entries of multi-entry objects and arrays)
+     */
+    private void writeEntry(boolean comma, String key, Object value, int indent) throws IOException, JSONException {
+        Writer w = _writer;
+
+        if (comma)
+            w.write(',');
+
+        if (_indentFactor > 0)
+            w.write('\n');
+
+        indent(indent);
+
+        if (key != null) {
+            JSONObject.quote(key, w);
+            w.write(':');
+
+            if (_indentFactor > 0)
+                w.write(' ');
+        }
+
+        writeValue(value, indent);
+    }
+
+    /**
+     * (spaces)
+     */
+    private void indent(int count) throws IOException, JSONException {
+        for (int i = 0; i < count; i++)
+            _writer.write(' ');
+    }
+
+} // (class)
@@ -30,6 +30,11 @@ public class ServiceInfo implements Comparable<ServiceInfo> {
      * Could be a field or method
      */
     public Member member;
+    
+    /**
+     * Cached accessor for 'member' (a getter for fields)
+     */
+    public Accessor accessor;
 
     /**
      * The annotation (never null)
@@ -7,6 +7,11 @@ public class SetterInfo {
     public String name;
     
     public Method method;
+    
+    /**
+     * Cached accessor for 'method'.
+     */
+    public Accessor accessor;
 
     public SetterInfo(String name, Method method) {
         this.name = name;
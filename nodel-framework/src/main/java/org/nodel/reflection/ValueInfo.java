@@ -130,6 +130,16 @@ public class ValueInfo implements Comparable<ValueInfo> {
      * Holds the matcher setter info (if present)
      */
     public SetterInfo setter;    
+    
+    /**
+     * Cached accessor to read the value (field or method)
+     */
+    public Accessor getter;
+    
+    /**
+     * Cached accessor to write the value directly (fields only)
+     */
+    public Accessor fieldSetter;
 
     /**
      * Compare by 'order' field, then by name.
@@ -166,9 +166,7 @@ public class REST {
                 if (valueInfo != null) {
                     try {
                         if (valueInfo.member instanceof Field) {
-                            Field field = (Field) valueInfo.member;
-
-                            Object result = field.get(object);
+                            Object result = valueInfo.getter.get(object);
 
                             classHint = Object.class;
                             serviceInfoHint = null;
@@ -177,9 +175,7 @@ public class REST {
 
                             continue;
                         } else {
-                            Method method = (Method) valueInfo.member;
-
-                            Object result = method.invoke(object, (Object[]) null);
+                            Object result = valueInfo.getter.get(object);
 
                             object = result;
 
@@ -200,14 +196,12 @@ public class REST {
                 try {
                     if (serviceInfo.member instanceof Field) {
                         // dealing with a field
-                        Field field = (Field) serviceInfo.member;
-
                         // set the class hint
                         classHint = serviceInfo.annotation.genericClassA();
                         serviceInfoHint = serviceInfo;
                         
                         // set the object
-                        Object result = field.get(object);
+                        Object result = serviceInfo.accessor.get(object);
 
                         // move the cursor
                         object = result;
@@ -360,7 +354,7 @@ public class REST {
                         classHint = serviceInfo.annotation.genericClassA();
                         serviceInfoHint = serviceInfo;
 
-                        object = method.invoke(object, args);
+                        object = serviceInfo.accessor.invoke(object, args);
 
                         // if it a void method, return true always
                         if (method.getReturnType() == void.class)
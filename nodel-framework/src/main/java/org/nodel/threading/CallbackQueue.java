@@ -1,6 +1,12 @@
 package org.nodel.threading;
 
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.nodel.Handler;
@@ -10,49 +16,430 @@ import org.nodel.Handler.H2;
 import org.nodel.Handler.H3;
 import org.nodel.Handler.H4;
 import org.nodel.Handler.H5;
+import org.nodel.SystemProperties;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.PeakMeasurementProvider;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A callback handler that using a fair ordering policy, with safe exception handling.
+ * 
+ * By default callbacks run on the calling thread. When constructed with a name, callbacks are instead queued to a 
+ * bounded mailbox and drained in order by a pooled worker so callers (socket readers, timers, etc.) are never held up
+ * by slow callbacks. Synchronous functions queue behind earlier callbacks too. Either way, callbacks and synchronous 
+ * functions never run concurrently or out of order.
  */
 public class CallbackQueue {
     
+    /**
+     * Optional system property for the default mailbox capacity, e.g. 'org.nodel.threading.mailboxCapacity = 10000'
+     */
+    public final static String MAILBOXCAPACITY_SYSTEMPROP = "org.nodel.threading.mailboxCapacity";
+    
+    /**
+     * Optional system property for what happens when a mailbox is full, e.g. 
+     * 'org.nodel.threading.mailboxPolicy = DropOldest'
+     */
+    public final static String MAILBOXPOLICY_SYSTEMPROP = "org.nodel.threading.mailboxPolicy";
+    
+    /**
+     * The default mailbox capacity.
+     */
+    private final static int DEFAULT_MAILBOXCAPACITY = 10000;
+    
+    /**
+     * The number of callbacks a worker drains before giving its thread back to the pool.
+     */
+    private final static int DRAIN_BATCH = 64;
+    
+    /**
+     * (See related methods)
+     */
+    public static int staticMailboxCapacity = SystemProperties.intProperty(MAILBOXCAPACITY_SYSTEMPROP, DEFAULT_MAILBOXCAPACITY);
+    
+    /**
+     * (See related methods)
+     */
+    public static RejectionPolicy staticMailboxPolicy = RejectionPolicy.fromString(System.getProperty(MAILBOXPOLICY_SYSTEMPROP), RejectionPolicy.CallerRuns);
+    
+    /**
+     * (logging)
+     */
+    private final static Logger s_logger = LoggerFactory.getLogger(CallbackQueue.class);
+    
+    /**
+     * (class-level lock)
+     */
+    private final static Object s_lock = new Object();
+    
+    /**
+     * The pool all mailboxes are drained by.
+     * (lazily created)
+     */
+    private static ThreadPool s_threadPool;
+    
+    /**
+     * Slowest callback counters by name, registered once since names are reused when nodes restart.
+     * (locked around 's_lock')
+     */
+    private static Map<String, PeakMeasurementProvider> s_slowestCounters = new HashMap<String, PeakMeasurementProvider>();
+    
     private ReentrantLock _fairLock = new ReentrantLock(true);
     
     /**
-     * Creates a safe callback handler 
+     * Queued callbacks (null when callbacks run on the calling thread)
+     * (self-locked)
+     */
+    private LinkedList<Runnable> _mailbox;
+    
+    /**
+     * Whether a worker is draining the mailbox.
+     * (locked around 'mailbox')
+     */
+    private boolean _draining;
+    
+    /**
+     * (see constructor)
+     */
+    private int _capacity;
+    
+    /**
+     * (see constructor)
+     */
+    private RejectionPolicy _policy;
+    
+    /**
+     * Called by the worker before draining.
+     */
+    private H0 _threadStateHandler;
+    
+    /**
+     * (see 'sharedThreadPool')
+     */
+    private ThreadPool _threadPool;
+    
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterDepth;
+    
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterDrops;
+    
+    /**
+     * (diagnostics)
+     */
+    private PeakMeasurementProvider _counterSlowest;
+    
+    /**
+     * The drain task (reused)
+     */
+    private Runnable _drainer = new Runnable() {
+
+        @Override
+        public void run() {
+            drain();
+        }
+
+    };
+    
+    /**
+     * Creates a safe callback handler; callbacks run on the calling thread. 
      */
     public CallbackQueue() {
     }
     
+    /**
+     * Creates a callback handler with its own mailbox, using the default capacity and overflow policy.
+     * 
+     * @param name used for diagnostics, e.g. the node name
+     * @param threadStateHandler (optional) called on the worker before any callbacks are run
+     */
+    public CallbackQueue(String name, H0 threadStateHandler) {
+        this(name, threadStateHandler, staticMailboxCapacity, staticMailboxPolicy);
+    }
+    
+    /**
+     * Creates a callback handler with its own mailbox.
+     * 
+     * @param policy what to do when the mailbox is full ('Block' and 'CallerRuns' throttle the caller, the latter by
+     *               having it run the oldest callbacks until there's room)
+     */
+    public CallbackQueue(String name, H0 threadStateHandler, int capacity, RejectionPolicy policy) {
+        _mailbox = new LinkedList<Runnable>();
+        _threadStateHandler = threadStateHandler;
+        _capacity = capacity;
+        _policy = policy;
+        _threadPool = sharedThreadPool();
+        
+        String counterName = "'" + name + "'";
+        _counterDepth = Diagnostics.shared().registerSharableCounter(counterName + ".Callback mailbox", false);
+        _counterDrops = Diagnostics.shared().registerSharableCounter(counterName + ".Callback drops", true);
+        
+        synchronized (s_lock) {
+            String slowestName = counterName + ".Slowest callback (ms)";
+            
+            _counterSlowest = s_slowestCounters.get(slowestName);
+            if (_counterSlowest == null) {
+                _counterSlowest = new PeakMeasurementProvider();
+                Diagnostics.shared().registerCounter(slowestName, _counterSlowest, false);
+                s_slowestCounters.put(slowestName, _counterSlowest);
+            }
+        }
+        
+        // (a restarted node may reuse the name)
+        _counterDepth.set(0);
+    }
+    
+    /**
+     * Returns the number of queued callbacks.
+     */
+    public int getMailboxDepth() {
+        if (_mailbox == null)
+            return 0;
+        
+        synchronized (_mailbox) {
+            return _mailbox.size();
+        }
+    }
+    
     /**
      * (convenience method)
      */
     private void doHandle(Runnable runnable) {
+        if (_mailbox == null || _fairLock.isHeldByCurrentThread()) {
+            // run now: no mailbox or being called from within a callback (queueing behind itself could never 
+            // be waited on)
+            runNow(runnable);
+            return;
+        }
+        
+        synchronized (_mailbox) {
+            while (_mailbox.size() >= _capacity) {
+                if (_policy == RejectionPolicy.DropOldest) {
+                    drop(_mailbox.poll());
+                    _counterDepth.decr();
+                    _counterDrops.incr();
+                    s_logger.debug("Mailbox full; dropped the oldest callback.");
+                    
+                } else if (_policy == RejectionPolicy.Block) {
+                    try {
+                        _mailbox.wait();
+                    } catch (InterruptedException exc) {
+                        Thread.currentThread().interrupt();
+                        _counterDrops.incr();
+                        drop(runnable);
+                        return;
+                    }
+                    
+                } else {
+                    // CallerRuns, see below
+                    break;
+                }
+            } // (while)
+            
+            if (_mailbox.size() < _capacity) {
+                enqueue(runnable);
+                return;
+            }
+        }
+        
+        // (must be 'CallerRuns' and full)
+        drainUntilRoomFor(runnable);
+    }
+    
+    /**
+     * (locked around 'mailbox')
+     */
+    private void enqueue(Runnable runnable) {
+        _mailbox.add(runnable);
+        _counterDepth.incr();
+        
+        if (!_draining) {
+            _draining = true;
+            _threadPool.execute(_drainer);
+        }
+    }
+    
+    /**
+     * Throttles the caller by having it run the oldest callbacks (in order, as the worker would) until there's room
+     * for the new one at the back, which naturally throttles the caller without letting it jump the queue.
+     */
+    private void drainUntilRoomFor(Runnable runnable) {
+        if (_threadStateHandler != null)
+            _threadStateHandler.handle();
+        
+        _fairLock.lock();
         try {
-            _fairLock.lock();
+            for (;;) {
+                Runnable oldest;
+                
+                synchronized (_mailbox) {
+                    if (_mailbox.size() < _capacity) {
+                        enqueue(runnable);
+                        return;
+                    }
+                    
+                    oldest = _mailbox.poll();
+                    _counterDepth.decr();
+                }
+                
+                runTimed(oldest);
+            } // (for)
+            
+        } finally {
+            _fairLock.unlock();
+        }
+    }
+    
+    /**
+     * Runs a callback within the lock.
+     */
+    private void runNow(Runnable runnable) {
+        _fairLock.lock();
+        try {
+            runTimed(runnable);
             
+        } finally {
+            _fairLock.unlock();
+        }
+    }
+    
+    /**
+     * Runs a callback, timing it.
+     * (lock must be held)
+     */
+    private void runTimed(Runnable runnable) {
+        long startTime = System.nanoTime();
+        
+        try {
             runnable.run();
             
         } catch (Exception exc) {
             // (ignore)
             // it up to the callback creator to manage exceptions
+        }
+        
+        if (_counterSlowest != null)
+            _counterSlowest.record((System.nanoTime() - startTime) / 1000000);
+    }
+    
+    /**
+     * (releases anyone waiting on a dropped synchronous function or notifies a droppable callback)
+     */
+    private void drop(Runnable runnable) {
+        if (runnable instanceof Future)
+            ((Future<?>) runnable).cancel(false);
+        
+        else if (runnable instanceof DroppableCallback)
+            // (never within the mailbox lock)
+            _threadPool.execute(((DroppableCallback) runnable).dropped);
+    }
+    
+    /**
+     * A callback that is notified if it's dropped from a full mailbox.
+     */
+    private static class DroppableCallback implements Runnable {
+        
+        private Runnable callback;
+        
+        private Runnable dropped;
+        
+        public DroppableCallback(Runnable callback, Runnable dropped) {
+            this.callback = callback;
+            this.dropped = dropped;
+        }
+        
+        @Override
+        public void run() {
+            callback.run();
+        }
+        
+    } // (class)
+    
+    /**
+     * Drains a batch of callbacks in order, rescheduling itself if more remain.
+     * (worker thread)
+     */
+    private void drain() {
+        if (_threadStateHandler != null)
+            _threadStateHandler.handle();
+        
+        for (int a = 0; a < DRAIN_BATCH; a++) {
+            // (taken within the lock so a throttled caller helping out can't run a later callback first)
+            _fairLock.lock();
+            try {
+                Runnable runnable;
+                
+                synchronized (_mailbox) {
+                    runnable = _mailbox.poll();
+                    
+                    if (runnable == null) {
+                        _draining = false;
+                        return;
+                    }
+                    
+                    _counterDepth.decr();
+                    
+                    if (_policy == RejectionPolicy.Block)
+                        _mailbox.notifyAll();
+                }
+                
+                runTimed(runnable);
+                
+            } finally {
+                _fairLock.unlock();
+            }
+        } // (for)
+        
+        // give this thread back, but stay in the 'draining' state
+        _threadPool.execute(_drainer);
+    }
+    
+    /**
+     * (lazily created)
+     */
+    private static ThreadPool sharedThreadPool() {
+        synchronized (s_lock) {
+            if (s_threadPool == null)
+                s_threadPool = new ThreadPool("Callbacks", ThreadPool.staticMaxThreads);
             
-        } finally {
-            _fairLock.unlock();
-        }        
+            return s_threadPool;
+        }
     }
     
     /**
-     * For synchronous functions.
+     * For synchronous functions; waits its turn behind any queued callbacks.
      */
     public <T> T handle(Callable<T> func) throws Exception {
-        try {
+        if (_mailbox == null || _fairLock.isHeldByCurrentThread()) {
             _fairLock.lock();
+            try {
+                return func.call();
+                
+            } finally {
+                _fairLock.unlock();
+            }
+        }
+        
+        FutureTask<T> task = new FutureTask<T>(func);
+        doHandle(task);
+        
+        try {
+            return task.get();
             
-            return func.call();
+        } catch (ExecutionException exc) {
+            Throwable cause = exc.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
             
-        } finally {
-            _fairLock.unlock();
+            throw exc;
         }
     }
         
@@ -70,6 +457,28 @@ public class CallbackQueue {
         });
     }
     
+    /**
+     * Creates a callback instance, calling 'droppedHandler' instead (on a thread-pool) if the callback is dropped from
+     * a full mailbox, e.g. so a timer can reschedule itself.
+     */
+    public void handleDroppable(final H0 callback, final H0 droppedHandler, final H1<Exception> errorHandler) {
+        doHandle(new DroppableCallback(new Runnable() {
+
+            @Override
+            public void run() {
+                Handler.tryHandle(callback, errorHandler);
+            }
+
+        }, new Runnable() {
+
+            @Override
+            public void run() {
+                Handler.tryHandle(droppedHandler, errorHandler);
+            }
+
+        }));
+    }
+    
     /**
      * Creates a callback instance.
      */
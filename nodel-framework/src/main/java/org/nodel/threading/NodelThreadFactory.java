@@ -0,0 +1,166 @@
+package org.nodel.threading;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.nodel.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the (daemon) threads used by thread-pools, connection readers and one-off executors. By default
+ * platform threads are used, however virtual threads can be used instead where the runtime supports them
+ * (Java 21+) or a 3rd party implementation can be swapped in.
+ */
+public abstract class NodelThreadFactory implements ThreadFactory {
+
+    private static Logger s_logger = LoggerFactory.getLogger(NodelThreadFactory.class);
+
+    /**
+     * Optional system property to choose the implementation:
+     * e.g. org.nodel.threading.threadFactory = "platform"
+     *                                          "virtual"
+     *                                          "com.example.MyThreadFactory" (must have a public no-arg constructor)
+     */
+    public final static String IMPL_SYSTEMPROP = "org.nodel.threading.threadFactory";
+
+    /**
+     * Creates a new, unstarted daemon thread.
+     */
+    @Override
+    public abstract Thread newThread(Runnable runnable);
+
+    /**
+     * Creates a new, unstarted daemon thread with the given name.
+     */
+    public Thread newThread(Runnable runnable, String name) {
+        Thread thread = newThread(runnable);
+        thread.setName(name);
+        return thread;
+    }
+
+    /**
+     * Whether or not the threads created are virtual.
+     */
+    public boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Conventional platform threads.
+     */
+    public static class Platform extends NodelThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    } // (class)
+
+    /**
+     * Virtual threads, created reflectively so this framework can still be built and run on older runtimes.
+     * (virtual threads are always daemon threads)
+     */
+    public static class Virtual extends NodelThreadFactory {
+
+        /**
+         * Thread.ofVirtual()
+         */
+        private Method _ofVirtual;
+
+        /**
+         * Thread.Builder.unstarted(Runnable)
+         */
+        private Method _unstarted;
+
+        /**
+         * @throws UnsupportedOperationException if this runtime does not support virtual threads.
+         */
+        public Virtual() {
+            try {
+                _ofVirtual = Thread.class.getMethod("ofVirtual");
+                _unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+
+                // (early versions need preview features enabled so test now)
+                newThread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                    }
+
+                });
+
+            } catch (Exception exc) {
+                throw new UnsupportedOperationException("This runtime does not support virtual threads", exc);
+            }
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            try {
+                return (Thread) _unstarted.invoke(_ofVirtual.invoke(null), runnable);
+
+            } catch (Exception exc) {
+                throw new UnsupportedOperationException("Could not create virtual thread", exc);
+            }
+        }
+
+        @Override
+        public boolean isVirtual() {
+            return true;
+        }
+
+    } // (class)
+
+    /**
+     * Loads an implementation using the optional system property.
+     */
+    private static NodelThreadFactory loadImpl() {
+        String impl = System.getProperty(IMPL_SYSTEMPROP);
+
+        if (!Strings.isNullOrEmpty(impl)) {
+            impl = impl.trim();
+
+            try {
+                if ("platform".equalsIgnoreCase(impl))
+                    return new Platform();
+
+                if ("virtual".equalsIgnoreCase(impl))
+                    return new Virtual();
+
+                return (NodelThreadFactory) Class.forName(impl).getDeclaredConstructor().newInstance();
+
+            } catch (Exception exc) {
+                s_logger.warn("Could not load thread factory based on system property '" + IMPL_SYSTEMPROP + "'; platform threads will be used instead.", exc);
+            }
+        }
+
+        return new Platform();
+    }
+
+    /**
+     * (singleton, thread-safe, lazy init)
+     */
+    private static class Instance {
+
+        private static final NodelThreadFactory SHARED = loadImpl();
+
+    } // (class)
+
+    /**
+     * Returns the shared instance.
+     */
+    public static NodelThreadFactory shared() {
+        return Instance.SHARED;
+    }
+
+} // (class)
@@ -0,0 +1,44 @@
+package org.nodel.threading;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+/**
+ * What a bounded work queue does when it is full.
+ */
+public enum RejectionPolicy {
+
+    /**
+     * The submitting thread runs the task itself (naturally throttles the submitter).
+     */
+    CallerRuns,
+
+    /**
+     * The oldest queued task is discarded to make room.
+     */
+    DropOldest,
+
+    /**
+     * The submitting thread waits until there is room.
+     */
+    Block;
+
+    /**
+     * Case-insensitive look-up, returning the default if not matched.
+     */
+    public static RejectionPolicy fromString(String value, RejectionPolicy def) {
+        if (value == null)
+            return def;
+
+        for (RejectionPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(value.trim()))
+                return policy;
+        }
+
+        return def;
+    }
+
+} // (enum)
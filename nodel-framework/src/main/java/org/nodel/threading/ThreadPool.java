@@ -12,11 +12,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.nodel.SystemProperties;
 import org.nodel.Threads;
 import org.nodel.diagnostics.AtomicIntegerMeasurementProvider;
 import org.nodel.diagnostics.AtomicLongMeasurementProvider;
 import org.nodel.diagnostics.Diagnostics;
 import org.nodel.diagnostics.MeasurementProvider;
+import org.nodel.diagnostics.PeakMeasurementProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +42,74 @@ public class ThreadPool {
      */
     public static int staticMaxThreads = DEFAULT_MAXTHREADS;
     
+    /**
+     * The available engines.
+     */
+    public enum Engine {
+        
+        /**
+         * A single shared work queue (the original engine).
+         */
+        Classic,
+        
+        /**
+         * Per-worker deques with work stealing and a bounded queue.
+         */
+        WorkStealing;
+        
+        /**
+         * Case-insensitive look-up, returning the default if not matched.
+         */
+        public static Engine fromString(String value, Engine def) {
+            if (value == null)
+                return def;
+
+            for (Engine engine : values()) {
+                if (engine.name().equalsIgnoreCase(value.trim()))
+                    return engine;
+            }
+
+            return def;
+        }
+        
+    } // (enum)
+    
+    /**
+     * Optional system property to select the default engine, e.g. 'org.nodel.threading.engine = WorkStealing'
+     */
+    public final static String ENGINE_SYSTEMPROP = "org.nodel.threading.engine";
+    
+    /**
+     * Optional system property for the default queue capacity (work-stealing engine only).
+     */
+    public final static String QUEUECAPACITY_SYSTEMPROP = "org.nodel.threading.queueCapacity";
+    
+    /**
+     * Optional system property for the default rejection policy (work-stealing engine only), 
+     * e.g. 'org.nodel.threading.rejectionPolicy = CallerRuns'
+     */
+    public final static String REJECTIONPOLICY_SYSTEMPROP = "org.nodel.threading.rejectionPolicy";
+    
+    /**
+     * The default queue capacity.
+     */
+    private final static int DEFAULT_QUEUECAPACITY = 65536;
+    
+    /**
+     * (See related methods)
+     */
+    public static Engine staticEngine = Engine.fromString(System.getProperty(ENGINE_SYSTEMPROP), Engine.Classic);
+    
+    /**
+     * (See related methods)
+     */
+    public static int staticQueueCapacity = SystemProperties.intProperty(QUEUECAPACITY_SYSTEMPROP, DEFAULT_QUEUECAPACITY);
+    
+    /**
+     * (See related methods)
+     */
+    public static RejectionPolicy staticRejectionPolicy = RejectionPolicy.fromString(System.getProperty(REJECTIONPOLICY_SYSTEMPROP), RejectionPolicy.CallerRuns);
+    
     /**
      * (logging)
      */
@@ -100,6 +170,16 @@ public class ThreadPool {
      */
     private MeasurementProvider readOnlyOperations = new AtomicLongMeasurementProvider(this.operations);
     
+    /**
+     * The number of items waiting in the queue(s).
+     */
+    private AtomicInteger queueDepth = new AtomicInteger();
+    
+    /**
+     * The longest time (millis) an item waited in the queue(s) (peak per diagnostics period).
+     */
+    private PeakMeasurementProvider queueWait = new PeakMeasurementProvider();
+    
     /**
      * Holds all the work items.
      */
@@ -115,29 +195,48 @@ public class ThreadPool {
      */
     private Object creationSignal = new Object();
     
+    /**
+     * The alternative engine (null when the classic engine is in use)
+     */
+    private WorkStealingEngine workStealing;
+    
     /**
      * Constructs an independent thread-pool.
      */
     public ThreadPool(String name, int size, int timeout) {
-        init(name, size, timeout);
+        init(name, size, timeout, staticEngine, staticQueueCapacity, staticRejectionPolicy);
     } // (init)
     
     /**
      * Constructs an independent thread-pool.
      */
     public ThreadPool(String name, int size) {
-        init(name, size, -1);
-    } // (init)    
+        init(name, size, -1, staticEngine, staticQueueCapacity, staticRejectionPolicy);
+    } // (init)
     
-    private void init(String name, int size, int timeout) {
+    /**
+     * Constructs an independent thread-pool with an explicit engine.
+     * ('queueCapacity' and 'policy' only apply to the work-stealing engine)
+     */
+    public ThreadPool(String name, int size, int timeout, Engine engine, int queueCapacity, RejectionPolicy policy) {
+        init(name, size, timeout, engine, queueCapacity, policy);
+    } // (init)
+    
+    private void init(String name, int size, int timeout, Engine engine, int queueCapacity, RejectionPolicy policy) {
         this.name = name;
         
         this.maxThreads = size;
         
         this.timeout = timeout;
         
+        if (engine == Engine.WorkStealing)
+            this.workStealing = new WorkStealingEngine(name, size, timeout, queueCapacity, policy, 
+                    this.operations, this.threadsInUse, this.queueDepth, this.queueWait);
+        
         Diagnostics.shared().registerCounter(this.name + " thread-pool.Ops", this.readOnlyOperations, true);
         Diagnostics.shared().registerCounter(this.name + " thread-pool.Active threads", this.readOnlyInUse, false);
+        Diagnostics.shared().registerCounter(this.name + " thread-pool.Queue depth", new AtomicIntegerMeasurementProvider(this.queueDepth), false);
+        Diagnostics.shared().registerCounter(this.name + " thread-pool.Queue wait (ms)", this.queueWait, false);
     }
     
     /**
@@ -147,6 +246,13 @@ public class ThreadPool {
        return this.maxThreads;
     }
     
+    /**
+     * The engine in use.
+     */
+    public Engine getEngine() {
+        return this.workStealing != null ? Engine.WorkStealing : Engine.Classic;
+    }
+    
     /**
      * Stored in the queue.
      */
@@ -171,10 +277,17 @@ public class ThreadPool {
         if (runnable == null)
             throw new NullPointerException();
         
+        if (this.workStealing != null) {
+            this.workStealing.execute(runnable);
+            return;
+        }
+        
         QueueItem item = new QueueItem(runnable);
 
         synchronized (this.workQueue) {
             this.workQueue.add(item);
+            
+            this.queueDepth.incrementAndGet();
 
             this.workQueue.notify();
         }
@@ -206,7 +319,7 @@ public class ThreadPool {
                 }
                 
                 // create the new thread
-                Thread thread = new Thread(new Runnable() {
+                Thread thread = NodelThreadFactory.shared().newThread(new Runnable() {
                     
                     @Override
                     public void run() {
@@ -220,7 +333,6 @@ public class ThreadPool {
                 this.threadsInUse.incrementAndGet();
                 
                 thread.setName("pool_" + this.name + "_" + (total - 1));
-                thread.setDaemon(true);
                 
                 synchronized(this.creationSignal) {
                     // kick off the new thread
@@ -279,11 +391,15 @@ public class ThreadPool {
                 
                 // grab the item available
                 item = this.workQueue.remove();
+                
+                this.queueDepth.decrementAndGet();
             }
             
             // grow the queue if anything has been sitting in it for more than 1 second
             long timeInQueue = System.nanoTime() - item.timestamp;
             
+            this.queueWait.record(timeInQueue / 1000000);
+            
             // or if there are no threads available
             available = this.availableThreads.decrementAndGet();
             
@@ -11,12 +11,12 @@ package org.nodel.threading;
  */
 public abstract class TimerTask implements Runnable {
 
-    private boolean _cancelled;
+    private volatile boolean _cancelled;
 
     /**
-     * The native Java timer-task.
+     * The most recent timing-wheel entry.
      */
-    java.util.TimerTask nativeTimerTask;
+    volatile TimingWheel.Entry entry;
 
     /**
      * The timer callback.
@@ -28,7 +28,10 @@ public abstract class TimerTask implements Runnable {
      */
     public void cancel() {
         _cancelled = true;
-        this.nativeTimerTask.cancel();
+        
+        TimingWheel.Entry entry = this.entry;
+        if (entry != null)
+            entry.cancel();
     }
 
     public boolean isCancelled() {
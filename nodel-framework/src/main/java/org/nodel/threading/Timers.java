@@ -7,19 +7,22 @@ package org.nodel.threading;
  */
 
 import java.util.Date;
-import java.util.Timer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.nodel.Strings;
+import org.nodel.diagnostics.AtomicIntegerMeasurementProvider;
 import org.nodel.diagnostics.AtomicLongMeasurementProvider;
 import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.PeakMeasurementProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A specialised timer class that efficient use of the package's thread-pooling, minimising the number of
- * threads in use.
+ * threads in use. Tasks are held in hashed timing wheels so scheduling and cancelling are O(1) and 
+ * cancelled tasks are purged straight away.
  */
 public class Timers {
     
@@ -29,9 +32,19 @@ public class Timers {
     private static int staticCores = Runtime.getRuntime().availableProcessors();
     
     /**
-     * Will have one timer class per CPU.
+     * The resolution of the timing wheels (millis)
      */
-    private static Timer[] staticTimerThreads;
+    private final static int TICK_MILLIS = 5;
+    
+    /**
+     * The number of buckets per wheel (one revolution is ~5s)
+     */
+    private final static int TICKS_PER_WHEEL = 1024;
+    
+    /**
+     * Will have one timing wheel per CPU.
+     */
+    private static TimingWheel[] staticTimerThreads;
     
     /**
      * A counter use to distribute timer use.
@@ -39,10 +52,10 @@ public class Timers {
     private static AtomicInteger staticCounter = new AtomicInteger(0);
     
     static {
-        staticTimerThreads = new Timer[staticCores];
+        staticTimerThreads = new TimingWheel[staticCores];
 
         for (int a = 0; a < staticCores; a++)
-            staticTimerThreads[a] = new Timer("nodel_timer_" + a, true);
+            staticTimerThreads[a] = new TimingWheel("nodel_timer_" + a, TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
     } // (static)    
     
     /**
@@ -60,6 +73,16 @@ public class Timers {
      */
     private AtomicLong operations = new AtomicLong();
     
+    /**
+     * Tasks scheduled and not yet fired or cancelled (stats)
+     */
+    private AtomicInteger pending = new AtomicInteger();
+    
+    /**
+     * The gap between scheduled and actual fire time (millis, peak per diagnostics period)
+     */
+    private PeakMeasurementProvider lateness = new PeakMeasurementProvider();
+    
     /**
      * Constructs a new timer thread.
      */
@@ -70,8 +93,11 @@ public class Timers {
         this.name = name;
         
         // to avoid a class loading stack overflow, ignore call from Framework class.
-        if (name != null && !name.startsWith("_") && Diagnostics.shared() != null)
+        if (name != null && !name.startsWith("_") && Diagnostics.shared() != null) {
             Diagnostics.shared().registerCounter(name + " timer.Ops", new AtomicLongMeasurementProvider(this.operations), true);
+            Diagnostics.shared().registerCounter(name + " timer.Pending", new AtomicIntegerMeasurementProvider(this.pending), false);
+            Diagnostics.shared().registerCounter(name + " timer.Lateness (ms)", this.lateness, false);
+        }
     } // (init)
     
     /**
@@ -82,10 +108,10 @@ public class Timers {
     }
     
     /**
-     * Uses a shared timer for rapidly completing timer tasks.
-     * One timer (and respective timer thread) is allocated per CPU.
+     * Uses a shared timing wheel for rapidly completing timer tasks.
+     * One wheel (and respective timer thread) is allocated per CPU.
      */
-    private static java.util.Timer sharedTimer() {
+    private static TimingWheel sharedTimer() {
         return staticTimerThreads[Atomic.atomicIncrementAndWrap(staticCounter, staticCores)];
     } // (method)
     
@@ -93,7 +119,7 @@ public class Timers {
      * Use for a one-off timer.
      */
     public TimerTask schedule(TimerTask task, long delay) {
-        sharedTimer().schedule(createWrapper(task, null), delay);
+        start(sharedTimer(), task, null, delay, 0, false);
         
         return task;
     } // (method)
@@ -102,7 +128,7 @@ public class Timers {
      * A one-off timer whose task could be blocking so thread-pool can be used.
      */
     public TimerTask schedule(ThreadPool threadPool, TimerTask task, long delay) {
-        sharedTimer().schedule(createWrapper(task, threadPool), delay);
+        start(sharedTimer(), task, threadPool, delay, 0, false);
         
         return task;        
     } // (method)
@@ -111,7 +137,7 @@ public class Timers {
      * Use for a one-off timer.
      */
     public TimerTask schedule(TimerTask task, Date time) {
-        sharedTimer().schedule(createWrapper(task, null), time);
+        start(sharedTimer(), task, null, delayUntil(time), 0, false);
         
         return task;
     } // (method)
@@ -120,7 +146,7 @@ public class Timers {
      * Use for a repeating timer.
      */
     public TimerTask schedule(TimerTask task, long delay, long period) {
-        sharedTimer().schedule(createWrapper(task, null), delay, period);
+        start(sharedTimer(), task, null, delay, checkPeriod(period), false);
         
         return task;
     }
@@ -129,7 +155,7 @@ public class Timers {
      * Use for a repeating timer.
      */
     public TimerTask schedule(ThreadPool threadPool, TimerTask task, long delay, long period) {
-        sharedTimer().schedule(createWrapper(task, threadPool), delay, period);
+        start(sharedTimer(), task, threadPool, delay, checkPeriod(period), false);
         
         return task;
     }    
@@ -138,7 +164,7 @@ public class Timers {
      * Use for a repeating timer.
      */
     public TimerTask schedule(TimerTask task, Date firstTime, long period) {
-        sharedTimer().schedule(createWrapper(task, null), firstTime, period);
+        start(sharedTimer(), task, null, delayUntil(firstTime), checkPeriod(period), false);
         
         return task;
     } // (method)
@@ -147,7 +173,7 @@ public class Timers {
      * Use for a repeating timer.
      */    
     public TimerTask scheduleAtFixedRate(TimerTask task, long delay, long period) {
-        sharedTimer().scheduleAtFixedRate(createWrapper(task, null), delay, period);
+        start(sharedTimer(), task, null, delay, checkPeriod(period), true);
         
         return task;
     } // (method)
@@ -156,53 +182,117 @@ public class Timers {
      * Use for a repeating timer.
      */    
     public TimerTask scheduleAtFixedRate(TimerTask task, Date firstTime, long period) {
-        sharedTimer().scheduleAtFixedRate(createWrapper(task, null), firstTime, period);
+        start(sharedTimer(), task, null, delayUntil(firstTime), checkPeriod(period), true);
         
         return task;
     } // (method)
     
     /**
-     * A convenience method to ensure unhandled exceptions are caught.
+     * (same argument checking as 'java.util.Timer')
      */
-    private java.util.TimerTask createWrapper(final TimerTask task, final ThreadPool threadPool) {
-        // set up the task entry-point at schedule time
-        final Runnable runnable = new Runnable() {
-            
-            @Override
-            public void run() {
-                task.run();
-            }
+    private static long checkPeriod(long period) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Non-positive period.");
+        
+        return period;
+    }
+    
+    /**
+     * (convenience method)
+     */
+    private static long delayUntil(Date time) {
+        return time.getTime() - System.currentTimeMillis();
+    }
+    
+    /**
+     * Schedules the first entry for a task.
+     */
+    private void start(TimingWheel wheel, TimerTask task, ThreadPool threadPool, long delay, long period, boolean fixedRate) {
+        Entry entry = new Entry(task, threadPool, TimeUnit.MILLISECONDS.toNanos(period), fixedRate);
+        
+        this.pending.incrementAndGet();
+        task.entry = entry;
+        
+        wheel.schedule(entry, delay, TimeUnit.MILLISECONDS);
+    } // (method)
+    
+    /**
+     * A timing-wheel entry that ensures unhandled exceptions are caught and offloads onto the thread-pool
+     * (if given) at time of execution.
+     */
+    private class Entry extends TimingWheel.Entry {
+        
+        private TimerTask task;
+        
+        private ThreadPool threadPool;
+        
+        /**
+         * (nanos, 0 for one-off)
+         */
+        private long period;
+        
+        private boolean fixedRate;
+        
+        public Entry(TimerTask task, ThreadPool threadPool, long period, boolean fixedRate) {
+            this.task = task;
+            this.threadPool = threadPool;
+            this.period = period;
+            this.fixedRate = fixedRate;
+        }
+        
+        @Override
+        boolean cancel() {
+            if (!super.cancel())
+                return false;
             
-        };
+            pending.decrementAndGet();
+            return true;
+        }
         
-        // create a wrapper that offloads onto the thread-pool at 
-        // time of execution
-        java.util.TimerTask nativeTimerTask = new java.util.TimerTask() {
+        @Override
+        void expire(long latenessNanos) {
+            pending.decrementAndGet();
             
-            @Override
-            public void run() {
-                try {
-                    // for ops counting
-                    operations.incrementAndGet();
-                    
-                    if (threadPool == null)
-                        runnable.run();
-                    else
-                        threadPool.execute(runnable);
-                    
-                } catch (Exception exc) {
-                    // make sure unhandled exceptions don't pull down the whole thread
-                    
-                    logger.warn("An unhandled exception occurred within this timer's thread.", exc);
-                }
-                
-            } // (method)
+            lateness.record(latenessNanos / 1000000);
             
-        };
+            try {
+                // for ops counting
+                operations.incrementAndGet();
+
+                if (this.threadPool == null)
+                    this.task.run();
+                else
+                    this.threadPool.execute(this.task);
+
+            } catch (Exception exc) {
+                // make sure unhandled exceptions don't pull down the whole thread
+
+                logger.warn("An unhandled exception occurred within this timer's thread.", exc);
+            }
+            
+            if (this.period > 0)
+                repeat();
+        } // (method)
         
-        task.nativeTimerTask = nativeTimerTask;
+        /**
+         * Schedules the next entry for a repeating task.
+         */
+        private void repeat() {
+            Entry next = new Entry(this.task, this.threadPool, this.period, this.fixedRate);
+
+            pending.incrementAndGet();
+            this.task.entry = next;
+
+            if (this.fixedRate)
+                this.wheel.scheduleAt(next, this.deadline + this.period);
+            else
+                this.wheel.schedule(next, this.period, TimeUnit.NANOSECONDS);
+
+            // catch any cancellation that raced the hand-over
+            if (this.task.isCancelled())
+                next.cancel();
+        } // (method)
         
-        return nativeTimerTask;
-    } // (method)
+    } // (class)
     
 } // (class)
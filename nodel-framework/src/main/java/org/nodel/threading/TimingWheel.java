@@ -0,0 +1,341 @@
+package org.nodel.threading;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel: scheduling and cancelling are O(1) and lock-free for callers. Callers only ever append to
+ * hand-off queues; the wheel thread drains those in batches each tick, places entries in their buckets (carrying a
+ * round count for deadlines beyond one revolution) and unlinks cancelled entries straight away so they don't linger
+ * until their deadline.
+ */
+class TimingWheel {
+
+    /**
+     * (logging)
+     */
+    private Logger _logger = LoggerFactory.getLogger(this.getClass().getName());
+
+    /**
+     * The resolution of the wheel.
+     */
+    private final long _tickNanos;
+
+    /**
+     * The number of buckets (power of 2)
+     */
+    private final int _mask;
+
+    /**
+     * The buckets (only touched by the wheel thread)
+     */
+    private final Bucket[] _buckets;
+
+    /**
+     * Newly scheduled entries waiting to be placed in buckets.
+     */
+    private final Queue<Entry> _scheduled = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * Cancelled entries waiting to be unlinked.
+     */
+    private final Queue<Entry> _cancelled = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * When the wheel started (nanos)
+     */
+    private final long _startTime;
+
+    /**
+     * The number of ticks processed.
+     */
+    private long _tick;
+
+    /**
+     * The wheel thread.
+     */
+    private final Thread _thread;
+
+    /**
+     * An entry's states.
+     */
+    private final static int STATE_INIT = 0, STATE_CANCELLED = 1, STATE_EXPIRED = 2;
+
+    /**
+     * A scheduled entry, linked into a bucket.
+     */
+    static abstract class Entry {
+
+        /**
+         * The deadline (relative to wheel start, nanos)
+         */
+        long deadline;
+
+        /**
+         * Full revolutions remaining before expiry.
+         */
+        long remainingRounds;
+
+        /**
+         * (see STATE_...)
+         */
+        final AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+        /**
+         * The owning wheel.
+         */
+        TimingWheel wheel;
+
+        /**
+         * (bucket links)
+         */
+        Entry next, prev;
+
+        /**
+         * The bucket (if placed)
+         */
+        Bucket bucket;
+
+        /**
+         * Called on the wheel thread when expired; 'lateness' is in nanos.
+         */
+        abstract void expire(long lateness);
+
+        /**
+         * Cancels this entry, returning false if it had already expired or been cancelled.
+         */
+        boolean cancel() {
+            if (!this.state.compareAndSet(STATE_INIT, STATE_CANCELLED))
+                return false;
+
+            TimingWheel wheel = this.wheel;
+            if (wheel != null)
+                wheel._cancelled.add(this);
+
+            return true;
+        }
+
+        boolean isCancelled() {
+            return this.state.get() == STATE_CANCELLED;
+        }
+
+    } // (class)
+
+    /**
+     * A doubly linked list of entries.
+     */
+    private static class Bucket {
+
+        private Entry head, tail;
+
+        void add(Entry entry) {
+            entry.bucket = this;
+
+            if (this.head == null) {
+                this.head = this.tail = entry;
+            } else {
+                this.tail.next = entry;
+                entry.prev = this.tail;
+                this.tail = entry;
+            }
+        }
+
+        Entry remove(Entry entry) {
+            Entry next = entry.next;
+
+            if (entry.prev != null)
+                entry.prev.next = next;
+
+            if (entry.next != null)
+                entry.next.prev = entry.prev;
+
+            if (entry == this.head) {
+                if (entry == this.tail) {
+                    this.tail = null;
+                    this.head = null;
+                } else {
+                    this.head = next;
+                }
+            } else if (entry == this.tail) {
+                this.tail = entry.prev;
+            }
+
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+
+            return next;
+        }
+
+        /**
+         * Expires everything due this revolution.
+         */
+        void expire(long now) {
+            Entry entry = this.head;
+
+            while (entry != null) {
+                if (entry.remainingRounds <= 0) {
+                    Entry next = remove(entry);
+
+                    if (entry.state.compareAndSet(STATE_INIT, STATE_EXPIRED))
+                        entry.expire(Math.max(0, now - entry.deadline));
+
+                    entry = next;
+
+                } else if (entry.isCancelled()) {
+                    entry = remove(entry);
+
+                } else {
+                    entry.remainingRounds--;
+                    entry = entry.next;
+                }
+            }
+        }
+
+    } // (class)
+
+    /**
+     * Creates and starts a wheel.
+     */
+    TimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        int size = 1;
+        while (size < ticksPerWheel)
+            size <<= 1;
+
+        _tickNanos = unit.toNanos(tickDuration);
+        _mask = size - 1;
+        _buckets = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            _buckets[i] = new Bucket();
+
+        _startTime = System.nanoTime();
+
+        // always a platform thread; ticking must not be starved
+        _thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                threadMain();
+            }
+
+        }, name);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * The current time on this wheel's time-line (nanos)
+     */
+    long now() {
+        return System.nanoTime() - _startTime;
+    }
+
+    /**
+     * Schedules an entry after a delay (O(1), lock-free)
+     */
+    void schedule(Entry entry, long delay, TimeUnit unit) {
+        scheduleAt(entry, now() + unit.toNanos(Math.max(0, delay)));
+    }
+
+    /**
+     * Schedules an entry at a deadline on this wheel's time-line (O(1), lock-free)
+     */
+    void scheduleAt(Entry entry, long deadline) {
+        entry.wheel = this;
+        entry.deadline = deadline;
+
+        _scheduled.add(entry);
+    }
+
+    /**
+     * (entry-point for the wheel thread)
+     */
+    private void threadMain() {
+        for (;;) {
+            long now = waitForNextTick();
+
+            // batch up hand-offs
+            purgeCancelled();
+            placeScheduled();
+
+            Bucket bucket = _buckets[(int) (_tick & _mask)];
+
+            try {
+                bucket.expire(now);
+            } catch (Exception exc) {
+                _logger.warn("An unhandled exception occurred within this timing wheel's thread.", exc);
+            }
+
+            _tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the next tick, returning the current time (relative to start)
+     */
+    private long waitForNextTick() {
+        long deadline = _tickNanos * (_tick + 1);
+
+        for (;;) {
+            long now = now();
+            long sleepNanos = deadline - now;
+
+            if (sleepNanos <= 0)
+                return now;
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException exc) {
+                // (ignore)
+            }
+        }
+    }
+
+    /**
+     * Unlinks cancelled entries from their buckets.
+     */
+    private void purgeCancelled() {
+        for (;;) {
+            Entry entry = _cancelled.poll();
+            if (entry == null)
+                return;
+
+            if (entry.bucket != null)
+                entry.bucket.remove(entry);
+        }
+    }
+
+    /**
+     * Places newly scheduled entries in their buckets.
+     */
+    private void placeScheduled() {
+        // limit the batch so a flood of scheduling can't stall the wheel
+        for (int i = 0; i < 100000; i++) {
+            Entry entry = _scheduled.poll();
+            if (entry == null)
+                return;
+
+            if (entry.isCancelled())
+                continue;
+
+            long calculated = entry.deadline / _tickNanos;
+            entry.remainingRounds = (calculated - _tick) / _buckets.length;
+
+            // anything already due goes in the current bucket
+            long ticks = Math.max(calculated, _tick);
+            _buckets[(int) (ticks & _mask)].add(entry);
+        }
+    }
+
+} // (class)
@@ -0,0 +1,394 @@
+package org.nodel.threading;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.nodel.UnexpectedInterruptedException;
+import org.nodel.diagnostics.PeakMeasurementProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The alternative engine behind a ThreadPool: each worker owns a deque, external submissions go through a shared
+ * injection queue and idle workers steal from busy ones. No monitors are held on the submission or take paths.
+ *
+ * The total number of queued items is bounded; what happens when full is decided by the rejection policy.
+ */
+class WorkStealingEngine {
+
+    /**
+     * (logging)
+     */
+    private Logger _logger = LoggerFactory.getLogger(this.getClass().getName());
+
+    /**
+     * The name of the owning pool.
+     */
+    private String _name;
+
+    /**
+     * The thread-count cap.
+     */
+    private int _maxThreads;
+
+    /**
+     * The idle time (millis) before workers retire themselves (or -1 to never retire).
+     */
+    private int _timeout;
+
+    /**
+     * The queue capacity across all deques.
+     */
+    private int _capacity;
+
+    /**
+     * What to do when the queues are full.
+     */
+    private RejectionPolicy _policy;
+
+    /**
+     * Permits for queue slots, one per item queued.
+     */
+    private Semaphore _slots;
+
+    /**
+     * Submissions from threads not belonging to this pool.
+     */
+    private Queue<Item> _injectionQueue = new ConcurrentLinkedQueue<Item>();
+
+    /**
+     * The worker slots (null when vacant).
+     */
+    private AtomicReferenceArray<Worker> _workers;
+
+    /**
+     * Workers parked waiting for work.
+     */
+    private Queue<Worker> _idle = new ConcurrentLinkedQueue<Worker>();
+
+    /**
+     * The total number of live workers.
+     */
+    private AtomicInteger _totalThreads = new AtomicInteger();
+
+    /**
+     * (shared with owning pool for diagnostics)
+     */
+    private AtomicLong _operations;
+
+    /**
+     * (shared with owning pool for diagnostics)
+     */
+    private AtomicInteger _threadsInUse;
+
+    /**
+     * (shared with owning pool for diagnostics)
+     */
+    private AtomicInteger _queueDepth;
+
+    /**
+     * (shared with owning pool for diagnostics)
+     */
+    private PeakMeasurementProvider _queueWait;
+
+    /**
+     * Items dropped through the 'DropOldest' policy.
+     */
+    private AtomicLong _dropped = new AtomicLong();
+
+    /**
+     * Whether or not the thread-cap info log has been logged to avoid excessive logging.
+     */
+    private volatile boolean _logged = false;
+
+    /**
+     * The worker (if any) of this engine running on the current thread.
+     */
+    private ThreadLocal<Worker> _currentWorker = new ThreadLocal<Worker>();
+
+    WorkStealingEngine(String name, int maxThreads, int timeout, int capacity, RejectionPolicy policy,
+                       AtomicLong operations, AtomicInteger threadsInUse, AtomicInteger queueDepth, PeakMeasurementProvider queueWait) {
+        _name = name;
+        _maxThreads = maxThreads;
+        _timeout = timeout;
+        _capacity = capacity;
+        _policy = policy;
+
+        _slots = new Semaphore(capacity);
+        _workers = new AtomicReferenceArray<Worker>(maxThreads);
+
+        _operations = operations;
+        _threadsInUse = threadsInUse;
+        _queueDepth = queueDepth;
+        _queueWait = queueWait;
+    }
+
+    /**
+     * Stored in the deques.
+     */
+    private static class Item {
+
+        public Runnable runnable;
+
+        public long timestamp;
+
+        public Item(Runnable runnable) {
+            this.runnable = runnable;
+            this.timestamp = System.nanoTime();
+        }
+
+    } // (class)
+
+    /**
+     * A worker and its own deque.
+     */
+    private class Worker implements Runnable {
+
+        public final int index;
+
+        public final ConcurrentLinkedDeque<Item> deque = new ConcurrentLinkedDeque<Item>();
+
+        public Thread thread;
+
+        public Worker(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            workerMain(this);
+        }
+
+    } // (class)
+
+    /**
+     * The number of items dropped due to the 'DropOldest' policy.
+     */
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * Queues a task, applying the rejection policy if the queues are full.
+     */
+    public void execute(Runnable runnable) {
+        if (!_slots.tryAcquire()) {
+            if (_policy == RejectionPolicy.CallerRuns) {
+                run(new Item(runnable));
+                return;
+            }
+
+            if (_policy == RejectionPolicy.DropOldest) {
+                // make room by discarding the oldest (external) submission
+                Item oldest = _injectionQueue.poll();
+                if (oldest != null) {
+                    _queueDepth.decrementAndGet();
+                    _dropped.incrementAndGet();
+
+                    if (!_logged) {
+                        _logged = true;
+                        _logger.info("Queue capacity of {} reached for thread pool '{}'; oldest items are being dropped.", _capacity, _name);
+                    }
+
+                    // reuse the freed slot
+                    enqueue(new Item(runnable));
+                    return;
+                }
+
+                // (otherwise nothing external to drop, so block)
+            }
+
+            // Block (and default)
+            try {
+                _slots.acquire();
+            } catch (InterruptedException exc) {
+                throw new UnexpectedInterruptedException(exc);
+            }
+        }
+
+        enqueue(new Item(runnable));
+    }
+
+    /**
+     * (slot must already be acquired)
+     */
+    private void enqueue(Item item) {
+        _queueDepth.incrementAndGet();
+
+        Worker current = _currentWorker.get();
+        if (current != null)
+            // submissions from own workers stay local
+            current.deque.addLast(item);
+        else
+            _injectionQueue.add(item);
+
+        // wake an idle worker or grow
+        Worker idle = _idle.poll();
+        if (idle != null)
+            LockSupport.unpark(idle.thread);
+        else
+            tryGrow();
+    }
+
+    /**
+     * Starts a new worker if under the cap.
+     */
+    private void tryGrow() {
+        for (;;) {
+            int total = _totalThreads.get();
+
+            if (total >= _maxThreads) {
+                if (!_logged) {
+                    _logged = true;
+                    _logger.info("Reached thread cap of {} for thread pool '{}'.", _maxThreads, _name);
+                }
+
+                // let the existing workers deal with it
+                return;
+            }
+
+            if (_totalThreads.compareAndSet(total, total + 1))
+                break;
+        }
+
+        // find a vacant slot
+        for (int i = 0; i < _maxThreads; i++) {
+            Worker worker = new Worker(i);
+
+            if (_workers.compareAndSet(i, null, worker)) {
+                Thread thread = NodelThreadFactory.shared().newThread(worker);
+                thread.setName("pool_" + _name + "_" + i);
+                worker.thread = thread;
+
+                thread.start();
+                return;
+            }
+        }
+
+        // (should not get here given the thread count is bounded by the slot count)
+        _totalThreads.decrementAndGet();
+    }
+
+    /**
+     * Takes from own deque, then the injection queue, then steals from a random victim.
+     */
+    private Item take(Worker worker) {
+        Item item = worker.deque.pollFirst();
+        if (item != null)
+            return item;
+
+        item = _injectionQueue.poll();
+        if (item != null)
+            return item;
+
+        int start = ThreadLocalRandom.current().nextInt(_maxThreads);
+        for (int i = 0; i < _maxThreads; i++) {
+            Worker victim = _workers.get((start + i) % _maxThreads);
+            if (victim == null || victim == worker)
+                continue;
+
+            // steal from the opposite end to the owner
+            item = victim.deque.pollLast();
+            if (item != null)
+                return item;
+        }
+
+        return null;
+    }
+
+    /**
+     * (entry-point for workers)
+     */
+    private void workerMain(Worker worker) {
+        _currentWorker.set(worker);
+
+        for (;;) {
+            Item item = take(worker);
+
+            if (item == null) {
+                // register as idle *then* re-check to avoid missing a wake-up
+                _idle.add(worker);
+
+                item = take(worker);
+
+                if (item == null) {
+                    long idleStart = System.nanoTime();
+
+                    if (_timeout < 0)
+                        LockSupport.park(this);
+                    else
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(_timeout));
+
+                    _idle.remove(worker);
+
+                    if (_timeout >= 0 && System.nanoTime() - idleStart >= TimeUnit.MILLISECONDS.toNanos(_timeout) && worker.deque.isEmpty()) {
+                        // idle a while so retire, picking up anything that slipped in
+                        _workers.set(worker.index, null);
+                        _totalThreads.decrementAndGet();
+                        _logged = false;
+
+                        _logger.debug("This idle thread has been retired from its pool.");
+
+                        Item straggler = take(worker);
+                        if (straggler != null) {
+                            _slots.release();
+                            _queueDepth.decrementAndGet();
+                            run(straggler);
+
+                            if (!_injectionQueue.isEmpty())
+                                tryGrow();
+                        }
+
+                        return;
+                    }
+
+                    continue;
+                }
+
+                _idle.remove(worker);
+            }
+
+            _slots.release();
+            _queueDepth.decrementAndGet();
+
+            run(item);
+        } // (for)
+    }
+
+    /**
+     * Runs an item, recording the stats.
+     */
+    private void run(Item item) {
+        _queueWait.record((System.nanoTime() - item.timestamp) / 1000000);
+
+        _threadsInUse.incrementAndGet();
+
+        // count the operation *before* actual execution
+        _operations.incrementAndGet();
+
+        try {
+            item.runnable.run();
+
+        } catch (Exception exc) {
+            _logger.warn("An unhandled exception occurred within a thread-pool", exc);
+
+        } finally {
+            _threadsInUse.decrementAndGet();
+        }
+    }
+
+} // (class)
@@ -0,0 +1,145 @@
+package org.nodel.toolkit;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.Arrays;
+
+import org.nodel.io.UTF8Charset;
+
+/**
+ * Captures process output, optionally keeping only the most recent bytes when a limit is given.
+ *
+ * (thread-safe)
+ */
+class CaptureBuffer {
+
+    /**
+     * The byte limit (0 or less for unlimited)
+     */
+    private int _limit;
+
+    /**
+     * The buffer (a ring once the limit is reached)
+     */
+    private byte[] _buffer;
+
+    /**
+     * Where the oldest byte is (once wrapped)
+     */
+    private int _start;
+
+    /**
+     * Bytes held.
+     */
+    private int _size;
+
+    /**
+     * All the bytes ever appended.
+     */
+    private long _total;
+
+    /**
+     * @param limit the most bytes kept (0 or less for unlimited)
+     */
+    public CaptureBuffer(int limit) {
+        _limit = limit;
+        _buffer = new byte[limit > 0 ? Math.min(limit, 1024) : 1024];
+    }
+
+    /**
+     * Appends data, dropping the oldest if the limit is reached.
+     */
+    public synchronized void append(byte[] buffer, int offset, int len) {
+        _total += len;
+
+        if (_limit > 0 && len >= _limit) {
+            // only the tail of this data will fit
+            _buffer = Arrays.copyOfRange(buffer, offset + len - _limit, offset + len);
+            _start = 0;
+            _size = _limit;
+            return;
+        }
+
+        int needed = _size + len;
+        if (needed > _buffer.length && (_limit <= 0 || _buffer.length < _limit))
+            grow(_limit > 0 ? Math.min(_limit, Math.max(needed, _buffer.length * 2)) : Math.max(needed, _buffer.length * 2));
+
+        int capacity = _buffer.length;
+
+        for (int a = 0; a < len; a++) {
+            int i = _start + _size;
+            if (i >= capacity)
+                i -= capacity;
+
+            _buffer[i] = buffer[offset + a];
+
+            if (_size < capacity) {
+                _size++;
+            } else {
+                // full, so the oldest byte was overwritten
+                _start++;
+                if (_start == capacity)
+                    _start = 0;
+            }
+        } // (for)
+    }
+
+    /**
+     * Grows the buffer, unwrapping it.
+     */
+    private void grow(int newLength) {
+        byte[] newBuffer = new byte[newLength];
+        copyTo(newBuffer);
+
+        _buffer = newBuffer;
+        _start = 0;
+    }
+
+    /**
+     * (in order)
+     */
+    private void copyTo(byte[] target) {
+        int firstPart = Math.min(_size, _buffer.length - _start);
+        System.arraycopy(_buffer, _start, target, 0, firstPart);
+        System.arraycopy(_buffer, 0, target, firstPart, _size - firstPart);
+    }
+
+    /**
+     * Whether anything was dropped.
+     */
+    public synchronized boolean isTruncated() {
+        return _total > _size;
+    }
+
+    /**
+     * The captured bytes.
+     */
+    public synchronized byte[] getBytes() {
+        byte[] result = new byte[_size];
+        copyTo(result);
+        return result;
+    }
+
+    /**
+     * The capture as a (UTF-8) string.
+     */
+    @Override
+    public String toString() {
+        byte[] bytes = getBytes();
+        return new String(bytes, 0, bytes.length, UTF8Charset.instance());
+    }
+
+    /**
+     * Empties the buffer.
+     */
+    public synchronized void clear() {
+        _start = 0;
+        _size = 0;
+        _total = 0;
+    }
+
+} // (class)
@@ -0,0 +1,210 @@
+package org.nodel.toolkit;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.nodel.Handler.H1;
+import org.nodel.diagnostics.PeakMeasurementProvider;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+
+/**
+ * A request queue with priority lanes, 'Interactive' always ahead of 'Background', and optional coalescing where a
+ * newly queued request replaces an identical pending one (the newest is kept, in the older one's place, and callers
+ * carry over the older one's response handlers using 'fanOut').
+ *
+ * (not thread-safe, callers lock)
+ */
+class LaneQueue<T> {
+
+    /**
+     * (an item and its queueing details)
+     */
+    private static class Entry<T> {
+
+        public T item;
+
+        public RequestLane lane;
+
+        public Object key;
+
+        /**
+         * (based on 'nanoTime')
+         */
+        public long timeQueued = System.nanoTime();
+
+    } // (class)
+
+    /**
+     * (see 'RequestLane.Interactive')
+     */
+    private LinkedList<Entry<T>> _interactive = new LinkedList<Entry<T>>();
+
+    /**
+     * (see 'RequestLane.Background')
+     */
+    private LinkedList<Entry<T>> _background = new LinkedList<Entry<T>>();
+
+    /**
+     * Pending entries that can be coalesced, by key.
+     */
+    private Map<Object, Entry<T>> _byKey = new HashMap<Object, Entry<T>>();
+
+    /**
+     * (diagnostics, by lane ordinal)
+     */
+    private SharableMeasurementProvider[] _lengthCounters;
+
+    /**
+     * (diagnostics, by lane ordinal)
+     */
+    private PeakMeasurementProvider[] _waitCounters;
+
+    /**
+     * Constructs a new queue, updating the given queue length and wait time (millis) counters, by lane ordinal.
+     */
+    public LaneQueue(SharableMeasurementProvider[] lengthCounters, PeakMeasurementProvider[] waitCounters) {
+        _lengthCounters = lengthCounters;
+        _waitCounters = waitCounters;
+    }
+
+    /**
+     * Adds an item to the end of its lane or, if a coalescing key is given and an item with the same key is
+     * pending, replaces that one.
+     *
+     * @param key the coalescing key, or null to never coalesce.
+     * @return the item that was replaced, or null if none was.
+     */
+    public T add(T item, RequestLane lane, Object key) {
+        if (key != null) {
+            Entry<T> existing = _byKey.get(key);
+
+            if (existing != null) {
+                T replaced = existing.item;
+
+                if (existing.lane == lane || lane == RequestLane.Background) {
+                    // keep its place
+                    existing.item = item;
+
+                } else {
+                    // promote into the interactive lane
+                    lane(existing.lane).remove(existing);
+                    _lengthCounters[existing.lane.ordinal()].decr();
+
+                    existing.item = item;
+                    existing.lane = lane;
+                    _interactive.add(existing);
+                    _lengthCounters[lane.ordinal()].incr();
+                }
+
+                return replaced;
+            }
+        }
+
+        Entry<T> entry = new Entry<T>();
+        entry.item = item;
+        entry.lane = lane;
+        entry.key = key;
+
+        lane(lane).add(entry);
+        _lengthCounters[lane.ordinal()].incr();
+
+        if (key != null)
+            _byKey.put(key, entry);
+
+        return null;
+    } // (method)
+
+    /**
+     * Removes the next item, interactive ones first, or returns null if empty.
+     */
+    public T poll() {
+        Entry<T> entry = _interactive.poll();
+        if (entry == null)
+            entry = _background.poll();
+
+        if (entry == null)
+            return null;
+
+        if (entry.key != null)
+            _byKey.remove(entry.key);
+
+        int lane = entry.lane.ordinal();
+        _lengthCounters[lane].decr();
+        _waitCounters[lane].record((System.nanoTime() - entry.timeQueued) / 1000000);
+
+        return entry.item;
+    } // (method)
+
+    /**
+     * The total number of items queued.
+     */
+    public int size() {
+        return _interactive.size() + _background.size();
+    }
+
+    /**
+     * The number of items queued in a lane.
+     */
+    public int size(RequestLane lane) {
+        return lane(lane).size();
+    }
+
+    /**
+     * Removes all items.
+     *
+     * @return the number removed.
+     */
+    public int clear() {
+        int count = size();
+
+        _lengthCounters[RequestLane.Interactive.ordinal()].add(-_interactive.size());
+        _lengthCounters[RequestLane.Background.ordinal()].add(-_background.size());
+
+        _interactive.clear();
+        _background.clear();
+        _byKey.clear();
+
+        return count;
+    } // (method)
+
+    /**
+     * Combines the response handlers of a replaced request and the request replacing it, so everyone who asked gets
+     * the one response (older first; either can be null).
+     */
+    public static <V> H1<V> fanOut(final H1<V> older, final H1<V> newer) {
+        if (older == null)
+            return newer;
+
+        if (newer == null)
+            return older;
+
+        return new H1<V>() {
+
+            @Override
+            public void handle(V value) {
+                try {
+                    older.handle(value);
+
+                } finally {
+                    newer.handle(value);
+                }
+            }
+
+        };
+    }
+
+    /**
+     * (convenience)
+     */
+    private LinkedList<Entry<T>> lane(RequestLane lane) {
+        return lane == RequestLane.Background ? _background : _interactive;
+    }
+
+} // (class)
@@ -1,19 +1,23 @@
 package org.nodel.toolkit;
 
-import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.nodel.Handler;
+import org.nodel.Handler.F1;
 import org.nodel.Handler.H0;
 import org.nodel.Handler.H1;
 import org.nodel.core.Nodel;
@@ -22,10 +26,10 @@ import org.nodel.Threads;
 import org.nodel.diagnostics.CountableInputStream;
 import org.nodel.diagnostics.CountableOutputStream;
 import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.PeakMeasurementProvider;
 import org.nodel.diagnostics.SharableMeasurementProvider;
 import org.nodel.host.BaseNode;
 import org.nodel.io.BufferBuilder;
-import org.nodel.io.Stream;
 import org.nodel.threading.CallbackQueue;
 import org.nodel.threading.ThreadPool;
 import org.nodel.threading.TimerTask;
@@ -43,7 +47,7 @@ import org.slf4j.LoggerFactory;
  *    - minimisation of String object fragmentation 
  *    - automatic delimiting
  *    - UTF8 decoded
- *    - trimmed
+ *    - trimmed (text only, raw byte handlers get whole segments)
  *  - exponential back-off
  */
 public class ManagedProcess implements Closeable {
@@ -61,6 +65,20 @@ public class ManagedProcess implements Closeable {
     
     private static AtomicLong s_instanceCounter = new AtomicLong();
     
+    /**
+     * The longest time (millis) a request waited in each lane (by lane ordinal, peak per diagnostics period)
+     * (diagnostics)
+     */
+    private static PeakMeasurementProvider[] s_laneWaitCounters = { new PeakMeasurementProvider(), new PeakMeasurementProvider() };
+    
+    /**
+     * (diagnostics)
+     */
+    static {
+        Diagnostics.shared().registerCounter("Managed process.Interactive queue wait (ms)", s_laneWaitCounters[RequestLane.Interactive.ordinal()], false);
+        Diagnostics.shared().registerCounter("Managed process.Background queue wait (ms)", s_laneWaitCounters[RequestLane.Background.ordinal()], false);
+    }
+    
     /**
      * (used by 'logger' and thread name)
      */
@@ -136,6 +154,11 @@ public class ManagedProcess implements Closeable {
      */
     private H1<String> _stdoutCallback;
     
+    /**
+     * (see setter)
+     */
+    private H1<byte[]> _binaryStdoutCallback;
+    
     /**
      * (see setter)
      */
@@ -177,9 +200,27 @@ public class ManagedProcess implements Closeable {
     private State _state = State.Started;
 
     /**
-     * The receive thread.
+     * Set once the kick-off delay has passed (see 'init')
+     * (synchronised around 'lock')
      */
-    private Thread _thread;
+    private boolean _initialised;
+    
+    /**
+     * Whether a process is being launched or is running (including the clean up afterwards)
+     * (synchronised around 'lock')
+     */
+    private boolean _active;
+    
+    /**
+     * A pending (re)launch.
+     * (synchronised around 'lock')
+     */
+    private TimerTask _launchTimer;
+    
+    /**
+     * Merged stdout / stderr capture (null if not capturing)
+     */
+    private CaptureBuffer _capture;
     
     /**
      * Shared timer framework to use.
@@ -281,24 +322,53 @@ public class ManagedProcess implements Closeable {
     private SharableMeasurementProvider _counterStderrRate;
     
     /**
-     * The request queue
+     * The request queue, with priority lanes
+     * (locked around 'lock', init. in constructor)
      */
-    private ConcurrentLinkedQueue<QueuedRequest> _requestQueue = new ConcurrentLinkedQueue<QueuedRequest>();
+    private LaneQueue<QueuedRequest> _requestQueue;
     
     /**
-     * Holds the queue length ('ConcurrentLinkedQueue' not designed to handle 'size()' efficiently)
+     * Whether identical pending requests are coalesced.
      */
-    private int _queueLength = 0;
+    private boolean _coalescing = false;
     
     /**
      * The active request
      */
     private QueuedRequest _activeRequest;
-
+    
     /**
-     * Gets initialised once, during connection loop and then never again.
+     * The number of requests allowed to be outstanding at once (1 means one-at-a-time i.e. not pipelined)
      */
-    private byte[] _buffer;
+    private int _pipelineWindow = 1;
+    
+    /**
+     * Extracts a tag from requests and responses so they can be matched up when pipelined.
+     * (null means responses are expected in request order)
+     */
+    private F1<Object, String> _correlator;
+    
+    /**
+     * The outstanding requests when pipelined, oldest first.
+     * (locked around 'lock')
+     */
+    private LinkedList<QueuedRequest> _inFlight = new LinkedList<QueuedRequest>();
+    
+    /**
+     * Keeps pipelined sends in the order they were dispatched.
+     */
+    private Object _pipelineSendLock = new Object();
+    
+    /**
+     * Checks for expired pipelined requests in case no data arrives.
+     * (locked around 'lock')
+     */
+    private TimerTask _expiryTimer;
+    
+    /**
+     * When the expiry timer is due (based on 'nanoTime')
+     */
+    private long _expiryTimerDue;
 
     /**
      * (constructor)
@@ -314,24 +384,16 @@ public class ManagedProcess implements Closeable {
         _threadPool = threadPool;
         _timerThread = timers;
         
-        // set up the connect and receive thread
-        _thread = new Thread(new Runnable() {
-
-            @Override
-            public void run() {
-                begin();
-            }
-            
-        });
-        _thread.setName(node.getName().getReducedName() + "_processLaunchAndReceive_" + _instance);
-        _thread.setDaemon(true);
-        
         // register the counters
         String counterName = "'" + node.getName().getReducedName() + "'";
         _counterLaunches = Diagnostics.shared().registerSharableCounter(counterName + ".Process launches", true);
         _counterStdoutRate = Diagnostics.shared().registerSharableCounter(counterName + ".Process stdout rate", true);
         _counterStderrRate = Diagnostics.shared().registerSharableCounter(counterName + ".Process stderr rate", true);
         _counterStdinRate = Diagnostics.shared().registerSharableCounter(counterName + ".Process stdin rate", true);
+        
+        _requestQueue = new LaneQueue<QueuedRequest>(new SharableMeasurementProvider[] {
+                Diagnostics.shared().registerSharableCounter(counterName + ".process interactive queue", false),
+                Diagnostics.shared().registerSharableCounter(counterName + ".process background queue", false) }, s_laneWaitCounters);
     }
     
     /**
@@ -355,6 +417,14 @@ public class ManagedProcess implements Closeable {
         _stdoutCallback = handler;
     }
     
+    /**
+     * When a data from stdout arrives, as raw bytes i.e. without any character conversion.
+     * (opt-in, can be used alongside or instead of the 'stdout' handler)
+     */
+    public void setBinaryOutHandler(H1<byte[]> handler) {
+        _binaryStdoutCallback = handler;
+    }
+    
     /**
      * When a data to stdin is sent
      */
@@ -426,15 +496,64 @@ public class ManagedProcess implements Closeable {
         _requestTimeout = value;
     }
     
+    /**
+     * Allows up to 'window' requests to be outstanding at once, each timing out independently. Responses are 
+     * matched to requests using the tag 'correlator' extracts from each (e.g. a sequence number or ID) or, without 
+     * a correlator, in the order the requests were sent. Responses that match no request are still passed to the 
+     * 'received' handlers.
+     * (a window of 1 restores one-at-a-time operation; best set before any requests are made)
+     */
+    public void setPipelining(int window, F1<Object, String> correlator) {
+        synchronized (_lock) {
+            _pipelineWindow = Math.max(1, window);
+            _correlator = correlator;
+            
+            if (_pipelineWindow == 1)
+                _inFlight.clear();
+        }
+    }
+    
+    /**
+     * (see setter)
+     */
+    public int getPipelineWindow() {
+        return _pipelineWindow;
+    }
+    
     /**
      * Returns the current queue length size.
      */
     public int getQueueLength() {
         synchronized (_lock) {
-            return _queueLength;
+            return _requestQueue.size();
         }
     }
     
+    /**
+     * Returns the current queue length of a lane.
+     */
+    public int getQueueLength(RequestLane lane) {
+        synchronized (_lock) {
+            return _requestQueue.size(lane);
+        }
+    }
+    
+    /**
+     * When set, a request (one expecting a response) replaces any identical one that's still pending i.e. only the 
+     * newest is sent, in the older one's place, and its response goes to every response handler involved. Blind sends
+     * are never coalesced.
+     */
+    public void setCoalescing(boolean value) {
+        _coalescing = value;
+    }
+    
+    /**
+     * (see setter)
+     */
+    public boolean getCoalescing() {
+        return _coalescing;
+    }
+    
     /**
      * Sets the working directory, otherwise leaves as node's root.
      */
@@ -463,6 +582,32 @@ public class ManagedProcess implements Closeable {
         return _working;
     }
     
+    /**
+     * Keeps a merged capture of the most recent stdout and stderr output (see 'getCapture').
+     * 
+     * @param limit the most bytes kept, 0 to stop capturing
+     */
+    public void setCaptureLimit(int limit) {
+        _capture = limit > 0 ? new CaptureBuffer(limit) : null;
+    }
+    
+    /**
+     * Returns the merged stdout / stderr capture (or null if not capturing).
+     */
+    public String getCapture() {
+        CaptureBuffer capture = _capture;
+        return capture != null ? capture.toString() : null;
+    }
+    
+    /**
+     * Empties the capture buffer.
+     */
+    public void clearCapture() {
+        CaptureBuffer capture = _capture;
+        if (capture != null)
+            capture.clear();
+    }
+    
     /**
      * Performs necessary initialisation before either actually starting or stopping
      */
@@ -476,7 +621,11 @@ public class ManagedProcess implements Closeable {
 
                     @Override
                     public void run() {
-                        _thread.start();
+                        synchronized (_lock) {
+                            _initialised = true;
+                        }
+                        
+                        launch();
                     }
 
                 }, kickoffTime);
@@ -494,7 +643,7 @@ public class ManagedProcess implements Closeable {
             
             _state = State.Started;
             
-            _lock.notifyAll();
+            scheduleLaunch(0);
         }
     }
     
@@ -510,7 +659,7 @@ public class ManagedProcess implements Closeable {
             
             _state = State.Started;
             
-            _lock.notifyAll();
+            scheduleLaunch(0);
         }
     }    
     
@@ -524,73 +673,69 @@ public class ManagedProcess implements Closeable {
             
             _state = State.Stopped;
             
+            if (_launchTimer != null) {
+                _launchTimer.cancel();
+                _launchTimer = null;
+            }
+            
             safeClose(_process);
         }
     }
     
     /**
-     * The main thread.
+     * Schedules a launch unless one is already pending or a process is active.
+     * (assumes locked)
      */
-    private void begin() {
+    private void scheduleLaunch(long delay) {
+        if (_shutdown || !_initialised || _active || _launchTimer != null)
+            return;
+        
+        _launchTimer = _timerThread.schedule(_threadPool, new TimerTask() {
+
+            @Override
+            public void run() {
+                launch();
+            }
+
+        }, delay);
+    }
+    
+    /**
+     * Launches the process if in the started state. Its pipes are then serviced by the shared 'ProcessPipes'.
+     * (thread-pool)
+     */
+    private void launch() {
+        synchronized (_lock) {
+            _launchTimer = null;
+            
+            if (_shutdown || _active || _state != State.Started)
+                return;
+            
+            _active = true;
+            
+            // reset flag
+            _gracefulStart = false;
+        }
+        
         // only need to set the thread state once here
         _threadStateHandler.handle();
         
-        while (!_shutdown) {
-            boolean exitedCleanly = true;
-            
-            long backoffTime = MIN_START_GAP;
+        try {
+            launchAndRegister();
             
-            try {
-                // reset flag
-                _gracefulStart = false;
-                
-                // this can be safely used out of sync because fail-safe checking occurs deeper within the method anyway
-                // and timing is not critical here
-                if (_state == State.Started)
-                    launchAndRead();
-
-            } catch (Exception exc) {
-                if (_shutdown) {
-                    // thread can gracefully exit
-                    return;
-                }
-
-                exitedCleanly = false;
-            }
+        } catch (Exception exc) {
+            // indicate error only on unusual termination
+            if (_state == State.Started)
+                Handler.tryHandle(_callbackErrorHandler, exc);
             
-            synchronized(_lock) {
-                if (_startOnce) {
-                    // force the state change
-                    _state = State.Stopped;
-
-                    // and reset the flag
-                    _startOnce = false;
-                    
-                    // (will fall through and wait indefinitely)
-                }
-                
-                if (_state == State.Started) {
-                    // still in START mode
-                    if (!exitedCleanly) {
-                        if (_gracefulStart)
-                            backoffTime = MIN_START_GAP;
-                        else
-                            backoffTime = BACKOFF_ON_FAULT;
-                    }
-
-                    Threads.wait(_lock, backoffTime);
-                } else {
-                    // STOP requested so wait indefinitely (or until signal)
-                    Threads.waitOnSync(_lock);
-                }
-            }
-        } // (while)
+            finished(false);
+        }
     }
     
     /**
-     * Launches the process and continually reads stdin.
+     * Launches the process and registers its stdout (and stderr) for reading.
      */
-    private void launchAndRead() throws Exception {
+    private void launchAndRegister() throws Exception {
         Process process = null;
         OutputStream os = null;
         
@@ -659,8 +804,10 @@ public class ManagedProcess implements Closeable {
             os = new CountableOutputStream(stdin, SharableMeasurementProvider.Null.INSTANCE, _counterStdinRate);
             
             synchronized (_lock) {
-                if (_shutdown)
+                if (_shutdown) {
+                    safeClose(process);
                     return;
+                }
                     
                 _process = process;
                 _outputStream = os;
@@ -675,39 +822,99 @@ public class ManagedProcess implements Closeable {
             _callbackHandler.handle(startedCallback, _callbackErrorHandler);
             
             // start reading
-            if (_mode == Modes.CharacterDelimitedText) {
-                readTextLoop(process);
-
-            } else { // mode is 'UnboundedRaw'
-                readUnboundedRawLoop(process);
-            }
-
-            // (any unexpected exceptions will be propagated to caller...)
+            registerPipes(process);
 
         } catch (Exception exc) {
-            // indicate error only on unusual termination
-            if (_state == State.Started)
-                Handler.tryHandle(_callbackErrorHandler, exc);
-
             // fire the STOPPED handler if it had fully started previously
             if (os != null)
                 Handler.tryHandle(_stoppedCallback, process.exitValue(), _callbackErrorHandler);
-
-            // propagate exception only on unusual termination
-            if (_state == State.Started)
-                throw exc;
-
-        } finally {
-            // always gracefully cleanup the process and invalidate related fields
+            
+            // gracefully cleanup the process and invalidate related fields
             synchronized(_lock) {
                 _process = null;
                 _outputStream = null;
             }
             
             safeClose(process);
+
+            throw exc;
+        }
+    }
+    
+    /**
+     * When stdout has ended, usually because the process has exited or was killed, waits (without blocking) for the exit.
+     * (pipe reader, must not block so continues on the thread-pool once the process has exited)
+     */
+    private void handleStdoutEnd(final Process process) {
+        ProcessPipes.shared().onExit(process, new Runnable() {
+
+            @Override
+            public void run() {
+                _threadPool.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        handleExit(process);
+                    }
+
+                });
+            }
+
+        });
+    }
+    
+    /**
+     * (thread-pool)
+     */
+    private void handleExit(Process process) {
+        _threadStateHandler.handle();
+        
+        int exitCode = process.exitValue();
+        
+        // fire the stopped event and pass through the exit value
+        if (!_shutdown)
+            Handler.tryHandle(_stoppedCallback, exitCode, _callbackErrorHandler);
+        
+        // always gracefully cleanup the process and invalidate related fields
+        synchronized(_lock) {
+            _process = null;
+            _outputStream = null;
         }
+        
+        safeClose(process);
+        
+        finished(true);
     }
+    
+    /**
+     * After a process has ended or failed to launch, schedules the next launch if still in the started state.
+     */
+    private void finished(boolean exitedCleanly) {
+        synchronized(_lock) {
+            _active = false;
+            
+            if (_startOnce) {
+                // force the state change
+                _state = State.Stopped;
 
+                // and reset the flag
+                _startOnce = false;
+            }
+            
+            if (_state == State.Started) {
+                // still in START mode
+                long backoffTime = MIN_START_GAP;
+                
+                if (!exitedCleanly && !_gracefulStart)
+                    backoffTime = BACKOFF_ON_FAULT;
+                
+                scheduleLaunch(backoffTime);
+            }
+            
+            // (otherwise STOP requested so nothing happens until 'start')
+        }
+    }
+    
     /**
      * (convenience instance method for Windows environment)
      * 
@@ -747,160 +954,128 @@ public class ManagedProcess implements Closeable {
     }
 
     /**
-     * The reading loop will continually read until an error occurs 
-     * or the stream is gracefully ended by the peer.
+     * Hands stdout (and stderr if not merged) to the pipe readers.
      * 
-     * ("resource" warning suppression applies to 'bis'. It's not valid because socket itself gets closed) 
+     * ("resource" warning suppression applies to the countable streams which are closed by 'ProcessPipes') 
      */
     @SuppressWarnings("resource")
-    private void readTextLoop(Process process) throws Exception {
-        InputStream in = process.getInputStream();
-        BufferedInputStream bis = new BufferedInputStream(new CountableInputStream(in, SharableMeasurementProvider.Null.INSTANCE, _counterStdoutRate), 1024);
-
-        // check if stderr needs to be dealt with i.e. 'merge error' not flagged AND a callback is set up
-        if (!_mergeError) {
-            InputStream stderr = process.getErrorStream();
-            BufferedInputStream biserr = new BufferedInputStream(new CountableInputStream(stderr, SharableMeasurementProvider.Null.INSTANCE, _counterStderrRate), 1024);
-
-            // this is ugly, but a new thread has to be started otherwise polling has to be done
-            Thread thread = new Thread(new StderrHandler(biserr), _parentNode.getName().getReducedName() + "_stderr");
-            thread.start();
-
-            // (thread will gracefully stop after its associated process dies)
-        }
+    private void registerPipes(final Process process) {
+        InputStream stdout = new CountableInputStream(process.getInputStream(), SharableMeasurementProvider.Null.INSTANCE, _counterStdoutRate);
+        
+        if (_mode == Modes.CharacterDelimitedText) {
+            ProcessPipes.shared().register(process, stdout, new DelimitedReader(false) {
 
-        // create a buffer that'll be reused
-        // start off small, will grow as needed
-        BufferBuilder bb = new BufferBuilder(256);
+                @Override
+                public void handleEnd() {
+                    // send out last data
+                    if (!_shutdown)
+                        handleReceivedData(_bb.getBuffer(), 0, _bb.getSize(), true);
+                    
+                    handleStdoutEnd(process);
+                }
 
-        while (!_shutdown) {
-            int c = bis.read();
+            });
 
-            if (c < 0)
-                break;
+        } else { // mode is 'UnboundedRaw'
+            // no read-delimiters specified, so fire events as data segments arrive.
+            ProcessPipes.shared().register(process, stdout, new ProcessPipes.Reader() {
 
-            if (charMatches((char) c, _receiveDelimiters)) {
-                String str = bb.getTrimmedString();
-                if (str != null)
-                    handleReceivedData(str);
+                @Override
+                public void handleData(byte[] buffer, int offset, int len) {
+                    capture(buffer, offset, len);
+                    
+                    if (!_shutdown)
+                        handleReceivedData(buffer, offset, len, false);
+                }
 
-                bb.reset();
-                
-            } else {
-                if (bb.getSize() >= MAX_SEGMENT_ALLOWED) {
-                    // dump what's in the buffer and reset
-                    Handler.tryHandle(_callbackErrorHandler, new IOException("Too much data arrived (at least " + bb.getSize() / 1024 + " KB) before any delimeter was present; dumping buffer and continuing."));
-                    bb.reset();
+                @Override
+                public void handleEnd() {
+                    handleStdoutEnd(process);
                 }
 
-                bb.append((byte) c);
-            }
-        } // (while)
-        
-        // the peer has gracefully closed down the connection or we're shutting down
+            });
+        }
         
-        if (!_shutdown) {
-            // send out last data
-            String str = bb.getTrimmedString();
-            if (str != null)
-                handleReceivedData(str);
+        // check if stderr needs to be dealt with i.e. 'merge error' not flagged
+        if (!_mergeError) {
+            InputStream stderr = new CountableInputStream(process.getErrorStream(), SharableMeasurementProvider.Null.INSTANCE, _counterStderrRate);
             
-            // then fire the stopped event and pass through the exit value
-            Handler.tryHandle(_stoppedCallback, _process.waitFor(), _callbackErrorHandler);
+            ProcessPipes.shared().register(process, stderr, new DelimitedReader(true) {
+
+                @Override
+                public void handleEnd() {
+                    // (stdout deals with the process ending)
+                }
+
+            });
         }
     }
     
     /**
-     * (thread handler)
+     * Splits stdout or stderr data on the receive delimiters. 
+     * (pipe reader)
      */
-    private class StderrHandler implements Runnable {
+    private abstract class DelimitedReader implements ProcessPipes.Reader {
         
         /**
-         * (reference for this instance)
+         * A buffer that'll be reused; starts off small, will grow as needed
          */
-        private InputStream __is;
-
+        protected BufferBuilder _bb = new BufferBuilder(256);
+        
         /**
-         * (constructor)
+         * (stderr or stdout)
          */
-        public StderrHandler(InputStream is) {
-            __is = is;
+        private boolean _stderr;
+        
+        public DelimitedReader(boolean stderr) {
+            _stderr = stderr;
         }
-
+        
         @Override
-        public void run() {
-            try {
-                // (required once)
-                _threadStateHandler.handle();
+        public void handleData(byte[] buffer, int offset, int len) {
+            capture(buffer, offset, len);
+            
+            BufferBuilder bb = _bb;
+            String delimiters = _receiveDelimiters;
+            
+            int end = offset + len;
+            
+            for (int a = offset; a < end && !_shutdown; a++) {
+                byte b = buffer[a];
                 
-                // create a buffer that'll be reused
-                // start off small, will grow as needed
-                BufferBuilder bb = new BufferBuilder(256);
-
-                while (!_shutdown) {
-                    int c = __is.read();
-
-                    if (c < 0)
-                        break;
-
-                    if (charMatches((char) c, _receiveDelimiters)) {
+                if (charMatches((char) (b & 0xff), delimiters)) {
+                    if (_stderr) {
                         String str = bb.getTrimmedString();
                         if (str != null)
                             _callbackHandler.handle(_stderrCallback, str, _callbackErrorHandler);
-
-                        bb.reset();
-                        
                     } else {
-                        if (bb.getSize() >= MAX_SEGMENT_ALLOWED) {
-                            // dump what's in the buffer and reset
-                            Handler.tryHandle(_callbackErrorHandler, new IOException("STDERR: Too much data arrived (at least " + bb.getSize() / 1024 + " KB) before any delimeter was present; dumping buffer and continuing."));
-                            bb.reset();
-                        }
+                        handleReceivedData(bb.getBuffer(), 0, bb.getSize(), true);
+                    }
 
-                        bb.append((byte) c);
+                    bb.reset();
+                    
+                } else {
+                    if (bb.getSize() >= MAX_SEGMENT_ALLOWED) {
+                        // dump what's in the buffer and reset
+                        Handler.tryHandle(_callbackErrorHandler, new IOException((_stderr ? "STDERR: " : "") + "Too much data arrived (at least " + bb.getSize() / 1024 + " KB) before any delimeter was present; dumping buffer and continuing."));
+                        bb.reset();
                     }
-                } // (while)
-            } catch (Exception exc) {
-                // gracefully cleanup and end
-                Stream.safeClose(__is);
-            }
-        }
 
-    } 
+                    bb.append(b);
+                }
+            } // (for)
+        }
+        
+    } // (class)
     
     /**
-     * No read-delimiters specified, so fire events as data segments arrive.
-     * (suppress was used with resource-free CountableInputStream)
+     * (convenience)
      */
-    private void readUnboundedRawLoop(Process process) throws IOException {
-        InputStream stdout = process.getInputStream();
-        
-        @SuppressWarnings("resource")
-        CountableInputStream cis = new CountableInputStream(stdout, SharableMeasurementProvider.Null.INSTANCE, _counterStdoutRate);
-        
-        // create a buffer that'll be reused
-        if (_buffer == null)
-            _buffer = new byte[1024 * 10 * 2];
-
-        while (!_shutdown) {
-            int bytesRead = cis.read(_buffer);
-            
-            if (bytesRead <= 0)
-                break;
-            
-            String segment = bufferToString(_buffer, 0, bytesRead);
-            
-            // fire the handler
-            handleReceivedData(segment);
-        }
-        
-        // the peer has gracefully closed down the connection or we're shutting down
-        
-        if (!_shutdown) {
-            // then fire the disconnected callback
-            Handler.tryHandle(_stoppedCallback, _process.exitValue(), _callbackErrorHandler);
-        }        
-    }    
+    private void capture(byte[] buffer, int offset, int len) {
+        CaptureBuffer capture = _capture;
+        if (capture != null)
+            capture.append(buffer, offset, len);
+    }
 
     /**
      * (convenience method to check when a character appears in a list of characters (in the form of a String) 
@@ -915,19 +1090,67 @@ public class ManagedProcess implements Closeable {
     }
     
     /**
-     * When an actual data segment was received; deals with request callbacks if necessary
+     * When an actual data segment was received; deals with request callbacks if necessary.
+     * The segment is only converted into a string and / or copied if there are handlers that need it.
      */
-    private void handleReceivedData(String data) {
+    private void handleReceivedData(byte[] buffer, int offset, int len, boolean trim) {
+        // (e.g. between consecutive delimiters)
+        if (len == 0)
+            return;
+        
+        // text handlers get the trimmed segment, binary handlers always get the whole segment
+        int textOffset = offset;
+        int textLen = len;
+        
+        if (trim) {
+            int end = offset + len;
+            
+            while (textOffset < end && (buffer[textOffset] & 0xff) <= ' ')
+                textOffset++;
+
+            while (textOffset < end && (buffer[end - 1] & 0xff) <= ' ')
+                end--;
+            
+            textLen = end - textOffset;
+        }
+        
+        // (whitespace only, never passed to text handlers)
+        boolean noText = (textLen == 0);
+        
         // deal with any queued callbacks first
         
         QueuedRequest request = null;
         
-        // then check for any requests
-        // (should release lock as soon as possible)
-        synchronized (_lock) {
-            if (_activeRequest != null) {
-                request = _activeRequest;
-                _activeRequest = null;
+        // (converted lazily)
+        String data = null;
+        byte[] bytes = null;
+        
+        if (_pipelineWindow > 1) {
+            // match up with an outstanding request
+            F1<Object, String> correlator = _correlator;
+            Object tag = null;
+            
+            if (correlator != null && !noText) {
+                data = bufferToString(buffer, textOffset, textLen);
+                tag = Handler.tryHandle(correlator, data);
+            }
+            
+            synchronized (_lock) {
+                // (whitespace only answers the oldest request if it's binary and uncorrelated)
+                if (!noText)
+                    request = takeInFlight(correlator != null, tag);
+                else if (correlator == null && !_inFlight.isEmpty() && _inFlight.getFirst().binaryResponseHandler != null)
+                    request = takeInFlight(false, null);
+            }
+            
+        } else {
+            // then check for any requests
+            // (should release lock as soon as possible)
+            synchronized (_lock) {
+                if (_activeRequest != null && (!noText || _activeRequest.binaryResponseHandler != null)) {
+                    request = _activeRequest;
+                    _activeRequest = null;
+                }
             }
         }
 
@@ -938,16 +1161,41 @@ public class ManagedProcess implements Closeable {
                 
                 // fire the timeout handler
                 _callbackHandler.handle(_timeoutCallback, _callbackErrorHandler);
+                
+            } else if (request.binaryResponseHandler != null) {
+                // fire the response request's (binary) response handler
+                bytes = Arrays.copyOfRange(buffer, offset, offset + len);
+                
+                _callbackHandler.handle(request.binaryResponseHandler, bytes, _callbackErrorHandler);
+                
             } else {
                 // fire the response request's response handler
+                if (data == null)
+                    data = bufferToString(buffer, textOffset, textLen);
+                
                 request.setResponse(data);
                 
                 _callbackHandler.handle(request.responseHandler, data, _callbackErrorHandler);
             }            
         }
         
-        // ...then fire the 'received' callback next
-        _callbackHandler.handle(_stdoutCallback, data, _callbackErrorHandler);
+        // ...then fire the 'received' callbacks next
+        H1<String> stdoutCallback = _stdoutCallback;
+        if (stdoutCallback != null && !noText) {
+            if (data == null)
+                data = bufferToString(buffer, textOffset, textLen);
+            
+            _callbackHandler.handle(stdoutCallback, data, _callbackErrorHandler);
+        }
+        
+        H1<byte[]> binaryStdoutCallback = _binaryStdoutCallback;
+        if (binaryStdoutCallback != null) {
+            // (callbacks are asynchronous so always need their own copy, shared between handlers)
+            if (bytes == null)
+                bytes = Arrays.copyOfRange(buffer, offset, offset + len);
+            
+            _callbackHandler.handle(binaryStdoutCallback, bytes, _callbackErrorHandler);
+        }
         
         processQueue();
     }
@@ -988,11 +1236,26 @@ public class ManagedProcess implements Closeable {
          */
         public H1<String> responseHandler;
         
+        /**
+         * The (optional) callback when raw bytes are wanted instead.
+         */
+        public H1<byte[]> binaryResponseHandler;
+        
         /**
          * Stores the response itself (for synchronous operation)
          */
         public String response;
         
+        /**
+         * The correlation tag (pipelining only)
+         */
+        public Object tag;
+        
+        /**
+         * The priority lane.
+         */
+        public RequestLane lane = RequestLane.Interactive;
+        
         public QueuedRequest(byte[] requestBuffer, String origData, int timeout, H1<String> responseHandler) {
             this.requestBuffer = requestBuffer;
             this.request = origData;
@@ -1040,16 +1303,62 @@ public class ManagedProcess implements Closeable {
      * For complete control of a request
      */
     public void queueRequest(String requestData, int timeout, H1<String> responseHandler) {
+        queueRequest(requestData, timeout, responseHandler, RequestLane.Interactive);
+    }
+    
+    /**
+     * (as above, using the given priority lane)
+     */
+    public void queueRequest(String requestData, int timeout, H1<String> responseHandler, RequestLane lane) {
         byte[] buffer = prepareBuffer(requestData);
         
         // buffer can be null, which means a 'send' is not necessary, but a response is
         
         QueuedRequest request = new QueuedRequest(buffer, requestData, timeout, responseHandler);
+        request.lane = lane;
         
         doQueueRequest(request);
     }
+    
+    /**
+     * Queues a request in the background lane, i.e. behind any user-initiated ones, typically for status polling.
+     * (uses default timeout value)
+     */
+    public void poll(String requestData, H1<String> responseHandler) {
+        // don't bother doing anything if empty or missing
+        if (Strings.isEmpty(requestData))
+            return;
+        
+        queueRequest(requestData, _requestTimeout, responseHandler, RequestLane.Background);
+    }
+    
+    /**
+     * Adds to the lane queue, coalescing if enabled.
+     * (assumes locked)
+     */
+    private void enqueue(QueuedRequest request) {
+        Object key = null;
+        
+        // only requests with something to send and expecting a response (of the same kind)
+        if (_coalescing && request.requestBuffer != null && (request.responseHandler != null || request.binaryResponseHandler != null))
+            key = Arrays.asList(request.binaryResponseHandler != null, ByteBuffer.wrap(request.requestBuffer));
+        
+        QueuedRequest replaced = _requestQueue.add(request, request.lane, key);
+        if (replaced != null) {
+            // (whoever is waiting on the replaced request gets this one's response)
+            request.responseHandler = LaneQueue.fanOut(replaced.responseHandler, request.responseHandler);
+            request.binaryResponseHandler = LaneQueue.fanOut(replaced.binaryResponseHandler, request.binaryResponseHandler);
+            
+            _logger.debug("Coalesced with an identical pending request. data:[{}]", request.request);
+        }
+    }
 
     public void doQueueRequest(QueuedRequest request) {
+        if (_pipelineWindow > 1) {
+            doQueuePipelinedRequest(request);
+            return;
+        }
+        
         // whether or not this entry had to be queued
         boolean queued = false; 
         
@@ -1067,8 +1376,7 @@ public class ManagedProcess implements Closeable {
                 _logger.debug("Queued a request. data:[{}]", request.request);
                 
                 // a request is active, so queue this new one
-                _requestQueue.add(request);
-                _queueLength++;
+                enqueue(request);
                 queued = true;
             }
         }
@@ -1081,6 +1389,42 @@ public class ManagedProcess implements Closeable {
         processQueue();
     }
     
+    /**
+     * (pipelining version of above)
+     */
+    private void doQueuePipelinedRequest(QueuedRequest request) {
+        F1<Object, String> correlator = _correlator;
+        if (correlator != null && request.requestBuffer != null)
+            request.tag = Handler.tryHandle(correlator, request.request != null ? request.request : bufferToString(request.requestBuffer, 0, request.requestBuffer.length));
+        
+        synchronized (_lock) {
+            _logger.debug("Queued a pipelined request. data:[{}] tag:[{}]", request.request, request.tag);
+            
+            // (always queued to preserve ordering, sent as soon as the window allows)
+            enqueue(request);
+        }
+        
+        processQueue();
+    }
+    
+    /**
+     * Takes the outstanding request matching the tag or the oldest one if not correlating.
+     * (assumes locked)
+     */
+    private QueuedRequest takeInFlight(boolean correlating, Object tag) {
+        Iterator<QueuedRequest> i = _inFlight.iterator();
+        while (i.hasNext()) {
+            QueuedRequest request = i.next();
+            
+            if (!correlating || Objects.equals(request.tag, tag)) {
+                i.remove();
+                return request;
+            }
+        }
+        
+        return null;
+    }
+
     /**
      * (Overloaded) (uses default timeout value)
      */
@@ -1092,6 +1436,21 @@ public class ManagedProcess implements Closeable {
         queueRequest(requestData, _requestTimeout, responseHandler);
     }
 
+    /**
+     * (Overloaded) Raw bytes are sent as-is (no delimiters are appended) and the response is delivered as raw bytes. 
+     * (uses default timeout value)
+     */
+    public void request(byte[] requestData, H1<byte[]> responseHandler) {
+        // don't bother doing anything if empty or missing
+        if (requestData == null || requestData.length == 0)
+            return;
+        
+        QueuedRequest request = new QueuedRequest(requestData, null, _requestTimeout, null);
+        request.binaryResponseHandler = responseHandler;
+        
+        doQueueRequest(request);
+    }
+
     /**
      * (synchronous version)
      */
@@ -1161,12 +1520,12 @@ public class ManagedProcess implements Closeable {
             int count = 0;
 
             // clear the queue
-            while (_requestQueue.poll() != null) {
-                count++;
-                _queueLength--;
-            }
+            count = _requestQueue.clear();
             
-            _logger.debug("Cleared queue. activeRequest={}, queueCount={}", activeRequestCleared, count);
+            int inFlightCount = _inFlight.size();
+            _inFlight.clear();
+            
+            _logger.debug("Cleared queue. activeRequest={}, queueCount={}, inFlight={}", activeRequestCleared, count, inFlightCount);
         }
     }
     
@@ -1175,6 +1534,11 @@ public class ManagedProcess implements Closeable {
      * (assumes not synced)
      */
     private void processQueue() {
+        if (_pipelineWindow > 1) {
+            processPipelinedQueue();
+            return;
+        }
+        
         // if any new requests are found
         QueuedRequest nextRequest = null;
         
@@ -1184,7 +1548,7 @@ public class ManagedProcess implements Closeable {
         synchronized (_lock) {
             // check if any active requests need expiring
             if (_activeRequest != null) {
-                if (_activeRequest.responseHandler == null || _activeRequest.timeout <= 0) {
+                if ((_activeRequest.responseHandler == null && _activeRequest.binaryResponseHandler == null) || _activeRequest.timeout <= 0) {
                     // was a blind request or 
                     _activeRequest = null;
                     
@@ -1236,8 +1600,6 @@ public class ManagedProcess implements Closeable {
                         return;
                     }
 
-                    _queueLength--;
-
                     if (!nextRequest.isLongTermExpired())
                         break;
 
@@ -1259,6 +1621,111 @@ public class ManagedProcess implements Closeable {
             sendBufferNow(nextRequest.requestBuffer, nextRequest.request, false);
     }
     
+    /**
+     * Expires outstanding requests independently and sends queued ones as the window allows.
+     * (pipelining version of above, assumes not synced)
+     */
+    private void processPipelinedQueue() {
+        synchronized (_pipelineSendLock) {
+            int timedOut = 0;
+            List<QueuedRequest> toSend = null;
+            
+            synchronized (_lock) {
+                Iterator<QueuedRequest> i = _inFlight.iterator();
+                while (i.hasNext()) {
+                    if (i.next().isExpired()) {
+                        i.remove();
+                        timedOut++;
+                    }
+                }
+                
+                // record this for logging
+                int longTermDropped = 0;
+                
+                // fill the window
+                while (_inFlight.size() < _pipelineWindow) {
+                    QueuedRequest nextRequest = _requestQueue.poll();
+                    if (nextRequest == null)
+                        break;
+                    
+                    if (nextRequest.isLongTermExpired()) {
+                        longTermDropped++;
+                        continue;
+                    }
+                    
+                    // only requests expecting a response take up room in the window
+                    if ((nextRequest.responseHandler != null || nextRequest.binaryResponseHandler != null) && nextRequest.timeout > 0) {
+                        // start timeout *before* sending
+                        nextRequest.startTimeout();
+                        _inFlight.add(nextRequest);
+                    }
+                    
+                    if (nextRequest.requestBuffer != null) {
+                        if (toSend == null)
+                            toSend = new ArrayList<QueuedRequest>();
+                        
+                        toSend.add(nextRequest);
+                    }
+                } // (while)
+                
+                if (timedOut > 0 || longTermDropped > 0)
+                    _logger.debug("{} pipelined request(s) expired, (dropped {} long term queued requests.)", timedOut, longTermDropped);
+                
+                scheduleExpiryCheck();
+            }
+            
+            for (int a = 0; a < timedOut; a++)
+                _callbackHandler.handle(_timeoutCallback, _callbackErrorHandler);
+            
+            // (in order, on this thread)
+            if (toSend != null) {
+                for (QueuedRequest request : toSend)
+                    sendBufferNow(request.requestBuffer, request.request, false);
+            }
+        }
+    }
+    
+    /**
+     * Makes sure the queue is serviced when the next outstanding request is due to expire.
+     * (assumes locked)
+     */
+    private void scheduleExpiryCheck() {
+        if (_inFlight.isEmpty())
+            return;
+        
+        long due = Long.MAX_VALUE;
+        for (QueuedRequest request : _inFlight)
+            due = Math.min(due, request.timeStarted + request.timeout * 1000000L);
+        
+        // already due soon enough?
+        if (_expiryTimer != null) {
+            if (_expiryTimerDue <= due)
+                return;
+            
+            _expiryTimer.cancel();
+        }
+        
+        _expiryTimerDue = due;
+        
+        long delay = Math.max(0, (due - System.nanoTime()) / 1000000L) + 1;
+        
+        _expiryTimer = _timerThread.schedule(_threadPool, new TimerTask() {
+            
+            @Override
+            public void run() {
+                synchronized (_lock) {
+                    if (_expiryTimer == this)
+                        _expiryTimer = null;
+                }
+                
+                _threadStateHandler.handle();
+                
+                processQueue();
+            }
+            
+        }, delay);
+    }
+    
     /**
      * Safely sends data without overlapping any existing requests 
      */
@@ -1270,6 +1737,18 @@ public class ManagedProcess implements Closeable {
         doQueueRequest(request);
     }
     
+    /**
+     * (Overloaded) Safely sends raw bytes as-is (no delimiters are appended) without overlapping any existing requests.
+     */
+    public void send(byte[] data) {
+        if (data == null || data.length == 0)
+            return;
+
+        QueuedRequest request = new QueuedRequest(data, null, 0, null);
+
+        doQueueRequest(request);
+    }
+    
     /**
      * Prepares a buffer for sending, null if it's not sendable.
      */
@@ -1350,7 +1829,10 @@ public class ManagedProcess implements Closeable {
             // ignore
         }
 
-        Handler.tryHandle(_stdinCallback, origData, _callbackErrorHandler);
+        H1<String> stdinCallback = _stdinCallback;
+        if (stdinCallback != null)
+            // (raw byte sends have no original string)
+            Handler.tryHandle(stdinCallback, origData != null ? origData : bufferToString(buffer, 0, buffer.length), _callbackErrorHandler);
     }
 
     /**
@@ -1410,13 +1892,13 @@ public class ManagedProcess implements Closeable {
             
             if (_startTimer != null)
                 _startTimer.cancel();
+            
+            if (_launchTimer != null)
+                _launchTimer.cancel();
 
             safeClose(_process);
 
             _process = null;
-            
-            // notify the connection and receive thread if it happens to be waiting
-            _lock.notify();
         }
     }
     
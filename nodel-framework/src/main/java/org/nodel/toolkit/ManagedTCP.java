@@ -8,12 +8,19 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.nodel.Formatting;
 import org.nodel.Handler;
+import org.nodel.Handler.F1;
 import org.nodel.Handler.H0;
 import org.nodel.Handler.H1;
 import org.nodel.Strings;
@@ -21,11 +28,13 @@ import org.nodel.Threads;
 import org.nodel.diagnostics.CountableInputStream;
 import org.nodel.diagnostics.CountableOutputStream;
 import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.PeakMeasurementProvider;
 import org.nodel.diagnostics.SharableMeasurementProvider;
 import org.nodel.host.BaseNode;
 import org.nodel.io.BufferBuilder;
 import org.nodel.io.Stream;
 import org.nodel.threading.CallbackQueue;
+import org.nodel.threading.NodelThreadFactory;
 import org.nodel.threading.ThreadPool;
 import org.nodel.threading.TimerTask;
 import org.nodel.threading.Timers;
@@ -42,13 +51,27 @@ import org.slf4j.LoggerFactory;
  *    - minimisation of String object fragmentation 
  *    - automatic delimiting
  *    - UTF8 decoded
- *    - trimmed
+ *    - trimmed (text only, raw byte handlers get whole segments)
  *  - exponential back-off
  */
 public class ManagedTCP implements Closeable {
     
     private static AtomicLong s_instanceCounter = new AtomicLong();
     
+    /**
+     * The longest time (millis) a request waited in each lane (by lane ordinal, peak per diagnostics period)
+     * (diagnostics)
+     */
+    private static PeakMeasurementProvider[] s_laneWaitCounters = { new PeakMeasurementProvider(), new PeakMeasurementProvider() };
+    
+    /**
+     * (diagnostics)
+     */
+    static {
+        Diagnostics.shared().registerCounter("Managed TCP.Interactive queue wait (ms)", s_laneWaitCounters[RequestLane.Interactive.ordinal()], false);
+        Diagnostics.shared().registerCounter("Managed TCP.Background queue wait (ms)", s_laneWaitCounters[RequestLane.Background.ordinal()], false);
+    }
+    
     /**
      * (used by 'logger' and thread name)
      */
@@ -73,6 +96,11 @@ public class ManagedTCP implements Closeable {
      * The maximum segment allowed between delimiters (default 2 MB)
      */
     private final static int MAX_SEGMENT_ALLOWED = 2 * 1024 * 1024;
+    
+    /**
+     * The size of the bulk reads used when scanning for delimiters.
+     */
+    private final static int READ_BUFFER_SIZE = 8192;
 
     /**
      * The minimum gap between connections (default 500ms)
@@ -136,6 +164,11 @@ public class ManagedTCP implements Closeable {
      */
     private H1<String> _receivedCallback;
 
+    /**
+     * (see setter)
+     */
+    private H1<byte[]> _binaryReceivedCallback;
+
     /**
      * (see setter)
      */
@@ -278,19 +311,53 @@ public class ManagedTCP implements Closeable {
     private SharableMeasurementProvider _counterSendRate;
     
     /**
-     * The request queue
+     * The request queue, with priority lanes
+     * (locked around 'lock', init. in constructor)
      */
-    private ConcurrentLinkedQueue<QueuedRequest> _requestQueue = new ConcurrentLinkedQueue<QueuedRequest>();
+    private LaneQueue<QueuedRequest> _requestQueue;
     
     /**
-     * Holds the queue length ('ConcurrentLinkedQueue' not designed to handle 'size()' efficiently)
+     * Whether identical pending requests are coalesced.
      */
-    private int _queueLength = 0;
+    private boolean _coalescing = false;
     
     /**
      * The active request
      */
     private QueuedRequest _activeRequest;
+    
+    /**
+     * The number of requests allowed to be outstanding at once (1 means one-at-a-time i.e. not pipelined)
+     */
+    private int _pipelineWindow = 1;
+    
+    /**
+     * Extracts a tag from requests and responses so they can be matched up when pipelined.
+     * (null means responses are expected in request order)
+     */
+    private F1<Object, String> _correlator;
+    
+    /**
+     * The outstanding requests when pipelined, oldest first.
+     * (locked around 'lock')
+     */
+    private LinkedList<QueuedRequest> _inFlight = new LinkedList<QueuedRequest>();
+    
+    /**
+     * Keeps pipelined sends in the order they were dispatched.
+     */
+    private Object _pipelineSendLock = new Object();
+    
+    /**
+     * Checks for expired pipelined requests in case no data arrives.
+     * (locked around 'lock')
+     */
+    private TimerTask _expiryTimer;
+    
+    /**
+     * When the expiry timer is due (based on 'nanoTime')
+     */
+    private long _expiryTimerDue;
 
     /**
      * Gets initialised once, during connection loop and then never again.
@@ -310,7 +377,7 @@ public class ManagedTCP implements Closeable {
         _timerThread = timers;
         
         // set up the connect and receive thread
-        _thread = new Thread(new Runnable() {
+        _thread = NodelThreadFactory.shared().newThread(new Runnable() {
 
             @Override
             public void run() {
@@ -319,7 +386,6 @@ public class ManagedTCP implements Closeable {
             
         });
         _thread.setName(node.getName().getReducedName() + "_tcpConnectAndReceive_" + _instance);
-        _thread.setDaemon(true);
         
         // register the counters
         String counterName = "'" + node.getName().getReducedName() + "'";
@@ -328,6 +394,10 @@ public class ManagedTCP implements Closeable {
         _counterRecvRate = Diagnostics.shared().registerSharableCounter(counterName + ".TCP receive rate", true);
         _counterSendOps = Diagnostics.shared().registerSharableCounter(counterName + ".TCP sends", true);
         _counterSendRate = Diagnostics.shared().registerSharableCounter(counterName + ".TCP send rate", true);
+        
+        _requestQueue = new LaneQueue<QueuedRequest>(new SharableMeasurementProvider[] {
+                Diagnostics.shared().registerSharableCounter(counterName + ".TCP interactive queue", false),
+                Diagnostics.shared().registerSharableCounter(counterName + ".TCP background queue", false) }, s_laneWaitCounters);
     }
     
     /**
@@ -351,6 +421,14 @@ public class ManagedTCP implements Closeable {
         _receivedCallback = handler;
     }
     
+    /**
+     * When a data segment arrives, as raw bytes i.e. without any character conversion.
+     * (opt-in, can be used alongside or instead of the 'received' handler)
+     */
+    public void setBinaryReceivedHandler(H1<byte[]> handler) {
+        _binaryReceivedCallback = handler;
+    }
+    
     /**
      * When a data segment is sent
      */
@@ -457,15 +535,64 @@ public class ManagedTCP implements Closeable {
         _requestTimeout = value;
     }
     
+    /**
+     * Allows up to 'window' requests to be outstanding at once, each timing out independently. Responses are 
+     * matched to requests using the tag 'correlator' extracts from each (e.g. a sequence number or ID) or, without 
+     * a correlator, in the order the requests were sent. Responses that match no request are still passed to the 
+     * 'received' handlers.
+     * (a window of 1 restores one-at-a-time operation; best set before any requests are made)
+     */
+    public void setPipelining(int window, F1<Object, String> correlator) {
+        synchronized (_lock) {
+            _pipelineWindow = Math.max(1, window);
+            _correlator = correlator;
+            
+            if (_pipelineWindow == 1)
+                _inFlight.clear();
+        }
+    }
+    
+    /**
+     * (see setter)
+     */
+    public int getPipelineWindow() {
+        return _pipelineWindow;
+    }
+    
     /**
      * Returns the current queue length size.
      */
     public int getQueueLength() {
         synchronized (_lock) {
-            return _queueLength;
+            return _requestQueue.size();
+        }
+    }
+    
+    /**
+     * Returns the current queue length of a lane.
+     */
+    public int getQueueLength(RequestLane lane) {
+        synchronized (_lock) {
+            return _requestQueue.size(lane);
         }
     }
     
+    /**
+     * When set, a request (one expecting a response) replaces any identical one that's still pending i.e. only the 
+     * newest is sent, in the older one's place, and its response goes to every response handler involved. Blind sends
+     * are never coalesced.
+     */
+    public void setCoalescing(boolean value) {
+        _coalescing = value;
+    }
+    
+    /**
+     * (see setter)
+     */
+    public boolean getCoalescing() {
+        return _coalescing;
+    }
+    
     /**
      * Safely starts this TCP connection after event handlers have been set.
      */
@@ -611,33 +738,61 @@ public class ManagedTCP implements Closeable {
      */
     @SuppressWarnings("resource")
     private void readTextLoop(Socket socket) throws Exception {
-        InputStream in = socket.getInputStream();
-        BufferedInputStream bis = new BufferedInputStream(new CountableInputStream(in, _counterRecvOps, _counterRecvRate), 1024);
+        InputStream in = new CountableInputStream(socket.getInputStream(), _counterRecvOps, _counterRecvRate);
         
-        // create a buffer that'll be reused
+        // bulk reads, scanned in place
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        
+        // create a buffer that'll be reused for segments that span reads
         // start off small, will grow as needed
         BufferBuilder bb = new BufferBuilder(256);
         
+        // (delimiters can be changed on the fly)
+        String delims = null;
+        boolean[] isDelimiter = null;
+        
         while (!_shutdown) {
-            int c = bis.read();
+            int bytesRead = in.read(buffer);
             
-            if (c < 0)
+            if (bytesRead < 0)
                 break;
+            
+            if (delims != _receiveDelimiters) {
+                delims = _receiveDelimiters;
+                isDelimiter = toDelimiterTable(delims);
+            }
+            
+            // start of the current segment
+            int start = 0;
 
-            if (charMatches((char) c, _receiveDelimiters)) {
-                String str = bb.getTrimmedString();
-                if (str != null)
-                    handleReceivedData(str);
-
-                bb.reset();
+            for (int a = 0; a < bytesRead; a++) {
+                if (!isDelimiter[buffer[a] & 0xff])
+                    continue;
                 
-            } else {
-                if (bb.getSize() >= MAX_SEGMENT_ALLOWED) {
-                    // drop the connection
-                    throw new IOException("Too much data arrived (at least " + bb.getSize() / 1024 + " KB) before any delimeter was present; dropping connection.");
+                if (bb.getSize() == 0) {
+                    // segment is wholly within this read
+                    handleReceivedData(buffer, start, a - start, true);
+                    
+                } else {
+                    checkSegmentSize(bb, a - start);
+                    
+                    bb.append(buffer, start, a - start);
+                    handleReceivedData(bb.getBuffer(), 0, bb.getSize(), true);
+                    bb.reset();
                 }
-
-                bb.append((byte) c);
+                
+                start = a + 1;
+                
+                if (_shutdown)
+                    break;
+            } // (for)
+            
+            // hold on to any partial segment
+            int remaining = bytesRead - start;
+            if (remaining > 0 && !_shutdown) {
+                checkSegmentSize(bb, remaining);
+                
+                bb.append(buffer, start, remaining);
             }
         } // (while)
         
@@ -645,15 +800,37 @@ public class ManagedTCP implements Closeable {
         
         if (!_shutdown) {
             // send out last data
-            String str = bb.getTrimmedString();
-            if (str != null)
-                handleReceivedData(str);
+            handleReceivedData(bb.getBuffer(), 0, bb.getSize(), true);
             
             // then fire the disconnected callback
             Handler.tryHandle(_disconnectedCallback, _callbackErrorHandler);
         }
     }
     
+    /**
+     * (drops the connection if a segment grows too large)
+     */
+    private static void checkSegmentSize(BufferBuilder bb, int toAdd) throws IOException {
+        if (bb.getSize() + toAdd > MAX_SEGMENT_ALLOWED)
+            throw new IOException("Too much data arrived (at least " + bb.getSize() / 1024 + " KB) before any delimeter was present; dropping connection.");
+    }
+    
+    /**
+     * A lookup table of the delimiters (matched against raw bytes so only the 8-bit ones apply)
+     */
+    private static boolean[] toDelimiterTable(String delims) {
+        boolean[] table = new boolean[256];
+        
+        int len = delims.length();
+        for (int a = 0; a < len; a++) {
+            char c = delims.charAt(a);
+            if (c < 256)
+                table[c] = true;
+        }
+        
+        return table;
+    }
+    
     /**
      * The reading loop will continually read until an error occurs 
      * or the stream is gracefully ended by the peer.
@@ -741,8 +918,7 @@ public class ManagedTCP implements Closeable {
                 bb.append(c);
                 
                 // fire the handled event
-                String str = bb.getRawString();
-                handleReceivedData(str);
+                handleReceivedData(bb.getBuffer(), 0, bb.getSize(), false);
                 
                 bb.reset();
                 
@@ -775,10 +951,8 @@ public class ManagedTCP implements Closeable {
             if (bytesRead <= 0)
                 break;
             
-            String segment = bufferToString(_buffer, 0, bytesRead);
-            
             // fire the handler
-            handleReceivedData(segment);
+            handleReceivedData(_buffer, 0, bytesRead, false);
         }
         
         // the peer has gracefully closed down the connection or we're shutting down
@@ -790,31 +964,67 @@ public class ManagedTCP implements Closeable {
     }    
 
     /**
-     * (convenience method to check when a character appears in a list of characters (in the form of a String) 
+     * When an actual data segment was received; deals with request callbacks if necessary.
+     * The segment is only converted into a string and / or copied if there are handlers that need it.
      */
-    private static boolean charMatches(char c, String chars) {
-        int len = chars.length();
-        for (int a = 0; a < len; a++)
-            if (chars.charAt(a) == c)
-                return true;
+    private void handleReceivedData(byte[] buffer, int offset, int len, boolean trim) {
+        // (e.g. between consecutive delimiters)
+        if (len == 0)
+            return;
+        
+        // text handlers get the trimmed segment, binary handlers always get the whole segment
+        int textOffset = offset;
+        int textLen = len;
+        
+        if (trim) {
+            int end = offset + len;
+            
+            while (textOffset < end && (buffer[textOffset] & 0xff) <= ' ')
+                textOffset++;
 
-        return false;
-    }
-    
-    /**
-     * When an actual data segment was received; deals with request callbacks if necessary
-     */
-    private void handleReceivedData(String data) {
+            while (textOffset < end && (buffer[end - 1] & 0xff) <= ' ')
+                end--;
+            
+            textLen = end - textOffset;
+        }
+        
+        // (whitespace only, never passed to text handlers)
+        boolean noText = (textLen == 0);
+        
         // deal with any queued callbacks first
         
         QueuedRequest request = null;
         
-        // then check for any requests
-        // (should release lock as soon as possible)
-        synchronized (_lock) {
-            if (_activeRequest != null) {
-                request = _activeRequest;
-                _activeRequest = null;
+        // (converted lazily)
+        String data = null;
+        byte[] bytes = null;
+        
+        if (_pipelineWindow > 1) {
+            // match up with an outstanding request
+            F1<Object, String> correlator = _correlator;
+            Object tag = null;
+            
+            if (correlator != null && !noText) {
+                data = bufferToString(buffer, textOffset, textLen);
+                tag = Handler.tryHandle(correlator, data);
+            }
+            
+            synchronized (_lock) {
+                // (whitespace only answers the oldest request if it's binary and uncorrelated)
+                if (!noText)
+                    request = takeInFlight(correlator != null, tag);
+                else if (correlator == null && !_inFlight.isEmpty() && _inFlight.getFirst().binaryResponseHandler != null)
+                    request = takeInFlight(false, null);
+            }
+            
+        } else {
+            // then check for any requests
+            // (should release lock as soon as possible)
+            synchronized (_lock) {
+                if (_activeRequest != null && (!noText || _activeRequest.binaryResponseHandler != null)) {
+                    request = _activeRequest;
+                    _activeRequest = null;
+                }
             }
         }
 
@@ -825,16 +1035,41 @@ public class ManagedTCP implements Closeable {
                 
                 // fire the timeout handler
                 _callbackHandler.handle(_timeoutCallback, _callbackErrorHandler);
+                
+            } else if (request.binaryResponseHandler != null) {
+                // fire the response request's (binary) response handler
+                bytes = Arrays.copyOfRange(buffer, offset, offset + len);
+                
+                _callbackHandler.handle(request.binaryResponseHandler, bytes, _callbackErrorHandler);
+                
             } else {
                 // fire the response request's response handler
+                if (data == null)
+                    data = bufferToString(buffer, textOffset, textLen);
+                
                 request.setResponse(data);
                 
                 _callbackHandler.handle(request.responseHandler, data, _callbackErrorHandler);
             }            
         }
         
-        // ...then fire the 'received' callback next
-        _callbackHandler.handle(_receivedCallback, data, _callbackErrorHandler);
+        // ...then fire the 'received' callbacks next
+        H1<String> receivedCallback = _receivedCallback;
+        if (receivedCallback != null && !noText) {
+            if (data == null)
+                data = bufferToString(buffer, textOffset, textLen);
+            
+            _callbackHandler.handle(receivedCallback, data, _callbackErrorHandler);
+        }
+        
+        H1<byte[]> binaryReceivedCallback = _binaryReceivedCallback;
+        if (binaryReceivedCallback != null) {
+            // (callbacks are asynchronous so always need their own copy, shared between handlers)
+            if (bytes == null)
+                bytes = Arrays.copyOfRange(buffer, offset, offset + len);
+            
+            _callbackHandler.handle(binaryReceivedCallback, bytes, _callbackErrorHandler);
+        }
         
         processQueue();
     }
@@ -875,11 +1110,26 @@ public class ManagedTCP implements Closeable {
          */
         public H1<String> responseHandler;
         
+        /**
+         * The (optional) callback when raw bytes are wanted instead.
+         */
+        public H1<byte[]> binaryResponseHandler;
+        
         /**
          * Stores the response itself (for synchronous operation)
          */
         public String response;
         
+        /**
+         * The correlation tag (pipelining only)
+         */
+        public Object tag;
+        
+        /**
+         * The priority lane.
+         */
+        public RequestLane lane = RequestLane.Interactive;
+        
         public QueuedRequest(byte[] requestBuffer, String origData, int timeout, H1<String> responseHandler) {
             this.requestBuffer = requestBuffer;
             this.request = origData;
@@ -927,16 +1177,62 @@ public class ManagedTCP implements Closeable {
      * For complete control of a request
      */
     public void queueRequest(String requestData, int timeout, H1<String> responseHandler) {
+        queueRequest(requestData, timeout, responseHandler, RequestLane.Interactive);
+    }
+    
+    /**
+     * (as above, using the given priority lane)
+     */
+    public void queueRequest(String requestData, int timeout, H1<String> responseHandler, RequestLane lane) {
         byte[] buffer = prepareBuffer(requestData);
         
         // buffer can be null, which means a 'send' is not necessary, but a response is
         
         QueuedRequest request = new QueuedRequest(buffer, requestData, timeout, responseHandler);
+        request.lane = lane;
         
         doQueueRequest(request);
     }
+    
+    /**
+     * Queues a request in the background lane, i.e. behind any user-initiated ones, typically for status polling.
+     * (uses default timeout value)
+     */
+    public void poll(String requestData, H1<String> responseHandler) {
+        // don't bother doing anything if empty or missing
+        if (Strings.isEmpty(requestData))
+            return;
+        
+        queueRequest(requestData, _requestTimeout, responseHandler, RequestLane.Background);
+    }
+    
+    /**
+     * Adds to the lane queue, coalescing if enabled.
+     * (assumes locked)
+     */
+    private void enqueue(QueuedRequest request) {
+        Object key = null;
+        
+        // only requests with something to send and expecting a response (of the same kind)
+        if (_coalescing && request.requestBuffer != null && (request.responseHandler != null || request.binaryResponseHandler != null))
+            key = Arrays.asList(request.binaryResponseHandler != null, ByteBuffer.wrap(request.requestBuffer));
+        
+        QueuedRequest replaced = _requestQueue.add(request, request.lane, key);
+        if (replaced != null) {
+            // (whoever is waiting on the replaced request gets this one's response)
+            request.responseHandler = LaneQueue.fanOut(replaced.responseHandler, request.responseHandler);
+            request.binaryResponseHandler = LaneQueue.fanOut(replaced.binaryResponseHandler, request.binaryResponseHandler);
+            
+            _logger.debug("Coalesced with an identical pending request. data:[{}]", request.request);
+        }
+    }
 
     public void doQueueRequest(QueuedRequest request) {
+        if (_pipelineWindow > 1) {
+            doQueuePipelinedRequest(request);
+            return;
+        }
+        
         // whether or not this entry had to be queued
         boolean queued = false; 
         
@@ -954,8 +1250,7 @@ public class ManagedTCP implements Closeable {
                 _logger.debug("Queued a request. data:[{}]", request.request);
                 
                 // a request is active, so queue this new one
-                _requestQueue.add(request);
-                _queueLength++;
+                enqueue(request);
                 queued = true;
             }
         }
@@ -968,6 +1263,42 @@ public class ManagedTCP implements Closeable {
         processQueue();
     }
     
+    /**
+     * (pipelining version of above)
+     */
+    private void doQueuePipelinedRequest(QueuedRequest request) {
+        F1<Object, String> correlator = _correlator;
+        if (correlator != null && request.requestBuffer != null)
+            request.tag = Handler.tryHandle(correlator, request.request != null ? request.request : bufferToString(request.requestBuffer, 0, request.requestBuffer.length));
+        
+        synchronized (_lock) {
+            _logger.debug("Queued a pipelined request. data:[{}] tag:[{}]", request.request, request.tag);
+            
+            // (always queued to preserve ordering, sent as soon as the window allows)
+            enqueue(request);
+        }
+        
+        processQueue();
+    }
+    
+    /**
+     * Takes the outstanding request matching the tag or the oldest one if not correlating.
+     * (assumes locked)
+     */
+    private QueuedRequest takeInFlight(boolean correlating, Object tag) {
+        Iterator<QueuedRequest> i = _inFlight.iterator();
+        while (i.hasNext()) {
+            QueuedRequest request = i.next();
+            
+            if (!correlating || Objects.equals(request.tag, tag)) {
+                i.remove();
+                return request;
+            }
+        }
+        
+        return null;
+    }
+
     /**
      * (Overloaded) (uses default timeout value)
      */
@@ -979,6 +1310,21 @@ public class ManagedTCP implements Closeable {
         queueRequest(requestData, _requestTimeout, responseHandler);
     }
 
+    /**
+     * (Overloaded) Raw bytes are sent as-is (no delimiters are appended) and the response is delivered as raw bytes. 
+     * (uses default timeout value)
+     */
+    public void request(byte[] requestData, H1<byte[]> responseHandler) {
+        // don't bother doing anything if empty or missing
+        if (requestData == null || requestData.length == 0)
+            return;
+        
+        QueuedRequest request = new QueuedRequest(requestData, null, _requestTimeout, null);
+        request.binaryResponseHandler = responseHandler;
+        
+        doQueueRequest(request);
+    }
+
     /**
      * (synchronous version)
      */
@@ -1048,12 +1394,12 @@ public class ManagedTCP implements Closeable {
             int count = 0;
 
             // clear the queue
-            while (_requestQueue.poll() != null) {
-                count++;
-                _queueLength--;
-            }
+            count = _requestQueue.clear();
+            
+            int inFlightCount = _inFlight.size();
+            _inFlight.clear();
             
-            _logger.debug("Cleared queue. activeRequest={}, queueCount={}", activeRequestCleared, count);
+            _logger.debug("Cleared queue. activeRequest={}, queueCount={}, inFlight={}", activeRequestCleared, count, inFlightCount);
         }
     }
     
@@ -1062,6 +1408,11 @@ public class ManagedTCP implements Closeable {
      * (assumes not synced)
      */
     private void processQueue() {
+        if (_pipelineWindow > 1) {
+            processPipelinedQueue();
+            return;
+        }
+        
         // if any new requests are found
         QueuedRequest nextRequest = null;
         
@@ -1071,7 +1422,7 @@ public class ManagedTCP implements Closeable {
         synchronized (_lock) {
             // check if any active requests need expiring
             if (_activeRequest != null) {
-                if (_activeRequest.responseHandler == null || _activeRequest.timeout <= 0) {
+                if ((_activeRequest.responseHandler == null && _activeRequest.binaryResponseHandler == null) || _activeRequest.timeout <= 0) {
                     // was a blind request or 
                     _activeRequest = null;
                     
@@ -1123,8 +1474,6 @@ public class ManagedTCP implements Closeable {
                         return;
                     }
 
-                    _queueLength--;
-
                     if (!nextRequest.isLongTermExpired())
                         break;
 
@@ -1146,6 +1495,111 @@ public class ManagedTCP implements Closeable {
             sendBufferNow(nextRequest.requestBuffer, nextRequest.request, false);
     }
     
+    /**
+     * Expires outstanding requests independently and sends queued ones as the window allows.
+     * (pipelining version of above, assumes not synced)
+     */
+    private void processPipelinedQueue() {
+        synchronized (_pipelineSendLock) {
+            int timedOut = 0;
+            List<QueuedRequest> toSend = null;
+            
+            synchronized (_lock) {
+                Iterator<QueuedRequest> i = _inFlight.iterator();
+                while (i.hasNext()) {
+                    if (i.next().isExpired()) {
+                        i.remove();
+                        timedOut++;
+                    }
+                }
+                
+                // record this for logging
+                int longTermDropped = 0;
+                
+                // fill the window
+                while (_inFlight.size() < _pipelineWindow) {
+                    QueuedRequest nextRequest = _requestQueue.poll();
+                    if (nextRequest == null)
+                        break;
+                    
+                    if (nextRequest.isLongTermExpired()) {
+                        longTermDropped++;
+                        continue;
+                    }
+                    
+                    // only requests expecting a response take up room in the window
+                    if ((nextRequest.responseHandler != null || nextRequest.binaryResponseHandler != null) && nextRequest.timeout > 0) {
+                        // start timeout *before* sending
+                        nextRequest.startTimeout();
+                        _inFlight.add(nextRequest);
+                    }
+                    
+                    if (nextRequest.requestBuffer != null) {
+                        if (toSend == null)
+                            toSend = new ArrayList<QueuedRequest>();
+                        
+                        toSend.add(nextRequest);
+                    }
+                } // (while)
+                
+                if (timedOut > 0 || longTermDropped > 0)
+                    _logger.debug("{} pipelined request(s) expired, (dropped {} long term queued requests.)", timedOut, longTermDropped);
+                
+                scheduleExpiryCheck();
+            }
+            
+            for (int a = 0; a < timedOut; a++)
+                _callbackHandler.handle(_timeoutCallback, _callbackErrorHandler);
+            
+            // (in order, on this thread)
+            if (toSend != null) {
+                for (QueuedRequest request : toSend)
+                    sendBufferNow(request.requestBuffer, request.request, false);
+            }
+        }
+    }
+    
+    /**
+     * Makes sure the queue is serviced when the next outstanding request is due to expire.
+     * (assumes locked)
+     */
+    private void scheduleExpiryCheck() {
+        if (_inFlight.isEmpty())
+            return;
+        
+        long due = Long.MAX_VALUE;
+        for (QueuedRequest request : _inFlight)
+            due = Math.min(due, request.timeStarted + request.timeout * 1000000L);
+        
+        // already due soon enough?
+        if (_expiryTimer != null) {
+            if (_expiryTimerDue <= due)
+                return;
+            
+            _expiryTimer.cancel();
+        }
+        
+        _expiryTimerDue = due;
+        
+        long delay = Math.max(0, (due - System.nanoTime()) / 1000000L) + 1;
+        
+        _expiryTimer = _timerThread.schedule(_threadPool, new TimerTask() {
+            
+            @Override
+            public void run() {
+                synchronized (_lock) {
+                    if (_expiryTimer == this)
+                        _expiryTimer = null;
+                }
+                
+                _threadStateHandler.handle();
+                
+                processQueue();
+            }
+            
+        }, delay);
+    }
+    
     /**
      * Safely sends data without overlapping any existing requests 
      */
@@ -1157,6 +1611,18 @@ public class ManagedTCP implements Closeable {
         doQueueRequest(request);
     }
     
+    /**
+     * (Overloaded) Safely sends raw bytes as-is (no delimiters are appended) without overlapping any existing requests.
+     */
+    public void send(byte[] data) {
+        if (data == null || data.length == 0)
+            return;
+
+        QueuedRequest request = new QueuedRequest(data, null, 0, null);
+
+        doQueueRequest(request);
+    }
+    
     /**
      * Prepares a buffer for sending, null if it's not sendable.
      */
@@ -1245,7 +1711,10 @@ public class ManagedTCP implements Closeable {
             // ignore
         }
 
-        Handler.tryHandle(_sentCallback, origData, _callbackErrorHandler);
+        H1<String> sentCallback = _sentCallback;
+        if (sentCallback != null)
+            // (raw byte sends have no original string)
+            Handler.tryHandle(sentCallback, origData != null ? origData : bufferToString(buffer, 0, buffer.length), _callbackErrorHandler);
     }
 
     /**
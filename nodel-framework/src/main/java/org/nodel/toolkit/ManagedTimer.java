@@ -3,6 +3,7 @@ package org.nodel.toolkit;
 import java.io.Closeable;
 import java.io.IOException;
 
+import org.nodel.Handler;
 import org.nodel.Handler.H0;
 import org.nodel.Handler.H1;
 import org.nodel.threading.CallbackQueue;
@@ -117,15 +118,26 @@ public class ManagedTimer implements Closeable {
                         public void run() {
                             _threadStateHandler.handle();
                             
-                            _callbackQueue.handle(_callback, _exceptionHandler);
-                            
-                            synchronized (_lock) {
-                                if (_currentInterval <= 0 || _self.isCancelled())
-                                    return;
+                            // (the callback may only be queued so the next schedule is made once it has actually run,
+                            // otherwise a callback slower than the interval would pile up; a callback dropped from
+                            // a full mailbox still reschedules)
+                            _callbackQueue.handleDroppable(new H0() {
+
+                                @Override
+                                public void handle() {
+                                    Handler.tryHandle(_callback, _exceptionHandler);
+
+                                    scheduleNext(_self);
+                                }
+
+                            }, new H0() {
 
-                                // continually use 'interval' for next schedule
-                                _timerThread.schedule(_self, _currentInterval);
-                            }                            
+                                @Override
+                                public void handle() {
+                                    scheduleNext(_self);
+                                }
+
+                            }, _exceptionHandler);
                         }
                         
                     }); // (.execute)
@@ -150,6 +162,19 @@ public class ManagedTimer implements Closeable {
         }
     }
     
+    /**
+     * Schedules the next run of a timer task using the current interval (unless stopped or replaced).
+     */
+    private void scheduleNext(TimerTask timerTask) {
+        synchronized (_lock) {
+            if (_currentInterval <= 0 || timerTask.isCancelled())
+                return;
+
+            // continually use 'interval' for next schedule
+            _timerThread.schedule(timerTask, _currentInterval);
+        }
+    }
+    
     /**
      * Sets the delay and interval.
      */
@@ -28,6 +28,7 @@ import org.nodel.host.Binding;
 import org.nodel.host.LogEntry;
 import org.nodel.host.BaseNode.ParameterEntry;
 import org.nodel.io.Stream;
+import org.nodel.net.HTTPSimpleResponse;
 import org.nodel.net.NodelHTTPClient;
 import org.nodel.net.NodelHttpClientProvider;
 import org.nodel.reflection.Objects;
@@ -144,6 +145,11 @@ public class ManagedToolkit {
      */
     private H1<Exception> _emitExceptionHandler = createExceptionHandlerWithContext("emit");    
     
+    /**
+     * (exception handler)
+     */
+    private H1<Exception> _getURLExceptionHandler = createExceptionHandlerWithContext("getURL");
+    
     /**
      * Call from within calling thread, usually sets up the thread-state environment.
      */
@@ -359,7 +365,7 @@ public class ManagedToolkit {
     }
     
     /**
-     * Constructs a managed TCP connection.
+     * (Overloaded) Constructs a managed TCP connection (without a raw byte handler).
      */
     public ManagedTCP createTCP(String dest,
                                 H0 onConnected,
@@ -370,12 +376,29 @@ public class ManagedToolkit {
                                 String sendDelimiters,
                                 String receiveDelimiters,
                                 String binaryStartStopFlags) {
+        return createTCP(dest, onConnected, onReceived, onSent, onDisconnected, onTimeout, sendDelimiters, receiveDelimiters, binaryStartStopFlags, null);
+    }
+    
+    /**
+     * Constructs a managed TCP connection.
+     */
+    public ManagedTCP createTCP(String dest,
+                                H0 onConnected,
+                                H1<String> onReceived, 
+                                H1<String> onSent,
+                                H0 onDisconnected,
+                                H0 onTimeout,
+                                String sendDelimiters,
+                                String receiveDelimiters,
+                                String binaryStartStopFlags,
+                                H1<byte[]> onBinaryReceived) {
         // create a new TCP connection providing this environment's facilities
         ManagedTCP tcp = new ManagedTCP(_node, dest, _threadStateHandler, _tcpExceptionHandler, _callbackQueue, s_threadPool, s_timers);
         
         // set up the callback handlers as provided by the user
         tcp.setConnectedHandler(onConnected);
         tcp.setReceivedHandler(onReceived);
+        tcp.setBinaryReceivedHandler(onBinaryReceived);
         tcp.setSentHandler(onSent);
         tcp.setDisconnectedHandler(onDisconnected);
         tcp.setTimeoutHandler(onTimeout);
@@ -393,16 +416,30 @@ public class ManagedToolkit {
         return tcp;
     }
     
+    /**
+     * (Overloaded) Constructs a managed UDP socket (without a raw byte handler).
+     */
     public ManagedUDP createUDP(String source,
                                 String dest,
                                 H0 onReady, 
                                 H2<String, String> onReceived, 
                                 H1<String> onSent,
                                 String intf) {
+        return createUDP(source, dest, onReady, onReceived, onSent, intf, null);
+    }
+    
+    public ManagedUDP createUDP(String source,
+                                String dest,
+                                H0 onReady, 
+                                H2<String, String> onReceived, 
+                                H1<String> onSent,
+                                String intf,
+                                H2<String, byte[]> onBinaryReceived) {
         ManagedUDP udp = new ManagedUDP(_node, source, dest, _threadStateHandler, _udpExceptionHandler, _callbackQueue, s_threadPool, s_timers);
         
         udp.setReadyHandler(onReady);
         udp.setReceivedHandler(onReceived);
+        udp.setBinaryReceivedHandler(onBinaryReceived);
         udp.setSentHandler(onSent);
         udp.setIntf(intf);
         
@@ -417,7 +454,7 @@ public class ManagedToolkit {
     }
     
     /**
-     * Constructs a managed OS process.
+     * (Overloaded) Constructs a managed OS process (without a raw byte handler).
      */
     public ManagedProcess createProcess(List<String> command,
                                 H0 onStarted,
@@ -430,11 +467,30 @@ public class ManagedToolkit {
                                 String receiveDelimiters,
                                 String working,
                                 boolean mergestderr) {
+        return createProcess(command, onStarted, onOut, onIn, onErr, onStopped, onTimeout, sendDelimiters, receiveDelimiters, working, mergestderr, null);
+    }
+    
+    /**
+     * Constructs a managed OS process.
+     */
+    public ManagedProcess createProcess(List<String> command,
+                                H0 onStarted,
+                                H1<String> onOut, 
+                                H1<String> onIn,
+                                H1<String> onErr,
+                                H1<Integer> onStopped,
+                                H0 onTimeout,
+                                String sendDelimiters,
+                                String receiveDelimiters,
+                                String working,
+                                boolean mergestderr,
+                                H1<byte[]> onBinaryOut) {
         ManagedProcess process = new ManagedProcess(_node, command, _threadStateHandler, _processExceptionHandler, _callbackQueue, s_threadPool, s_timers);
         
         // set up the callback handlers as provided by the user
         process.setStartedHandler(onStarted);
         process.setOutHandler(onOut);
+        process.setBinaryOutHandler(onBinaryOut);
         process.setInHandler(onIn);
         process.setErrHandler(onErr);
         process.setStoppedHandler(onStopped);
@@ -461,6 +517,9 @@ public class ManagedToolkit {
         return process;
     }
     
+    /**
+     * (Overloaded) Captures all output.
+     */
     public QuickProcess createQuickProcess(List<String> command,
             String stdinPush,
             H1<Integer> onStarted,
@@ -468,8 +527,19 @@ public class ManagedToolkit {
             long timeout,
             String working,
             boolean mergeErr) {
+        return createQuickProcess(command, stdinPush, onStarted, onFinished, timeout, working, mergeErr, 0);
+    }
+    
+    public QuickProcess createQuickProcess(List<String> command,
+            String stdinPush,
+            H1<Integer> onStarted,
+            H1<QuickProcess.FinishedArg> onFinished,
+            long timeout,
+            String working,
+            boolean mergeErr,
+            int captureLimit) {
 
-        final QuickProcess quickProcess = new QuickProcess(_threadStateHandler, s_threadPool, s_timers, _processExceptionHandler, _node, command, stdinPush, onStarted, onFinished, timeout, working, mergeErr);
+        final QuickProcess quickProcess = new QuickProcess(_threadStateHandler, s_threadPool, s_timers, _processExceptionHandler, _node, command, stdinPush, onStarted, onFinished, timeout, working, mergeErr, captureLimit);
         quickProcess.setClosedHandler(new Handler.H0() {
 
             @Override
@@ -915,6 +985,53 @@ public class ManagedToolkit {
             Integer connectTimeout, Integer readTimeout, boolean resultWithHeaders) throws IOException {
         return getHttpClient().makeSimpleRequest(urlStr, method, query, username, password, headers, contentType, post, connectTimeout, readTimeout);
     }
+    
+    /**
+     * Same as 'getURL' except the request is made asynchronously, using a pooled connection. The result (the content or
+     * the full response object if 'fullResponse') or exception is passed to the callbacks via the callback queue.
+     */
+    public void getURLAsync(String urlStr, String method, Map<String, String> query, String username, String password, Map<String, String> headers, String contentType, String post,
+            Integer connectTimeout, Integer readTimeout, final boolean fullResponse, final H1<Object> onComplete, final H1<Exception> onError) {
+        getHttpClient().makeRequestAsync(urlStr, method, query, username, password, headers, contentType, post, connectTimeout, readTimeout, new H1<HTTPSimpleResponse>() {
+
+            @Override
+            public void handle(HTTPSimpleResponse response) {
+                _threadStateHandler.handle();
+
+                Object result;
+                try {
+                    result = fullResponse ? response : NodelHTTPClient.simpleContent(response);
+
+                } catch (Exception exc) {
+                    handleGetURLError(exc, onError);
+                    return;
+                }
+
+                if (onComplete != null)
+                    _callbackQueue.handle(onComplete, result, _getURLExceptionHandler);
+            }
+
+        }, new H1<Exception>() {
+
+            @Override
+            public void handle(Exception exc) {
+                _threadStateHandler.handle();
+
+                handleGetURLError(exc, onError);
+            }
+
+        });
+    }
+    
+    /**
+     * (convenience)
+     */
+    private void handleGetURLError(Exception exc, H1<Exception> onError) {
+        if (onError != null)
+            _callbackQueue.handle(onError, exc, _getURLExceptionHandler);
+        else
+            _getURLExceptionHandler.handle(exc);
+    }
 
     /**
      * Permanently cleans up this instance of the toolkit and related
@@ -2,11 +2,17 @@ package org.nodel.toolkit;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Random;
@@ -17,7 +23,6 @@ import org.nodel.Handler.H0;
 import org.nodel.Handler.H1;
 import org.nodel.Handler.H2;
 import org.nodel.Strings;
-import org.nodel.Threads;
 import org.nodel.diagnostics.Diagnostics;
 import org.nodel.diagnostics.SharableMeasurementProvider;
 import org.nodel.host.BaseNode;
@@ -63,9 +68,9 @@ public class ManagedUDP implements Closeable {
     private final static Random s_random = new Random();
     
     /**
-     * The maximum UDP buffer size
+     * Received packets held while waiting for callbacks to complete (beyond this they're dropped)
      */
-    private final static int MAX_BUFFER_SIZE = 65536;
+    private final static int MAX_RECEIVE_BACKLOG = 4096;
 
     /**
      * The maximum back-off time allowed (default 32 secs or 2^5 millis)
@@ -97,6 +102,11 @@ public class ManagedUDP implements Closeable {
      */
     private H2<String, String> _receivedCallback;
 
+    /**
+     * (see setter)
+     */
+    private H2<String, byte[]> _binaryReceivedCallback;
+
     /**
      * (see setter)
      */
@@ -117,20 +127,15 @@ public class ManagedUDP implements Closeable {
      */
     private boolean _started;
 
-    /**
-     * The receive thread.
-     */
-    private Thread _thread;
-    
     /**
      * Shared timer framework to use.
      */
     private Timers _timerThread;
     
     /**
-     * The current socket.
+     * The current channel (receives are serviced by the shared reactor)
      */
-    private DatagramSocket _socket;
+    private DatagramChannel _channel;
     
     /**
      * The start timer.
@@ -173,15 +178,16 @@ public class ManagedUDP implements Closeable {
     private boolean _processing = false;
     
     /**
-     * This is needed to create the send packet
+     * Received packets waiting for callbacks, handed over by the reactor
+     * (self-locked)
      */
-    private byte[] DUMMY = new byte[1];
+    private Queue<Received> _receiveQueue = new LinkedList<>();
     
     /**
-     * The send packet (reused)
-     * The buffer is replaced each time unfortunately.
+     * Whether or not the receive queue is being processed.
+     * (locked around 'receiveQueue')
      */
-    private DatagramPacket _sendPacket = new DatagramPacket(DUMMY, DUMMY.length);
+    private boolean _receiving = false;
     
     /**
      * The send queue item
@@ -201,6 +207,19 @@ public class ManagedUDP implements Closeable {
         }
     }
     
+    /**
+     * A received packet, only converted or copied as required by the handlers
+     */
+    private class Received {
+        
+        public String from;
+        
+        public byte[] buffer;
+        
+        public String data;
+        
+    }
+    
     /**
      * (Response for handling thread-state)
      */
@@ -225,6 +244,11 @@ public class ManagedUDP implements Closeable {
      * (diagnostics)
      */    
     private SharableMeasurementProvider _counterSendRate;
+    
+    /**
+     * (diagnostics)
+     */    
+    private SharableMeasurementProvider _counterRecvDrops;
 
     /**
      * (constructor)
@@ -239,24 +263,13 @@ public class ManagedUDP implements Closeable {
         _threadPool = threadPool;
         _timerThread = timers;
         
-        // set up the connect and receive thread
-        _thread = new Thread(new Runnable() {
-
-            @Override
-            public void run() {
-                begin();
-            }
-            
-        });
-        _thread.setName(node.getName().getReducedName() + "_udpBindAndListen_" + _instance);
-        _thread.setDaemon(true);
-        
         // register the counters
         String counterName = "'" + node.getName().getReducedName() + "'";
         _counterRecvOps = Diagnostics.shared().registerSharableCounter(counterName + ".UDP receives", true);
         _counterRecvRate = Diagnostics.shared().registerSharableCounter(counterName + ".UDP receive rate", true);
         _counterSendOps = Diagnostics.shared().registerSharableCounter(counterName + ".UDP sends", true);
         _counterSendRate = Diagnostics.shared().registerSharableCounter(counterName + ".UDP send rate", true);
+        _counterRecvDrops = Diagnostics.shared().registerSharableCounter(counterName + ".UDP receive drops", true);
     }
     
     /**
@@ -273,6 +286,14 @@ public class ManagedUDP implements Closeable {
         _receivedCallback = handler;
     }
     
+    /**
+     * When a data segment arrives, as raw bytes i.e. without any character conversion.
+     * (opt-in, can be used alongside or instead of the 'received' handler)
+     */
+    public void setBinaryReceivedHandler(H2<String, byte[]> handler) {
+        _binaryReceivedCallback = handler;
+    }
+    
     /**
      * When a data segment is sent
      */
@@ -336,11 +357,11 @@ public class ManagedUDP implements Closeable {
      * Gets the active listening port (may be different from port part of 'source')
      */
     public int getListeningPort() {
-        DatagramSocket socket = _socket;
-        if (socket == null)
+        DatagramChannel channel = _channel;
+        if (channel == null)
             return 0;
         else
-            return _socket.getLocalPort();
+            return channel.socket().getLocalPort();
     }
 
     
@@ -362,7 +383,7 @@ public class ManagedUDP implements Closeable {
 
                 @Override
                 public void run() {
-                    _thread.start();
+                    bind();
                 }
 
             }, kickoffTime);
@@ -370,41 +391,52 @@ public class ManagedUDP implements Closeable {
     }
     
     /**
-     * The main thread.
+     * Binds a channel and registers it with the shared reactor, retrying later on failure.
+     * (thread-pool)
      */
-    private void begin() {
-        while (!_shutdown) {
-            // only need to set the thread state once here
-            _threadStateHandler.handle();
+    private void bind() {
+        if (_shutdown)
+            return;
+        
+        // only need to set the thread state once here
+        _threadStateHandler.handle();
+        
+        try {
+            bindAndRegister();
             
-            try {
-                bindAndListen();
-
-            } catch (Exception exc) {
-                // an exception here can only happen if a binding failure
-                // has occurred or things are being shutdown
-
-                if (_shutdown) {
-                    // thread can gracefully exit
+        } catch (Exception exc) {
+            // an exception here can only happen if a binding failure
+            // has occurred or things are being shutdown
+            
+            if (_shutdown)
+                return;
+            
+            // fire the general error-handler that'll hopefully log the issue
+            Handler.tryHandle(_callbackErrorHandler, exc);
+            
+            // back off for a period of time, no need for exponential back-off, normally
+            // just because someone else has bound to the port
+            synchronized (_lock) {
+                if (_shutdown)
                     return;
-                }
                 
-                // fire the general error-handler that'll hopefully log the issue
-                Handler.tryHandle(_callbackErrorHandler, exc);
-            }
+                _startTimer = _timerThread.schedule(_threadPool, new TimerTask() {
 
-            // back off for a period of time, no need for exponential back-off, normally
-            // just because someone else has bound to the port
-            Threads.wait(_lock, BACKOFF);
-        } // (while)
+                    @Override
+                    public void run() {
+                        bind();
+                    }
+
+                }, BACKOFF);
+            }
+        }
     }
     
     /**
-     * Establishes a socket and continually reads.
+     * Establishes a channel and hands it to the reactor.
      */
-    private void bindAndListen() throws Exception {
-        DatagramSocket socket = null;
-        MulticastSocket multicastSocket = null;
+    private void bindAndRegister() throws Exception {
+        DatagramChannel channel = null;
         
         try {
         	String sourceAddress = _source;
@@ -440,16 +472,26 @@ public class ManagedUDP implements Closeable {
             	// multicast usage
             	
             	// (requires more complex binding decisions than unicast)
-            	boolean bound = false;
+            	InetAddress group = sourceMulticast ? sourceSocketAddress.getAddress() : destSocketAddress.getAddress();
             	
-            	multicastSocket = new MulticastSocket(null);
-            	
-            	// 'socket' reference set immediately for clean up purposes
-            	socket = multicastSocket;
+            	channel = DatagramChannel.open(group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+            	channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
             	
             	// always set the optional 'interface' if it's specified
-            	if (intfHostAddress != null)
-            		multicastSocket.setInterface(intfHostAddress);
+            	NetworkInterface intf;
+            	if (intfHostAddress != null) {
+            		intf = NetworkInterface.getByInetAddress(intfHostAddress);
+            		if (intf == null)
+            			throw new IOException("No interface has address " + intfAddress);
+            		
+            		channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, intf);
+            	} else {
+            		// (group membership needs an explicit interface; IP_MULTICAST_IF is left to the OS)
+            		intf = defaultMulticastInterface(group);
+            		
+            		_logger.info("No interface specified; joining multicast group {} on {} ({}). Set 'intf' to use a different one.", 
+            		        group.getHostAddress(), intf.getName(), intf.getDisplayName());
+            	}
             	
             	// it's important the source is used as the bind address if it
             	// not a multicast address itself
@@ -457,112 +499,213 @@ public class ManagedUDP implements Closeable {
             	if (sourceMulticast) {
             		if (intfHostAddress == null) {
             			// bind to wildcard address, and specific port
-						multicastSocket.bind(new InetSocketAddress((InetAddress) null, sourceSocketAddress.getPort()));
+            			channel.bind(new InetSocketAddress((InetAddress) null, sourceSocketAddress.getPort()));
             		} else {
             			// bind to intf address and specific port
-            			multicastSocket.bind(new InetSocketAddress(intfHostAddress, sourceSocketAddress.getPort()));
+            			channel.bind(new InetSocketAddress(intfHostAddress, sourceSocketAddress.getPort()));
             		}
-            			
-            		bound = true;
-            	}
-            	
-            	if (!bound) {
+            	} else {
             		// specifying multicast with the destination, port can be altered on the fly
             		// during sends
-            		multicastSocket.bind(null);
-            		bound = true;
+            		channel.bind(null);
             	}
             	
             	// join the multicast group(s) (wouldn't make much sense having one set on 'source' and 'dest' but
             	// they can try)
             	if (sourceMulticast) 
-            		multicastSocket.joinGroup(sourceSocketAddress.getAddress());
+            		channel.join(sourceSocketAddress.getAddress(), intf);
             	
             	if (destMulticast)
-            		multicastSocket.joinGroup(destSocketAddress.getAddress());
+            		channel.join(destSocketAddress.getAddress(), intf);
             		
             } else {
             	// unicast usage
             	
-            	// prepare a reusuable UDP socket
-            	socket = new DatagramSocket(null);
-            	socket.setReuseAddress(true);
+            	// prepare a reusuable UDP channel
+            	channel = DatagramChannel.open();
+            	channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
             	
             	// bind to the source address
             	// (null is valid)
-            	socket.bind(sourceSocketAddress);
+            	channel.bind(sourceSocketAddress);
             }
             
-            // at this point, the socket will be bound
+            // at this point, the channel will be bound
             
             synchronized (_lock) {
-                if (_shutdown)
+                if (_shutdown) {
+                    Stream.safeClose(channel);
                     return;
+                }
                 
-                _socket = socket;
+                _channel = channel;
             }
             
-            // socket it bound here, so fire 'ready' flag
+            // start receiving
+            UDPReactor.shared().register(channel, new UDPReactor.Receiver() {
+
+                @Override
+                public void handleDatagram(String from, byte[] buffer, int len) {
+                    handleReceivedData(from, buffer, len);
+                }
+
+            });
+            
+            // channel is bound and registered here, so fire 'ready' flag
             _callbackHandler.handle(_readyCallback, _callbackErrorHandler);
             
             _logger.info("A UDP socket is bound.");
             
-            // start listening
-            readLoop(socket);
-            
-        } finally {
-            // always gracefully close the socket and invalidate the socket fields
+        } catch (Exception exc) {
+            // gracefully close the channel and invalidate the channel field
             
             synchronized(_lock) {
-                _socket = null;
+                if (_channel == channel)
+                    _channel = null;
             }
             
-            Stream.safeClose(socket);
+            Stream.safeClose(channel);
+            
+            throw exc;
         }
     }
-
+    
     /**
-     * The reading loop will continually read or until shutdown.
+     * Used when no interface is specified; the interface the OS routes the group through (usually the default route's,
+     * as joining without an interface used to do). If there's no route, the first active, non-loopback, multicast 
+     * capable interface with an address in the same family as the group (or loopback if that's all there is).
      */
-    private void readLoop(DatagramSocket socket) throws Exception {
-        // set up the receive buffer and packet once
-        byte[] recvBuffer = new byte[MAX_BUFFER_SIZE];
-        DatagramPacket recvPacket = new DatagramPacket(recvBuffer, recvBuffer.length);
+    private static NetworkInterface defaultMulticastInterface(InetAddress group) throws IOException {
+        // (connecting a datagram socket sends nothing, it only looks up the route and source address)
+        DatagramSocket probe = null;
+        try {
+            probe = new DatagramSocket();
+            probe.connect(group, 9);
+            
+            InetAddress local = probe.getLocalAddress();
+            if (local != null && !local.isAnyLocalAddress()) {
+                NetworkInterface intf = NetworkInterface.getByInetAddress(local);
+                if (intf != null && intf.isUp() && intf.supportsMulticast())
+                    return intf;
+            }
+            
+        } catch (Exception exc) {
+            // (no route, fall back to scanning)
+            
+        } finally {
+            Stream.safeClose(probe);
+        }
+        
+        NetworkInterface loopback = null;
         
-        while (!_shutdown) {
-            // always reset the length before receiving
-            recvPacket.setLength(recvBuffer.length);
+        for (NetworkInterface intf : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!intf.isUp() || !intf.supportsMulticast() || intf.isVirtual())
+                continue;
             
-            try {
-                // receive packets...
-                datagramRecvAndCount(socket, recvPacket);
-                
-                handleReceivedData(recvPacket);
-                
-            } catch (Exception exc) {
-                // unless we're shutting down, ignore these exceptions
-                // which could be 'no route to host' etc.
+            boolean sameFamily = false;
+            for (InetAddress address : Collections.list(intf.getInetAddresses())) {
+                if ((address instanceof Inet6Address) == (group instanceof Inet6Address)) {
+                    sameFamily = true;
+                    break;
+                }
             }
-        } // (while)
+            
+            if (!sameFamily)
+                continue;
+            
+            if (!intf.isLoopback())
+                return intf;
+            
+            if (loopback == null)
+                loopback = intf;
+        } // (for)
         
-        // asked to be shutdown, will do so gracefully... 
+        if (loopback == null)
+            throw new IOException("No multicast capable interface is available");
+        
+        return loopback;
     }
     
     /**
-     * When a packet arrives; deals with request callbacks if necessary
+     * When a packet arrives; converts or copies only if there are handlers that need it then hands over
+     * to the thread-pool.
+     * (reactor thread, must not block)
      */
-    private void handleReceivedData(DatagramPacket recvPacket) {
-        InetAddress fromAddr = recvPacket.getAddress();
-        String fromHost = fromAddr.getHostAddress();
+    private void handleReceivedData(String from, byte[] buffer, int len) {
+        _counterRecvOps.incr();
+        _counterRecvRate.add(len * 8);
         
-        int fromPort = recvPacket.getPort();
+        H2<String, String> receivedCallback = _receivedCallback;
+        H2<String, byte[]> binaryReceivedCallback = _binaryReceivedCallback;
         
-        String from = fromHost + ":" + fromPort;
+        if (receivedCallback == null && binaryReceivedCallback == null)
+            return;
         
-        String data = bufferToString(recvPacket.getData(), recvPacket.getLength());
+        Received received = new Received();
+        received.from = from;
+        
+        if (binaryReceivedCallback != null)
+            // (the receive buffer is reused so a copy is needed, strings are converted later from this copy)
+            received.buffer = Arrays.copyOf(buffer, len);
+        else
+            received.data = bufferToString(buffer, len);
+        
+        synchronized (_receiveQueue) {
+            if (_receiveQueue.size() >= MAX_RECEIVE_BACKLOG) {
+                // callbacks can't keep up
+                _counterRecvDrops.incr();
+                return;
+            }
+            
+            _receiveQueue.add(received);
+            
+            // kicking off thread-pool to process if necessary
+            if (!_receiving) {
+                _receiving = true;
+                
+                _threadPool.execute(new Runnable() {
 
-        // ...then fire the 'received' callback next
-        _callbackHandler.handle(_receivedCallback, from, data, _callbackErrorHandler);
+                    @Override
+                    public void run() {
+                        _threadStateHandler.handle();
+                        processReceiveQueue();
+                    }
+
+                });
+            }
+        }
+    }
+    
+    /**
+     * Continually fires callbacks for received packets, in order.
+     */
+    private void processReceiveQueue() {
+        for (;;) {
+            Received received;
+            synchronized (_receiveQueue) {
+                received = _receiveQueue.poll();
+                
+                if (received == null || _shutdown) {
+                    _receiveQueue.clear();
+                    _receiving = false;
+                    return;
+                }
+            }
+            
+            H2<String, String> receivedCallback = _receivedCallback;
+            if (receivedCallback != null) {
+                String data = received.data;
+                if (data == null)
+                    data = bufferToString(received.buffer, received.buffer.length);
+                
+                // ...then fire the 'received' callback next
+                _callbackHandler.handle(receivedCallback, received.from, data, _callbackErrorHandler);
+            }
+            
+            H2<String, byte[]> binaryReceivedCallback = _binaryReceivedCallback;
+            if (binaryReceivedCallback != null && received.buffer != null)
+                _callbackHandler.handle(binaryReceivedCallback, received.from, received.buffer, _callbackErrorHandler);
+        } // (for)
     }
     
     /**
@@ -579,13 +722,35 @@ public class ManagedUDP implements Closeable {
         queueSend(dest, data);
     }
     
+    /**
+     * (Overloaded) Sends raw bytes asynchronously as-is (using 'dest' as destination)
+     */
+    public void send(byte[] data) {
+        queueSend(null, data, null);
+    }
+    
+    /**
+     * (Overloaded) Sends raw bytes asynchronously as-is
+     */
+    public void sendTo(String dest, byte[] data) {
+        queueSend(dest, data, null);
+    }
+    
+    /**
+     * (convenience)
+     */
+    private void queueSend(String dest, String data) {
+        queueSend(dest, stringToBuffer(data), data);
+    }
+    
     /**
      * Safely queues a send-request to be processed by a thread-pool.
      * (returns immediately)
      */
-    private void queueSend(String dest, String data) {
-        byte[] buffer = stringToBuffer(data);
-
+    private void queueSend(String dest, byte[] buffer, String data) {
+        if (buffer == null)
+            return;
+        
         synchronized (_sendQueue) {
             // immediately queue the send request
             _sendQueue.add(new QueueItem(dest, buffer, data));
@@ -634,9 +799,9 @@ public class ManagedUDP implements Closeable {
      */
     private void doSend(String dest, byte[] buffer, String origData) {
         try {
-            DatagramSocket socket = _socket;
+            DatagramChannel channel = _channel;
 
-            if (socket == null)
+            if (channel == null)
                 return;
             
             InetSocketAddress addr;
@@ -653,14 +818,17 @@ public class ManagedUDP implements Closeable {
                 addr = parseAndResolveAddress(dest);
             }
 
-            _sendPacket.setSocketAddress(addr);
-            _sendPacket.setData(buffer);
-            _sendPacket.setLength(buffer.length);
-
-            datagramSendAndCount(socket, _sendPacket);
+            if (!datagramSendAndCount(channel, buffer, addr)) {
+                // (non-blocking, so the OS send buffer was full; treated like any other lost datagram)
+                _logger.debug("Send buffer full; datagram was dropped.");
+                return;
+            }
             
             // call the 'sent' handler
-            Handler.tryHandle(_sentCallback, origData, _callbackErrorHandler);
+            // (raw byte sends have no original string)
+            H1<String> sentCallback = _sentCallback;
+            if (sentCallback != null)
+                Handler.tryHandle(sentCallback, origData != null ? origData : bufferToString(buffer, buffer.length), _callbackErrorHandler);
             
         } catch (Exception exc) {
             Handler.tryHandle(_callbackErrorHandler, exc);
@@ -669,22 +837,17 @@ public class ManagedUDP implements Closeable {
 
     /**
      * Convenience method to send and count
+     * 
+     * @return false if the datagram could not be sent immediately.
      */
-    private void datagramSendAndCount(DatagramSocket socket, DatagramPacket packet) throws IOException {
-        socket.send(packet);
+    private boolean datagramSendAndCount(DatagramChannel channel, byte[] buffer, InetSocketAddress addr) throws IOException {
+        if (channel.send(ByteBuffer.wrap(buffer), addr) == 0 && buffer.length > 0)
+            return false;
         
         _counterSendOps.incr();
-        _counterSendRate.add(packet.getLength() * 8);
-    }
-    
-    /**
-     * Convenience method to receive and count.
-     */
-    private void datagramRecvAndCount(DatagramSocket socket, DatagramPacket packet) throws IOException {
-        socket.receive(packet);
+        _counterSendRate.add(buffer.length * 8);
         
-        _counterRecvOps.incr();
-        _counterRecvRate.add(packet.getLength() * 8);
+        return true;
     }
 
     /**
@@ -754,11 +917,42 @@ public class ManagedUDP implements Closeable {
      * Drops this socket; may trigger a reconnect.
      */
     public void drop() {
+        DatagramChannel channel;
+        
         synchronized (_lock) {
-            if (_shutdown)
+            if (_shutdown || _channel == null)
                 return;
 
-            Stream.safeClose(_socket);
+            channel = _channel;
+            _channel = null;
+        }
+        
+        closeChannel(channel);
+        
+        // rebind
+        _threadPool.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                bind();
+            }
+
+        });
+    }
+    
+    /**
+     * (exception-free)
+     */
+    private static void closeChannel(DatagramChannel channel) {
+        if (channel == null)
+            return;
+        
+        try {
+            UDPReactor.shared().close(channel);
+            
+        } catch (IOException exc) {
+            // (reactor could never have been started)
+            Stream.safeClose(channel);
         }
     }
     
@@ -776,12 +970,9 @@ public class ManagedUDP implements Closeable {
             if (_startTimer != null)
                 _startTimer.cancel();
 
-            Stream.safeClose(_socket);
+            closeChannel(_channel);
 
-            _socket = null;
-            
-            // notify the connection and receive thread if it happens to be waiting
-            _lock.notify();
+            _channel = null;
         }
     }
     
@@ -0,0 +1,504 @@
+package org.nodel.toolkit;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nodel.SystemProperties;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.io.Stream;
+import org.nodel.threading.NodelThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Services the stdout / stderr pipes of all child processes, and their exits, without a platform thread per stream.
+ *
+ * Where the runtime supports virtual threads (Java 21+) each pipe gets a virtual thread parked in a blocking 'read',
+ * which costs nothing while idle, delivers data as soon as it arrives and ends the pipe as soon as 'read' returns -1.
+ *
+ * Otherwise a small, fixed set of workers polls the pipes using 'available' (process pipes can't be used with NIO
+ * selectors), backing off when idle (up to 'MAX_IDLE_WAIT'). A polled pipe ends once its process has exited and the
+ * pipe is drained.
+ *
+ * Exits are watched using 'Process.onExit' (Java 9+) or by the same workers.
+ */
+class ProcessPipes {
+
+    /**
+     * (logging related)
+     */
+    private final static Logger s_logger = LoggerFactory.getLogger(ProcessPipes.class);
+
+    /**
+     * Optional system property for the number of polling workers (when virtual threads aren't available),
+     * e.g. 'org.nodel.toolkit.processPipeWorkers = 4'
+     */
+    public final static String WORKERS_SYSTEMPROP = "org.nodel.toolkit.processPipeWorkers";
+
+    /**
+     * The default number of polling workers.
+     */
+    private final static int DEFAULT_WORKERS = 2;
+
+    /**
+     * The longest a polling worker sleeps between polls when idle (millis)
+     */
+    private final static int MAX_IDLE_WAIT = 16;
+
+    /**
+     * The read buffer size (per reader or worker)
+     */
+    private final static int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Receives data from a pipe.
+     */
+    public interface Reader {
+
+        /**
+         * Data arrived. 'buffer' is reused after this returns so must be copied if it's needed later.
+         * (called on a reader or worker thread, must not block)
+         */
+        public void handleData(byte[] buffer, int offset, int len);
+
+        /**
+         * The pipe has ended (the process exited or the stream was closed). Called once.
+         * (called on a reader or worker thread, must not block)
+         */
+        public void handleEnd();
+
+    } // (interface)
+
+    /**
+     * A registered pipe (polling workers only).
+     */
+    private static class Pipe {
+
+        public Process process;
+
+        public InputStream in;
+
+        public Reader reader;
+
+    } // (class)
+
+    /**
+     * A watched process (polling workers only).
+     */
+    private static class Exit {
+
+        public Process process;
+
+        public Runnable handler;
+
+    } // (class)
+
+    /**
+     * A polling worker and the pipes and exits it services.
+     */
+    private class Worker implements Runnable {
+
+        /**
+         * (locked around '_lock')
+         */
+        private List<Pipe> _pipes = new ArrayList<Pipe>();
+
+        /**
+         * (locked around '_lock')
+         */
+        private List<Exit> _exits = new ArrayList<Exit>();
+
+        /**
+         * (see '_pipes', '_exits')
+         */
+        private Object _lock = new Object();
+
+        /**
+         * (worker thread only)
+         */
+        private byte[] _buffer = new byte[BUFFER_SIZE];
+
+        /**
+         * (worker thread only)
+         */
+        private List<Pipe> _pipesSnapshot = new ArrayList<Pipe>();
+
+        /**
+         * (worker thread only)
+         */
+        private List<Exit> _exitsSnapshot = new ArrayList<Exit>();
+
+        public int size() {
+            synchronized (_lock) {
+                return _pipes.size() + _exits.size();
+            }
+        }
+
+        public void add(Pipe pipe) {
+            synchronized (_lock) {
+                _pipes.add(pipe);
+
+                // (wake up immediately if idle)
+                _lock.notify();
+            }
+        }
+
+        public void add(Exit exit) {
+            synchronized (_lock) {
+                _exits.add(exit);
+
+                _lock.notify();
+            }
+        }
+
+        @Override
+        public void run() {
+            int idleWait = 1;
+
+            for (;;) {
+                try {
+                    synchronized (_lock) {
+                        while (_pipes.isEmpty() && _exits.isEmpty())
+                            _lock.wait();
+
+                        _pipesSnapshot.clear();
+                        _pipesSnapshot.addAll(_pipes);
+
+                        _exitsSnapshot.clear();
+                        _exitsSnapshot.addAll(_exits);
+                    }
+
+                    boolean readAny = false;
+
+                    for (Pipe pipe : _pipesSnapshot) {
+                        if (poll(pipe))
+                            readAny = true;
+                    } // (for)
+
+                    for (Exit exit : _exitsSnapshot) {
+                        if (hasExited(exit.process)) {
+                            synchronized (_lock) {
+                                _exits.remove(exit);
+                            }
+
+                            runExitHandler(exit.handler);
+                        }
+                    } // (for)
+
+                    if (readAny) {
+                        idleWait = 1;
+
+                    } else {
+                        synchronized (_lock) {
+                            _lock.wait(idleWait);
+                        }
+
+                        idleWait = Math.min(idleWait * 2, MAX_IDLE_WAIT);
+                    }
+
+                } catch (InterruptedException exc) {
+                    // (never expected)
+                    return;
+
+                } catch (Exception exc) {
+                    s_logger.warn("Unexpected exception within process pipe worker; will continue.", exc);
+                }
+            } // (for)
+        }
+
+        /**
+         * Reads whatever is available without blocking, detecting the end of the pipe.
+         *
+         * @return true if data was read.
+         */
+        private boolean poll(Pipe pipe) {
+            try {
+                int available = pipe.in.available();
+
+                if (available > 0) {
+                    int bytesRead = pipe.in.read(_buffer, 0, Math.min(available, _buffer.length));
+
+                    if (bytesRead < 0) {
+                        end(pipe);
+                        return false;
+                    }
+
+                    handleData(pipe.reader, _buffer, bytesRead);
+
+                    return true;
+                }
+
+                // nothing available; only finished once the process has exited *and* the pipe is drained
+                if (!hasExited(pipe.process) || pipe.in.available() > 0)
+                    return false;
+
+            } catch (IOException exc) {
+                // (closed)
+            }
+
+            end(pipe);
+
+            return false;
+        }
+
+        /**
+         * (worker thread)
+         */
+        private void end(Pipe pipe) {
+            synchronized (_lock) {
+                _pipes.remove(pipe);
+            }
+
+            handleEnd(pipe.in, pipe.reader);
+        }
+
+    } // (class)
+
+    /**
+     * (instance, see 'shared')
+     */
+    private final static ProcessPipes s_instance = new ProcessPipes();
+
+    /**
+     * Creates the pipe readers (virtual threads) or null if the runtime doesn't support them.
+     */
+    private NodelThreadFactory _readers;
+
+    /**
+     * 'Process.onExit()' or null if the runtime doesn't support it.
+     */
+    private Method _onExit;
+
+    /**
+     * 'CompletionStage.thenRun(Runnable)' (along with '_onExit')
+     */
+    private Method _thenRun;
+
+    /**
+     * The polling workers, only started if needed.
+     * (locked around 'this')
+     */
+    private Worker[] _workers;
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterPipes = Diagnostics.shared().registerSharableCounter("Process pipes.Pipes", false);
+
+    /**
+     * (private constructor)
+     */
+    private ProcessPipes() {
+        NodelThreadFactory shared = NodelThreadFactory.shared();
+
+        if (shared.isVirtual()) {
+            _readers = shared;
+
+        } else {
+            // (used regardless of the configured thread factory; the alternative is polling)
+            try {
+                _readers = new NodelThreadFactory.Virtual();
+
+            } catch (UnsupportedOperationException exc) {
+                s_logger.info("Virtual threads are not supported by this runtime; process pipes will be polled instead.");
+            }
+        }
+
+        try {
+            _onExit = Process.class.getMethod("onExit");
+            _thenRun = Class.forName("java.util.concurrent.CompletionStage").getMethod("thenRun", Runnable.class);
+
+        } catch (Exception exc) {
+            _onExit = null;
+            _thenRun = null;
+        }
+    }
+
+    /**
+     * Returns the shared instance.
+     */
+    public static ProcessPipes shared() {
+        return s_instance;
+    }
+
+    /**
+     * Starts servicing a process pipe (stdout or stderr).
+     */
+    public void register(Process process, final InputStream in, final Reader reader) {
+        _counterPipes.incr();
+
+        if (_readers != null) {
+            Thread thread = _readers.newThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    readUntilEnd(in, reader);
+                }
+
+            }, "Nodel process pipe");
+
+            thread.start();
+
+        } else {
+            Pipe pipe = new Pipe();
+            pipe.process = process;
+            pipe.in = in;
+            pipe.reader = reader;
+
+            leastBusyWorker().add(pipe);
+        }
+    }
+
+    /**
+     * Calls 'handler' once the process has exited (never blocks, the handler must not block either).
+     */
+    public void onExit(Process process, final Runnable handler) {
+        if (_onExit != null) {
+            try {
+                _thenRun.invoke(_onExit.invoke(process), new Runnable() {
+
+                    @Override
+                    public void run() {
+                        runExitHandler(handler);
+                    }
+
+                });
+
+                return;
+
+            } catch (Exception exc) {
+                s_logger.warn("Could not use 'Process.onExit'; will poll instead.", exc);
+            }
+        }
+
+        Exit exit = new Exit();
+        exit.process = process;
+        exit.handler = handler;
+
+        leastBusyWorker().add(exit);
+    }
+
+    /**
+     * (virtual reader thread)
+     */
+    private void readUntilEnd(InputStream in, Reader reader) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try {
+            for (;;) {
+                int bytesRead = in.read(buffer);
+
+                // (the end of the pipe, regardless of whether the process is still running)
+                if (bytesRead < 0)
+                    break;
+
+                if (bytesRead == 0)
+                    continue;
+
+                handleData(reader, buffer, bytesRead);
+            } // (for)
+
+        } catch (IOException exc) {
+            // (closed)
+
+        } finally {
+            handleEnd(in, reader);
+        }
+    }
+
+    /**
+     * (reader or worker thread)
+     */
+    private void handleData(Reader reader, byte[] buffer, int len) {
+        try {
+            reader.handleData(buffer, 0, len);
+
+        } catch (Exception exc) {
+            s_logger.warn("Reader threw an exception.", exc);
+        }
+    }
+
+    /**
+     * (reader or worker thread)
+     */
+    private void handleEnd(InputStream in, Reader reader) {
+        _counterPipes.decr();
+
+        Stream.safeClose(in);
+
+        try {
+            reader.handleEnd();
+
+        } catch (Exception exc) {
+            s_logger.warn("Reader threw an exception.", exc);
+        }
+    }
+
+    /**
+     * (exit handlers are never expected to throw)
+     */
+    private static void runExitHandler(Runnable handler) {
+        try {
+            handler.run();
+
+        } catch (Exception exc) {
+            s_logger.warn("Exit handler threw an exception.", exc);
+        }
+    }
+
+    /**
+     * Starts the polling workers on first use.
+     */
+    private Worker leastBusyWorker() {
+        Worker[] workers;
+
+        synchronized (this) {
+            if (_workers == null) {
+                _workers = new Worker[Math.max(1, SystemProperties.intProperty(WORKERS_SYSTEMPROP, DEFAULT_WORKERS))];
+
+                for (int a = 0; a < _workers.length; a++) {
+                    _workers[a] = new Worker();
+
+                    // always platform threads; they run for the lifetime of the host
+                    Thread thread = new Thread(_workers[a], "Nodel process pipes " + a);
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+
+            workers = _workers;
+        }
+
+        Worker worker = workers[0];
+        for (int a = 1; a < workers.length; a++) {
+            if (workers[a].size() < worker.size())
+                worker = workers[a];
+        }
+
+        return worker;
+    }
+
+    /**
+     * (Java 7 compatible 'isAlive')
+     */
+    private static boolean hasExited(Process process) {
+        try {
+            process.exitValue();
+            return true;
+
+        } catch (IllegalThreadStateException exc) {
+            return false;
+        }
+    }
+
+} // (class)
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.nodel.Handler;
 import org.nodel.Handler.H0;
@@ -99,6 +100,11 @@ public class QuickProcess implements Closeable {
      */
     private boolean _mergeErr;
 
+    /**
+     * (arg instance, bytes kept per capture, 0 for unlimited)
+     */
+    private int _captureLimit;
+
     /**
      * The process object.
      */
@@ -120,6 +126,9 @@ public class QuickProcess implements Closeable {
         @Value(name = "stderr", order = 4)
         public String stderr;
         
+        @Value(name = "truncated", order = 5, desc = "Whether only the most recent output was kept (see 'captureLimit')")
+        public boolean truncated;
+        
         @Override
         public String toString() {
             return Serialisation.serialise(this);
@@ -128,10 +137,20 @@ public class QuickProcess implements Closeable {
     }
     
     /**
-     * Constructs a new quick process.
+     * (Overloaded) Captures all output.
      */
     public QuickProcess(H0 threadStateHandler, ThreadPool threadPool, Timers timers, H1<Exception> callbackExceptionHandler,  BaseDynamicNode parentNode,
             List<String> command, String stdinPush, H1<Integer> onStarted, H1<FinishedArg> onFinished, long timeout, String working, boolean mergeErr) {
+        this(threadStateHandler, threadPool, timers, callbackExceptionHandler, parentNode, command, stdinPush, onStarted, onFinished, timeout, working, mergeErr, 0);
+    }
+    
+    /**
+     * Constructs a new quick process.
+     * 
+     * @param captureLimit If positive, only the most recent bytes of each capture are kept.
+     */
+    public QuickProcess(H0 threadStateHandler, ThreadPool threadPool, Timers timers, H1<Exception> callbackExceptionHandler,  BaseDynamicNode parentNode,
+            List<String> command, String stdinPush, H1<Integer> onStarted, H1<FinishedArg> onFinished, long timeout, String working, boolean mergeErr, int captureLimit) {
         
         // validate command list
         if (command == null || command.size() < 1 || Strings.isBlank(command.get(0)))
@@ -150,6 +169,7 @@ public class QuickProcess implements Closeable {
         _timeout = timeout;
         _working = working;
         _mergeErr = mergeErr;
+        _captureLimit = captureLimit;
     }
     
     /**
@@ -257,32 +277,35 @@ public class QuickProcess implements Closeable {
                 stdin.write(_stdinPush.getBytes(UTF8Charset.instance()));
             }
             
-            // read all of stdout
-            byte[] stdoutBuffer = Stream.readFullyIntoBuffer(stdout);
-            String stdoutCapture = new String(stdoutBuffer, 0, stdoutBuffer.length, UTF8Charset.instance());
-            
-            // does 'stderr' also need to be captured?
-            String stderrCapture = null;
-            if (!_mergeErr) {
-                InputStream stderr = process.getErrorStream();
-                byte[] stderrBuffer = Stream.readFullyIntoBuffer(stderr);
-                stderrCapture = new String(stderrBuffer, 0, stderrBuffer.length, UTF8Charset.instance());
-            }
+            // capture stdout (and stderr) using the pipe readers, finishing when all have ended
+            final CaptureBuffer stdoutCapture = new CaptureBuffer(_captureLimit);
+            final CaptureBuffer stderrCapture = _mergeErr ? null : new CaptureBuffer(_captureLimit);
             
+            final AtomicInteger remaining = new AtomicInteger(_mergeErr ? 1 : 2);
             
-            FinishedArg arg = new FinishedArg();
-            arg.code = process.waitFor();
-            arg.stdout = stdoutCapture;
-            arg.stderr = stderrCapture;
+            final Process finalProcess = process;
             
-            // finished gracefully, clear variable
-            _process = null;
-            
-            // fire 'finished' handler if not close
-            if (!_closed)
-                Handler.tryHandle(_onFinished, arg, _callbackExceptionHandler);
+            ProcessPipes.shared().register(process, stdout, new CaptureReader(stdoutCapture) {
+                
+                @Override
+                public void handleEnd() {
+                    if (remaining.decrementAndGet() == 0)
+                        finish(finalProcess, stdoutCapture, stderrCapture);
+                }
+                
+            });
             
-            _closed = true;
+            if (stderrCapture != null) {
+                ProcessPipes.shared().register(process, process.getErrorStream(), new CaptureReader(stderrCapture) {
+                    
+                    @Override
+                    public void handleEnd() {
+                        if (remaining.decrementAndGet() == 0)
+                            finish(finalProcess, stdoutCapture, stderrCapture);
+                    }
+                    
+                });
+            }
             
         } catch (Exception exc) {
             // gracefully exit if closed
@@ -295,6 +318,79 @@ public class QuickProcess implements Closeable {
         }
     }
 
+    /**
+     * Appends to a capture.
+     * (pipe reader)
+     */
+    private abstract class CaptureReader implements ProcessPipes.Reader {
+        
+        private CaptureBuffer _capture;
+        
+        public CaptureReader(CaptureBuffer capture) {
+            _capture = capture;
+        }
+        
+        @Override
+        public void handleData(byte[] buffer, int offset, int len) {
+            _capture.append(buffer, offset, len);
+        }
+        
+    } // (class)
+    
+    /**
+     * Once all the output has been captured, waits (without blocking) for the exit code, continuing on the thread-pool.
+     * (pipe reader)
+     */
+    private void finish(final Process process, final CaptureBuffer stdoutCapture, final CaptureBuffer stderrCapture) {
+        ProcessPipes.shared().onExit(process, new Runnable() {
+
+            @Override
+            public void run() {
+                _threadPool.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        handleExit(process, stdoutCapture, stderrCapture);
+                    }
+
+                });
+            }
+
+        });
+    }
+    
+    /**
+     * (thread-pool)
+     */
+    private void handleExit(Process process, CaptureBuffer stdoutCapture, CaptureBuffer stderrCapture) {
+        // need to be run for every thread entry
+        _threadStateHandler.handle();
+        
+        FinishedArg arg = new FinishedArg();
+        arg.code = process.exitValue();
+        arg.stdout = stdoutCapture.toString();
+        arg.stderr = stderrCapture != null ? stderrCapture.toString() : null;
+        arg.truncated = stdoutCapture.isTruncated() || (stderrCapture != null && stderrCapture.isTruncated());
+        
+        synchronized (_lock) {
+            // finished gracefully, clear variable
+            _process = null;
+            
+            // (if closed or timed out, 'finished' has already been dealt with)
+            if (_closed)
+                return;
+            
+            _closed = true;
+            
+            if (_timeoutTimer != null)
+                _timeoutTimer.cancel();
+        }
+        
+        Handler.tryHandle(_onFinished, arg, _callbackExceptionHandler);
+        
+        _closedHandler.handle();
+    }
+
     @Override
     public void close() throws IOException {
         doClose();
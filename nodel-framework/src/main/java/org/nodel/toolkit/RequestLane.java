@@ -0,0 +1,24 @@
+package org.nodel.toolkit;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+/**
+ * The priority lane a queued request or send is placed in.
+ */
+public enum RequestLane {
+
+    /**
+     * User-initiated requests, always serviced ahead of background ones (the default).
+     */
+    Interactive,
+
+    /**
+     * Periodic status polling and the like.
+     */
+    Background
+
+} // (enum)
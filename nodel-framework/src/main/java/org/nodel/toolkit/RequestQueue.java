@@ -1,12 +1,14 @@
 package org.nodel.toolkit;
 
 import java.io.Closeable;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.nodel.Handler;
 import org.nodel.Handler.H0;
 import org.nodel.Handler.H1;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.PeakMeasurementProvider;
+import org.nodel.diagnostics.SharableMeasurementProvider;
 import org.nodel.host.BaseNode;
 import org.nodel.threading.CallbackQueue;
 import org.nodel.threading.ThreadPool;
@@ -20,6 +22,20 @@ public class RequestQueue implements Closeable {
     
     private static AtomicLong s_instanceCounter = new AtomicLong();
     
+    /**
+     * The longest time (millis) a request waited in each lane (by lane ordinal, peak per diagnostics period)
+     * (diagnostics)
+     */
+    private static PeakMeasurementProvider[] s_laneWaitCounters = { new PeakMeasurementProvider(), new PeakMeasurementProvider() };
+    
+    /**
+     * (diagnostics)
+     */
+    static {
+        Diagnostics.shared().registerCounter("Request queue.Interactive queue wait (ms)", s_laneWaitCounters[RequestLane.Interactive.ordinal()], false);
+        Diagnostics.shared().registerCounter("Request queue.Background queue wait (ms)", s_laneWaitCounters[RequestLane.Background.ordinal()], false);
+    }
+    
     /**
      * (used by 'logger' and thread name)
      */
@@ -96,14 +112,10 @@ public class RequestQueue implements Closeable {
     private H0 _threadStateHandler;
 
     /**
-     * The request queue
-     */
-    private ConcurrentLinkedQueue<QueuedRequest> _requestQueue = new ConcurrentLinkedQueue<QueuedRequest>();
-    
-    /**
-     * Holds the queue length ('ConcurrentLinkedQueue' not designed to handle 'size()' efficiently)
+     * The request queue, with priority lanes
+     * (locked around 'lock', init. in constructor)
      */
-    private int _queueLength = 0;
+    private LaneQueue<QueuedRequest> _requestQueue;
     
     /**
      * The active request
@@ -119,6 +131,11 @@ public class RequestQueue implements Closeable {
         _callbackHandler = callbackQueue;
         _threadPool = threadPool;
         _timers = timers;
+        
+        String counterName = "'" + node.getName().getReducedName() + "'";
+        _requestQueue = new LaneQueue<QueuedRequest>(new SharableMeasurementProvider[] {
+                Diagnostics.shared().registerSharableCounter(counterName + ".Request queue interactive", false),
+                Diagnostics.shared().registerSharableCounter(counterName + ".Request queue background", false) }, s_laneWaitCounters);
     }
     
     /**
@@ -161,7 +178,16 @@ public class RequestQueue implements Closeable {
      */
     public int getQueueLength() {
         synchronized (_lock) {
-            return _queueLength;
+            return _requestQueue.size();
+        }
+    }
+    
+    /**
+     * Returns the current queue length of a lane.
+     */
+    public int getQueueLength(RequestLane lane) {
+        synchronized (_lock) {
+            return _requestQueue.size(lane);
         }
     }
     
@@ -237,6 +263,16 @@ public class RequestQueue implements Closeable {
          */
         public Object response;
         
+        /**
+         * The priority lane.
+         */
+        public RequestLane lane = RequestLane.Interactive;
+        
+        /**
+         * (optional, see 'queueRequest')
+         */
+        public Object coalesceKey;
+        
         public QueuedRequest(H0 requestHandler, int timeout, H1<Object> responseHandler) {
             this.requestHandler = requestHandler;
             this.timeout = timeout;
@@ -312,10 +348,36 @@ public class RequestQueue implements Closeable {
      * For complete control of a request
      */
     public void queueRequest(H0 requestHandler, int timeout, H1<Object> responseHandler) {
+        queueRequest(requestHandler, timeout, responseHandler, RequestLane.Interactive, null);
+    }
+    
+    /**
+     * (as above, using a priority lane)
+     * 
+     * @param coalesceKey if not null, replaces any pending request with an equal key (the replaced request's request
+     *                    handler is never called but its response handler still gets the response)
+     */
+    public void queueRequest(H0 requestHandler, int timeout, H1<Object> responseHandler, RequestLane lane, Object coalesceKey) {
         QueuedRequest request = new QueuedRequest(requestHandler, timeout, responseHandler);
+        request.lane = lane;
+        request.coalesceKey = coalesceKey;
         
         doQueueRequest(request);
     }
+    
+    /**
+     * Queues a request in the background lane, i.e. behind any user-initiated ones, typically for status polling.
+     * (uses default timeout value)
+     * 
+     * @param key (optional) coalescing key, see 'queueRequest'
+     */
+    public void poll(H0 requestHandler, H1<Object> responseHandler, Object key) {
+        // don't bother doing anything if empty or missing
+        if (requestHandler == null)
+            return;
+        
+        queueRequest(requestHandler, _requestTimeout, responseHandler, RequestLane.Background, key);
+    }
 
     public void doQueueRequest(QueuedRequest request) {
         // whether or not this entry had to be queued
@@ -335,8 +397,13 @@ public class RequestQueue implements Closeable {
                 _logger.debug("Queued a request.");
                 
                 // a request is active, so queue this new one
-                _requestQueue.add(request);
-                _queueLength++;
+                QueuedRequest replaced = _requestQueue.add(request, request.lane, request.coalesceKey);
+                if (replaced != null) {
+                    // (whoever is waiting on the replaced request gets this one's response)
+                    request.responseHandler = LaneQueue.fanOut(replaced.responseHandler, request.responseHandler);
+                    
+                    _logger.debug("Coalesced with a pending request. key:[{}]", request.coalesceKey);
+                }
                 queued = true;
             }
         }
@@ -429,10 +496,7 @@ public class RequestQueue implements Closeable {
             int count = 0;
 
             // clear the queue
-            while (_requestQueue.poll() != null) {
-                count++;
-                _queueLength--;
-            }
+            count = _requestQueue.clear();
             
             _logger.debug("Cleared queue. activeRequest={}, queueCount={}", activeRequestCleared, count);
         }
@@ -504,8 +568,6 @@ public class RequestQueue implements Closeable {
                         return;
                     }
 
-                    _queueLength--;
-
                     if (!nextRequest.isLongTermExpired())
                         break;
 
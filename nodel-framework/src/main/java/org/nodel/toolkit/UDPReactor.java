@@ -0,0 +1,273 @@
+package org.nodel.toolkit;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.SharableMeasurementProvider;
+import org.nodel.io.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single selector thread servicing the receive side of all non-blocking datagram channels (see 'ManagedUDP').
+ *
+ * One receive buffer is reused for every packet and source address strings are cached so the receive path itself
+ * does not allocate. Receivers are called on the reactor thread so must never block.
+ */
+class UDPReactor {
+
+    /**
+     * (logging related)
+     */
+    private final static Logger s_logger = LoggerFactory.getLogger(UDPReactor.class);
+
+    /**
+     * The maximum UDP buffer size
+     */
+    private final static int MAX_BUFFER_SIZE = 65536;
+
+    /**
+     * Packets read from one channel before moving on to the next (fairness)
+     */
+    private final static int MAX_READS_PER_SELECT = 16;
+
+    /**
+     * Bounds the source address cache.
+     */
+    private final static int MAX_CACHED_ADDRESSES = 1024;
+
+    /**
+     * Receives datagrams.
+     */
+    public interface Receiver {
+
+        /**
+         * A packet arrived. 'buffer' is reused after this returns so must be copied if it's needed later.
+         * (called on the reactor thread, must not block)
+         */
+        public void handleDatagram(String from, byte[] buffer, int len);
+
+    } // (interface)
+
+    /**
+     * (instance, see 'shared')
+     */
+    private static UDPReactor s_instance;
+
+    /**
+     * The selector
+     */
+    private Selector _selector;
+
+    /**
+     * Channels waiting to be registered by the reactor thread.
+     * (self-locked)
+     */
+    private Queue<Object[]> _pending = new LinkedList<Object[]>();
+
+    /**
+     * The (reused) receive buffer.
+     * (reactor thread only)
+     */
+    private ByteBuffer _buffer = ByteBuffer.allocate(MAX_BUFFER_SIZE);
+
+    /**
+     * Source addresses as 'host:port' strings.
+     * (reactor thread only)
+     */
+    private Map<SocketAddress, String> _addressNames = new HashMap<SocketAddress, String>();
+
+    /**
+     * (diagnostics)
+     */
+    private SharableMeasurementProvider _counterChannels = Diagnostics.shared().registerSharableCounter("UDP reactor.Channels", false);
+
+    /**
+     * (private constructor)
+     */
+    private UDPReactor() throws IOException {
+        _selector = Selector.open();
+
+        // always a platform thread; it blocks in 'select' for its lifetime
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                threadMain();
+            }
+
+        }, "Nodel UDP reactor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the shared reactor, starting it if necessary.
+     */
+    public static UDPReactor shared() throws IOException {
+        synchronized (UDPReactor.class) {
+            if (s_instance == null)
+                s_instance = new UDPReactor();
+
+            return s_instance;
+        }
+    }
+
+    /**
+     * Starts receiving on a channel, placing it in non-blocking mode.
+     */
+    public void register(DatagramChannel channel, Receiver receiver) throws IOException {
+        channel.configureBlocking(false);
+
+        synchronized (_pending) {
+            _pending.add(new Object[] { channel, receiver });
+        }
+
+        // (registration must happen on the reactor thread otherwise it would wait for 'select' to return)
+        _selector.wakeup();
+    }
+
+    /**
+     * Closes a channel, releasing its registration.
+     */
+    public void close(DatagramChannel channel) {
+        Stream.safeClose(channel);
+
+        // (a registered channel is only fully closed once the selector has noticed)
+        _selector.wakeup();
+    }
+
+    /**
+     * (reactor thread)
+     */
+    private void threadMain() {
+        for (;;) {
+            try {
+                _selector.select();
+
+                registerPending();
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (key.isValid() && key.isReadable())
+                        read(key);
+                } // (while)
+
+                _counterChannels.set(_selector.keys().size());
+
+            } catch (ClosedSelectorException exc) {
+                // (never expected)
+                s_logger.warn("Selector closed; reactor thread is exiting.");
+                return;
+
+            } catch (Exception exc) {
+                s_logger.warn("Unexpected exception within reactor loop; will continue.", exc);
+            }
+        } // (for)
+    }
+
+    /**
+     * (reactor thread)
+     */
+    private void registerPending() {
+        for (;;) {
+            Object[] item;
+            synchronized (_pending) {
+                item = _pending.poll();
+            }
+
+            if (item == null)
+                return;
+
+            DatagramChannel channel = (DatagramChannel) item[0];
+
+            try {
+                channel.register(_selector, SelectionKey.OP_READ, item[1]);
+
+            } catch (Exception exc) {
+                // (most likely closed in the meantime)
+                s_logger.debug("Channel could not be registered.", exc);
+            }
+        } // (for)
+    }
+
+    /**
+     * Drains a readable channel (up to a limit).
+     * (reactor thread)
+     */
+    private void read(SelectionKey key) {
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        Receiver receiver = (Receiver) key.attachment();
+
+        ByteBuffer buffer = _buffer;
+
+        for (int a = 0; a < MAX_READS_PER_SELECT; a++) {
+            buffer.clear();
+
+            SocketAddress address;
+            try {
+                address = channel.receive(buffer);
+
+            } catch (IOException exc) {
+                // ignore exceptions like 'port unreachable', unless closed
+                if (!channel.isOpen())
+                    key.cancel();
+
+                return;
+            }
+
+            // nothing more to read
+            if (address == null)
+                return;
+
+            try {
+                receiver.handleDatagram(addressName(address), buffer.array(), buffer.position());
+
+            } catch (Exception exc) {
+                s_logger.warn("Receiver threw an exception.", exc);
+            }
+        } // (for)
+    }
+
+    /**
+     * Returns the cached 'host:port' form of an address.
+     * (reactor thread)
+     */
+    private String addressName(SocketAddress address) {
+        String name = _addressNames.get(address);
+        if (name != null)
+            return name;
+
+        if (_addressNames.size() >= MAX_CACHED_ADDRESSES)
+            _addressNames.clear();
+
+        InetSocketAddress inetAddress = (InetSocketAddress) address;
+        name = inetAddress.getAddress().getHostAddress() + ":" + inetAddress.getPort();
+
+        _addressNames.put(address, name);
+
+        return name;
+    }
+
+} // (class)
@@ -0,0 +1,147 @@
+package org.nodel.core;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.nodel.core.ChannelMessage.Encoding;
+import org.nodel.io.UTF8Charset;
+
+/**
+ * Compares the 'Telnet' (indented) and 'Compact' channel message encodings: bytes per message on the wire and
+ * messages per second encoded and decoded, using typical event, action and interest traffic.
+ *
+ * (developer tool, in the separate 'tools' source set)
+ *
+ * Usage: ChannelEncodingBenchmark [-d seconds per measurement]
+ */
+public class ChannelEncodingBenchmark {
+
+    /**
+     * (prevents the work being optimised away)
+     */
+    private static long s_sink;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = 3;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-d"))
+                seconds = Integer.parseInt(args[++i]);
+        }
+
+        ChannelMessage[] messages = sampleMessages();
+
+        System.out.println(String.format("%d sample messages, %ds per measurement (after warm-up)", messages.length, seconds));
+        System.out.println(String.format("%-8s %12s %18s %18s", "", "bytes/msg", "encoded msgs/sec", "decoded msgs/sec"));
+
+        for (Encoding encoding : Encoding.values()) {
+            // (the bytes actually written)
+            long bytes = 0;
+            String[] encoded = new String[messages.length];
+            for (int a = 0; a < messages.length; a++) {
+                encoded[a] = ChannelMessageEncoder.encode(messages[a], encoding);
+                bytes += encoded[a].getBytes(UTF8Charset.instance()).length;
+            }
+
+            // warm up both paths
+            measureEncoding(messages, encoding, 1);
+            measureDecoding(encoded, 1);
+
+            double encodeRate = measureEncoding(messages, encoding, seconds);
+            double decodeRate = measureDecoding(encoded, seconds);
+
+            System.out.println(String.format("%-8s %12.1f %18.0f %18.0f", encoding, (double) bytes / messages.length, encodeRate, decodeRate));
+        } // (for)
+
+        if (s_sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * @return messages per second
+     */
+    private static double measureEncoding(ChannelMessage[] messages, Encoding encoding, int seconds) {
+        long count = 0;
+        long endTime = System.nanoTime() + seconds * 1000000000L;
+        long startTime = System.nanoTime();
+
+        StringBuilder sb = new StringBuilder();
+
+        while (System.nanoTime() < endTime) {
+            for (ChannelMessage message : messages) {
+                sb.setLength(0);
+                ChannelMessageEncoder.append(sb, message, encoding);
+                s_sink += sb.length();
+            }
+
+            count += messages.length;
+        } // (while)
+
+        return count / ((System.nanoTime() - startTime) / 1000000000.0);
+    }
+
+    /**
+     * @return messages per second
+     */
+    private static double measureDecoding(String[] encoded, int seconds) throws Exception {
+        long count = 0;
+        long endTime = System.nanoTime() + seconds * 1000000000L;
+        long startTime = System.nanoTime();
+
+        while (System.nanoTime() < endTime) {
+            for (String json : encoded)
+                s_sink += ChannelMessageDecoder.decode(json).hashCode();
+
+            count += encoded.length;
+        } // (while)
+
+        return count / ((System.nanoTime() - startTime) / 1000000000.0);
+    }
+
+    /**
+     * Meter / feedback events dominate real traffic so they make up most of the sample.
+     */
+    private static ChannelMessage[] sampleMessages() {
+        ChannelMessage[] messages = new ChannelMessage[10];
+
+        for (int a = 0; a < 7; a++) {
+            Map<String, Object> arg = new LinkedHashMap<String, Object>();
+            arg.put("channel", a + 1);
+            arg.put("level", -18.5 + a);
+            arg.put("muted", a % 2 == 0);
+
+            ChannelMessage message = new ChannelMessage();
+            message.node = "Meeting Room DSP";
+            message.event = "Meter" + (a + 1);
+            message.arg = arg;
+            messages[a] = message;
+        } // (for)
+
+        ChannelMessage action = new ChannelMessage();
+        action.node = "Projector";
+        action.action = "Power";
+        action.arg = "On";
+        messages[7] = action;
+
+        ChannelMessage interests = new ChannelMessage();
+        interests.node = "Meeting Room DSP";
+        interests.events = new String[] { "Meter1", "Meter2", "Meter3", "Meter4", "Meter5", "Meter6", "Meter7" };
+        interests.actions = new String[] { "Mute", "Level" };
+        messages[8] = interests;
+
+        ChannelMessage status = new ChannelMessage();
+        status.node = "Projector";
+        status.event = "Status";
+        status.arg = "Lamp warming up (37 seconds remaining)";
+        messages[9] = status;
+
+        return messages;
+    }
+
+} // (class)
@@ -0,0 +1,167 @@
+package org.nodel.host;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simple load-test harness for HTTP (REST) endpoints, reporting requests per second and latency percentiles.
+ *
+ * Each client repeatedly GETs the URLs in turn, reusing its connection (keep-alive) unless '-close' is given.
+ *
+ * (developer tool, in the separate 'tools' source set)
+ *
+ * Usage: HTTPLoadTest [-c clients] [-d seconds] [-close] url [url...]
+ * e.g. HTTPLoadTest -c 16 -d 10 http://localhost:8085/REST/nodes/MyNode/activity
+ */
+public class HTTPLoadTest {
+
+    /**
+     * (per client results)
+     */
+    private static class Client implements Runnable {
+
+        public List<String> urls;
+
+        public boolean close;
+
+        public long endTime;
+
+        /**
+         * (latencies in micros)
+         */
+        public long[] latencies = new long[1024];
+
+        public int count;
+
+        public AtomicLong errors;
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[8192];
+            int next = 0;
+
+            while (System.nanoTime() < endTime) {
+                String url = urls.get(next++ % urls.size());
+
+                long start = System.nanoTime();
+                try {
+                    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+                    if (close)
+                        conn.setRequestProperty("Connection", "close");
+
+                    if (conn.getResponseCode() >= 400)
+                        errors.incrementAndGet();
+
+                    // (must be fully read for the connection to be reused)
+                    InputStream in = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+                    if (in != null) {
+                        while (in.read(buffer) >= 0)
+                            ;
+                        in.close();
+                    }
+
+                } catch (Exception exc) {
+                    errors.incrementAndGet();
+                }
+
+                if (count == latencies.length)
+                    latencies = Arrays.copyOf(latencies, count * 2);
+
+                latencies[count++] = (System.nanoTime() - start) / 1000;
+            } // (while)
+        }
+
+    } // (class)
+
+    public static void main(String[] args) throws Exception {
+        int clientCount = 8;
+        int seconds = 10;
+        boolean close = false;
+        List<String> urls = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-c"))
+                clientCount = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-d"))
+                seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-close"))
+                close = true;
+            else
+                urls.add(args[i]);
+        }
+
+        if (urls.isEmpty()) {
+            System.out.println("Usage: HTTPLoadTest [-c clients] [-d seconds] [-close] url [url...]");
+            return;
+        }
+
+        // (connections are reused by default, allow for all the clients)
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(5, clientCount)));
+
+        AtomicLong errors = new AtomicLong();
+        long startTime = System.nanoTime();
+        long endTime = startTime + seconds * 1000000000L;
+
+        Client[] clients = new Client[clientCount];
+        Thread[] threads = new Thread[clientCount];
+
+        for (int i = 0; i < clientCount; i++) {
+            clients[i] = new Client();
+            clients[i].urls = urls;
+            clients[i].close = close;
+            clients[i].endTime = endTime;
+            clients[i].errors = errors;
+
+            threads[i] = new Thread(clients[i], "Load test client " + i);
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        double elapsed = (System.nanoTime() - startTime) / 1000000000.0;
+
+        // merge the latencies
+        int total = 0;
+        for (Client client : clients)
+            total += client.count;
+
+        long[] all = new long[total];
+        int offset = 0;
+        for (Client client : clients) {
+            System.arraycopy(client.latencies, 0, all, offset, client.count);
+            offset += client.count;
+        }
+        Arrays.sort(all);
+
+        System.out.println(String.format("%d requests in %.1fs using %d client%s (%s), %d error%s",
+                total, elapsed, clientCount, clientCount == 1 ? "" : "s", close ? "connection per request" : "keep-alive",
+                errors.get(), errors.get() == 1 ? "" : "s"));
+        System.out.println(String.format("Requests/sec: %.0f", total / elapsed));
+
+        if (total > 0)
+            System.out.println(String.format("Latency (ms): p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+                    percentile(all, 50), percentile(all, 90), percentile(all, 99), all[total - 1] / 1000.0));
+    }
+
+    /**
+     * (of sorted micros, as millis)
+     */
+    private static double percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+} // (class)
@@ -0,0 +1,202 @@
+package org.nodel.reflection;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.nodel.SimpleName;
+import org.nodel.core.ChannelMessage;
+import org.nodel.host.LogEntry;
+import org.nodel.host.NodeConfig;
+
+/**
+ * Compares the cached member accessors with reflection as it was used before them ('setAccessible' then 'Field.get'
+ * / 'Method.invoke' on every call) for representative classes, along with whole serialise and coerce rounds for
+ * context.
+ *
+ * (developer tool, in the separate 'tools' source set)
+ *
+ * Usage: AccessorBenchmark [-d seconds per measurement]
+ */
+public class AccessorBenchmark {
+
+    /**
+     * (prevents the work being optimised away)
+     */
+    private static long s_sink;
+
+    /**
+     * A measured operation.
+     */
+    private interface Op {
+
+        public void run() throws Exception;
+
+    } // (interface)
+
+    public static void main(String[] args) throws Exception {
+        int seconds = 2;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-d"))
+                seconds = Integer.parseInt(args[++i]);
+        }
+
+        System.out.println(String.format("%ds per measurement (after warm-up), rates in thousands/sec", seconds));
+        System.out.println(String.format("%-15s %14s %14s %8s %14s %14s %12s %12s", "", "old reads", "accessor reads", "gain",
+                "old writes", "accessor wrts", "serialise", "coerce"));
+
+        for (Object object : sampleObjects())
+            run(object, seconds);
+
+        if (s_sink == 42)
+            System.out.println();
+    }
+
+    private static void run(final Object object, int seconds) throws Exception {
+        final Class<?> klass = object.getClass();
+        final ValueInfo[] infos = Reflection.getValueInfos(klass);
+
+        final String json = Serialisation.serialise(object);
+
+        // (only classes with a default constructor can be coerced)
+        boolean coercible;
+        try {
+            klass.getConstructor();
+            coercible = true;
+        } catch (NoSuchMethodException exc) {
+            coercible = false;
+        }
+
+        Op reflectReads = new Op() {
+
+            @Override
+            public void run() throws Exception {
+                for (ValueInfo info : infos) {
+                    ((AccessibleObject) info.member).setAccessible(true);
+
+                    Object value = info.member instanceof Field ? ((Field) info.member).get(object) : ((Method) info.member).invoke(object);
+                    s_sink += value == null ? 0 : 1;
+                }
+            }
+
+        };
+
+        Op accessorReads = new Op() {
+
+            @Override
+            public void run() throws Exception {
+                for (ValueInfo info : infos) {
+                    Object value = info.getter.get(object);
+                    s_sink += value == null ? 0 : 1;
+                }
+            }
+
+        };
+
+        Op reflectWrites = new Op() {
+
+            @Override
+            public void run() throws Exception {
+                for (ValueInfo info : infos) {
+                    // (writes back the same values)
+                    if (info.fieldSetter != null) {
+                        Field field = (Field) info.member;
+                        field.setAccessible(true);
+                        field.set(object, field.get(object));
+                    }
+                }
+            }
+
+        };
+
+        Op accessorWrites = new Op() {
+
+            @Override
+            public void run() throws Exception {
+                for (ValueInfo info : infos) {
+                    if (info.fieldSetter != null)
+                        info.fieldSetter.set(object, info.getter.get(object));
+                }
+            }
+
+        };
+
+        Op serialise = new Op() {
+
+            @Override
+            public void run() throws Exception {
+                s_sink += Serialisation.serialise(object).length();
+            }
+
+        };
+
+        Op coerce = new Op() {
+
+            @Override
+            public void run() throws Exception {
+                s_sink += Serialisation.coerceFromJSON(klass, json).hashCode();
+            }
+
+        };
+
+        Op[] ops = new Op[] { reflectReads, accessorReads, reflectWrites, accessorWrites, serialise, coercible ? coerce : null };
+        double[] rates = new double[ops.length];
+
+        for (int a = 0; a < ops.length; a++) {
+            if (ops[a] == null)
+                continue;
+
+            // warm up then measure
+            measure(ops[a], 1);
+            rates[a] = measure(ops[a], seconds) / 1000;
+        }
+
+        System.out.println(String.format("%-15s %14.0f %14.0f %7.1fx %14.0f %14.0f %12.1f %12s", klass.getSimpleName(),
+                rates[0], rates[1], rates[1] / rates[0], rates[2], rates[3], rates[4], coercible ? String.format("%.1f", rates[5]) : "-"));
+    }
+
+    /**
+     * @return operations per second
+     */
+    private static double measure(Op op, int seconds) throws Exception {
+        long count = 0;
+        long startTime = System.nanoTime();
+        long endTime = startTime + seconds * 1000000000L;
+
+        while (System.nanoTime() < endTime) {
+            for (int a = 0; a < 100; a++)
+                op.run();
+
+            count += 100;
+        } // (while)
+
+        return count / ((System.nanoTime() - startTime) / 1000000000.0);
+    }
+
+    private static Object[] sampleObjects() {
+        Map<String, Object> arg = new LinkedHashMap<String, Object>();
+        arg.put("channel", 3);
+        arg.put("level", -18.5);
+        arg.put("muted", false);
+
+        ChannelMessage message = new ChannelMessage();
+        message.node = "Meeting Room DSP";
+        message.event = "Meter3";
+        message.arg = arg;
+
+        LogEntry logEntry = new LogEntry(1234, DateTime.now(), LogEntry.Source.local, LogEntry.Type.event, new SimpleName("Meter3"), arg);
+
+        return new Object[] { message, logEntry, NodeConfig.Example };
+    }
+
+} // (class)
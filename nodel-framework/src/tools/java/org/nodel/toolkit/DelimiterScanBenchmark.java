@@ -0,0 +1,288 @@
+package org.nodel.toolkit;
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.nodel.io.BufferBuilder;
+import org.nodel.io.UTF8Charset;
+
+/**
+ * Compares the byte-at-a-time delimiter scanning 'ManagedTCP.readTextLoop' used to do with the bulk scanning it does
+ * now, replaying realistic device traffic (switcher status dumps and DSP meter streams) in socket-sized reads.
+ *
+ * Both loops mirror 'readTextLoop' (before and after) and use the real 'BufferBuilder' methods; segments are
+ * checked to be identical before timing.
+ *
+ * (developer tool, in the separate 'tools' source set)
+ *
+ * Usage: DelimiterScanBenchmark [-n lines] [-r rounds]
+ */
+public class DelimiterScanBenchmark {
+
+    /**
+     * (as in ManagedTCP)
+     */
+    private final static int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * (prevents the work being optimised away)
+     */
+    private static long s_sink;
+
+    /**
+     * Replays a buffer in varying, socket-sized reads (up to one or a few TCP segments).
+     */
+    private static class ChunkedInputStream extends InputStream {
+
+        private byte[] _data;
+
+        private int _pos;
+
+        private Random _random = new Random(1);
+
+        public ChunkedInputStream(byte[] data) {
+            _data = data;
+        }
+
+        @Override
+        public int read() {
+            return _pos < _data.length ? _data[_pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int len) {
+            if (_pos >= _data.length)
+                return -1;
+
+            int chunk = Math.min(Math.min(len, 64 + _random.nextInt(4 * 1460)), _data.length - _pos);
+            System.arraycopy(_data, _pos, buffer, offset, chunk);
+            _pos += chunk;
+
+            return chunk;
+        }
+
+    } // (class)
+
+    /**
+     * Receives segments.
+     */
+    private interface Sink {
+
+        public void handle(String segment);
+
+    } // (interface)
+
+    public static void main(String[] args) throws Exception {
+        int lines = 200000;
+        int rounds = 20;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n"))
+                lines = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-r"))
+                rounds = Integer.parseInt(args[++i]);
+        }
+
+        final String delims = "\r\n";
+        byte[] traffic = deviceTraffic(lines);
+
+        // check both produce the same segments
+        final StringBuilder oldSegments = new StringBuilder();
+        final StringBuilder newSegments = new StringBuilder();
+
+        byteAtATime(new ChunkedInputStream(traffic), delims, new Sink() {
+
+            @Override
+            public void handle(String segment) {
+                oldSegments.append(segment).append('\n');
+            }
+
+        });
+
+        bulk(new ChunkedInputStream(traffic), delims, new Sink() {
+
+            @Override
+            public void handle(String segment) {
+                newSegments.append(segment).append('\n');
+            }
+
+        });
+
+        if (!oldSegments.toString().equals(newSegments.toString()))
+            throw new IllegalStateException("The loops produced different segments.");
+
+        Sink sink = new Sink() {
+
+            @Override
+            public void handle(String segment) {
+                s_sink += segment.length();
+            }
+
+        };
+
+        System.out.println(String.format("%d lines, %.1f MB, best of %d rounds (after warm-up)", lines, traffic.length / 1024.0 / 1024.0, rounds));
+
+        long oldBest = Long.MAX_VALUE;
+        long newBest = Long.MAX_VALUE;
+
+        // (first half warms up)
+        for (int round = 0; round < rounds * 2; round++) {
+            long start = System.nanoTime();
+            byteAtATime(new ChunkedInputStream(traffic), delims, sink);
+            long oldTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            bulk(new ChunkedInputStream(traffic), delims, sink);
+            long newTime = System.nanoTime() - start;
+
+            if (round >= rounds) {
+                oldBest = Math.min(oldBest, oldTime);
+                newBest = Math.min(newBest, newTime);
+            }
+        } // (for)
+
+        System.out.println(String.format("%-14s %10s %14s %10s", "", "ms", "lines/sec", "MB/sec"));
+        print("byte-at-a-time", oldBest, lines, traffic.length);
+        print("bulk", newBest, lines, traffic.length);
+        System.out.println(String.format("%.1fx", (double) oldBest / newBest));
+
+        if (s_sink == 42)
+            System.out.println();
+    }
+
+    private static void print(String name, long nanos, int lines, int bytes) {
+        double seconds = nanos / 1000000000.0;
+
+        System.out.println(String.format("%-14s %10.1f %14.0f %10.1f", name, nanos / 1000000.0, lines / seconds, bytes / 1024.0 / 1024.0 / seconds));
+    }
+
+    /**
+     * The loop as it was.
+     */
+    private static void byteAtATime(InputStream in, String delims, Sink sink) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(in, 1024);
+        BufferBuilder bb = new BufferBuilder(256);
+
+        for (;;) {
+            int c = bis.read();
+            if (c < 0)
+                break;
+
+            if (charMatches((char) c, delims)) {
+                String str = bb.getTrimmedString();
+                if (str != null)
+                    sink.handle(str);
+
+                bb.reset();
+
+            } else {
+                bb.append((byte) c);
+            }
+        } // (for)
+
+        String str = bb.getTrimmedString();
+        if (str != null)
+            sink.handle(str);
+    }
+
+    /**
+     * (as it was)
+     */
+    private static boolean charMatches(char c, String chars) {
+        int len = chars.length();
+        for (int a = 0; a < len; a++)
+            if (chars.charAt(a) == c)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * The loop as it is now.
+     */
+    private static void bulk(InputStream in, String delims, Sink sink) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        BufferBuilder bb = new BufferBuilder(256);
+
+        boolean[] isDelimiter = new boolean[256];
+        for (int a = 0; a < delims.length(); a++)
+            isDelimiter[delims.charAt(a)] = true;
+
+        for (;;) {
+            int bytesRead = in.read(buffer);
+            if (bytesRead < 0)
+                break;
+
+            int start = 0;
+
+            for (int a = 0; a < bytesRead; a++) {
+                if (!isDelimiter[buffer[a] & 0xff])
+                    continue;
+
+                String str;
+                if (bb.getSize() == 0) {
+                    str = BufferBuilder.getTrimmedString(buffer, start, a - start);
+
+                } else {
+                    bb.append(buffer, start, a - start);
+                    str = bb.getTrimmedString();
+                    bb.reset();
+                }
+
+                if (str != null)
+                    sink.handle(str);
+
+                start = a + 1;
+            } // (for)
+
+            if (bytesRead - start > 0)
+                bb.append(buffer, start, bytesRead - start);
+        } // (while)
+
+        String str = bb.getTrimmedString();
+        if (str != null)
+            sink.handle(str);
+    }
+
+    /**
+     * A video switcher dumping its state on connect and then chatting, interleaved with DSP meter levels.
+     */
+    private static byte[] deviceTraffic(int lines) {
+        Random random = new Random(42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (int a = 0; a < lines; a++) {
+            String line;
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    line = String.format("Out%02d In%02d All", 1 + random.nextInt(16), 1 + random.nextInt(16));
+                    break;
+
+                case 1:
+                    line = String.format("Vol%d*%d", 1 + random.nextInt(8), random.nextInt(100));
+                    break;
+
+                default:
+                    // (meters dominate)
+                    line = String.format("#METER LEVEL %d %.1f %.1f", 1 + random.nextInt(32), -60 + random.nextDouble() * 60, -60 + random.nextDouble() * 60);
+                    break;
+            }
+
+            byte[] bytes = (line + (random.nextBoolean() ? "\r\n" : "\n")).getBytes(UTF8Charset.instance());
+            out.write(bytes, 0, bytes.length);
+        } // (for)
+
+        return out.toByteArray();
+    }
+
+} // (class)
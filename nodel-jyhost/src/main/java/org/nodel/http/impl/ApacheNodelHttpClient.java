@@ -8,13 +8,19 @@ import java.net.UnknownHostException;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.X509TrustManager;
 
 import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
@@ -41,6 +47,10 @@ import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
@@ -49,18 +59,25 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import org.nodel.Strings;
 import org.nodel.Version;
 import org.nodel.diagnostics.CountableInputStream;
+import org.nodel.diagnostics.Diagnostics;
+import org.nodel.diagnostics.PeakMeasurementProvider;
 import org.nodel.diagnostics.SharableMeasurementProvider;
 import org.nodel.io.Stream;
 import org.nodel.io.UnexpectedIOException;
+import org.nodel.net.HTTPResponseCache;
 import org.nodel.net.HTTPSimpleResponse;
 import org.nodel.net.NodelHTTPClient;
+import org.nodel.threading.TimerTask;
+import org.nodel.threading.Timers;
 
 public class ApacheNodelHttpClient extends NodelHTTPClient {
     
@@ -72,6 +89,12 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
      */
     private CloseableHttpClient _httpClient;
     
+    /**
+     * The (bounded) connection pool
+     * (created lazily with the client)
+     */
+    private PoolingHttpClientConnectionManager _connMgr;
+    
     /**
      * Required with 'applySecurity'
      */
@@ -88,6 +111,60 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
      */
     private final static int MAX_ALLOWED = 150 * 1024 * 1024;
     
+    /**
+     * How often idle and expired connections are reaped (millis)
+     */
+    private final static int REAP_PERIOD = 5000;
+    
+    /**
+     * Pooled connections that have been idle for longer than this are checked before being reused (millis)
+     */
+    private final static int VALIDATE_AFTER_INACTIVITY = 2000;
+    
+    /**
+     * All live connection pools, for reaping and diagnostics.
+     * (self-locked)
+     */
+    private final static List<PoolingHttpClientConnectionManager> s_pools = new ArrayList<PoolingHttpClientConnectionManager>();
+    
+    /**
+     * Reaps idle connections from all pools.
+     */
+    private final static Timers s_timers = new Timers("HTTP client");
+    
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterLeased = Diagnostics.shared().registerSharableCounter("HTTP client.Leased connections", false);
+    
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterIdle = Diagnostics.shared().registerSharableCounter("HTTP client.Idle connections", false);
+    
+    /**
+     * (diagnostics)
+     */
+    private final static SharableMeasurementProvider s_counterPending = Diagnostics.shared().registerSharableCounter("HTTP client.Pending leases", false);
+    
+    /**
+     * (diagnostics)
+     */
+    private final static PeakMeasurementProvider s_counterLeaseTime = new PeakMeasurementProvider();
+    
+    static {
+        Diagnostics.shared().registerCounter("HTTP client.Lease time (ms)", s_counterLeaseTime, false);
+        
+        s_timers.schedule(new TimerTask() {
+            
+            @Override
+            public void run() {
+                reapAll();
+            }
+            
+        }, REAP_PERIOD, REAP_PERIOD);
+    }
+    
     /**
      * This needs to be done lazily because proxy can only be set up once
      * 
@@ -105,13 +182,13 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
                         // need to reference this later
                         .setDefaultCredentialsProvider(_credentialsProvider = new BasicCredentialsProvider())
                         
-                        // unrestricted connections
-                        .setMaxConnTotal(1000)
-                        .setMaxConnPerRoute(1000)
+                        // don't hold connections open longer than the reaper would allow
+                        .setKeepAliveStrategy(KEEPALIVE_STRATEGY)
                        
-                        // default timeouts
+                        // default timeouts (waiting for a pooled connection counts as connecting)
                         .setDefaultRequestConfig(_requestConfig = RequestConfig.custom()
                                 .setConnectTimeout(DEFAULT_CONNECTTIMEOUT)
+                                .setConnectionRequestTimeout(DEFAULT_CONNECTTIMEOUT)
                                 .setSocketTimeout(DEFAULT_READTIMEOUT)
                                 .build());
                 
@@ -120,8 +197,25 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
                     builder.setProxy(prepareForProxyUse(_proxyAddress, _proxyUsername, _proxyPassword));
                 
                 // ignore all SSL verifications errors?
+                Registry<ConnectionSocketFactory> socketFactoryRegistry;
                 if (_ignoreSSL)
-                    prepareForNoSSL(builder);
+                    socketFactoryRegistry = prepareForNoSSL(builder);
+                else
+                    socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                            .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                            .build();
+                
+                // bounded connection pool, always explicit so it can be reaped and measured
+                _connMgr = new TimedConnectionManager(socketFactoryRegistry);
+                _connMgr.setMaxTotal(MAX_CONN_TOTAL);
+                _connMgr.setDefaultMaxPerRoute(MAX_CONN_PER_ROUTE);
+                _connMgr.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+                builder.setConnectionManager(_connMgr);
+                
+                synchronized (s_pools) {
+                    s_pools.add(_connMgr);
+                }
                 
                 // ignore all redirect codes
                 if (_ignoreRedirects)
@@ -178,7 +272,7 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
     /**
      * (convenience method)
      */
-    private void prepareForNoSSL(HttpClientBuilder builder) {
+    private Registry<ConnectionSocketFactory> prepareForNoSSL(HttpClientBuilder builder) {
         try {
             SSLContext sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, new X509TrustManager[] { IGNORE_SSL_TRUSTMANAGER }, new SecureRandom());
@@ -187,37 +281,72 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
             SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext, new NoopHostnameVerifier());
             builder.setSSLSocketFactory(sslSocketFactory);
             
-            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+            return RegistryBuilder.<ConnectionSocketFactory>create()
                     .register("http", PlainConnectionSocketFactory.getSocketFactory())
                     .register("https", sslSocketFactory)
                     .build();
             
-            PoolingHttpClientConnectionManager connMgr = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
-            builder.setConnectionManager(connMgr);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }    
     
     @Override
-    public HTTPSimpleResponse makeRequest(String urlStr, String method, Map<String, String> query, 
-                         String username, String password, 
-                         Map<String, String> headers, String contentType, 
-                         String body, 
-                         Integer connectTimeout, Integer readTimeout) {
+    public HTTPSimpleResponse makeRequest(String urlStr, final String method, Map<String, String> query, 
+                         final String username, final String password, 
+                         final Map<String, String> headers, final String contentType, 
+                         final String body, 
+                         final Integer connectTimeout, final Integer readTimeout) {
         lazyInit();
         
-        // record rate of new connections
-        s_attemptRate.incrementAndGet();
-        
         // construct the full URL (includes query string)
-        String fullURL;
+        final String fullURL;
         
         String queryPart = urlEncodeQuery(query);
         if (!Strings.isEmpty(queryPart))
             fullURL = String.format("%s?%s", urlStr, queryPart);
         else
             fullURL = urlStr;
+        
+        // use the shared cache if it's enabled and the request allows it
+        HTTPResponseCache cache = HTTPResponseCache.shared();
+        String cacheKey = cache != null ? HTTPResponseCache.keyFor(method, fullURL, username, password, headers, body) : null;
+        
+        if (cacheKey == null)
+            return execute(fullURL, method, username, password, headers, contentType, body, connectTimeout, readTimeout);
+        
+        // (waiting on an identical request is bounded the same way this one would be)
+        int waitTimeout = readTimeout != null ? readTimeout : DEFAULT_READTIMEOUT;
+        
+        return cache.get(cacheKey, waitTimeout, new HTTPResponseCache.Fetcher() {
+            
+            @Override
+            public HTTPSimpleResponse fetch(Map<String, String> conditionalHeaders) {
+                Map<String, String> allHeaders = headers;
+                
+                if (!conditionalHeaders.isEmpty()) {
+                    allHeaders = new HashMap<String, String>();
+                    if (headers != null)
+                        allHeaders.putAll(headers);
+                    allHeaders.putAll(conditionalHeaders);
+                }
+                
+                return execute(fullURL, method, username, password, allHeaders, contentType, body, connectTimeout, readTimeout);
+            }
+            
+        });
+    }
+    
+    /**
+     * Performs the actual request.
+     */
+    private HTTPSimpleResponse execute(String fullURL, String method, 
+                         String username, String password, 
+                         Map<String, String> headers, String contentType, 
+                         String body, 
+                         Integer connectTimeout, Integer readTimeout) {
+        // record rate of new connections
+        s_attemptRate.incrementAndGet();
 
         // (out of scope for clean up purposes)
         InputStream inputStream = null;
@@ -258,6 +387,7 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
 
                 request.setConfig(RequestConfig.copy(_requestConfig)
                         .setConnectTimeout(actualConnTimeout)
+                        .setConnectionRequestTimeout(actualConnTimeout)
                         .setSocketTimeout(actualReadTimeout)
                         .build());
             }
@@ -278,33 +408,39 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
             
             // safely get the content encoding
             HttpEntity entity = httpResponse.getEntity();
-            Header contentEncodingHeader = entity.getContentEncoding();
-            String contentEncoding = null;
-            if (contentEncodingHeader != null)
-                contentEncoding = contentEncodingHeader.getValue();
-            
-            // only if no specific encoding specified, fallback to UTF-8 for json and xml
-            if (contentEncoding == null) {
-                Header recvContentTypeHeader = entity.getContentType();
-                if (recvContentTypeHeader != null) {
-                    String recvContentType = recvContentTypeHeader.getValue() != null ? recvContentTypeHeader.getValue().toLowerCase() : ""; // as safe lower-case
+            
+            // (no entity with responses like '304 Not Modified' or '204 No Content')
+            String content = "";
+            
+            if (entity != null) {
+                Header contentEncodingHeader = entity.getContentEncoding();
+                String contentEncoding = null;
+                if (contentEncodingHeader != null)
+                    contentEncoding = contentEncodingHeader.getValue();
+            
+                // only if no specific encoding specified, fallback to UTF-8 for json and xml
+                if (contentEncoding == null) {
+                    Header recvContentTypeHeader = entity.getContentType();
+                    if (recvContentTypeHeader != null) {
+                        String recvContentType = recvContentTypeHeader.getValue() != null ? recvContentTypeHeader.getValue().toLowerCase() : ""; // as safe lower-case
 
-                    if (recvContentType.contains("json") || recvContentType.contains("xml"))
-                        contentEncoding = "utf-8";
+                        if (recvContentType.contains("json") || recvContentType.contains("xml"))
+                            contentEncoding = "utf-8";
+                    }
                 }
-            }
 
-            inputStream = entity.getContent();
+                inputStream = entity.getContent();
             
-            // inject a counter so bytes can be counted, not characters
-            SafeCounter byteCounter = new SafeCounter();
-            cis = new CountableInputStream(inputStream, SharableMeasurementProvider.Null.INSTANCE, byteCounter);
+                // inject a counter so bytes can be counted, not characters
+                SafeCounter byteCounter = new SafeCounter();
+                cis = new CountableInputStream(inputStream, SharableMeasurementProvider.Null.INSTANCE, byteCounter);
             
-            // try using the given encoding or a straight 8-bit widening (for convenience ISO-8859-1 does that trick) 
-            String encodingToUse = Strings.isBlank(contentEncoding) ? "ISO-8859-1" : contentEncoding;
+                // try using the given encoding or a straight 8-bit widening (for convenience ISO-8859-1 does that trick) 
+                String encodingToUse = Strings.isBlank(contentEncoding) ? "ISO-8859-1" : contentEncoding;
             
-            InputStreamReader isr = new InputStreamReader(cis, encodingToUse); // unknown encoding will raise an exception
-            String content = Stream.readFully(isr);
+                InputStreamReader isr = new InputStreamReader(cis, encodingToUse); // unknown encoding will raise an exception
+                content = Stream.readFully(isr);
+            }
             
             StatusLine statusLine = httpResponse.getStatusLine();
             
@@ -398,9 +534,87 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
 
     @Override
     public void close() throws IOException {
+        synchronized (_lock) {
+            if (_connMgr != null) {
+                synchronized (s_pools) {
+                    s_pools.remove(_connMgr);
+                }
+            }
+        }
+        
         Stream.safeClose(_httpClient);
     }
     
+    /**
+     * Closes expired and idle connections in all pools and updates the counters.
+     * (timer thread)
+     */
+    private static void reapAll() {
+        PoolingHttpClientConnectionManager[] pools;
+        synchronized (s_pools) {
+            pools = s_pools.toArray(new PoolingHttpClientConnectionManager[s_pools.size()]);
+        }
+        
+        long leased = 0;
+        long idle = 0;
+        long pending = 0;
+        
+        for (PoolingHttpClientConnectionManager pool : pools) {
+            try {
+                pool.closeExpiredConnections();
+                pool.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+                
+                PoolStats stats = pool.getTotalStats();
+                leased += stats.getLeased();
+                idle += stats.getAvailable();
+                pending += stats.getPending();
+                
+            } catch (Exception exc) {
+                // (pool may have been shutdown in the meantime)
+            }
+        }
+        
+        s_counterLeased.set(leased);
+        s_counterIdle.set(idle);
+        s_counterPending.set(pending);
+    }
+    
+    /**
+     * A pooling connection manager that records how long leases take.
+     */
+    private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+        
+        public TimedConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+            super(socketFactoryRegistry);
+        }
+        
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            
+            return new ConnectionRequest() {
+                
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long startTime = System.nanoTime();
+                    try {
+                        return request.get(timeout, tunit);
+                        
+                    } finally {
+                        s_counterLeaseTime.record((System.nanoTime() - startTime) / 1000000);
+                    }
+                }
+                
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+                
+            };
+        }
+        
+    }
+    
     // static convenience methods
     
     /**
@@ -474,6 +688,23 @@ public class ApacheNodelHttpClient extends NodelHTTPClient {
 
     }
 
+    /**
+     * Honours any server 'Keep-Alive' timeout but never keeps a connection for longer than the idle timeout.
+     */
+    private static ConnectionKeepAliveStrategy KEEPALIVE_STRATEGY = new ConnectionKeepAliveStrategy() {
+        
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            
+            if (duration <= 0 || duration > IDLE_TIMEOUT)
+                return IDLE_TIMEOUT;
+            else
+                return duration;
+        }
+        
+    };
+    
     /**
      *  A redirect strategy used to ignore all redirect directives i.e. will be manually handled
      */
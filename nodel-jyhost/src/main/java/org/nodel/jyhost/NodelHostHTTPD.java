@@ -6,6 +6,8 @@ package org.nodel.jyhost;
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. 
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -25,6 +27,7 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.DateTime;
+import org.nodel.Handler;
 import org.nodel.SimpleName;
 import org.nodel.Strings;
 import org.nodel.core.Nodel;
@@ -34,6 +37,7 @@ import org.nodel.discovery.AdvertisementInfo;
 import org.nodel.discovery.AutoDNS;
 import org.nodel.discovery.TopologyWatcher;
 import org.nodel.host.BaseNode;
+import org.nodel.host.EventStream;
 import org.nodel.host.NanoHTTPD;
 import org.nodel.io.Stream;
 import org.nodel.io.UTF8Charset;
@@ -301,6 +305,13 @@ public class NodelHostHTTPD extends NanoHTTPD {
 
             parts = newParts;
 
+            // browsers (EventSource) can ask for a stream instead of polling
+            if (method.equalsIgnoreCase("GET") && acceptsEventStream(request)) {
+                Response stream = tryEventStream(restTarget, parts, params, request);
+                if (stream != null)
+                    return stream;
+            }
+
             try {
                 Object target;
 
@@ -319,9 +330,10 @@ public class NodelHostHTTPD extends NanoHTTPD {
                     resp = (Response) target;
 
                 } else {
-                    // otherwise serialise the target into JSON
-                    String targetAsJSON = Serialisation.serialise(target);
-                    resp = new Response(HTTP_OK, "application/json; charset=utf-8", targetAsJSON);
+                    // otherwise serialise the target straight into UTF-8 JSON
+                    ByteArrayOutputStream targetAsJSON = new ByteArrayOutputStream(1024);
+                    Serialisation.serialise(target, 0, false, targetAsJSON);
+                    resp = new Response(HTTP_OK, "application/json; charset=utf-8", new ByteArrayInputStream(targetAsJSON.toByteArray()));
                 }
 
                 // adjust the response headers for script compatibility
@@ -573,6 +585,133 @@ public class NodelHostHTTPD extends NanoHTTPD {
         
     }
     
+    /**
+     * (convenience)
+     */
+    private static boolean acceptsEventStream(Request request) {
+        String accept = request.headers.getProperty("accept");
+        
+        return accept != null && accept.contains(EventStream.MIME_EVENT_STREAM);
+    }
+    
+    /**
+     * Streams (Server-Sent Events) a node's activity and console (one stream), or the host logs, otherwise null if not a
+     * streamable endpoint. e.g. 'REST/nodes/MyNode/stream', 'nodes/MyNode/REST/stream?max=...', 'REST/logs'
+     */
+    private Response tryEventStream(Object restTarget, String[] parts, Properties params, Request request) {
+        BaseNode node = null;
+        String endPoint;
+        
+        if (restTarget instanceof BaseNode && parts.length == 1) {
+            node = (BaseNode) restTarget;
+            endPoint = parts[0];
+            
+        } else if (restTarget == _restModel && parts.length == 3 && parts[0].equalsIgnoreCase("nodes")) {
+            node = BaseNode.getNode(new SimpleName(parts[1]));
+            if (node == null)
+                return null;
+            
+            endPoint = parts[2];
+            
+        } else if (restTarget == _restModel && parts.length == 1) {
+            endPoint = parts[0];
+            
+        } else {
+            return null;
+        }
+        
+        // resume just after the last item received when reconnecting
+        String lastEventID = request.headers.getProperty("last-event-id");
+        
+        int max = (int) longParam(params, "max", 100);
+        
+        EventStream stream;
+        
+        if (node != null && endPoint.equalsIgnoreCase("stream")) {
+            // (IDs are '(activity seq).(console seq)')
+            long activityFrom = longParam(params, "activityFrom", -1);
+            long consoleFrom = longParam(params, "consoleFrom", -1);
+            
+            if (lastEventID != null) {
+                String[] seqs = lastEventID.trim().split("\\.");
+                try {
+                    if (seqs.length == 2) {
+                        activityFrom = Long.parseLong(seqs[0]) + 1;
+                        consoleFrom = Long.parseLong(seqs[1]) + 1;
+                    }
+                } catch (NumberFormatException exc) {
+                    // ignore
+                }
+            }
+            
+            stream = node.streamEvents(activityFrom, consoleFrom, max);
+            
+        } else if (node == null && endPoint.equalsIgnoreCase("logs")) {
+            long from = longParam(params, "from", -1);
+            
+            if (lastEventID != null) {
+                try {
+                    from = Long.parseLong(lastEventID.trim()) + 1;
+                } catch (NumberFormatException exc) {
+                    // ignore
+                }
+            }
+            
+            stream = streamLogs(from, max);
+            
+        } else {
+            return null;
+        }
+        
+        stream.addHeader("Access-Control-Allow-Origin", "*");
+        
+        return stream;
+    }
+    
+    /**
+     * Streams the host logs.
+     */
+    private EventStream streamLogs(long from, int max) {
+        final EventStream stream = new EventStream();
+        
+        final Handler.H1<LogEntry> handler = new Handler.H1<LogEntry>() {
+            
+            @Override
+            public void handle(LogEntry entry) {
+                stream.send(null, entry.seq, entry);
+            }
+            
+        };
+        
+        stream.setClosedHandler(new Handler.H0() {
+            
+            @Override
+            public void handle() {
+                Logging.instance().unregisterLogHandler(handler);
+            }
+            
+        });
+        
+        Logging.instance().registerLogHandler(handler, from, max);
+        
+        return stream;
+    }
+    
+    /**
+     * (convenience)
+     */
+    private static long longParam(Properties params, String name, long def) {
+        String value = params.getProperty(name);
+        if (Strings.isBlank(value))
+            return def;
+        
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException exc) {
+            return def;
+        }
+    }
+    
     /**
      * @param node (pre-checked)
      * @return 
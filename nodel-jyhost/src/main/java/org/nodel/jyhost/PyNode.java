@@ -838,7 +838,7 @@ public class PyNode extends BaseDynamicNode {
         // toolkit and callback queue are cleaned up by 'cleanupInterpreter'
 
         _pySystemState = Py.getSystemState();
-        _callbackQueue = new CallbackQueue();
+        _callbackQueue = new CallbackQueue(getName().getReducedName(), _threadStateHandler);
         _toolkit = new ManagedToolkit(this)
             .setExceptionHandler(_exceptionHandler)
             .setThreadStateHandler(_threadStateHandler)
@@ -98,13 +98,20 @@ def get_url(url, method=None, query=None, username=None, password=None, headers=
 def getURL(url, method=None, query=None, username=None, password=None, headers=None, contentType=None, post=None, connectTimeout=10, readTimeout=15):
   return nodetoolkit.getHttpClient().makeSimpleRequest(url, method, query, username, password, headers, contentType, post, long(connectTimeout*1000), long(readTimeout*1000))
 
+# Asynchronous version of 'get_url' (uses pooled connections); 'complete' is called with the result (as per 'fullResponse')
+# or 'error' with any exception, both thread-safe
+def get_url_async(url, complete=None, error=None, method=None, query=None, username=None, password=None, headers=None, contentType=None, post=None, connectTimeout=10, readTimeout=15, fullResponse=False):
+  nodetoolkit.getURLAsync(url, method, query, username, password, headers, contentType, post, long(connectTimeout*1000), long(readTimeout*1000), fullResponse, complete, error)
+
 # A managed TCP connection that attempts to stay open (includes instrumentation)
-def TCP(dest=None, connected=None, received=None, sent=None, disconnected=None, timeout=None, sendDelimiters='\n', receiveDelimiters='\r\n', binaryStartStopFlags=None):
-  return nodetoolkit.createTCP(dest, connected, received, sent, disconnected, timeout, sendDelimiters, receiveDelimiters, binaryStartStopFlags)
+# ('receivedBytes' is passed raw bytes instead of a string; '.send' and '.request' also take raw bytes which are sent as-is)
+def TCP(dest=None, connected=None, received=None, sent=None, disconnected=None, timeout=None, sendDelimiters='\n', receiveDelimiters='\r\n', binaryStartStopFlags=None, receivedBytes=None):
+  return nodetoolkit.createTCP(dest, connected, received, sent, disconnected, timeout, sendDelimiters, receiveDelimiters, binaryStartStopFlags, receivedBytes)
 
 # A managed UDP connection for sending or receiving UDP (includes instrumentation)
-def UDP(source='0.0.0.0:0', dest=None, ready=None, received=None, sent=None, intf=None):
-  return nodetoolkit.createUDP(source, dest, ready, received, sent, intf);
+# ('receivedBytes' is passed the source and raw bytes; '.send' and '.sendTo' also take raw bytes)
+def UDP(source='0.0.0.0:0', dest=None, ready=None, received=None, sent=None, intf=None, receivedBytes=None):
+  return nodetoolkit.createUDP(source, dest, ready, received, sent, intf, receivedBytes);
   
 # A managed processes that attempts to stay executed (includes instrumentation)
 def Process(command, # the command line and arguments
@@ -118,10 +125,11 @@ def Process(command, # the command line and arguments
            # arguments
            sendDelimiters='\n', receiveDelimiters='\r\n', # default delimiters
            working=None, # working directory
-           mergeErr=False):
+           mergeErr=False,
+           stdoutBytes=None): # stdout handler passed raw bytes instead of a string
   return nodetoolkit.createProcess(command, 
                                 started, stdout, stdin, stderr, stopped, timeout, sendDelimiters, receiveDelimiters,
-                                working, mergeErr)
+                                working, mergeErr, stdoutBytes)
 
 # Creates a short-living process (still managed)
 def quick_process(command,
@@ -133,10 +141,11 @@ def quick_process(command,
                                   #   'stderr': The complete stderr capture (if not merged)
                   timeoutInSeconds=0, # if positive, kills the process on timeout
                   working=None,   # the working directory
-                  mergeErr=False):# merge  stderr into the stdout for convenience
+                  mergeErr=False, # merge  stderr into the stdout for convenience
+                  captureLimit=0):# if positive, only the most recent bytes (per capture) are kept
     return nodetoolkit.createQuickProcess(command, stdinPush, 
                                        started, finished, 
-                                       long(timeoutInSeconds * 1000), working, mergeErr)
+                                       long(timeoutInSeconds * 1000), working, mergeErr, captureLimit)
 
 # create a safe request queue for mixing asynchronous and synchronous programming.
 # e.g. 
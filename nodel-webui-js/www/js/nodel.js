@@ -989,6 +989,11 @@ var checkReload = function(){
 // function to update the activity display using polling
 var updateLogs = function(){
   if(poll || !("WebSocket" in window) || (typeof $('body').data('config')['webSocketPort'] === "undefined")) {
+    // stream the activity if possible (one long-lived request), otherwise poll
+    if(("EventSource" in window) && !$('body').data('nostream')) {
+      streamNode();
+      return;
+    }
     var url;
     // if the last sequence number is not set, set the filter to retrieve the last 100 entries
     if (typeof $('body').data('seq') === "undefined") url = 'http://' + host + '/REST/nodes/' + encodeURIComponent(node) + '/activity?from=-1';
@@ -1049,6 +1054,41 @@ var updateLogs = function(){
   }
 };
 
+// the node's event stream (one per page, browsers only allow a few connections per host)
+var nodeStream = null;
+
+// function to update the activity display and console using Server-Sent Events
+var streamNode = function(){
+  if(nodeStream !== null) return;
+  var source = nodeStream = new EventSource('http://' + host + '/REST/nodes/' + encodeURIComponent(node) + '/stream?max=100');
+  // the current state arrives first (and again after reconnecting)
+  source.addEventListener('activityHistory', function(e){
+    var value = JSON.parse(e.data);
+    if(value.seq != 0) parseLog(value, true);
+  });
+  source.addEventListener('activity', function(e){
+    parseLog(JSON.parse(e.data));
+  });
+  // (the console is kept up to date even while hidden)
+  source.addEventListener('console', function(e){
+    if(!$('#console').length) return;
+    appendConsole(JSON.parse(e.data));
+    scrollConsole();
+  });
+  source.onopen = function(){
+    online(source);
+  };
+  source.onerror = function(){
+    // the browser reconnects by itself unless the host can't stream at all, in which case fall back to polling
+    if(source.readyState == EventSource.CLOSED) {
+      nodeStream = null;
+      $('body').data('nostream', true);
+      offline();
+      if($('#advancedmode').prop('checked')) setTimeout(function() { updateConsoleForm(); }, 1000);
+    } else offline(source);
+  };
+};
+
 var parseLog = function(value, noanimate) {
   if(value.type == "eventBinding"){
     var eleb = $("input.node[data-group]").filter(function() {
@@ -1096,8 +1136,9 @@ var parseLog = function(value, noanimate) {
 };
 
 var online = function(socket){
-  if(typeof socket !== 'undefined') $('body').data('timeout', setInterval(function() { socket.send('{}'); }, 1000));
-  else $('body').data('update', setTimeout(function() { updateLogs(); }, 1000));
+  // (event streams keep themselves up to date)
+  if((typeof socket !== 'undefined') && ('send' in socket)) $('body').data('timeout', setInterval(function() { socket.send('{}'); }, 1000));
+  else if(typeof socket === 'undefined') $('body').data('update', setTimeout(function() { updateLogs(); }, 1000));
   if((typeof $('body').data('offline') !== 'undefined') && ($('body').data('offline'))){
     console.log('online');
     dialog('Online');
@@ -1108,9 +1149,10 @@ var online = function(socket){
   }
 };
 
-var offline = function(){
+var offline = function(source){
   clearInterval($('body').data('timeout'));
-  $('body').data('update', setTimeout(function() { updateLogs(); }, 1000));
+  // (a reconnecting event stream is left to itself)
+  if(typeof source === 'undefined') $('body').data('update', setTimeout(function() { updateLogs(); }, 1000));
   if((typeof $('body').data('offline') === 'undefined') || (!$('body').data('offline'))){
     console.log('offline');
     if(typeof $('body').data('offline') === 'undefined'){
@@ -1129,6 +1171,11 @@ var offline = function(){
 
 // function to update the console
 var updateConsoleForm = function(){
+  // stream the console if possible (one long-lived request), otherwise poll
+  if(("EventSource" in window) && !$('body').data('nostream')) {
+    streamNode();
+    return;
+  }
   var url;
   // if the last sequence number is not set, set the filter to retrieve the last 100 entries
   if(typeof $('#console').data('seq') === "undefined") url = 'http://'+host+'/REST/nodes/'+encodeURIComponent(node)+'/console?from=-1&max=100';
@@ -1149,30 +1196,40 @@ var updateConsoleForm = function(){
     }
     // display each entry
     $.each(data, function(key, value) {
-      // parse the timestamp for formatting
-      var timestamp = moment(value.timestamp);
-      // add the entry to the list
-      var div = $('<div class="'+value.console+'"></div>').text(timestamp.format('MM-DD HH:mm:ss.SS')+' '+value.comment);
-      $('#console').append(div);
-      // set the current sequence number
-      $('#console').data('seq', value.seq+1);
-      // trim the list if it goes over 100 items
-      if($("#console").children("div").length > 100) $("#console").children('div:lt(1)').remove();
+      appendConsole(value);
       // flag that the list should scroll to the latest item
       animate = true;
     });
     // if there is new data and console scroll is enabled, scroll to the bottom of the list
-    if(animate && !$('#consolescroll').is(':checked')){
-      $('#console').animate({
-        scrollTop: $("#console")[0].scrollHeight
-      },1000);
-    }
+    if(animate) scrollConsole();
   }).always(function() {
     // check again in one second
     $.data(this, 'timer', setTimeout(function() { updateConsoleForm(); }, 1000));
   });
 };
 
+// function to add an entry to the console
+var appendConsole = function(value){
+  // parse the timestamp for formatting
+  var timestamp = moment(value.timestamp);
+  // add the entry to the list
+  var div = $('<div class="'+value.console+'"></div>').text(timestamp.format('MM-DD HH:mm:ss.SS')+' '+value.comment);
+  $('#console').append(div);
+  // set the current sequence number
+  $('#console').data('seq', value.seq+1);
+  // trim the list if it goes over 100 items
+  if($("#console").children("div").length > 100) $("#console").children('div:lt(1)').remove();
+};
+
+// function to scroll the console to the latest entry, if console scroll is enabled
+var scrollConsole = function(){
+  if(!$('#consolescroll').is(':checked')){
+    $('#console').stop(true).animate({
+      scrollTop: $("#console")[0].scrollHeight
+    },1000);
+  }
+};
+
 // function to build a form using the template
 var buildForm = function(name, formname, path, action, link){
   // if this form should be linked to data